@@ -0,0 +1,63 @@
+package com.javaadvent.bootrest.error;
+
+import com.codahale.metrics.MetricRegistry;
+import com.javaadvent.bootrest.todo.TodoDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.core.MethodParameter;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast {@link RestErrorHandler} transforms validation errors into a {@link ValidationErrorDTO}.
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RestErrorHandlerBenchmark {
+
+    private MethodArgumentNotValidException exception;
+
+    private RestErrorHandler handler;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
+        messageSource.setBasename("messages");
+        handler = new RestErrorHandler(messageSource, new MetricRegistry());
+
+        BindingResult bindingResult = new BeanPropertyBindingResult(new TodoDTO(), "todoDTO");
+        bindingResult.rejectValue("title", "NotEmpty");
+        bindingResult.rejectValue("description",
+                "Size",
+                new Object[] {new DefaultMessageSourceResolvable(new String[] {"todoDTO.description", "description"}, "description"), 500, 0},
+                "size must be between 0 and 500"
+        );
+
+        MethodParameter parameter = new MethodParameter(Object.class.getMethod("equals", Object.class), 0);
+        exception = new MethodArgumentNotValidException(parameter, bindingResult);
+    }
+
+    @Benchmark
+    public ValidationErrorDTO processValidationError() {
+        return handler.processValidationError(exception);
+    }
+}
@@ -0,0 +1,88 @@
+package com.javaadvent.bootrest.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of {@link LogTodoRepository} with every fsync policy. The benchmarks run in four threads
+ * so that the writes that wait for a sync can share it.
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LogTodoRepositoryBenchmark {
+
+    /**
+     * The name of the {@link TodoLog.FsyncPolicy}. The generated benchmark code cannot use the enum because it is
+     * not public.
+     */
+    @Param({"ALWAYS", "INTERVAL", "NEVER"})
+    private String fsyncPolicy;
+
+    private Path directory;
+
+    private LogTodoRepository repository;
+
+    private String id;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("todo-log-benchmark");
+        repository = LogTodoRepository.open(directory.resolve("todo.log"),
+                TodoLog.FsyncPolicy.valueOf(fsyncPolicy),
+                64 * 1024 * 1024,
+                64
+        );
+        id = repository.save(Todo.getBuilder().title("title").build()).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+        Files.deleteIfExists(directory.resolve("todo.log"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Todo save() {
+        return repository.save(Todo.getBuilder()
+                .title("title")
+                .description("description")
+                .build()
+        );
+    }
+
+    @Benchmark
+    public Optional<Todo> findOne() {
+        return repository.findOne(id);
+    }
+
+    @Benchmark
+    public Optional<Todo> findAndUpdate() {
+        return repository.findAndUpdate(id, null, "title", "description");
+    }
+}
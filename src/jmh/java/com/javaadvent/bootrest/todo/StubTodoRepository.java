@@ -0,0 +1,201 @@
+package com.javaadvent.bootrest.todo;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * A {@link TodoRepository} that serves a fixed set of todo entries from memory. Writes don't change the
+ * number of todo entries, which keeps the state of a benchmark stable between invocations.
+ *
+ * @author Petri Kainulainen
+ */
+final class StubTodoRepository implements TodoRepository {
+
+    static final String DESCRIPTION = "Lorem ipsum dolor sit amet, consectetur adipiscing elit.";
+    static final String TITLE = "Write a benchmark";
+
+    private final TreeMap<String, Todo> todoEntries = new TreeMap<>();
+
+    StubTodoRepository(int size) {
+        for (int index = 0; index < size; index++) {
+            String id = id(index);
+            todoEntries.put(id, todo(id));
+        }
+    }
+
+    /**
+     * @return  The id of the todo entry that was created with the given index.
+     */
+    static String id(int index) {
+        return String.format("%024x", index);
+    }
+
+    private static Todo todo(String id) {
+        Todo todo = Todo.getBuilder()
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+
+        ReflectionTestUtils.setField(todo, "id", id);
+        ReflectionTestUtils.setField(todo, "version", 0L);
+
+        return todo;
+    }
+
+    @Override
+    public void delete(Todo deleted) {
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        return new ArrayList<>(todoEntries.values());
+    }
+
+    @Override
+    public List<Todo> findAll(TodoFields fields) {
+        List<Todo> found = new ArrayList<>(todoEntries.size());
+        for (Todo todo : todoEntries.values()) {
+            found.add(project(todo, fields));
+        }
+        return found;
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id, TodoFields fields) {
+        return findOne(id).map(todo -> project(todo, fields));
+    }
+
+    /**
+     * Copies the requested fields in the same way as a MongoDB projection.
+     */
+    private static Todo project(Todo todo, TodoFields fields) {
+        Todo projected = new Todo();
+
+        ReflectionTestUtils.setField(projected, "id", todo.getId());
+        ReflectionTestUtils.setField(projected, "version", todo.getVersion());
+        if (fields.includes(TodoFields.Field.TITLE)) {
+            ReflectionTestUtils.setField(projected, "title", todo.getTitle());
+        }
+        if (fields.includes(TodoFields.Field.DESCRIPTION)) {
+            ReflectionTestUtils.setField(projected, "description", todo.getDescription());
+        }
+
+        return projected;
+    }
+
+    @Override
+    public List<Todo> findByIdIn(Collection<String> ids) {
+        List<Todo> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Todo todo = todoEntries.get(id);
+            if (todo != null) {
+                found.add(todo);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id) {
+        return Optional.ofNullable(todoEntries.get(id));
+    }
+
+    @Override
+    public Todo save(Todo saved) {
+        ReflectionTestUtils.setField(saved, "id", id(todoEntries.size()));
+        ReflectionTestUtils.setField(saved, "version", 0L);
+        return saved;
+    }
+
+    @Override
+    public List<Todo> findPage(String after, int limit) {
+        Collection<Todo> remaining = after == null
+                ? todoEntries.values()
+                : todoEntries.tailMap(after, false).values();
+
+        List<Todo> page = new ArrayList<>(limit);
+        for (Todo todo : remaining) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(todo);
+        }
+        return page;
+    }
+
+    @Override
+    public List<Todo> search(String text, int offset, int limit) {
+        return findPage(null, limit);
+    }
+
+    @Override
+    public List<Todo> findByTitlePrefix(String prefix, int offset, int limit) {
+        return findPage(null, limit);
+    }
+
+    @Override
+    public List<Todo> findModified(Date afterTime, String afterId, Date until, int limit) {
+        return findPage(afterId.isEmpty() ? null : afterId, limit);
+    }
+
+    @Override
+    public List<TodoTombstone> findTombstones(Date afterTime, String afterId, Date until, int limit) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void saveTombstones(List<String> ids, Date deletedAt) {
+    }
+
+    @Override
+    public Optional<Todo> findAndUpdate(String id, Long expectedVersion, String title, String description) {
+        Todo found = todoEntries.get(id);
+        if (found == null || (expectedVersion != null && !expectedVersion.equals(found.getVersion()))) {
+            return Optional.empty();
+        }
+
+        found.update(title, description);
+        return Optional.of(found);
+    }
+
+    @Override
+    public Optional<Long> findVersion(String id) {
+        return findOne(id).map(Todo::getVersion);
+    }
+
+    @Override
+    public Optional<Todo> findAndRemove(String id) {
+        return findOne(id);
+    }
+
+    @Override
+    public void forEach(Consumer<Todo> action) {
+        todoEntries.values().forEach(action);
+    }
+
+    @Override
+    public Set<Integer> insertAll(List<Todo> inserted) {
+        inserted.forEach(this::save);
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> updateAll(List<Todo> updated) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> deleteAll(List<String> ids) {
+        return Collections.emptyMap();
+    }
+}
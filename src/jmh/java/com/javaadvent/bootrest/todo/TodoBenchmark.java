@@ -0,0 +1,54 @@
+package com.javaadvent.bootrest.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the methods that create and update {@link Todo} objects.
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TodoBenchmark {
+
+    private String description = StubTodoRepository.DESCRIPTION;
+    private String title = StubTodoRepository.TITLE;
+
+    private Todo todo;
+
+    @Setup
+    public void setUp() {
+        todo = Todo.getBuilder()
+                .title(title)
+                .build();
+    }
+
+    @Benchmark
+    public Todo build() {
+        return Todo.getBuilder()
+                .title(title)
+                .description(description)
+                .build();
+    }
+
+    @Benchmark
+    public Todo update() {
+        todo.update(title, description);
+        return todo;
+    }
+}
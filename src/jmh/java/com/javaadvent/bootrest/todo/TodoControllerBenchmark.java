@@ -0,0 +1,109 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/**
+ * Measures the throughput of the REST API from the request mapping to the JSON response. The todo entries
+ * are served by a {@link StubTodoRepository}, which means that the results don't include any database access.
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TodoControllerBenchmark {
+
+    private static final int TODO_ENTRY_COUNT = 100;
+
+    private String id;
+    private byte[] createRequest;
+    private byte[] updateRequest;
+
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        TodoService service = new MongoDBTodoService(new StubTodoRepository(TODO_ENTRY_COUNT));
+        TodoEventBroadcaster events = new TodoEventBroadcaster(objectMapper, Runnable::run, 1, 1, 0, 1000, 1000);
+        TodoIdempotencyStore idempotencyStore = new TodoIdempotencyStore(TODO_ENTRY_COUNT,
+                60,
+                1000,
+                null,
+                System::currentTimeMillis,
+                new MetricRegistry()
+        );
+        TodoNotFoundCounter notFoundCounter = new TodoNotFoundCounter(new MetricRegistry(), Long.MAX_VALUE);
+        mockMvc = MockMvcBuilders.standaloneSetup(new TodoController(service,
+                events,
+                idempotencyStore,
+                notFoundCounter,
+                objectMapper
+        )).build();
+
+        id = StubTodoRepository.id(0);
+
+        TodoDTO created = new TodoDTO();
+        created.setTitle(StubTodoRepository.TITLE);
+        created.setDescription(StubTodoRepository.DESCRIPTION);
+        createRequest = objectMapper.writeValueAsBytes(created);
+
+        created.setId(id);
+        updateRequest = objectMapper.writeValueAsBytes(created);
+    }
+
+    @Benchmark
+    public MvcResult create() throws Exception {
+        return mockMvc.perform(post("/api/todo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(createRequest)
+        ).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findAll() throws Exception {
+        return mockMvc.perform(get("/api/todo")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findAllTitles() throws Exception {
+        return mockMvc.perform(get("/api/todo").param("fields", "title")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findById() throws Exception {
+        return mockMvc.perform(get("/api/todo/{id}", id)).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult update() throws Exception {
+        return mockMvc.perform(put("/api/todo/{id}", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(updateRequest)
+        ).andReturn();
+    }
+}
@@ -0,0 +1,101 @@
+package com.javaadvent.bootrest.todo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the serialization of {@link TodoDTO} lists as JSON and as Smile, with and without gzip compression.
+ * The size of the serialized list is reported as the secondary result: 'bytes'.
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TodoJsonBenchmark {
+
+    @Param({"10", "100"})
+    private int size;
+
+    private List<TodoDTO> todoEntries;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectMapper smileMapper;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        smileMapper = new ObjectMapper(new SmileFactory());
+        todoEntries = new MongoDBTodoService(new StubTodoRepository(size)).findAll();
+    }
+
+    /**
+     * The number of bytes that were written by the latest invocation. The value is the same for every invocation
+     * of a benchmark, which is why it is assigned instead of summed.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+
+        public long bytes;
+    }
+
+    @Benchmark
+    public byte[] writeTodoEntries(Payload payload) throws JsonProcessingException {
+        return written(payload, objectMapper.writeValueAsBytes(todoEntries));
+    }
+
+    @Benchmark
+    public byte[] writeTodoEntriesWithGzip(Payload payload) throws IOException {
+        return written(payload, gzip(objectMapper.writeValueAsBytes(todoEntries)));
+    }
+
+    @Benchmark
+    public byte[] writeTodoEntriesAsSmile(Payload payload) throws JsonProcessingException {
+        return written(payload, smileMapper.writeValueAsBytes(todoEntries));
+    }
+
+    @Benchmark
+    public byte[] writeTodoEntriesAsSmileWithGzip(Payload payload) throws IOException {
+        return written(payload, gzip(smileMapper.writeValueAsBytes(todoEntries)));
+    }
+
+    private static byte[] written(Payload payload, byte[] document) {
+        payload.bytes = document.length;
+        return document;
+    }
+
+    /**
+     * Compresses the document with the default compression level, which is also used by Tomcat.
+     */
+    private static byte[] gzip(byte[] document) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(document.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(document);
+        }
+        return compressed.toByteArray();
+    }
+}
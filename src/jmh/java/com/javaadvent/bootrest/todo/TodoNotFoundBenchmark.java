@@ -0,0 +1,115 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Measures the throughput of the requests that find unknown todo entries and are answered with 404.
+ * The parameter notFound selects how a missing todo entry is reported:
+ * <ul>
+ *     <li>
+ *         STACKLESS uses {@link TodoNotFoundException} as it is.
+ *     </li>
+ *     <li>
+ *         FORMATTED_WITH_STACK_TRACE also pays for what the exception used to do when it was created: it formats
+ *         its message with {@link String#format(String, Object...)} and fills in its stack trace. This is
+ *         the baseline of the comparison. The ERROR log line that was written for every 404 is not included.
+ *     </li>
+ * </ul>
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TodoNotFoundBenchmark {
+
+    private static final int TODO_ENTRY_COUNT = 100;
+
+    @Param({"FORMATTED_WITH_STACK_TRACE", "STACKLESS"})
+    private String notFound;
+
+    private String unknownId;
+
+    private MockMvc mockMvc;
+
+    /**
+     * Keeps the formatted exceptions reachable so that the JIT compiler cannot remove their creation.
+     */
+    private volatile RuntimeException formattedException;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        TodoService service = new MongoDBTodoService(new StubTodoRepository(TODO_ENTRY_COUNT));
+        if ("FORMATTED_WITH_STACK_TRACE".equals(notFound)) {
+            service = withFormattedNotFound(service);
+        }
+
+        TodoEventBroadcaster events = new TodoEventBroadcaster(objectMapper, Runnable::run, 1, 1, 0, 1000, 1000);
+        TodoIdempotencyStore idempotencyStore = new TodoIdempotencyStore(TODO_ENTRY_COUNT,
+                60,
+                1000,
+                null,
+                System::currentTimeMillis,
+                new MetricRegistry()
+        );
+        TodoNotFoundCounter notFoundCounter = new TodoNotFoundCounter(new MetricRegistry(), Long.MAX_VALUE);
+        mockMvc = MockMvcBuilders.standaloneSetup(new TodoController(service,
+                events,
+                idempotencyStore,
+                notFoundCounter,
+                objectMapper
+        )).build();
+
+        unknownId = StubTodoRepository.id(TODO_ENTRY_COUNT);
+    }
+
+    @Benchmark
+    public MvcResult findUnknownById() throws Exception {
+        return mockMvc.perform(get("/api/todo/{id}", unknownId)).andReturn();
+    }
+
+    private TodoService withFormattedNotFound(TodoService service) {
+        return (TodoService) Proxy.newProxyInstance(TodoService.class.getClassLoader(),
+                new Class<?>[]{TodoService.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(service, args);
+                    } catch (InvocationTargetException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof TodoNotFoundException) {
+                            String id = ((TodoNotFoundException) cause).getId();
+                            formattedException = new RuntimeException(
+                                    String.format("No todo entry found with id: <%s>", id)
+                            );
+                        }
+                        throw cause;
+                    }
+                }
+        );
+    }
+}
@@ -0,0 +1,60 @@
+package com.javaadvent.bootrest.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast {@link MongoDBTodoService} converts todo entries into DTOs. The todo entries are
+ * read from a {@link StubTodoRepository}, which means that the results don't include any database access.
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TodoServiceBenchmark {
+
+    @Param({"10", "100"})
+    private int size;
+
+    private String id;
+
+    private MongoDBTodoService service;
+
+    @Setup
+    public void setUp() {
+        id = StubTodoRepository.id(0);
+        service = new MongoDBTodoService(new StubTodoRepository(size));
+    }
+
+    /**
+     * Measures {@code convertToDTO}.
+     */
+    @Benchmark
+    public TodoDTO findById() {
+        return service.findById(id);
+    }
+
+    /**
+     * Measures {@code convertToDTOs}.
+     */
+    @Benchmark
+    public List<TodoDTO> findAll() {
+        return service.findAll();
+    }
+}
@@ -0,0 +1,56 @@
+package com.javaadvent.bootrest.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a precondition check that passes. Run this benchmark with the gc profiler
+ * (the default of the benchmark profile) to see the allocation rate of each variant.
+ *
+ * @author Petri Kainulainen
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreConditionBenchmark {
+
+    private static final String TEMPLATE = "Title cannot be longer than %d characters";
+
+    private int maxLength = 100;
+    private int length = 50;
+
+    /**
+     * The way the varargs variant used to work: the message is formatted even if the check passes.
+     */
+    @Benchmark
+    public void eagerMessage() {
+        PreCondition.isTrue(length <= maxLength, String.format(TEMPLATE, maxLength));
+    }
+
+    @Benchmark
+    public void varargs() {
+        PreCondition.isTrue(length <= maxLength, TEMPLATE, new Object[] {maxLength});
+    }
+
+    @Benchmark
+    public void fixedArity() {
+        PreCondition.isTrue(length <= maxLength, TEMPLATE, maxLength);
+    }
+
+    @Benchmark
+    public void supplier() {
+        PreCondition.isTrue(length <= maxLength, () -> String.format(TEMPLATE, maxLength));
+    }
+}
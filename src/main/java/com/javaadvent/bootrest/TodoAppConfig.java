@@ -1,27 +1,118 @@
 package com.javaadvent.bootrest;
 
+import com.codahale.metrics.MetricRegistry;
+import com.javaadvent.bootrest.mongo.MongoIndexInitializer;
+import com.javaadvent.bootrest.mongo.MongoOperationSettings;
+import com.javaadvent.bootrest.mongo.MongoPoolMetrics;
+import com.mongodb.MongoClientOptions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.data.mongo.MongoRepositoriesAutoConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 
 /**
- * This configuration class has three responsibilities:
+ * This configuration class has six responsibilities:
  * <ol>
  *     <li>It enables the auto configuration of the Spring application context.</li>
  *     <li>
  *         It ensures that Spring looks for other components (controllers, services, and repositories) from the
  *         <code>com.javaadvent.bootrest.todo</code> package.
  *     </li>
+ *     <li>
+ *         It selects the storage engine of the todo entries. If the value of the property 'todo.repository.engine'
+ *         is MONGO, the repositories are generated by Spring Data MongoDB. If it is MEMORY or LOG, the todo
+ *         entries are stored in memory, and the application doesn't use MongoDB. The LOG engine also writes
+ *         the todo entries to a log file.
+ *     </li>
+ *     <li>
+ *         It configures the connection pool, the timeouts, the read preferences and the write concerns of
+ *         the MongoDB client, and publishes the utilization of the connection pool as metrics.
+ *     </li>
+ *     <li>
+ *         It ensures that the indexes declared by the documents of our application exist before the
+ *         application starts serving requests.
+ *     </li>
  *     <li>It launches our application in the main() method.</li>
  * </ol>
  * @author Petri Kainulainen
  */
 @Configuration
-@EnableAutoConfiguration
+@EnableAutoConfiguration(exclude = MongoRepositoriesAutoConfiguration.class)
 @ComponentScan
 public class TodoAppConfig {
 
+    @Configuration
+    @ConditionalOnExpression("'${todo.repository.engine}' == 'MONGO'")
+    @EnableMongoRepositories
+    static class MongoStorageConfig {
+
+        /**
+         * The options of the client that is created by Spring Boot. A request thread waits for a connection
+         * for at most max-wait-millis, and at most connections-per-host * threads-allowed-to-block-multiplier
+         * threads can wait at the same time. The other threads fail immediately.
+         */
+        @Bean
+        public MongoClientOptions mongoClientOptions(@Value("${todo.mongo.connections-per-host}") int connectionsPerHost,
+                                                     @Value("${todo.mongo.min-connections-per-host}") int minConnectionsPerHost,
+                                                     @Value("${todo.mongo.threads-allowed-to-block-multiplier}") int threadsAllowedToBlockMultiplier,
+                                                     @Value("${todo.mongo.max-wait-millis}") int maxWaitMillis,
+                                                     @Value("${todo.mongo.connect-timeout-millis}") int connectTimeoutMillis,
+                                                     @Value("${todo.mongo.socket-timeout-millis}") int socketTimeoutMillis,
+                                                     @Value("${todo.mongo.max-connection-idle-millis}") int maxConnectionIdleMillis,
+                                                     @Value("${todo.mongo.max-connection-life-millis}") int maxConnectionLifeMillis,
+                                                     @Value("${todo.mongo.read-preference}") String readPreference,
+                                                     @Value("${todo.mongo.write-concern}") String writeConcern) {
+            return MongoClientOptions.builder()
+                    .connectionsPerHost(connectionsPerHost)
+                    .minConnectionsPerHost(minConnectionsPerHost)
+                    .threadsAllowedToBlockForConnectionMultiplier(threadsAllowedToBlockMultiplier)
+                    .maxWaitTime(maxWaitMillis)
+                    .connectTimeout(connectTimeoutMillis)
+                    .socketTimeout(socketTimeoutMillis)
+                    .maxConnectionIdleTime(maxConnectionIdleMillis)
+                    .maxConnectionLifeTime(maxConnectionLifeMillis)
+                    .readPreference(MongoOperationSettings.readPreference(readPreference))
+                    .writeConcern(MongoOperationSettings.writeConcern(writeConcern))
+                    .build();
+        }
+
+        /**
+         * The read preferences and the write concerns that override the defaults of the client
+         * for individual operations of the todo repository.
+         */
+        @Bean
+        public MongoOperationSettings mongoOperationSettings(@Value("${todo.mongo.operations.read-preferences}") String readPreferences,
+                                                             @Value("${todo.mongo.operations.write-concerns}") String writeConcerns) {
+            return MongoOperationSettings.parse(readPreferences, writeConcerns);
+        }
+
+        @Bean
+        public MongoPoolMetrics mongoPoolMetrics(MetricRegistry metricRegistry) {
+            MongoPoolMetrics metrics = new MongoPoolMetrics();
+            metricRegistry.register("todo.mongo.pool", metrics);
+            return metrics;
+        }
+
+        @Bean
+        public MongoIndexInitializer mongoIndexInitializer(MongoOperations mongoOperations,
+                                                           @Value("${todo.indexes.mode}") MongoIndexInitializer.Mode mode,
+                                                           @Value("${todo.indexes.background}") boolean background,
+                                                           @Value("${todo.indexes.fail-on-missing}") boolean failOnMissing) {
+            return new MongoIndexInitializer(mongoOperations,
+                    MongoIndexInitializer.findIndexedClasses(TodoAppConfig.class.getPackage().getName()),
+                    mode,
+                    background,
+                    failOnMissing
+            );
+        }
+    }
+
     public static void main(String[] args) {
         SpringApplication.run(TodoAppConfig.class, args);
     }
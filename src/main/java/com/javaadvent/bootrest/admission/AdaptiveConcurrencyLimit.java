@@ -0,0 +1,150 @@
+package com.javaadvent.bootrest.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * This class limits the number of requests that are processed at the same time. The limit adapts to
+ * the latency of the database operations by using additive increase and multiplicative decrease:
+ * <ul>
+ *     <li>
+ *         If the average latency of a window is above the target latency, the database is overloaded,
+ *         and the limit is decreased by the decrease factor.
+ *     </li>
+ *     <li>
+ *         If the average latency is at most the target latency and the limit was reached during the window,
+ *         the limit is increased by one.
+ *     </li>
+ * </ul>
+ * A window is closed by the first latency sample that arrives after the window length has passed, provided
+ * that the window has enough samples. The limit is never changed by two threads at the same time because only
+ * the thread that moves the start of the window can change it.
+ * @author Petri Kainulainen
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long targetLatencyNanos;
+
+    private final long windowNanos;
+
+    private final int minSamples;
+
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private final AtomicLong latencySumNanos = new AtomicLong();
+
+    private final AtomicInteger sampleCount = new AtomicInteger();
+
+    private final AtomicLong windowStartNanos;
+
+    private volatile int limit;
+
+    /**
+     * @param initialLimit          The limit before the first window has been closed.
+     * @param minLimit              The smallest limit.
+     * @param maxLimit              The largest limit.
+     * @param targetLatencyMillis   The highest average latency that doesn't decrease the limit.
+     * @param windowMillis          The minimum length of the window whose latency samples are averaged.
+     * @param minSamples            The minimum number of latency samples of a window.
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit,
+                                    int minLimit,
+                                    int maxLimit,
+                                    long targetLatencyMillis,
+                                    long windowMillis,
+                                    int minSamples) {
+        this(initialLimit, minLimit, maxLimit, targetLatencyMillis, windowMillis, minSamples, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimit(int initialLimit,
+                             int minLimit,
+                             int maxLimit,
+                             long targetLatencyMillis,
+                             long windowMillis,
+                             int minSamples,
+                             LongSupplier nanoClock) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.minSamples = minSamples;
+        this.nanoClock = nanoClock;
+        this.windowStartNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Reserves a slot for a request. The slot must be released by invoking {@link #release()}.
+     * @return  true if a slot was reserved and false if the limit has been reached.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                peakInFlight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Records the latency of a database operation and adjusts the limit if the window is closed.
+     * @param latencyNanos  The latency in nanoseconds.
+     */
+    public void onLatency(long latencyNanos) {
+        latencySumNanos.addAndGet(latencyNanos);
+        sampleCount.incrementAndGet();
+
+        long now = nanoClock.getAsLong();
+        long windowStart = windowStartNanos.get();
+        if (now - windowStart >= windowNanos
+                && sampleCount.get() >= minSamples
+                && windowStartNanos.compareAndSet(windowStart, now)) {
+            adjust();
+        }
+    }
+
+    private void adjust() {
+        //The samples of the concurrent threads might be counted in the next window, which doesn't matter.
+        int samples = sampleCount.getAndSet(0);
+        if (samples == 0) {
+            return;
+        }
+        long averageLatencyNanos = latencySumNanos.getAndSet(0) / samples;
+        int peak = peakInFlight.getAndSet(inFlight.get());
+
+        int current = limit;
+        if (averageLatencyNanos > targetLatencyNanos) {
+            limit = Math.max(minLimit, Math.min(current - 1, (int) (current * DECREASE_FACTOR)));
+        } else if (peak >= current) {
+            limit = Math.min(maxLimit, current + 1);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
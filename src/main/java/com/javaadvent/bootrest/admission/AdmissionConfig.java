@@ -0,0 +1,94 @@
+package com.javaadvent.bootrest.admission;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * This configuration class registers the filter that rate limits the clients of our API and sheds requests
+ * when the database cannot keep up. The concurrency limit is created even if the filter is disabled because
+ * it receives the latencies of the todo repository.
+ * @author Petri Kainulainen
+ */
+@Configuration
+public class AdmissionConfig {
+
+    @Value("${todo.admission.enabled}")
+    private boolean enabled;
+
+    @Value("${todo.admission.client-header}")
+    private String clientHeader;
+
+    @Value("${todo.admission.rate-per-second}")
+    private double ratePerSecond;
+
+    @Value("${todo.admission.burst}")
+    private int burst;
+
+    @Value("${todo.admission.max-clients}")
+    private int maxClients;
+
+    @Value("${todo.admission.unlimited-paths}")
+    private String unlimitedPaths;
+
+    @Value("${todo.admission.shed-retry-after-seconds}")
+    private long shedRetryAfterSeconds;
+
+    @Bean
+    public AdaptiveConcurrencyLimit concurrencyLimit(@Value("${todo.admission.concurrency.initial-limit}") int initialLimit,
+                                                     @Value("${todo.admission.concurrency.min-limit}") int minLimit,
+                                                     @Value("${todo.admission.concurrency.max-limit}") int maxLimit,
+                                                     @Value("${todo.admission.concurrency.target-latency-millis}") long targetLatencyMillis,
+                                                     @Value("${todo.admission.concurrency.window-millis}") long windowMillis,
+                                                     @Value("${todo.admission.concurrency.min-samples}") int minSamples,
+                                                     MetricRegistry metricRegistry) {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(initialLimit,
+                minLimit,
+                maxLimit,
+                targetLatencyMillis,
+                windowMillis,
+                minSamples
+        );
+
+        metricRegistry.register("todo.admission.limit", (Gauge<Integer>) limit::getLimit);
+        metricRegistry.register("todo.admission.in-flight", (Gauge<Integer>) limit::getInFlight);
+
+        return limit;
+    }
+
+    @Bean
+    public FilterRegistrationBean admissionFilter(AdaptiveConcurrencyLimit concurrencyLimit,
+                                                  MetricRegistry metricRegistry) {
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(ratePerSecond, burst, maxClients);
+        metricRegistry.register("todo.admission.clients", (Gauge<Integer>) rateLimiter::clientCount);
+
+        FilterRegistrationBean registration = new FilterRegistrationBean(new AdmissionFilter(rateLimiter,
+                concurrencyLimit,
+                clientHeader.trim(),
+                parsePaths(unlimitedPaths),
+                shedRetryAfterSeconds,
+                metricRegistry
+        ));
+        registration.addUrlPatterns("/api/todo", "/api/todo/*", "/api/async/todo", "/api/async/todo/*");
+        //A rejected request must not be processed by the other filters.
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+
+    private static Set<String> parsePaths(String paths) {
+        return Arrays.stream(paths.split(","))
+                .map(String::trim)
+                .filter(path -> !path.isEmpty())
+                .collect(toSet());
+    }
+}
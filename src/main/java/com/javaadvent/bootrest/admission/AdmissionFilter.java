@@ -0,0 +1,168 @@
+package com.javaadvent.bootrest.admission;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This filter decides whether a request is processed or rejected before it reaches our API:
+ * <ol>
+ *     <li>
+ *         A client that has used up its token bucket gets the response 429 (Too Many Requests), and the header
+ *         'Retry-After' tells when it has a token again.
+ *     </li>
+ *     <li>
+ *         If the concurrency limit has been reached, the request is shed with the response 503 (Service
+ *         Unavailable) instead of queueing it behind the requests that wait for the database.
+ *     </li>
+ * </ol>
+ * A client is identified by the value of the client header. If the header is not configured or the request
+ * doesn't have it, the client is identified by its IP address.
+ *
+ * The requests whose paths are unlimited don't count against the concurrency limit. They are meant for
+ * long-lived requests, such as the live feed of todo events, that don't use the database while they are open.
+ * The slot of an asynchronous request is released when the request is completed.
+ * @author Petri Kainulainen
+ */
+public final class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final ClientRateLimiter rateLimiter;
+
+    private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+    private final String clientHeader;
+
+    private final Set<String> unlimitedPaths;
+
+    private final long shedRetryAfterSeconds;
+
+    private final Meter rateLimited;
+
+    private final Meter shed;
+
+    /**
+     * @param rateLimiter           The token buckets of the clients.
+     * @param concurrencyLimit      The limit of concurrent requests.
+     * @param clientHeader          The header that identifies the client. If this is empty, the clients are
+     *                              identified by their IP addresses.
+     * @param unlimitedPaths        The paths whose requests don't count against the concurrency limit.
+     * @param shedRetryAfterSeconds The value of the header 'Retry-After' of a shed request.
+     * @param metricRegistry        The registry of the meters: 'todo.admission.rate-limited' and
+     *                              'todo.admission.shed'.
+     */
+    public AdmissionFilter(ClientRateLimiter rateLimiter,
+                           AdaptiveConcurrencyLimit concurrencyLimit,
+                           String clientHeader,
+                           Set<String> unlimitedPaths,
+                           long shedRetryAfterSeconds,
+                           MetricRegistry metricRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimit = concurrencyLimit;
+        this.clientHeader = clientHeader;
+        this.unlimitedPaths = unlimitedPaths;
+        this.shedRetryAfterSeconds = shedRetryAfterSeconds;
+        this.rateLimited = metricRegistry.meter("todo.admission.rate-limited");
+        this.shed = metricRegistry.meter("todo.admission.shed");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        long waitNanos = rateLimiter.tryAcquire(getClient(request));
+        if (waitNanos > 0) {
+            rateLimited.mark();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, toRetryAfterSeconds(waitNanos));
+            return;
+        }
+
+        if (unlimitedPaths.contains(request.getRequestURI().substring(request.getContextPath().length()))) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (!concurrencyLimit.tryAcquire()) {
+            shed.mark();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, shedRetryAfterSeconds);
+            return;
+        }
+
+        boolean releasedLater = false;
+        try {
+            filterChain.doFilter(request, response);
+
+            //The response of an asynchronous request is written after this filter has returned.
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener());
+                releasedLater = true;
+            }
+        } finally {
+            if (!releasedLater) {
+                concurrencyLimit.release();
+            }
+        }
+    }
+
+    private String getClient(HttpServletRequest request) {
+        if (!clientHeader.isEmpty()) {
+            String client = request.getHeader(clientHeader);
+            if (client != null) {
+                return client;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static long toRetryAfterSeconds(long waitNanos) {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        return (waitNanos + second - 1) / second;
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds)
+            throws IOException {
+        response.setHeader(RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.sendError(status.value(), status.getReasonPhrase());
+    }
+
+    /**
+     * Releases the slot of an asynchronous request once. The container invokes onComplete() after a timeout
+     * or an error as well.
+     */
+    private final class ReleasingListener implements AsyncListener {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            if (released.compareAndSet(false, true)) {
+                concurrencyLimit.release();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
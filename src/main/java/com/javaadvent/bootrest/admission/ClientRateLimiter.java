@@ -0,0 +1,102 @@
+package com.javaadvent.bootrest.admission;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * This class limits the request rate of every client by using a token bucket. A bucket is refilled with
+ * the given rate, and it holds at most burst tokens.
+ *
+ * A bucket is stored as the time when it will be full again (the theoretical arrival time of the generic cell
+ * rate algorithm). Taking a token moves the time forward by one refill interval, which is why a bucket can be
+ * updated with a single compare-and-set without locking. A bucket that is full again is equal to a new bucket,
+ * which is why full buckets are removed when the number of tracked clients exceeds the given maximum.
+ * @author Petri Kainulainen
+ */
+public final class ClientRateLimiter {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConcurrentMap<String, AtomicLong> fullAtNanos = new ConcurrentHashMap<>();
+
+    private final long refillIntervalNanos;
+
+    private final long burstNanos;
+
+    private final int maxClients;
+
+    private final LongSupplier nanoClock;
+
+    private final AtomicLong lastSweepNanos;
+
+    /**
+     * @param ratePerSecond The number of tokens that are added to a bucket in one second.
+     * @param burst         The maximum number of tokens in a bucket.
+     * @param maxClients    The number of tracked clients after which the full buckets are removed.
+     */
+    public ClientRateLimiter(double ratePerSecond, int burst, int maxClients) {
+        this(ratePerSecond, burst, maxClients, System::nanoTime);
+    }
+
+    ClientRateLimiter(double ratePerSecond, int burst, int maxClients, LongSupplier nanoClock) {
+        this.refillIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.burstNanos = refillIntervalNanos * burst;
+        this.maxClients = maxClients;
+        this.nanoClock = nanoClock;
+        this.lastSweepNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Takes a token from the bucket of the client.
+     * @param client    The identifier of the client.
+     * @return          0 if a token was taken. Otherwise, the number of nanoseconds after which
+     *                  the bucket has a token again.
+     */
+    public long tryAcquire(String client) {
+        long now = nanoClock.getAsLong();
+
+        AtomicLong bucket = fullAtNanos.get(client);
+        if (bucket == null) {
+            sweepIfNeeded(now);
+            bucket = fullAtNanos.computeIfAbsent(client, key -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long fullAt = bucket.get();
+            long nextFullAt = Math.max(fullAt, now) + refillIntervalNanos;
+            long waitNanos = nextFullAt - now - burstNanos;
+
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (bucket.compareAndSet(fullAt, nextFullAt)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Removes the full buckets if there are too many clients. A client that takes a token from a bucket that
+     * is being removed gets a full bucket on its next request, which is what it would have had anyway.
+     */
+    private void sweepIfNeeded(long now) {
+        long lastSweep = lastSweepNanos.get();
+        if (fullAtNanos.size() < maxClients
+                || now - lastSweep < SWEEP_INTERVAL_NANOS
+                || !lastSweepNanos.compareAndSet(lastSweep, now)) {
+            return;
+        }
+
+        fullAtNanos.values().removeIf(fullAt -> fullAt.get() <= now);
+    }
+
+    /**
+     * @return  The number of clients whose buckets are tracked.
+     */
+    public int clientCount() {
+        return fullAtNanos.size();
+    }
+}
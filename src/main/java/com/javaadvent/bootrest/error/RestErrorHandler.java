@@ -1,5 +1,7 @@
 package com.javaadvent.bootrest.error;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
@@ -23,9 +25,15 @@ public final class RestErrorHandler {
 
     private final MessageSource messageSource;
 
+    private final Meter validationFailures;
+
+    private final Meter fieldErrors;
+
     @Autowired
-    public RestErrorHandler(MessageSource messageSource) {
+    public RestErrorHandler(MessageSource messageSource, MetricRegistry metricRegistry) {
         this.messageSource = messageSource;
+        this.validationFailures = metricRegistry.meter("rest.validation.failures");
+        this.fieldErrors = metricRegistry.meter("rest.validation.field-errors");
     }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
@@ -35,6 +43,9 @@ public final class RestErrorHandler {
         BindingResult result = ex.getBindingResult();
         List<FieldError> fieldErrors = result.getFieldErrors();
 
+        validationFailures.mark();
+        this.fieldErrors.mark(fieldErrors.size());
+
         return processFieldErrors(fieldErrors);
     }
 
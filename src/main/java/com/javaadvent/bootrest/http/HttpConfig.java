@@ -0,0 +1,67 @@
+package com.javaadvent.bootrest.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.coyote.http11.AbstractHttp11Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.HttpMessageConverters;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+
+import java.util.List;
+
+/**
+ * This configuration class adds the Smile format to the formats that can be requested from our API,
+ * and it configures the embedded Tomcat to compress the responses with gzip. A response is compressed
+ * only if the client accepts gzip, its content type is compressible, and it is larger than the minimum size.
+ * The response of an unknown size is always compressed because its size isn't known when the headers
+ * are written.
+ *
+ * The payload sizes that are recorded by {@link com.javaadvent.bootrest.metrics.PayloadSizeFilter} are
+ * the sizes before compression.
+ * @author Petri Kainulainen
+ */
+@Configuration
+public class HttpConfig {
+
+    @Value("${todo.http.compression.enabled}")
+    private boolean compressionEnabled;
+
+    @Value("${todo.http.compression.min-size}")
+    private int compressionMinSize;
+
+    @Value("${todo.http.compression.mime-types}")
+    private String compressionMimeTypes;
+
+    /**
+     * Spring Boot would add a message converter bean in front of the default message converters, which would
+     * make Smile the format of the clients that accept any format. That is why the Smile converter is added
+     * after the JSON converter.
+     */
+    @Bean
+    public HttpMessageConverters messageConverters(ObjectMapper objectMapper) {
+        return new HttpMessageConverters() {
+            @Override
+            protected List<HttpMessageConverter<?>> postProcessConverters(List<HttpMessageConverter<?>> converters) {
+                converters.add(new SmileHttpMessageConverter(objectMapper));
+                return converters;
+            }
+        };
+    }
+
+    @Bean
+    public EmbeddedServletContainerCustomizer compressionCustomizer() {
+        return container -> {
+            if (compressionEnabled && container instanceof TomcatEmbeddedServletContainerFactory) {
+                ((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(connector -> {
+                    AbstractHttp11Protocol<?> protocol = (AbstractHttp11Protocol<?>) connector.getProtocolHandler();
+                    protocol.setCompression("on");
+                    protocol.setCompressionMinSize(compressionMinSize);
+                    protocol.setCompressableMimeTypes(compressionMimeTypes);
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package com.javaadvent.bootrest.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+
+/**
+ * This converter reads and writes the Smile format, which is a binary encoding of the JSON data model.
+ * A Smile document doesn't repeat the property names of the objects in a list, and it encodes numbers
+ * in binary. This makes it smaller and faster to parse than the same JSON document. The format is
+ * selected by sending the media type 'application/x-jackson-smile' in the Accept or Content-Type header.
+ *
+ * The converter doesn't extend {@link org.springframework.http.converter.json.MappingJackson2HttpMessageConverter}
+ * because Spring Boot would use it to replace the JSON converter. It uses the configuration, the modules, and
+ * the mix-ins of the object mapper of the JSON converter, which means that both formats serialize the same objects
+ * in the same way.
+ * @author Petri Kainulainen
+ */
+public final class SmileHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param jsonMapper    The object mapper of the JSON converter.
+     */
+    public SmileHttpMessageConverter(ObjectMapper jsonMapper) {
+        super(APPLICATION_SMILE);
+        this.objectMapper = new SmileObjectMapper(jsonMapper);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return objectMapper.canSerialize(clazz);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return objectMapper.readValue(inputMessage.getBody(), clazz);
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotReadableException("Could not read Smile: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, HttpOutputMessage outputMessage) throws IOException {
+        try {
+            objectMapper.writeValue(outputMessage.getBody(), object);
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotWritableException("Could not write Smile: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * An object mapper that writes Smile by using the configuration and the serializer and deserializer factories
+     * of the given JSON mapper. Jackson 2.3 cannot copy a mapper with another factory, which is why they are
+     * copied by this class.
+     */
+    private static final class SmileObjectMapper extends ObjectMapper {
+
+        private SmileObjectMapper(ObjectMapper jsonMapper) {
+            super(new SmileFactory(),
+                    (DefaultSerializerProvider) jsonMapper.getSerializerProvider(),
+                    (DefaultDeserializationContext) jsonMapper.getDeserializationContext()
+            );
+            _serializationConfig = jsonMapper.getSerializationConfig();
+            _deserializationConfig = jsonMapper.getDeserializationConfig();
+            _serializerFactory = jsonMapper.getSerializerFactory();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.javaadvent.bootrest.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.servlets.MetricsServlet;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
+import org.springframework.boot.context.embedded.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This configuration class creates the registry that holds the metrics of our application
+ * and publishes the registered metrics as JSON from the url path: '/metrics'. It also registers the filter
+ * that records the payload sizes of the requests that are sent to our API.
+ * @author Petri Kainulainen
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MetricRegistry metricRegistry() {
+        return new MetricRegistry();
+    }
+
+    @Bean
+    public ServletRegistrationBean metricsServlet(MetricRegistry metricRegistry) {
+        return new ServletRegistrationBean(new MetricsServlet(metricRegistry), "/metrics");
+    }
+
+    @Bean
+    public FilterRegistrationBean payloadSizeFilter(MetricRegistry metricRegistry) {
+        FilterRegistrationBean registration = new FilterRegistrationBean(new PayloadSizeFilter(metricRegistry));
+        registration.addUrlPatterns("/api/*");
+        return registration;
+    }
+}
@@ -0,0 +1,166 @@
+package com.javaadvent.bootrest.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * This class decorates an object with a proxy that measures the duration of every method that is declared by
+ * the given interface. The duration of a method is recorded by the timer: '[prefix].[method name]'. If a method
+ * throws an exception, the proxy marks the meters: '[prefix].[method name].errors' and
+ * '[prefix].errors.[exception name]'. The durations of the invocations of the selected methods can also be passed
+ * to a listener.
+ *
+ * Overloaded methods get their own metrics. The overload that has the fewest parameters uses the method name
+ * as such, and the names of the other overloads are followed by the simple names of their parameter types
+ * (e.g. findAll and findAll.TodoFields).
+ *
+ * A proxy is used instead of a hand-written decorator because the measured interfaces are large, and a new
+ * method would be measured only if somebody remembers to add it to the decorator.
+ * @author Petri Kainulainen
+ */
+public final class TimingProxy implements InvocationHandler {
+
+    private final Object target;
+
+    private final MetricRegistry metricRegistry;
+
+    private final String prefix;
+
+    private final Set<String> listenedMethods;
+
+    private final LongConsumer durationListener;
+
+    private final Map<Method, TimedMethod> timedMethods = new HashMap<>();
+
+    private TimingProxy(Class<?> type,
+                        Object target,
+                        MetricRegistry metricRegistry,
+                        String prefix,
+                        Set<String> listenedMethods,
+                        LongConsumer durationListener) {
+        this.target = target;
+        this.metricRegistry = metricRegistry;
+        this.prefix = prefix;
+        this.listenedMethods = listenedMethods;
+        this.durationListener = durationListener;
+
+        for (Method method : type.getMethods()) {
+            //The methods of a package-private interface cannot be invoked without this. The proxy passes
+            //its own copies of the methods to invoke(), which is why the accessible methods are stored here.
+            method.setAccessible(true);
+            String name = createName(type, method);
+            timedMethods.put(method, new TimedMethod(method,
+                    name,
+                    metricRegistry.timer(MetricRegistry.name(prefix, name))
+            ));
+        }
+    }
+
+    private static String createName(Class<?> type, Method method) {
+        boolean hasShorterOverload = Arrays.stream(type.getMethods())
+                .anyMatch(other -> other.getName().equals(method.getName())
+                        && other.getParameterCount() < method.getParameterCount()
+                );
+        if (!hasShorterOverload) {
+            return method.getName();
+        }
+
+        return MetricRegistry.name(method.getName(), Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .toArray(String[]::new)
+        );
+    }
+
+    /**
+     * Creates a proxy that measures the methods of the given object.
+     * @param type              The interface whose methods are measured.
+     * @param target            The object whose methods are invoked by the proxy.
+     * @param metricRegistry    The registry of the timers and meters.
+     * @param prefix            The prefix of the metric names.
+     * @return                  The created proxy.
+     */
+    public static <T> T create(Class<T> type, T target, MetricRegistry metricRegistry, String prefix) {
+        return create(type, target, metricRegistry, prefix, Collections.emptySet(), duration -> { });
+    }
+
+    /**
+     * Creates a proxy that measures the methods of the given object and passes the durations of the invocations
+     * of the given methods to the given listener.
+     * @param type              The interface whose methods are measured.
+     * @param target            The object whose methods are invoked by the proxy.
+     * @param metricRegistry    The registry of the timers and meters.
+     * @param prefix            The prefix of the metric names.
+     * @param listenedMethods   The names of the methods whose durations are passed to the listener. The durations
+     *                          of all overloads of a method are passed to it.
+     * @param durationListener  The listener that receives the durations in nanoseconds. It is invoked by
+     *                          the thread that invoked the method.
+     * @return                  The created proxy.
+     */
+    public static <T> T create(Class<T> type,
+                               T target,
+                               MetricRegistry metricRegistry,
+                               String prefix,
+                               Set<String> listenedMethods,
+                               LongConsumer durationListener) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[] {type},
+                new TimingProxy(type, target, metricRegistry, prefix, listenedMethods, durationListener)
+        ));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        TimedMethod timedMethod = timedMethods.get(method);
+        if (timedMethod == null) {
+            return invokeTarget(method, args);
+        }
+
+        Timer.Context context = timedMethod.timer.time();
+        try {
+            return invokeTarget(timedMethod.method, args);
+        } catch (Throwable ex) {
+            metricRegistry.meter(MetricRegistry.name(prefix, timedMethod.name, "errors")).mark();
+            metricRegistry.meter(MetricRegistry.name(prefix, "errors", ex.getClass().getSimpleName())).mark();
+            throw ex;
+        } finally {
+            long duration = context.stop();
+            if (listenedMethods.contains(method.getName())) {
+                durationListener.accept(duration);
+            }
+        }
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static final class TimedMethod {
+
+        private final Method method;
+
+        private final String name;
+
+        private final Timer timer;
+
+        private TimedMethod(Method method, String name, Timer timer) {
+            this.method = method;
+            this.name = name;
+            this.timer = timer;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.javaadvent.bootrest.mongo;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares an index of the collection that stores the annotated document class. The declared indexes are
+ * created and verified by {@link com.javaadvent.bootrest.mongo.MongoIndexInitializer} when the application
+ * is started.
+ *
+ * Unlike the index annotations of Spring Data MongoDB, this annotation doesn't create the index as a side
+ * effect of mapping the document class, which means that we can decide how and when the indexes are built.
+ * @author Petri Kainulainen
+ */
+@Documented
+@Repeatable(MongoIndexes.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MongoIndex {
+
+    /**
+     * @return  The name of the index. The name is used to check if the index exists.
+     */
+    String name();
+
+    /**
+     * @return  The keys of the index as a JSON document that uses field names, e.g. <code>{'title': 1, '_id': 1}</code>.
+     */
+    String keys();
+
+    /**
+     * @return  The weights of the fields of a text index as a JSON document. If this is empty, every
+     *          field has the weight 1.
+     */
+    String weights() default "";
+
+    boolean unique() default false;
+
+    /**
+     * @return  If this is not negative, MongoDB deletes a document when this many seconds have passed since
+     *          the date that is stored in the indexed field. Only an index that has one date field can expire
+     *          documents.
+     */
+    long expireAfterSeconds() default -1;
+}
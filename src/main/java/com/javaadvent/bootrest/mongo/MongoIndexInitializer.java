@@ -0,0 +1,282 @@
+package com.javaadvent.bootrest.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.util.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class creates and verifies the indexes that are declared by using the
+ * {@link com.javaadvent.bootrest.mongo.MongoIndex} annotation when the application context is started.
+ * If an expected index is missing, or if an index with the same name has other keys or options than
+ * the declaration, the initializer either logs a warning or aborts the startup of the application.
+ * @author Petri Kainulainen
+ */
+public final class MongoIndexInitializer implements InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoIndexInitializer.class);
+
+    private static final String TEXT = "text";
+
+    public enum Mode {
+        /**
+         * Creates the missing indexes and verifies that all declared indexes exist.
+         */
+        ENSURE,
+        /**
+         * Only verifies that all declared indexes exist. This is useful when the indexes are managed
+         * by the database administrator.
+         */
+        VERIFY,
+        /**
+         * Doesn't touch the indexes.
+         */
+        NONE
+    }
+
+    private final MongoOperations mongoOperations;
+
+    private final Collection<Class<?>> indexedClasses;
+
+    private final Mode mode;
+
+    private final boolean background;
+
+    private final boolean failOnMissing;
+
+    /**
+     * @param mongoOperations   The operations that are used to access the collections.
+     * @param indexedClasses    The document classes that are annotated with
+     *                          {@link com.javaadvent.bootrest.mongo.MongoIndex}.
+     * @param mode              Selects what is done to the declared indexes.
+     * @param background        If true, the indexes are built in the background. A background build is slower,
+     *                          but it doesn't block the other operations of the database.
+     * @param failOnMissing     If true, the startup of the application is aborted if an index is missing or
+     *                          differs from its declaration. Otherwise, the index is logged as a warning.
+     */
+    public MongoIndexInitializer(MongoOperations mongoOperations,
+                                 Collection<Class<?>> indexedClasses,
+                                 Mode mode,
+                                 boolean background,
+                                 boolean failOnMissing) {
+        this.mongoOperations = mongoOperations;
+        this.indexedClasses = indexedClasses;
+        this.mode = mode;
+        this.background = background;
+        this.failOnMissing = failOnMissing;
+    }
+
+    /**
+     * Finds the classes that declare indexes from the given package and its sub packages.
+     * @param basePackage   The scanned package.
+     * @return              The classes that are annotated with {@link com.javaadvent.bootrest.mongo.MongoIndex}.
+     */
+    public static Set<Class<?>> findIndexedClasses(String basePackage) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(MongoIndex.class));
+        scanner.addIncludeFilter(new AnnotationTypeFilter(MongoIndexes.class));
+
+        Set<Class<?>> indexedClasses = new LinkedHashSet<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+            indexedClasses.add(ClassUtils.resolveClassName(candidate.getBeanClassName(),
+                    MongoIndexInitializer.class.getClassLoader()
+            ));
+        }
+
+        return indexedClasses;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (mode == Mode.NONE) {
+            LOGGER.info("Skipping the creation and verification of indexes");
+            return;
+        }
+
+        List<String> missing = new ArrayList<>();
+
+        for (Class<?> indexedClass : indexedClasses) {
+            DBCollection collection = mongoOperations.getCollection(mongoOperations.getCollectionName(indexedClass));
+            MongoIndex[] indexes = indexedClass.getAnnotationsByType(MongoIndex.class);
+
+            if (mode == Mode.ENSURE) {
+                for (MongoIndex index : indexes) {
+                    createIndex(collection, index);
+                }
+            }
+
+            Map<String, DBObject> existing = findIndexes(collection);
+
+            for (MongoIndex index : indexes) {
+                DBObject indexInfo = existing.get(index.name());
+                if (indexInfo == null) {
+                    missing.add(collection.getName() + "." + index.name());
+                } else {
+                    String difference = findDifference(index, indexInfo);
+                    if (difference != null) {
+                        missing.add(collection.getName() + "." + index.name() + " (" + difference + " differ)");
+                    }
+                }
+            }
+        }
+
+        if (missing.isEmpty()) {
+            LOGGER.info("Found all declared indexes");
+        } else if (failOnMissing) {
+            throw new IllegalStateException(
+                    "Cannot start the application because indexes are missing or differ from their declarations: "
+                            + missing
+            );
+        } else {
+            LOGGER.warn("The following indexes are missing or differ from their declarations: {}. "
+                    + "Queries that need them will scan collections.", missing);
+        }
+    }
+
+    /**
+     * @return  The information of the existing indexes by their names. If the indexes cannot be read, this method
+     *          returns an empty map because we cannot know whether the declared indexes exist.
+     */
+    private static Map<String, DBObject> findIndexes(DBCollection collection) {
+        try {
+            Map<String, DBObject> indexes = new HashMap<>();
+            collection.getIndexInfo().forEach(indexInfo -> indexes.put((String) indexInfo.get("name"), indexInfo));
+            return indexes;
+        } catch (MongoException ex) {
+            LOGGER.error("Cannot read the indexes of collection: {}", collection.getName(), ex);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Compares an existing index with its declaration. MongoDB stores the fields of a text index as its weights,
+     * and the key of a text index contains the fields _fts and _ftsx instead of the text fields.
+     * @return  The differing properties of the index, or null if the index matches its declaration.
+     */
+    private static String findDifference(MongoIndex index, DBObject indexInfo) {
+        DBObject declaredKeys = (DBObject) JSON.parse(index.keys());
+        DBObject existingKeys = (DBObject) indexInfo.get("key");
+
+        if (isTextIndex(declaredKeys)) {
+            if (existingKeys == null || !TEXT.equals(existingKeys.get("_fts"))) {
+                return "keys";
+            }
+            if (!sameValues(textWeights(declaredKeys, index.weights()), (DBObject) indexInfo.get("weights"), false)) {
+                return "weights";
+            }
+        } else if (!sameValues(declaredKeys, existingKeys, true)) {
+            return "keys";
+        }
+
+        if (index.unique() != Boolean.TRUE.equals(indexInfo.get("unique"))) {
+            return "unique";
+        }
+
+        Object expireAfterSeconds = indexInfo.get("expireAfterSeconds");
+        long existingExpireAfterSeconds = expireAfterSeconds instanceof Number
+                ? ((Number) expireAfterSeconds).longValue()
+                : -1;
+        if (index.expireAfterSeconds() != existingExpireAfterSeconds) {
+            return "expireAfterSeconds";
+        }
+
+        return null;
+    }
+
+    private static boolean isTextIndex(DBObject keys) {
+        return keys.keySet().stream().anyMatch(field -> TEXT.equals(keys.get(field)));
+    }
+
+    /**
+     * @return  The weights of the text fields. A text field whose weight is not declared has the weight 1.
+     */
+    private static DBObject textWeights(DBObject keys, String declaredWeights) {
+        DBObject weights = declaredWeights.isEmpty() ? new BasicDBObject() : (DBObject) JSON.parse(declaredWeights);
+        DBObject textWeights = new BasicDBObject();
+
+        for (String field : keys.keySet()) {
+            if (TEXT.equals(keys.get(field))) {
+                Object weight = weights.get(field);
+                textWeights.put(field, weight == null ? 1 : weight);
+            }
+        }
+        return textWeights;
+    }
+
+    /**
+     * Compares the fields of two documents. The numbers are compared by their values because MongoDB can return
+     * an integer as a double.
+     */
+    private static boolean sameValues(DBObject expected, DBObject actual, boolean ordered) {
+        if (actual == null) {
+            return false;
+        }
+
+        List<String> expectedFields = new ArrayList<>(expected.keySet());
+        List<String> actualFields = new ArrayList<>(actual.keySet());
+        boolean sameFields = ordered
+                ? expectedFields.equals(actualFields)
+                : new HashSet<>(expectedFields).equals(new HashSet<>(actualFields));
+        if (!sameFields) {
+            return false;
+        }
+
+        for (String field : expectedFields) {
+            Object expectedValue = expected.get(field);
+            Object actualValue = actual.get(field);
+            boolean same = expectedValue instanceof Number && actualValue instanceof Number
+                    ? ((Number) expectedValue).doubleValue() == ((Number) actualValue).doubleValue()
+                    : expectedValue.equals(actualValue);
+            if (!same) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates an index unless an index with the same name exists already. If the index cannot be created,
+     * the error is logged and the index is reported as missing.
+     */
+    private void createIndex(DBCollection collection, MongoIndex index) {
+        DBObject options = new BasicDBObject("name", index.name())
+                .append("background", background);
+
+        if (index.unique()) {
+            options.put("unique", true);
+        }
+        if (index.expireAfterSeconds() >= 0) {
+            options.put("expireAfterSeconds", index.expireAfterSeconds());
+        }
+        if (!index.weights().isEmpty()) {
+            options.put("weights", JSON.parse(index.weights()));
+        }
+
+        LOGGER.info("Ensuring index: {}.{}", collection.getName(), index.name());
+
+        try {
+            collection.createIndex((DBObject) JSON.parse(index.keys()), options);
+        } catch (MongoException ex) {
+            LOGGER.error("Cannot create index: {}.{}", collection.getName(), index.name(), ex);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.javaadvent.bootrest.mongo;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The container of repeated {@link com.javaadvent.bootrest.mongo.MongoIndex} annotations.
+ * @author Petri Kainulainen
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MongoIndexes {
+
+    MongoIndex[] value();
+}
@@ -0,0 +1,118 @@
+package com.javaadvent.bootrest.mongo;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * This class holds the read preferences and write concerns of individual repository operations. An operation
+ * is identified by the name of the repository method. If no setting is configured for an operation, the operation
+ * uses the default read preference and write concern of the MongoDB client.
+ *
+ * The settings are applied to a single cursor or write instead of the collection because the driver shares one
+ * collection object between all threads.
+ * @author Petri Kainulainen
+ */
+public final class MongoOperationSettings {
+
+    private final Map<String, ReadPreference> readPreferences;
+
+    private final Map<String, WriteConcern> writeConcerns;
+
+    public MongoOperationSettings(Map<String, ReadPreference> readPreferences, Map<String, WriteConcern> writeConcerns) {
+        this.readPreferences = Collections.unmodifiableMap(new LinkedHashMap<>(readPreferences));
+        this.writeConcerns = Collections.unmodifiableMap(new LinkedHashMap<>(writeConcerns));
+    }
+
+    /**
+     * Creates settings that use the defaults of the MongoDB client for every operation.
+     */
+    public static MongoOperationSettings defaults() {
+        return new MongoOperationSettings(Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * Parses the settings from comma separated lists of 'operation:value' pairs such as:
+     * 'findAll:secondaryPreferred,findOne:nearest'.
+     * @param readPreferences   The read preferences of the operations. The values are the names that are
+     *                          accepted by {@link com.mongodb.ReadPreference#valueOf(String)}.
+     * @param writeConcerns     The write concerns of the operations. The values are the names that are
+     *                          accepted by {@link com.mongodb.WriteConcern#valueOf(String)}.
+     * @return                  The parsed settings.
+     * @throws java.lang.IllegalArgumentException   If a pair or a value is invalid.
+     */
+    public static MongoOperationSettings parse(String readPreferences, String writeConcerns) {
+        return new MongoOperationSettings(parsePairs(readPreferences, MongoOperationSettings::readPreference),
+                parsePairs(writeConcerns, MongoOperationSettings::writeConcern)
+        );
+    }
+
+    private static <T> Map<String, T> parsePairs(String pairs, Function<String, T> parser) {
+        Map<String, T> parsed = new LinkedHashMap<>();
+
+        for (String pair : pairs.split(",")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] operationAndValue = pair.split(":");
+            if (operationAndValue.length != 2 || operationAndValue[0].trim().isEmpty()) {
+                throw new IllegalArgumentException(String.format(
+                        "The operation setting: <%s> is not of the form 'operation:value'",
+                        pair
+                ));
+            }
+
+            parsed.put(operationAndValue[0].trim(), parser.apply(operationAndValue[1].trim()));
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Resolves a read preference by its name.
+     * @throws java.lang.IllegalArgumentException   If the read preference is unknown.
+     */
+    public static ReadPreference readPreference(String name) {
+        return ReadPreference.valueOf(name);
+    }
+
+    /**
+     * Resolves a write concern by its name.
+     * @throws java.lang.IllegalArgumentException   If the write concern is unknown.
+     */
+    public static WriteConcern writeConcern(String name) {
+        WriteConcern writeConcern = WriteConcern.valueOf(name);
+        if (writeConcern == null) {
+            throw new IllegalArgumentException(String.format("Unknown write concern: <%s>", name));
+        }
+        return writeConcern;
+    }
+
+    /**
+     * @return  The read preference of the operation or null if the operation uses the default read preference.
+     */
+    public ReadPreference getReadPreference(String operation) {
+        return readPreferences.get(operation);
+    }
+
+    /**
+     * @return  The write concern of the operation or null if the operation uses the default write concern.
+     */
+    public WriteConcern getWriteConcern(String operation) {
+        return writeConcerns.get(operation);
+    }
+
+    public Set<String> getReadOperations() {
+        return readPreferences.keySet();
+    }
+
+    public Set<String> getWriteOperations() {
+        return writeConcerns.keySet();
+    }
+}
@@ -0,0 +1,86 @@
+package com.javaadvent.bootrest.mongo;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.RatioGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class publishes the utilization of the connection pools of the MongoDB client. The driver registers
+ * an MBean for the connection pool of every server it connects to, and the gauges of this class sum the
+ * attributes of these MBeans:
+ * <ul>
+ *     <li>size: The number of open connections.</li>
+ *     <li>checked-out: The number of connections that are in use.</li>
+ *     <li>wait-queue-size: The number of threads that wait for a connection.</li>
+ *     <li>max-size: The maximum number of connections.</li>
+ *     <li>utilization: The share of the maximum number of connections that are in use.</li>
+ * </ul>
+ * The gauges are zero until the client has connected to a server.
+ * @author Petri Kainulainen
+ */
+public final class MongoPoolMetrics implements MetricSet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoPoolMetrics.class);
+
+    private static final String POOL_MBEAN_PATTERN = "org.mongodb.driver:type=ConnectionPool,*";
+
+    private final MBeanServer mBeanServer;
+
+    private final ObjectName poolNamePattern;
+
+    public MongoPoolMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    MongoPoolMetrics(MBeanServer mBeanServer) {
+        this.mBeanServer = mBeanServer;
+        try {
+            this.poolNamePattern = new ObjectName(POOL_MBEAN_PATTERN);
+        } catch (JMException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        Map<String, Metric> metrics = new HashMap<>();
+
+        metrics.put("size", (Gauge<Integer>) () -> sum("Size"));
+        metrics.put("checked-out", (Gauge<Integer>) () -> sum("CheckedOutCount"));
+        metrics.put("wait-queue-size", (Gauge<Integer>) () -> sum("WaitQueueSize"));
+        metrics.put("max-size", (Gauge<Integer>) () -> sum("MaxSize"));
+        metrics.put("utilization", new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(sum("CheckedOutCount"), sum("MaxSize"));
+            }
+        });
+
+        return metrics;
+    }
+
+    private int sum(String attribute) {
+        int sum = 0;
+
+        for (ObjectName pool : mBeanServer.queryNames(poolNamePattern, null)) {
+            try {
+                sum += ((Number) mBeanServer.getAttribute(pool, attribute)).intValue();
+            } catch (JMException ex) {
+                //The pool was closed after it was queried.
+                LOGGER.debug("Cannot read the attribute: {} of the connection pool: {}", attribute, pool, ex);
+            }
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,240 @@
+package com.javaadvent.bootrest.todo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.validation.Valid;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This controller provides the asynchronous variant of the public API that is used to manage the
+ * information of todo entries. The request thread is released as soon as the database operation is handed
+ * over to the {@link com.javaadvent.bootrest.todo.AsyncTodoService}, and the response is written when the
+ * operation is finished.
+ * @author Petri Kainulainen
+ */
+@RestController
+@RequestMapping("/api/async/todo")
+@ConditionalOnExpression("${todo.async.enabled}")
+final class AsyncTodoController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncTodoController.class);
+
+    private final AsyncTodoService service;
+
+    private final TodoIdempotencyStore idempotencyStore;
+
+    private final Executor executor;
+
+    private final TodoNotFoundCounter notFoundCounter;
+
+    private final long timeoutMillis;
+
+    @Autowired
+    AsyncTodoController(AsyncTodoService service,
+                        TodoIdempotencyStore idempotencyStore,
+                        @Qualifier("todoExecutor") Executor executor,
+                        TodoNotFoundCounter notFoundCounter,
+                        @Value("${todo.async.timeout-millis}") long timeoutMillis) {
+        this.service = service;
+        this.idempotencyStore = idempotencyStore;
+        this.executor = executor;
+        this.notFoundCounter = notFoundCounter;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates a new todo entry. A request that uses the idempotency key of a running request doesn't occupy
+     * a request thread while it waits, and it gets the response 503 if the wait exceeds the timeout. The key
+     * is reserved in MongoDB by the todo executor, which is why the request thread is not blocked by it either.
+     */
+    @RequestMapping(method = RequestMethod.POST)
+    DeferredResult<ResponseEntity<TodoDTO>> create(@RequestBody @Valid TodoDTO todoEntry,
+                                                   @RequestHeader(value = TodoIdempotencyStore.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        LOGGER.debug("Creating a new todo entry with information: {}", todoEntry);
+
+        CompletableFuture<TodoDTO> creating = idempotencyKey == null
+                ? service.create(todoEntry)
+                : idempotencyStore.createAsync(idempotencyKey,
+                        todoEntry,
+                        executor,
+                        () -> service.create(todoEntry)
+                );
+
+        return toDeferredResult(creating
+                .thenApply(created -> new ResponseEntity<>(created, TodoETags.headers(created), HttpStatus.CREATED))
+        );
+    }
+
+    @RequestMapping(value = "batch", method = RequestMethod.POST)
+    DeferredResult<ResponseEntity<List<TodoBatchResultDTO>>> createAll(@RequestBody @Valid TodoBatchDTO batch) {
+        LOGGER.debug("Creating {} new todo entries", batch.getEntries().size());
+
+        return toDeferredResult(service.createAll(batch.getEntries()).thenApply(AsyncTodoController::ok));
+    }
+
+    @RequestMapping(value = "{id}", method = RequestMethod.DELETE)
+    DeferredResult<ResponseEntity<TodoDTO>> delete(@PathVariable("id") String id) {
+        LOGGER.debug("Deleting todo entry with id: {}", id);
+
+        return toDeferredResult(service.delete(id).thenApply(AsyncTodoController::ok));
+    }
+
+    @RequestMapping(value = "batch", method = RequestMethod.DELETE)
+    DeferredResult<ResponseEntity<List<TodoBatchResultDTO>>> deleteAll(@RequestBody @Valid TodoIdBatchDTO batch) {
+        LOGGER.debug("Deleting {} todo entries", batch.getIds().size());
+
+        return toDeferredResult(service.deleteAll(batch.getIds()).thenApply(AsyncTodoController::ok));
+    }
+
+    @RequestMapping(method = RequestMethod.GET)
+    DeferredResult<ResponseEntity<List<TodoDTO>>> findAll() {
+        LOGGER.debug("Finding all todo entries");
+
+        return toDeferredResult(service.findAll().thenApply(AsyncTodoController::ok));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, params = "size")
+    DeferredResult<ResponseEntity<TodoPageDTO>> findPage(@RequestParam(value = "after", required = false) String after,
+                                                         @RequestParam("size") int size) {
+        LOGGER.debug("Finding page of todo entries after: {}", after);
+
+        return toDeferredResult(service.findPage(after, size).thenApply(AsyncTodoController::ok));
+    }
+
+    @RequestMapping(value = "{id}", method = RequestMethod.GET)
+    DeferredResult<ResponseEntity<TodoDTO>> findById(@PathVariable("id") String id,
+                                                     @RequestHeader(value = TodoETags.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        LOGGER.debug("Finding todo entry with id: {}", id);
+
+        if (ifNoneMatch == null) {
+            return toDeferredResult(service.findById(id).thenApply(AsyncTodoController::okWithETag));
+        }
+
+        return toDeferredResult(service.findVersionById(id).thenCompose(version -> {
+            if (TodoETags.matchesAny(ifNoneMatch, version)) {
+                return CompletableFuture.completedFuture(
+                        new ResponseEntity<TodoDTO>(TodoETags.headers(version), HttpStatus.NOT_MODIFIED)
+                );
+            }
+            return service.findById(id).thenApply(AsyncTodoController::okWithETag);
+        }));
+    }
+
+    @RequestMapping(value = "{id}", method = RequestMethod.PUT)
+    DeferredResult<ResponseEntity<TodoDTO>> update(@RequestBody @Valid TodoDTO todoEntry,
+                                                   @RequestHeader(value = TodoETags.IF_MATCH, required = false) String ifMatch) {
+        LOGGER.debug("Updating todo entry with information: {}", todoEntry);
+
+        if (ifMatch != null && !TodoETags.isAnyVersion(ifMatch)) {
+            Long expectedVersion = TodoETags.parseVersion(ifMatch);
+
+            if (expectedVersion == null) {
+                LOGGER.info("Cannot update todo entry because the If-Match header: {} is invalid", ifMatch);
+                return toDeferredResult(CompletableFuture.completedFuture(
+                        new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED)
+                ));
+            }
+
+            todoEntry.setVersion(expectedVersion);
+        }
+
+        return toDeferredResult(service.update(todoEntry).thenApply(AsyncTodoController::okWithETag));
+    }
+
+    @RequestMapping(value = "batch", method = RequestMethod.PUT)
+    DeferredResult<ResponseEntity<List<TodoBatchResultDTO>>> updateAll(@RequestBody @Valid TodoBatchDTO batch) {
+        LOGGER.debug("Updating {} todo entries", batch.getEntries().size());
+
+        return toDeferredResult(service.updateAll(batch.getEntries()).thenApply(AsyncTodoController::ok));
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public void handleTodoNotFound(TodoNotFoundException ex) {
+        notFoundCounter.record(ex);
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void handleTodoWriteQueueFull(TodoWriteQueueFullException ex) {
+        LOGGER.warn("Handling error with message: {}", ex.getMessage());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public void handleTodoVersionConflict(TodoVersionConflictException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    public void handleTodoIdempotencyKeyReused(TodoIdempotencyKeyReusedException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public void handleTodoIdempotencyKeyInUse(TodoIdempotencyKeyInUseException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    /**
+     * The executor rejects new operations when its queue is full. Telling the client to come back later
+     * is better than queueing requests that would time out anyway.
+     */
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void handleRejectedExecution(RejectedExecutionException ex) {
+        LOGGER.warn("Rejected request because the todo executor is saturated");
+    }
+
+    /**
+     * Writes the result of the future to the response when the future is completed. If the future isn't
+     * completed before the timeout, the response status is 503.
+     */
+    private <T> DeferredResult<ResponseEntity<T>> toDeferredResult(CompletableFuture<ResponseEntity<T>> future) {
+        DeferredResult<ResponseEntity<T>> result = new DeferredResult<>(timeoutMillis,
+                new ResponseEntity<T>(HttpStatus.SERVICE_UNAVAILABLE)
+        );
+
+        future.whenComplete((response, ex) -> {
+            if (ex == null) {
+                LOGGER.debug("Returning response with status: {}", response.getStatusCode());
+                result.setResult(response);
+            } else {
+                result.setErrorResult(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+
+        return result;
+    }
+
+    private static <T> ResponseEntity<T> ok(T body) {
+        return new ResponseEntity<>(body, HttpStatus.OK);
+    }
+
+    private static ResponseEntity<TodoDTO> okWithETag(TodoDTO todoEntry) {
+        return new ResponseEntity<>(todoEntry, TodoETags.headers(todoEntry), HttpStatus.OK);
+    }
+}
@@ -0,0 +1,63 @@
+package com.javaadvent.bootrest.todo;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interface declares the asynchronous variants of the methods of {@link com.javaadvent.bootrest.todo.TodoService}.
+ * The returned futures are completed exceptionally with the exceptions that are documented by
+ * {@link com.javaadvent.bootrest.todo.TodoService}.
+ * @author Petri Kainulainen
+ */
+interface AsyncTodoService {
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#create(TodoDTO)
+     */
+    CompletableFuture<TodoDTO> create(TodoDTO todo);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#createAll(java.util.List)
+     */
+    CompletableFuture<List<TodoBatchResultDTO>> createAll(List<TodoDTO> todoEntries);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#delete(String)
+     */
+    CompletableFuture<TodoDTO> delete(String id);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#deleteAll(java.util.List)
+     */
+    CompletableFuture<List<TodoBatchResultDTO>> deleteAll(List<String> ids);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#findAll()
+     */
+    CompletableFuture<List<TodoDTO>> findAll();
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#findPage(String, int)
+     */
+    CompletableFuture<TodoPageDTO> findPage(String after, int size);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#findById(String)
+     */
+    CompletableFuture<TodoDTO> findById(String id);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#findVersionById(String)
+     */
+    CompletableFuture<Long> findVersionById(String id);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#update(TodoDTO)
+     */
+    CompletableFuture<TodoDTO> update(TodoDTO todo);
+
+    /**
+     * @see com.javaadvent.bootrest.todo.TodoService#updateAll(java.util.List)
+     */
+    CompletableFuture<List<TodoBatchResultDTO>> updateAll(List<TodoDTO> todoEntries);
+}
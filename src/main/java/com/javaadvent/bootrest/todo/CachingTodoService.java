@@ -0,0 +1,208 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.util.ExpiringLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This service decorates another {@link com.javaadvent.bootrest.todo.TodoService} and serves
+ * the todo entries that are requested by using their ids from an in-memory cache. The cached
+ * todo entries are updated when a todo entry is created or updated, and removed when a todo
+ * entry is deleted.
+ *
+ * The cache stores copies of the todo entries because {@link com.javaadvent.bootrest.todo.TodoDTO}
+ * objects are mutable.
+ *
+ * A todo entry that is read from the decorated service is cached only if its id has not been invalidated
+ * while it was read. Otherwise a read that started before an update or a delete could put the stale todo entry
+ * back into the cache after the update or the delete. The ids are mapped to a fixed number of invalidation
+ * generations, which means that an invalidation can also skip caching a todo entry whose id shares
+ * the generation.
+ * @author Petri Kainulainen
+ */
+final class CachingTodoService implements TodoService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingTodoService.class);
+
+    private final TodoService delegate;
+
+    private static final int GENERATION_COUNT = 1024;
+
+    private final ExpiringLruCache<String, TodoDTO> cache;
+
+    private final Generation[] generations = new Generation[GENERATION_COUNT];
+
+    CachingTodoService(TodoService delegate, ExpiringLruCache<String, TodoDTO> cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+
+        for (int index = 0; index < generations.length; index++) {
+            generations[index] = new Generation();
+        }
+    }
+
+    @Override
+    public TodoDTO create(TodoDTO todo) {
+        TodoDTO created = delegate.create(todo);
+        invalidate(created.getId(), created);
+        return created;
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> createAll(List<TodoDTO> todoEntries) {
+        return delegate.createAll(todoEntries);
+    }
+
+    @Override
+    public TodoDTO delete(String id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            invalidate(id, null);
+        }
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> deleteAll(List<String> ids) {
+        try {
+            return delegate.deleteAll(ids);
+        } finally {
+            ids.forEach(id -> invalidate(id, null));
+        }
+    }
+
+    @Override
+    public List<TodoDTO> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<TodoDTO> findAll(TodoFields fields) {
+        return delegate.findAll(fields);
+    }
+
+    @Override
+    public TodoPageDTO findPage(String after, int size) {
+        return delegate.findPage(after, size);
+    }
+
+    @Override
+    public List<TodoDTO> search(String text, int page, int size) {
+        return delegate.search(text, page, size);
+    }
+
+    @Override
+    public List<TodoDTO> findByTitlePrefix(String prefix, int page, int size) {
+        return delegate.findByTitlePrefix(prefix, page, size);
+    }
+
+    @Override
+    public TodoChangesDTO findChanges(String since, int size) {
+        return delegate.findChanges(since, size);
+    }
+
+    @Override
+    public void forEach(Consumer<TodoDTO> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public TodoDTO findById(String id) {
+        TodoDTO cached = cache.get(id);
+
+        if (cached != null) {
+            LOGGER.debug("Found todo entry with id: {} from cache", id);
+            return TodoDTO.copyOf(cached);
+        }
+
+        Generation generation = generationOf(id);
+        long readGeneration = generation.value;
+
+        TodoDTO found = delegate.findById(id);
+
+        synchronized (generation) {
+            if (generation.value == readGeneration) {
+                cache.put(id, TodoDTO.copyOf(found));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A cached todo entry contains all fields, which is why it can be returned as such. A todo entry that
+     * is read from the database contains only the requested fields, and it isn't cached.
+     */
+    @Override
+    public TodoDTO findById(String id, TodoFields fields) {
+        TodoDTO cached = cache.get(id);
+
+        if (cached != null) {
+            LOGGER.debug("Found todo entry with id: {} from cache", id);
+            return TodoDTO.copyOf(cached);
+        }
+
+        return delegate.findById(id, fields);
+    }
+
+    @Override
+    public long findVersionById(String id) {
+        TodoDTO cached = cache.get(id);
+
+        if (cached != null && cached.getVersion() != null) {
+            return cached.getVersion();
+        }
+
+        return delegate.findVersionById(id);
+    }
+
+    @Override
+    public TodoDTO update(TodoDTO todo) {
+        try {
+            TodoDTO updated = delegate.update(todo);
+            invalidate(updated.getId(), updated);
+            return updated;
+        } catch (TodoNotFoundException | TodoVersionConflictException ex) {
+            //The cached todo entry is stale.
+            invalidate(todo.getId(), null);
+            throw ex;
+        }
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> updateAll(List<TodoDTO> todoEntries) {
+        try {
+            return delegate.updateAll(todoEntries);
+        } finally {
+            todoEntries.forEach(todo -> invalidate(todo.getId(), null));
+        }
+    }
+
+    /**
+     * Replaces the cached todo entry, or removes it if the replacement is null, and prevents the reads
+     * that are in progress from caching the todo entry that they found.
+     */
+    private void invalidate(String id, TodoDTO replacement) {
+        Generation generation = generationOf(id);
+
+        synchronized (generation) {
+            generation.value++;
+            if (replacement == null) {
+                cache.remove(id);
+            } else {
+                cache.put(id, TodoDTO.copyOf(replacement));
+            }
+        }
+    }
+
+    private Generation generationOf(String id) {
+        return generations[(id.hashCode() & Integer.MAX_VALUE) % generations.length];
+    }
+
+    private static final class Generation {
+
+        private volatile long value;
+    }
+}
@@ -0,0 +1,109 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.util.SingleFlight;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This service decorates another {@link com.javaadvent.bootrest.todo.TodoService} and collapses the concurrent
+ * requests that find the same todo entry by using its id into one request. When a popular todo entry is requested
+ * by many clients at the same time, for example right after it has been evicted from the cache, the database
+ * receives one query instead of one query per client. If the todo entry is not found, every waiting request
+ * gets the same {@link com.javaadvent.bootrest.todo.TodoNotFoundException}.
+ *
+ * Every request gets its own copy of the found todo entry because {@link com.javaadvent.bootrest.todo.TodoDTO}
+ * objects are mutable.
+ * @author Petri Kainulainen
+ */
+final class CoalescingTodoService implements TodoService {
+
+    private final TodoService delegate;
+
+    private final SingleFlight<String, TodoDTO> findByIdCalls;
+
+    CoalescingTodoService(TodoService delegate, SingleFlight<String, TodoDTO> findByIdCalls) {
+        this.delegate = delegate;
+        this.findByIdCalls = findByIdCalls;
+    }
+
+    @Override
+    public TodoDTO create(TodoDTO todo) {
+        return delegate.create(todo);
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> createAll(List<TodoDTO> todoEntries) {
+        return delegate.createAll(todoEntries);
+    }
+
+    @Override
+    public TodoDTO delete(String id) {
+        return delegate.delete(id);
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> deleteAll(List<String> ids) {
+        return delegate.deleteAll(ids);
+    }
+
+    @Override
+    public List<TodoDTO> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<TodoDTO> findAll(TodoFields fields) {
+        return delegate.findAll(fields);
+    }
+
+    @Override
+    public TodoPageDTO findPage(String after, int size) {
+        return delegate.findPage(after, size);
+    }
+
+    @Override
+    public List<TodoDTO> search(String text, int page, int size) {
+        return delegate.search(text, page, size);
+    }
+
+    @Override
+    public List<TodoDTO> findByTitlePrefix(String prefix, int page, int size) {
+        return delegate.findByTitlePrefix(prefix, page, size);
+    }
+
+    @Override
+    public TodoChangesDTO findChanges(String since, int size) {
+        return delegate.findChanges(since, size);
+    }
+
+    @Override
+    public void forEach(Consumer<TodoDTO> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public TodoDTO findById(String id) {
+        return TodoDTO.copyOf(findByIdCalls.load(id, () -> delegate.findById(id)));
+    }
+
+    @Override
+    public TodoDTO findById(String id, TodoFields fields) {
+        return delegate.findById(id, fields);
+    }
+
+    @Override
+    public long findVersionById(String id) {
+        return delegate.findVersionById(id);
+    }
+
+    @Override
+    public TodoDTO update(TodoDTO todo) {
+        return delegate.update(todo);
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> updateAll(List<TodoDTO> todoEntries) {
+        return delegate.updateAll(todoEntries);
+    }
+}
@@ -0,0 +1,74 @@
+package com.javaadvent.bootrest.todo;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * This service runs the methods of a {@link com.javaadvent.bootrest.todo.TodoService} on a dedicated executor.
+ * The MongoDB driver blocks the invoking thread during database I/O. Running the blocking calls on a sized
+ * executor frees the request threads of the servlet container and limits the number of concurrent
+ * database operations to the size of the executor.
+ * @author Petri Kainulainen
+ */
+final class ExecutorAsyncTodoService implements AsyncTodoService {
+
+    private final TodoService service;
+
+    private final Executor executor;
+
+    ExecutorAsyncTodoService(TodoService service, Executor executor) {
+        this.service = service;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<TodoDTO> create(TodoDTO todo) {
+        return CompletableFuture.supplyAsync(() -> service.create(todo), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<TodoBatchResultDTO>> createAll(List<TodoDTO> todoEntries) {
+        return CompletableFuture.supplyAsync(() -> service.createAll(todoEntries), executor);
+    }
+
+    @Override
+    public CompletableFuture<TodoDTO> delete(String id) {
+        return CompletableFuture.supplyAsync(() -> service.delete(id), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<TodoBatchResultDTO>> deleteAll(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> service.deleteAll(ids), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<TodoDTO>> findAll() {
+        return CompletableFuture.supplyAsync(service::findAll, executor);
+    }
+
+    @Override
+    public CompletableFuture<TodoPageDTO> findPage(String after, int size) {
+        return CompletableFuture.supplyAsync(() -> service.findPage(after, size), executor);
+    }
+
+    @Override
+    public CompletableFuture<TodoDTO> findById(String id) {
+        return CompletableFuture.supplyAsync(() -> service.findById(id), executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> findVersionById(String id) {
+        return CompletableFuture.supplyAsync(() -> service.findVersionById(id), executor);
+    }
+
+    @Override
+    public CompletableFuture<TodoDTO> update(TodoDTO todo) {
+        return CompletableFuture.supplyAsync(() -> service.update(todo), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<TodoBatchResultDTO>> updateAll(List<TodoDTO> todoEntries) {
+        return CompletableFuture.supplyAsync(() -> service.updateAll(todoEntries), executor);
+    }
+}
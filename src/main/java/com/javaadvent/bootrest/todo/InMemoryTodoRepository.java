@@ -0,0 +1,713 @@
+package com.javaadvent.bootrest.todo;
+
+import org.bson.types.ObjectId;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * This repository stores the todo entries in memory. It is used by edge nodes and load tests that must run
+ * without MongoDB, and it is selected by setting the property 'todo.repository.engine' to MEMORY.
+ *
+ * The todo entries are found by id from a hash index. The ordered indexes serve the queries that sort
+ * the todo entries by id, by title, or by modification time. A write locks one of the lock stripes that
+ * is selected by the id of the todo entry, which means that writes to different todo entries can run in
+ * parallel. Reads don't take locks. Because the indexes are not updated atomically with the hash index,
+ * a query skips the index keys whose todo entry has changed, in the same way as a query of MongoDB can
+ * miss a document that is moved by a concurrent update.
+ *
+ * The stored entries are immutable, and every method returns new {@link com.javaadvent.bootrest.todo.Todo}
+ * objects. The callers can modify the returned todo entries without changing the stored ones.
+ * @author Petri Kainulainen
+ */
+final class InMemoryTodoRepository implements TodoRepository {
+
+    private static final int TITLE_WEIGHT = 3;
+
+    private static final long TOMBSTONE_RETENTION_MILLIS = TimeUnit.SECONDS.toMillis(TodoTombstone.RETENTION_SECONDS);
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListSet<String> idIndex = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentSkipListSet<TitleKey> titleIndex = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentSkipListSet<TimeKey> lastModifiedIndex = new ConcurrentSkipListSet<>();
+
+    private final ConcurrentSkipListSet<TimeKey> tombstones = new ConcurrentSkipListSet<>();
+
+    private final Object[] locks;
+
+    private final LongSupplier clock;
+
+    private final Journal journal;
+
+    /**
+     * Records the writes of the repository. The methods are invoked before a write is applied, and a write
+     * of a todo entry is recorded while holding the lock of its id. This means that the writes of one todo
+     * entry are recorded in the order in which they are applied. If a method throws an exception, the write
+     * is not applied. A journal that syncs its records later must take into account that an applied write is
+     * visible to the readers before it has been synced.
+     */
+    interface Journal {
+
+        Journal NONE = new Journal() {
+            @Override
+            public void put(String id, String title, String description, long version, long lastModified) {
+            }
+
+            @Override
+            public void remove(String id) {
+            }
+
+            @Override
+            public void tombstones(List<String> ids, long deletedAt) {
+            }
+        };
+
+        void put(String id, String title, String description, long version, long lastModified);
+
+        void remove(String id);
+
+        void tombstones(List<String> ids, long deletedAt);
+    }
+
+    /**
+     * @param lockStripes   The number of locks that guard the writes. This is rounded up to a power of two.
+     */
+    InMemoryTodoRepository(int lockStripes) {
+        this(lockStripes, System::currentTimeMillis);
+    }
+
+    InMemoryTodoRepository(int lockStripes, LongSupplier clock) {
+        this(lockStripes, clock, Journal.NONE);
+    }
+
+    InMemoryTodoRepository(int lockStripes, LongSupplier clock, Journal journal) {
+        int size = lockStripes <= 1 ? 1 : Integer.highestOneBit(lockStripes - 1) << 1;
+        this.locks = new Object[size];
+        for (int index = 0; index < size; index++) {
+            locks[index] = new Object();
+        }
+        this.clock = clock;
+        this.journal = journal;
+    }
+
+    private Object lockOf(String id) {
+        int hash = id.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    @Override
+    public void delete(Todo deleted) {
+        findAndRemove(deleted.getId());
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        return findAll(TodoFields.ALL);
+    }
+
+    @Override
+    public List<Todo> findAll(TodoFields fields) {
+        List<Todo> found = new ArrayList<>(entries.size());
+        forEachEntry(idIndex, entry -> found.add(entry.toTodo(fields)));
+        return found;
+    }
+
+    @Override
+    public List<Todo> findByIdIn(Collection<String> ids) {
+        List<Todo> found = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                found.add(entry.toTodo(TodoFields.ALL));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id) {
+        return findOne(id, TodoFields.ALL);
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id, TodoFields fields) {
+        Entry entry = entries.get(id);
+        return entry == null ? Optional.empty() : Optional.of(entry.toTodo(fields));
+    }
+
+    /**
+     * Saves a new todo entry or replaces an existing one. Like Spring Data, this method increases the version
+     * of an existing todo entry and throws an exception if the stored version is not the version of the saved
+     * todo entry.
+     */
+    @Override
+    public Todo save(Todo saved) {
+        if (saved.getId() == null) {
+            insert(saved);
+            return saved;
+        }
+
+        synchronized (lockOf(saved.getId())) {
+            Entry existing = entries.get(saved.getId());
+            long version = saved.getVersion() == null ? 0L : saved.getVersion();
+
+            if (existing != null && existing.version != version) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Cannot save todo entry with id: %s because its version has changed", saved.getId()
+                ));
+            }
+
+            long nextVersion = existing == null ? version : version + 1;
+            write(existing, new Entry(saved.getId(),
+                    saved.getDescription(),
+                    saved.getTitle(),
+                    nextVersion,
+                    timeOf(saved.getLastModified())
+            ));
+            saved.setIdAndVersion(saved.getId(), nextVersion);
+        }
+
+        return saved;
+    }
+
+    /**
+     * Inserts a new todo entry. If the todo entry has no id, a new id is generated.
+     * @return  false if a todo entry with the same id exists already and true otherwise.
+     */
+    private boolean insert(Todo inserted) {
+        String id = inserted.getId() == null ? new ObjectId().toString() : inserted.getId();
+
+        synchronized (lockOf(id)) {
+            if (entries.containsKey(id)) {
+                return false;
+            }
+
+            write(null, new Entry(id,
+                    inserted.getDescription(),
+                    inserted.getTitle(),
+                    0L,
+                    timeOf(inserted.getLastModified())
+            ));
+        }
+
+        inserted.setIdAndVersion(id, 0L);
+        return true;
+    }
+
+    @Override
+    public List<Todo> search(String text, int offset, int limit) {
+        TextQuery query = TextQuery.parse(text);
+        if (query.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<ScoredEntry> matches = new ArrayList<>();
+        forEachEntry(idIndex, entry -> {
+            int score = query.score(entry);
+            if (score > 0) {
+                matches.add(new ScoredEntry(entry, score));
+            }
+        });
+
+        //Equally relevant todo entries are sorted by id so that the pages are stable.
+        matches.sort(Comparator.comparingInt((ScoredEntry match) -> match.score).reversed()
+                .thenComparing(match -> match.entry.id)
+        );
+
+        List<Todo> found = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int index = offset; index < matches.size() && found.size() < limit; index++) {
+            found.add(matches.get(index).entry.toTodo(TodoFields.ALL));
+        }
+        return found;
+    }
+
+    @Override
+    public List<Todo> findByTitlePrefix(String prefix, int offset, int limit) {
+        List<Todo> found = new ArrayList<>(limit);
+        int skipped = 0;
+
+        for (TitleKey key : titleIndex.tailSet(new TitleKey(prefix, ""))) {
+            if (!key.title.startsWith(prefix) || found.size() == limit) {
+                break;
+            }
+
+            Entry entry = entries.get(key.id);
+            if (entry == null || !entry.title.equals(key.title)) {
+                continue;
+            }
+
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                found.add(entry.toTodo(TodoFields.ALL));
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public List<Todo> findPage(String after, int limit) {
+        NavigableSet<String> remaining = after == null ? idIndex : idIndex.tailSet(after, false);
+        List<Todo> page = new ArrayList<>(limit);
+
+        Iterator<String> ids = remaining.iterator();
+        while (ids.hasNext() && page.size() < limit) {
+            Entry entry = entries.get(ids.next());
+            if (entry != null) {
+                page.add(entry.toTodo(TodoFields.ALL));
+            }
+        }
+
+        return page;
+    }
+
+    @Override
+    public List<Todo> findModified(Date afterTime, String afterId, Date until, int limit) {
+        List<Todo> found = new ArrayList<>(limit);
+
+        for (TimeKey key : changedAfter(lastModifiedIndex, afterTime, afterId)) {
+            if (key.time > until.getTime() || found.size() == limit) {
+                break;
+            }
+
+            Entry entry = entries.get(key.id);
+            if (entry != null && entry.lastModified == key.time) {
+                found.add(entry.toTodo(TodoFields.ALL));
+            }
+        }
+
+        return found;
+    }
+
+    @Override
+    public List<TodoTombstone> findTombstones(Date afterTime, String afterId, Date until, int limit) {
+        List<TodoTombstone> found = new ArrayList<>(limit);
+
+        for (TimeKey key : changedAfter(tombstones, afterTime, afterId)) {
+            if (key.time > until.getTime() || found.size() == limit) {
+                break;
+            }
+            found.add(new TodoTombstone(key.id, new Date(key.time)));
+        }
+
+        return found;
+    }
+
+    /**
+     * Returns the keys that follow the given time and id. If the id is empty, the keys that have the given time
+     * are returned as well.
+     */
+    private static NavigableSet<TimeKey> changedAfter(NavigableSet<TimeKey> index, Date afterTime, String afterId) {
+        return index.tailSet(new TimeKey(afterTime.getTime(), afterId), afterId.isEmpty());
+    }
+
+    /**
+     * Saves the tombstones and deletes the tombstones that are older than their retention time. MongoDB deletes
+     * the old tombstones by using a TTL index.
+     */
+    @Override
+    public void saveTombstones(List<String> ids, Date deletedAt) {
+        journal.tombstones(ids, deletedAt.getTime());
+        applyTombstones(ids, deletedAt.getTime());
+    }
+
+    private void applyTombstones(List<String> ids, long deletedAt) {
+        for (String id : ids) {
+            tombstones.add(new TimeKey(deletedAt, id));
+        }
+
+        tombstones.headSet(new TimeKey(deletedAt - TOMBSTONE_RETENTION_MILLIS, "")).clear();
+    }
+
+    @Override
+    public Optional<Todo> findAndUpdate(String id, Long expectedVersion, String title, String description) {
+        synchronized (lockOf(id)) {
+            Entry existing = entries.get(id);
+            if (existing == null || (expectedVersion != null && existing.version != expectedVersion)) {
+                return Optional.empty();
+            }
+
+            Entry updated = new Entry(id, description, title, existing.version + 1, clock.getAsLong());
+            write(existing, updated);
+
+            return Optional.of(updated.toTodo(TodoFields.ALL));
+        }
+    }
+
+    @Override
+    public Optional<Long> findVersion(String id) {
+        Entry entry = entries.get(id);
+        return entry == null ? Optional.empty() : Optional.of(entry.version);
+    }
+
+    @Override
+    public Optional<Todo> findAndRemove(String id) {
+        synchronized (lockOf(id)) {
+            Entry removed = entries.get(id);
+            if (removed == null) {
+                return Optional.empty();
+            }
+
+            write(removed, null);
+            return Optional.of(removed.toTodo(TodoFields.ALL));
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<Todo> action) {
+        forEachEntry(idIndex, entry -> action.accept(entry.toTodo(TodoFields.ALL)));
+    }
+
+    private void forEachEntry(Collection<String> ids, Consumer<Entry> action) {
+        for (String id : ids) {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    @Override
+    public Set<Integer> insertAll(List<Todo> inserted) {
+        Set<Integer> failed = new HashSet<>();
+        for (int index = 0; index < inserted.size(); index++) {
+            if (!insert(inserted.get(index))) {
+                failed.add(index);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Updates the todo entries that exist and still have the version of the updated todo entry.
+     */
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> updateAll(List<Todo> updated) {
+        Map<Integer, TodoBatchResultDTO.Status> notUpdated = new HashMap<>();
+
+        for (int index = 0; index < updated.size(); index++) {
+            Todo todo = updated.get(index);
+            synchronized (lockOf(todo.getId())) {
+                Entry existing = entries.get(todo.getId());
+                if (existing == null) {
+                    notUpdated.put(index, TodoBatchResultDTO.Status.NOT_FOUND);
+                } else if (todo.getVersion() != null && todo.getVersion() != existing.version) {
+                    notUpdated.put(index, TodoBatchResultDTO.Status.CONFLICT);
+                } else {
+                    write(existing, new Entry(todo.getId(),
+                            todo.getDescription(),
+                            todo.getTitle(),
+                            existing.version + 1,
+                            timeOf(todo.getLastModified())
+                    ));
+                }
+            }
+        }
+        return notUpdated;
+    }
+
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> deleteAll(List<String> ids) {
+        Map<Integer, TodoBatchResultDTO.Status> notDeleted = new HashMap<>();
+
+        for (int index = 0; index < ids.size(); index++) {
+            if (!findAndRemove(ids.get(index)).isPresent()) {
+                notDeleted.put(index, TodoBatchResultDTO.Status.NOT_FOUND);
+            }
+        }
+        return notDeleted;
+    }
+
+    /**
+     * Returns a journal that applies the recorded writes to this repository without recording them again.
+     * It is used to load the todo entries when the application is started.
+     */
+    Journal loader() {
+        return new Journal() {
+            @Override
+            public void put(String id, String title, String description, long version, long lastModified) {
+                synchronized (lockOf(id)) {
+                    apply(entries.get(id), new Entry(id, description, title, version, lastModified));
+                }
+            }
+
+            @Override
+            public void remove(String id) {
+                synchronized (lockOf(id)) {
+                    Entry removed = entries.get(id);
+                    if (removed != null) {
+                        apply(removed, null);
+                    }
+                }
+            }
+
+            @Override
+            public void tombstones(List<String> ids, long deletedAt) {
+                applyTombstones(ids, deletedAt);
+            }
+        };
+    }
+
+    /**
+     * Records the write in the journal and applies it. This method must be invoked while holding the lock
+     * of the id.
+     * @param previous  The stored entry or null if the entry is inserted.
+     * @param next      The new entry or null if the entry is removed.
+     */
+    private void write(Entry previous, Entry next) {
+        if (next != null) {
+            journal.put(next.id, next.title, next.description, next.version, next.lastModified);
+        } else {
+            journal.remove(previous.id);
+        }
+        apply(previous, next);
+    }
+
+    /**
+     * Replaces the stored entry and updates the indexes. This method must be invoked while holding
+     * the lock of the id. The new index keys are added before the hash index is updated so that a concurrent
+     * query finds the entry at least by using the old or the new key.
+     */
+    private void apply(Entry previous, Entry next) {
+        if (next != null) {
+            idIndex.add(next.id);
+            titleIndex.add(new TitleKey(next.title, next.id));
+            lastModifiedIndex.add(new TimeKey(next.lastModified, next.id));
+            entries.put(next.id, next);
+        } else {
+            entries.remove(previous.id);
+            idIndex.remove(previous.id);
+        }
+
+        if (previous != null) {
+            if (next == null || !previous.title.equals(next.title)) {
+                titleIndex.remove(new TitleKey(previous.title, previous.id));
+            }
+            if (next == null || previous.lastModified != next.lastModified) {
+                lastModifiedIndex.remove(new TimeKey(previous.lastModified, previous.id));
+            }
+        }
+    }
+
+    private static long timeOf(Date date) {
+        return date == null ? 0L : date.getTime();
+    }
+
+    /**
+     * An immutable copy of a stored todo entry.
+     */
+    private static final class Entry {
+
+        private final String id;
+
+        private final String description;
+
+        private final String title;
+
+        private final long version;
+
+        private final long lastModified;
+
+        private Entry(String id, String description, String title, long version, long lastModified) {
+            this.id = id;
+            this.description = description;
+            this.title = title;
+            this.version = version;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Creates a todo entry that contains the requested fields. Like a MongoDB projection, the id and
+         * the version are always included.
+         */
+        private Todo toTodo(TodoFields fields) {
+            return new Todo(id,
+                    fields.includes(TodoFields.Field.DESCRIPTION) ? description : null,
+                    fields.includes(TodoFields.Field.TITLE) ? title : null,
+                    version,
+                    fields.isAll() ? new Date(lastModified) : null
+            );
+        }
+    }
+
+    private static final class TitleKey implements Comparable<TitleKey> {
+
+        private final String title;
+
+        private final String id;
+
+        private TitleKey(String title, String id) {
+            this.title = title;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(TitleKey other) {
+            int result = title.compareTo(other.title);
+            return result != 0 ? result : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TitleKey && compareTo((TitleKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * title.hashCode() + id.hashCode();
+        }
+    }
+
+    private static final class TimeKey implements Comparable<TimeKey> {
+
+        private final long time;
+
+        private final String id;
+
+        private TimeKey(long time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int result = Long.compare(time, other.time);
+            return result != 0 ? result : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof TimeKey && compareTo((TimeKey) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(time) + id.hashCode();
+        }
+    }
+
+    private static final class ScoredEntry {
+
+        private final Entry entry;
+
+        private final int score;
+
+        private ScoredEntry(Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+
+    /**
+     * A text query that supports the same syntax as the text search of MongoDB: a todo entry matches if it
+     * contains one of the words and all quoted phrases, and if it doesn't contain any word that is prefixed
+     * with a hyphen. Unlike MongoDB, the words are compared without stemming. The score of a todo entry is
+     * the number of times the words appear in it, and a word in the title counts {@link #TITLE_WEIGHT} times.
+     */
+    private static final class TextQuery {
+
+        private final List<String> words = new ArrayList<>();
+
+        private final List<String> phrases = new ArrayList<>();
+
+        private final List<String> excluded = new ArrayList<>();
+
+        private static TextQuery parse(String text) {
+            TextQuery query = new TextQuery();
+            String remaining = text.toLowerCase(Locale.ENGLISH);
+
+            int start;
+            while ((start = remaining.indexOf('"')) >= 0) {
+                int end = remaining.indexOf('"', start + 1);
+                if (end < 0) {
+                    break;
+                }
+                String phrase = remaining.substring(start + 1, end).trim();
+                if (!phrase.isEmpty()) {
+                    query.phrases.add(phrase);
+                }
+                remaining = remaining.substring(0, start) + " " + remaining.substring(end + 1);
+            }
+
+            for (String token : remaining.split("\\s+")) {
+                if (token.startsWith("-")) {
+                    addWords(query.excluded, token.substring(1));
+                } else {
+                    addWords(query.words, token);
+                }
+            }
+
+            for (String phrase : query.phrases) {
+                addWords(query.words, phrase);
+            }
+
+            return query;
+        }
+
+        private static void addWords(List<String> target, String token) {
+            for (String word : token.split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    target.add(word);
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            return words.isEmpty();
+        }
+
+        /**
+         * @return  The score of the entry or 0 if the entry doesn't match this query.
+         */
+        private int score(Entry entry) {
+            String title = entry.title.toLowerCase(Locale.ENGLISH);
+            String description = entry.description == null ? "" : entry.description.toLowerCase(Locale.ENGLISH);
+
+            for (String phrase : phrases) {
+                if (!title.contains(phrase) && !description.contains(phrase)) {
+                    return 0;
+                }
+            }
+
+            List<String> titleWords = new ArrayList<>();
+            List<String> descriptionWords = new ArrayList<>();
+            addWords(titleWords, title);
+            addWords(descriptionWords, description);
+
+            for (String word : excluded) {
+                if (titleWords.contains(word) || descriptionWords.contains(word)) {
+                    return 0;
+                }
+            }
+
+            int score = 0;
+            for (String word : words) {
+                score += TITLE_WEIGHT * Collections.frequency(titleWords, word)
+                        + Collections.frequency(descriptionWords, word);
+            }
+            return score;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.javaadvent.bootrest.todo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * This repository stores the todo entries in memory and persists every write to a {@link TodoLog}. It is used by
+ * single-node installations that don't run MongoDB, and it is selected by setting the property
+ * 'todo.repository.engine' to LOG.
+ *
+ * The queries are served by {@link com.javaadvent.bootrest.todo.InMemoryTodoRepository}, and the todo entries
+ * are loaded from the log when the repository is opened. A write returns after its record has been appended to
+ * the log. If the fsync policy of the log is ALWAYS, the write also waits until the log has been synced.
+ *
+ * A write is visible to the readers as soon as it has been appended, which is before the log has been synced.
+ * The syncs are shared by the concurrent writes, and holding back the readers until the sync would make every read
+ * of a recently written todo entry wait for the disk. This means that even with the fsync policy ALWAYS, a client
+ * can read a todo entry that is lost if the application crashes before the sync. Only the writer is guaranteed
+ * that a write which has returned is durable.
+ * @author Petri Kainulainen
+ */
+final class LogTodoRepository implements TodoRepository, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogTodoRepository.class);
+
+    private final InMemoryTodoRepository entries;
+
+    private final TodoLog log;
+
+    private LogTodoRepository(InMemoryTodoRepository entries, TodoLog log) {
+        this.entries = entries;
+        this.log = log;
+    }
+
+    /**
+     * Opens the log file and loads the todo entries from it.
+     * @param path          The path of the log file. The file is created if it doesn't exist.
+     * @param fsyncPolicy   The policy that specifies when the writes are synced to the disk.
+     * @param initialSize   The initial size of the log file in bytes.
+     * @param lockStripes   The number of locks that guard the writes.
+     * @return              The opened repository.
+     * @throws IOException  If the log file cannot be opened.
+     */
+    static LogTodoRepository open(Path path,
+                                  TodoLog.FsyncPolicy fsyncPolicy,
+                                  int initialSize,
+                                  int lockStripes) throws IOException {
+        return open(path, fsyncPolicy, initialSize, lockStripes, System::currentTimeMillis);
+    }
+
+    static LogTodoRepository open(Path path,
+                                  TodoLog.FsyncPolicy fsyncPolicy,
+                                  int initialSize,
+                                  int lockStripes,
+                                  LongSupplier clock) throws IOException {
+        TodoLog log = TodoLog.open(path, fsyncPolicy, initialSize, clock);
+
+        try {
+            InMemoryTodoRepository entries = new InMemoryTodoRepository(lockStripes, clock, log);
+            log.recover(entries.loader());
+            return new LogTodoRepository(entries, log);
+        } catch (RuntimeException ex) {
+            log.close();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void delete(Todo deleted) {
+        entries.delete(deleted);
+        log.commit();
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        return entries.findAll();
+    }
+
+    @Override
+    public List<Todo> findAll(TodoFields fields) {
+        return entries.findAll(fields);
+    }
+
+    @Override
+    public List<Todo> findByIdIn(Collection<String> ids) {
+        return entries.findByIdIn(ids);
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id) {
+        return entries.findOne(id);
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id, TodoFields fields) {
+        return entries.findOne(id, fields);
+    }
+
+    @Override
+    public Todo save(Todo saved) {
+        Todo result = entries.save(saved);
+        log.commit();
+        return result;
+    }
+
+    @Override
+    public List<Todo> search(String text, int offset, int limit) {
+        return entries.search(text, offset, limit);
+    }
+
+    @Override
+    public List<Todo> findByTitlePrefix(String prefix, int offset, int limit) {
+        return entries.findByTitlePrefix(prefix, offset, limit);
+    }
+
+    @Override
+    public List<Todo> findPage(String after, int limit) {
+        return entries.findPage(after, limit);
+    }
+
+    @Override
+    public List<Todo> findModified(Date afterTime, String afterId, Date until, int limit) {
+        return entries.findModified(afterTime, afterId, until, limit);
+    }
+
+    @Override
+    public List<TodoTombstone> findTombstones(Date afterTime, String afterId, Date until, int limit) {
+        return entries.findTombstones(afterTime, afterId, until, limit);
+    }
+
+    @Override
+    public void saveTombstones(List<String> ids, Date deletedAt) {
+        entries.saveTombstones(ids, deletedAt);
+        log.commit();
+    }
+
+    @Override
+    public Optional<Todo> findAndUpdate(String id, Long expectedVersion, String title, String description) {
+        Optional<Todo> updated = entries.findAndUpdate(id, expectedVersion, title, description);
+        log.commit();
+        return updated;
+    }
+
+    @Override
+    public Optional<Long> findVersion(String id) {
+        return entries.findVersion(id);
+    }
+
+    @Override
+    public Optional<Todo> findAndRemove(String id) {
+        Optional<Todo> removed = entries.findAndRemove(id);
+        log.commit();
+        return removed;
+    }
+
+    @Override
+    public void forEach(Consumer<Todo> action) {
+        entries.forEach(action);
+    }
+
+    /**
+     * Appends the inserted todo entries to the log and syncs the log once for the whole batch.
+     */
+    @Override
+    public Set<Integer> insertAll(List<Todo> inserted) {
+        Set<Integer> failed = entries.insertAll(inserted);
+        log.commit();
+        return failed;
+    }
+
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> updateAll(List<Todo> updated) {
+        Map<Integer, TodoBatchResultDTO.Status> notUpdated = entries.updateAll(updated);
+        log.commit();
+        return notUpdated;
+    }
+
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> deleteAll(List<String> ids) {
+        Map<Integer, TodoBatchResultDTO.Status> notDeleted = entries.deleteAll(ids);
+        log.commit();
+        return notDeleted;
+    }
+
+    /**
+     * Compacts the log if the garbage records take at least the given share of it. This method is invoked by
+     * a scheduled task, which is why it logs an error instead of throwing it.
+     */
+    void compactIfNeeded(double minGarbageRatio) {
+        try {
+            log.compactIfNeeded(minGarbageRatio);
+        } catch (DataAccessException ex) {
+            LOGGER.error("Cannot compact the todo log", ex);
+        }
+    }
+
+    /**
+     * Syncs the log to the disk. This method is invoked by a scheduled task when the fsync policy is INTERVAL,
+     * which is why it logs an error instead of throwing it.
+     */
+    void sync() {
+        try {
+            log.sync();
+        } catch (DataAccessException ex) {
+            LOGGER.error("Cannot sync the todo log", ex);
+        }
+    }
+
+    long logSize() {
+        return log.size();
+    }
+
+    long liveBytes() {
+        return log.liveBytes();
+    }
+
+    long syncCount() {
+        return log.syncCount();
+    }
+
+    long compactionCount() {
+        return log.compactionCount();
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+}
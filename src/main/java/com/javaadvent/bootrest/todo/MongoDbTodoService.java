@@ -1,70 +1,326 @@
 package com.javaadvent.bootrest.todo;
 
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
+import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
 
 /**
  * This service class saves {@link com.javaadvent.bootrest.todo.Todo} objects
- * to MongoDB database.
+ * to MongoDB database. After a todo entry has been created, updated or deleted, the service
+ * publishes a {@link com.javaadvent.bootrest.todo.TodoEvent}.
+ *
+ * If the service has a {@link com.javaadvent.bootrest.todo.TodoWriteBehindQueue}, a created todo entry gets
+ * its id from the service, and it is inserted by the queue together with other created todo entries.
  * @author Petri Kainulainen
  */
-@Service
 final class MongoDBTodoService implements TodoService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MongoDBTodoService.class);
 
+    /**
+     * The changes of the last second are not returned because a write that was stamped a moment ago might not
+     * be visible yet. If it were skipped, the client would never see it because its token points past it.
+     */
+    static final long CHANGES_SETTLE_MILLIS = 1000;
+
     private final TodoRepository repository;
 
-    @Autowired
+    private final TodoEventListener listener;
+
+    private final LongSupplier clock;
+
+    private final TodoWriteBehindQueue writeBehindQueue;
+
     MongoDBTodoService(TodoRepository repository) {
+        this(repository, TodoEventListener.NONE);
+    }
+
+    MongoDBTodoService(TodoRepository repository, TodoEventListener listener) {
+        this(repository, listener, System::currentTimeMillis);
+    }
+
+    /**
+     * This constructor is used by unit tests that must control the current time.
+     */
+    MongoDBTodoService(TodoRepository repository, TodoEventListener listener, LongSupplier clock) {
+        this(repository, listener, clock, null);
+    }
+
+    /**
+     * @param writeBehindQueue  The queue that inserts the created todo entries or null if the created todo entries
+     *                          are saved one by one.
+     */
+    MongoDBTodoService(TodoRepository repository,
+                       TodoEventListener listener,
+                       LongSupplier clock,
+                       TodoWriteBehindQueue writeBehindQueue) {
         this.repository = repository;
+        this.listener = listener;
+        this.clock = clock;
+        this.writeBehindQueue = writeBehindQueue;
     }
 
     @Override
     public TodoDTO create(TodoDTO todo) {
-        LOGGER.info("Creating a new todo entry with information: {}", todo);
+        LOGGER.debug("Creating a new todo entry with information: {}", todo);
 
         Todo persisted = Todo.getBuilder()
                 .title(todo.getTitle())
                 .description(todo.getDescription())
                 .build();
 
-        persisted = repository.save(persisted);
-        LOGGER.info("Created a new todo entry with information: {}", persisted);
+        if (writeBehindQueue == null) {
+            persisted = repository.save(persisted);
+        } else {
+            persisted.setIdAndVersion(new ObjectId().toString(), 0L);
+            writeBehindQueue.write(persisted);
+        }
+        LOGGER.debug("Created a new todo entry with information: {}", persisted);
 
-        return convertToDTO(persisted);
+        TodoDTO created = convertToDTO(persisted);
+        listener.onEvent(TodoEvent.created(created));
+
+        return created;
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> createAll(List<TodoDTO> todoEntries) {
+        LOGGER.debug("Creating {} new todo entries", todoEntries.size());
+
+        List<Todo> persisted = todoEntries.stream()
+                .map(todo -> Todo.getBuilder()
+                        .title(todo.getTitle())
+                        .description(todo.getDescription())
+                        .build()
+                )
+                .collect(toList());
+
+        Set<Integer> failed = repository.insertAll(persisted);
+
+        List<TodoBatchResultDTO> results = new ArrayList<>(persisted.size());
+        for (int index = 0; index < persisted.size(); index++) {
+            if (failed.contains(index)) {
+                results.add(new TodoBatchResultDTO(null, TodoBatchResultDTO.Status.FAILED));
+            } else {
+                results.add(new TodoBatchResultDTO(persisted.get(index).getId(), TodoBatchResultDTO.Status.CREATED));
+                listener.onEvent(TodoEvent.created(convertToDTO(persisted.get(index))));
+            }
+        }
+
+        LOGGER.debug("Created {} new todo entries", persisted.size() - failed.size());
+
+        return results;
     }
 
     @Override
     public TodoDTO delete(String id) {
-        LOGGER.info("Deleting a todo entry with id: {}", id);
+        LOGGER.debug("Deleting a todo entry with id: {}", id);
 
-        Todo deleted = findTodoById(id);
-        repository.delete(deleted);
+        Todo deleted = repository.findAndRemove(id)
+                .orElseThrow(() -> new TodoNotFoundException(id));
+        repository.saveTombstones(Collections.singletonList(id), new Date(clock.getAsLong()));
+        listener.onEvent(TodoEvent.deleted(id));
 
-        LOGGER.info("Deleted todo entry with informtation: {}", deleted);
+        LOGGER.debug("Deleted todo entry with informtation: {}", deleted);
 
         return convertToDTO(deleted);
     }
 
+    @Override
+    public List<TodoBatchResultDTO> deleteAll(List<String> ids) {
+        LOGGER.debug("Deleting {} todo entries", ids.size());
+
+        Map<String, Todo> found = findTodosByIds(ids);
+        List<String> deleted = ids.stream()
+                .filter(found::containsKey)
+                .collect(toList());
+
+        Map<Integer, TodoBatchResultDTO.Status> notDeleted = repository.deleteAll(deleted);
+
+        List<TodoBatchResultDTO> results = new ArrayList<>(ids.size());
+        List<String> tombstones = new ArrayList<>(deleted.size());
+        int deletedIndex = 0;
+        for (String id : ids) {
+            if (!found.containsKey(id)) {
+                results.add(new TodoBatchResultDTO(id, TodoBatchResultDTO.Status.NOT_FOUND));
+            } else {
+                TodoBatchResultDTO.Status status = notDeleted.getOrDefault(deletedIndex++,
+                        TodoBatchResultDTO.Status.DELETED
+                );
+                results.add(new TodoBatchResultDTO(id, status));
+                if (status == TodoBatchResultDTO.Status.DELETED) {
+                    tombstones.add(id);
+                }
+            }
+        }
+
+        if (!tombstones.isEmpty()) {
+            repository.saveTombstones(tombstones, new Date(clock.getAsLong()));
+            tombstones.forEach(id -> listener.onEvent(TodoEvent.deleted(id)));
+        }
+
+        LOGGER.debug("Deleted {} todo entries", tombstones.size());
+
+        return results;
+    }
+
     @Override
     public List<TodoDTO> findAll() {
-        LOGGER.info("Finding all todo entries.");
+        LOGGER.debug("Finding all todo entries.");
 
         List<Todo> todoEntries = repository.findAll();
 
-        LOGGER.info("Found {} todo entries", todoEntries.size());
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
+
+        return convertToDTOs(todoEntries);
+    }
+
+    @Override
+    public List<TodoDTO> findAll(TodoFields fields) {
+        if (fields.isAll()) {
+            return findAll();
+        }
+
+        LOGGER.debug("Finding fields: {} of all todo entries.", fields);
+
+        List<Todo> todoEntries = repository.findAll(fields);
+
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
+
+        return convertToDTOs(todoEntries);
+    }
+
+    @Override
+    public TodoPageDTO findPage(String after, int size) {
+        LOGGER.debug("Finding page of todo entries after: {}", after);
+
+        int limit = pageSize(size);
+        List<Todo> todoEntries = repository.findPage(after, limit);
+
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
+
+        String next = todoEntries.size() == limit ? todoEntries.get(limit - 1).getId() : null;
+        return new TodoPageDTO(convertToDTOs(todoEntries), next);
+    }
+
+    @Override
+    public List<TodoDTO> search(String text, int page, int size) {
+        LOGGER.debug("Searching todo entries with text: {}", text);
+
+        int limit = pageSize(size);
+        List<Todo> todoEntries = repository.search(text, offset(page, limit), limit);
+
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
+
+        return convertToDTOs(todoEntries);
+    }
+
+    @Override
+    public List<TodoDTO> findByTitlePrefix(String prefix, int page, int size) {
+        LOGGER.debug("Finding todo entries whose title starts with: {}", prefix);
+
+        int limit = pageSize(size);
+        List<Todo> todoEntries = repository.findByTitlePrefix(prefix, offset(page, limit), limit);
+
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
 
         return convertToDTOs(todoEntries);
     }
 
+    @Override
+    public TodoChangesDTO findChanges(String since, int size) {
+        LOGGER.debug("Finding changes after token: {}", since);
+
+        long now = clock.getAsLong();
+        long until = now - CHANGES_SETTLE_MILLIS;
+
+        if (since == null) {
+            return new TodoChangesDTO(Collections.emptyList(),
+                    Collections.emptyList(),
+                    new TodoChangeToken(until, "").toString(),
+                    false
+            );
+        }
+
+        TodoChangeToken after = TodoChangeToken.parse(since);
+        if (after == null || after.getTime() < now - TodoTombstone.RETENTION_SECONDS * 1000) {
+            throw new TodoChangesUnavailableException(since);
+        }
+
+        int limit = pageSize(size);
+        List<Todo> modified = repository.findModified(after.getDate(), after.getId(), new Date(until), limit);
+        List<TodoTombstone> tombstones = repository.findTombstones(after.getDate(), after.getId(), new Date(until), limit);
+
+        //Both lists are sorted by time and id. Merging them keeps the changes in the same order as the token.
+        List<TodoDTO> changed = new ArrayList<>(modified.size());
+        List<String> deleted = new ArrayList<>(tombstones.size());
+        TodoChangeToken last = after;
+        int modifiedIndex = 0;
+        int tombstoneIndex = 0;
+
+        while (modifiedIndex + tombstoneIndex < limit
+                && (modifiedIndex < modified.size() || tombstoneIndex < tombstones.size())) {
+            TodoChangeToken nextModified = modifiedIndex < modified.size() ? toToken(modified.get(modifiedIndex)) : null;
+            TodoChangeToken nextDeleted = tombstoneIndex < tombstones.size() ? toToken(tombstones.get(tombstoneIndex)) : null;
+
+            if (nextDeleted == null || (nextModified != null && nextModified.compareTo(nextDeleted) < 0)) {
+                changed.add(convertToDTO(modified.get(modifiedIndex++)));
+                last = nextModified;
+            } else {
+                deleted.add(tombstones.get(tombstoneIndex++).getId());
+                last = nextDeleted;
+            }
+        }
+
+        //A full list might have more changes after it, and the changes that were not merged are on the next page.
+        boolean hasMore = modified.size() == limit
+                || tombstones.size() == limit
+                || modifiedIndex < modified.size()
+                || tombstoneIndex < tombstones.size();
+
+        LOGGER.debug("Found {} changed and {} deleted todo entries", changed.size(), deleted.size());
+
+        return new TodoChangesDTO(changed, deleted, last.toString(), hasMore);
+    }
+
+    private static TodoChangeToken toToken(Todo todo) {
+        return new TodoChangeToken(todo.getLastModified().getTime(), todo.getId());
+    }
+
+    private static TodoChangeToken toToken(TodoTombstone tombstone) {
+        return new TodoChangeToken(tombstone.getDeletedAt().getTime(), tombstone.getId());
+    }
+
+    private static int pageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    private static int offset(int page, int limit) {
+        return (int) Math.min((long) Math.max(0, page) * limit, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void forEach(Consumer<TodoDTO> action) {
+        LOGGER.debug("Iterating all todo entries.");
+
+        repository.forEach(todo -> action.accept(convertToDTO(todo)));
+    }
+
     private List<TodoDTO> convertToDTOs(List<Todo> models) {
         return models.stream()
                 .map(this::convertToDTO)
@@ -73,26 +329,138 @@ final class MongoDBTodoService implements TodoService {
 
     @Override
     public TodoDTO findById(String id) {
-        LOGGER.info("Finding todo entry with id: {}", id);
+        LOGGER.debug("Finding todo entry with id: {}", id);
 
         Todo found = findTodoById(id);
 
-        LOGGER.info("Found todo entry: {}", found);
+        LOGGER.debug("Found todo entry: {}", found);
 
         return convertToDTO(found);
     }
 
+    @Override
+    public TodoDTO findById(String id, TodoFields fields) {
+        if (fields.isAll()) {
+            return findById(id);
+        }
+
+        LOGGER.debug("Finding fields: {} of todo entry with id: {}", fields, id);
+
+        Todo found = repository.findOne(id, fields)
+                .orElseThrow(() -> new TodoNotFoundException(id));
+
+        LOGGER.debug("Found todo entry: {}", found);
+
+        return convertToDTO(found);
+    }
+
+    @Override
+    public long findVersionById(String id) {
+        LOGGER.debug("Finding version of todo entry with id: {}", id);
+
+        long version = repository.findVersion(id)
+                .orElseThrow(() -> new TodoNotFoundException(id));
+
+        LOGGER.debug("Found version: {}", version);
+
+        return version;
+    }
+
     @Override
     public TodoDTO update(TodoDTO todo) {
-        LOGGER.info("Updating todo entry with information: {}", todo);
+        LOGGER.debug("Updating todo entry with information: {}", todo);
+
+        Todo.checkTitleAndDescription(todo.getTitle(), todo.getDescription());
+
+        Long expectedVersion = todo.getVersion();
+        Todo updated = repository.findAndUpdate(todo.getId(), expectedVersion, todo.getTitle(), todo.getDescription())
+                .orElseThrow(() -> notFoundOrConflict(todo.getId(), expectedVersion));
+
+        LOGGER.debug("Updated todo entry with information: {}", updated);
+
+        TodoDTO result = convertToDTO(updated);
+        listener.onEvent(TodoEvent.updated(result));
 
-        Todo updated = findTodoById(todo.getId());
-        updated.update(todo.getTitle(), todo.getDescription());
-        updated = repository.save(updated);
+        return result;
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> updateAll(List<TodoDTO> todoEntries) {
+        LOGGER.debug("Updating {} todo entries", todoEntries.size());
+
+        List<String> ids = todoEntries.stream()
+                .map(TodoDTO::getId)
+                .filter(Objects::nonNull)
+                .collect(toList());
+        Map<String, Todo> found = findTodosByIds(ids);
+
+        List<Todo> updated = new ArrayList<>(todoEntries.size());
+        for (TodoDTO todo : todoEntries) {
+            Todo existing = found.get(todo.getId());
+            if (existing != null && !hasConflict(todo, existing)) {
+                existing.update(todo.getTitle(), todo.getDescription());
+                updated.add(existing);
+            }
+        }
+
+        Map<Integer, TodoBatchResultDTO.Status> notUpdated = repository.updateAll(updated);
+
+        List<TodoBatchResultDTO> results = new ArrayList<>(todoEntries.size());
+        int updatedIndex = 0;
+        for (TodoDTO todo : todoEntries) {
+            Todo existing = found.get(todo.getId());
+            if (existing == null) {
+                results.add(new TodoBatchResultDTO(todo.getId(), TodoBatchResultDTO.Status.NOT_FOUND));
+            } else if (hasConflict(todo, existing)) {
+                results.add(new TodoBatchResultDTO(todo.getId(), TodoBatchResultDTO.Status.CONFLICT));
+            } else {
+                TodoBatchResultDTO.Status status = notUpdated.getOrDefault(updatedIndex++,
+                        TodoBatchResultDTO.Status.UPDATED
+                );
+                results.add(new TodoBatchResultDTO(todo.getId(), status));
+                if (status == TodoBatchResultDTO.Status.UPDATED) {
+                    listener.onEvent(TodoEvent.updated(convertToUpdatedDTO(existing)));
+                }
+            }
+        }
+
+        LOGGER.debug("Updated {} todo entries", updated.size() - notUpdated.size());
+
+        return results;
+    }
 
-        LOGGER.info("Updated todo entry with information: {}", updated);
+    /**
+     * The bulk update increases the version in the database, but it doesn't change the version of
+     * the todo entry that was read before the update.
+     */
+    private TodoDTO convertToUpdatedDTO(Todo existing) {
+        TodoDTO dto = convertToDTO(existing);
+        dto.setVersion(existing.getVersion() == null ? 1L : existing.getVersion() + 1);
+        return dto;
+    }
+
+    /**
+     * If a conditional update didn't find the updated todo entry, this method figures out
+     * whether the todo entry doesn't exist or if it has a different version.
+     */
+    private RuntimeException notFoundOrConflict(String id, Long expectedVersion) {
+        if (expectedVersion != null && repository.findVersion(id).isPresent()) {
+            return new TodoVersionConflictException(id, expectedVersion);
+        }
+        return new TodoNotFoundException(id);
+    }
+
+    /**
+     * A todo entry that has no version is reported as version 0.
+     */
+    private static boolean hasConflict(TodoDTO todo, Todo existing) {
+        long existingVersion = existing.getVersion() == null ? 0L : existing.getVersion();
+        return todo.getVersion() != null && todo.getVersion() != existingVersion;
+    }
 
-        return convertToDTO(updated);
+    private Map<String, Todo> findTodosByIds(List<String> ids) {
+        return repository.findByIdIn(ids).stream()
+                .collect(toMap(Todo::getId, identity()));
     }
 
     private Todo findTodoById(String id) {
@@ -107,6 +475,7 @@ final class MongoDBTodoService implements TodoService {
         dto.setId(model.getId());
         dto.setTitle(model.getTitle());
         dto.setDescription(model.getDescription());
+        dto.setVersion(model.getVersion());
 
         return dto;
     }
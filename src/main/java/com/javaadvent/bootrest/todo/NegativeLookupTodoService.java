@@ -0,0 +1,257 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.util.BloomFilter;
+import com.javaadvent.bootrest.util.ExpiringLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * This service decorates another {@link com.javaadvent.bootrest.todo.TodoService} and answers the requests that
+ * find unknown todo entries by using their ids without asking the decorated service. It has two layers:
+ * <ul>
+ *     <li>
+ *         A short-lived cache of the ids that were not found or that have been deleted. The cache is updated
+ *         when a todo entry is created or deleted, and its entries expire after a short time to live because
+ *         the todo entries that are created by the other instances of our application are not seen by it.
+ *     </li>
+ *     <li>
+ *         An optional Bloom filter of the ids of the existing todo entries. The ids of the created todo entries
+ *         are added to it, and it is rebuilt from the decorated service periodically because the ids of
+ *         the deleted todo entries cannot be removed from it. The filter rejects nothing until it has been built
+ *         for the first time. It must be used only if all todo entries are created by this instance.
+ *     </li>
+ * </ul>
+ * A todo entry that is rejected by either layer causes a {@link com.javaadvent.bootrest.todo.TodoNotFoundException}
+ * just like a todo entry that is not found from the database.
+ * @author Petri Kainulainen
+ */
+final class NegativeLookupTodoService implements TodoService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NegativeLookupTodoService.class);
+
+    private final TodoService delegate;
+
+    private final ExpiringLruCache<String, Boolean> missingIds;
+
+    private final LongFunction<BloomFilter> bloomFilterFactory;
+
+    private final LongAdder bloomFilterRejections = new LongAdder();
+
+    private volatile BloomFilter existingIds;
+
+    private volatile BloomFilter rebuiltIds;
+
+    private volatile long expectedIds;
+
+    /**
+     * @param delegate              The decorated service.
+     * @param missingIds            The cache of the ids that are not found.
+     * @param bloomFilterFactory    Creates a Bloom filter for the given number of ids, or null if the Bloom filter
+     *                              is not used.
+     * @param expectedIds           The number of ids that the first Bloom filter is created for.
+     */
+    NegativeLookupTodoService(TodoService delegate,
+                              ExpiringLruCache<String, Boolean> missingIds,
+                              LongFunction<BloomFilter> bloomFilterFactory,
+                              long expectedIds) {
+        this.delegate = delegate;
+        this.missingIds = missingIds;
+        this.bloomFilterFactory = bloomFilterFactory;
+        this.expectedIds = expectedIds;
+    }
+
+    /**
+     * Builds a new Bloom filter from the ids of the todo entries that are returned by the decorated service, and
+     * replaces the old filter with it. The ids that are created while the filter is built are added to both filters.
+     * The new filter is created for twice the number of ids that the previous filter was built from, or for the
+     * expected number of ids if that is larger, which leaves room for the todo entries that are created before
+     * the next rebuild. If the rebuild fails, the old filter is kept.
+     */
+    void rebuildBloomFilter() {
+        if (bloomFilterFactory == null) {
+            return;
+        }
+
+        LOGGER.debug("Rebuilding the Bloom filter of todo entry ids for {} ids", expectedIds);
+
+        BloomFilter rebuilt = bloomFilterFactory.apply(expectedIds);
+        rebuiltIds = rebuilt;
+        try {
+            delegate.forEach(todoEntry -> rebuilt.put(todoEntry.getId()));
+            existingIds = rebuilt;
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Could not rebuild the Bloom filter of todo entry ids. Keeping the old filter.", ex);
+            return;
+        } finally {
+            rebuiltIds = null;
+        }
+
+        expectedIds = Math.max(expectedIds, 2 * rebuilt.insertionCount());
+        LOGGER.info("Rebuilt the Bloom filter of todo entry ids from {} ids", rebuilt.insertionCount());
+    }
+
+    @Override
+    public TodoDTO create(TodoDTO todo) {
+        TodoDTO created = delegate.create(todo);
+        rememberExisting(created.getId());
+        return created;
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> createAll(List<TodoDTO> todoEntries) {
+        List<TodoBatchResultDTO> results = delegate.createAll(todoEntries);
+        results.stream()
+                .filter(result -> result.getStatus() == TodoBatchResultDTO.Status.CREATED)
+                .forEach(result -> rememberExisting(result.getId()));
+        return results;
+    }
+
+    @Override
+    public TodoDTO delete(String id) {
+        checkMightExist(id);
+
+        TodoDTO deleted = delegate.delete(id);
+        missingIds.put(id, Boolean.TRUE);
+        return deleted;
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> deleteAll(List<String> ids) {
+        List<TodoBatchResultDTO> results = delegate.deleteAll(ids);
+        results.stream()
+                .filter(result -> result.getStatus() == TodoBatchResultDTO.Status.DELETED)
+                .forEach(result -> missingIds.put(result.getId(), Boolean.TRUE));
+        return results;
+    }
+
+    @Override
+    public List<TodoDTO> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<TodoDTO> findAll(TodoFields fields) {
+        return delegate.findAll(fields);
+    }
+
+    @Override
+    public TodoPageDTO findPage(String after, int size) {
+        return delegate.findPage(after, size);
+    }
+
+    @Override
+    public List<TodoDTO> search(String text, int page, int size) {
+        return delegate.search(text, page, size);
+    }
+
+    @Override
+    public List<TodoDTO> findByTitlePrefix(String prefix, int page, int size) {
+        return delegate.findByTitlePrefix(prefix, page, size);
+    }
+
+    @Override
+    public TodoChangesDTO findChanges(String since, int size) {
+        return delegate.findChanges(since, size);
+    }
+
+    @Override
+    public void forEach(Consumer<TodoDTO> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public TodoDTO findById(String id) {
+        checkMightExist(id);
+
+        try {
+            return delegate.findById(id);
+        } catch (TodoNotFoundException ex) {
+            missingIds.put(id, Boolean.TRUE);
+            throw ex;
+        }
+    }
+
+    @Override
+    public TodoDTO findById(String id, TodoFields fields) {
+        checkMightExist(id);
+
+        try {
+            return delegate.findById(id, fields);
+        } catch (TodoNotFoundException ex) {
+            missingIds.put(id, Boolean.TRUE);
+            throw ex;
+        }
+    }
+
+    @Override
+    public long findVersionById(String id) {
+        checkMightExist(id);
+
+        try {
+            return delegate.findVersionById(id);
+        } catch (TodoNotFoundException ex) {
+            missingIds.put(id, Boolean.TRUE);
+            throw ex;
+        }
+    }
+
+    @Override
+    public TodoDTO update(TodoDTO todo) {
+        return delegate.update(todo);
+    }
+
+    @Override
+    public List<TodoBatchResultDTO> updateAll(List<TodoDTO> todoEntries) {
+        return delegate.updateAll(todoEntries);
+    }
+
+    /**
+     * @return  The number of ids that were rejected by the Bloom filter.
+     */
+    long bloomFilterRejectionCount() {
+        return bloomFilterRejections.sum();
+    }
+
+    /**
+     * @return  The number of bits of the current Bloom filter, or 0 if it has not been built.
+     */
+    long bloomFilterBitCount() {
+        BloomFilter current = existingIds;
+        return current == null ? 0 : current.bitCount();
+    }
+
+    private void checkMightExist(String id) {
+        BloomFilter current = existingIds;
+        if (current != null && !current.mightContain(id)) {
+            bloomFilterRejections.increment();
+            throw new TodoNotFoundException(id);
+        }
+
+        if (missingIds.get(id) != null) {
+            throw new TodoNotFoundException(id);
+        }
+    }
+
+    /**
+     * The filter that is being rebuilt is read before the current filter. If the rebuild started before the todo
+     * entry was created, the id is added to the rebuilt filter, or the rebuilt filter has already replaced
+     * the current filter. If the rebuild started later, it reads the id from the decorated service.
+     */
+    private void rememberExisting(String id) {
+        missingIds.remove(id);
+
+        BloomFilter rebuilt = rebuiltIds;
+        BloomFilter current = existingIds;
+        if (rebuilt != null) {
+            rebuilt.put(id);
+        }
+        if (current != null && current != rebuilt) {
+            current.put(id);
+        }
+    }
+}
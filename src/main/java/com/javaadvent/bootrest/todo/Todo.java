@@ -1,14 +1,28 @@
 package com.javaadvent.bootrest.todo;
 
+import com.javaadvent.bootrest.mongo.MongoIndex;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+
+import java.util.Date;
 
 import static com.javaadvent.bootrest.util.PreCondition.isTrue;
 import static com.javaadvent.bootrest.util.PreCondition.notEmpty;
 import static com.javaadvent.bootrest.util.PreCondition.notNull;
 
 /**
+ * The text index is used by full-text search. A match in the title is more relevant than a match
+ * in the description. The title index is used by prefix search, and it contains the id because
+ * the id is used to sort todo entries that have the same title. The last modified index is used to find
+ * the todo entries that have been changed since the previous synchronization of a client.
  * @author Petri Kainulainen
  */
+@MongoIndex(name = "title_description_text",
+        keys = "{'title': 'text', 'description': 'text'}",
+        weights = "{'title': 3, 'description': 1}"
+)
+@MongoIndex(name = "title_id", keys = "{'title': 1, '_id': 1}")
+@MongoIndex(name = "lastModified_id", keys = "{'lastModified': 1, '_id': 1}")
 final class Todo {
 
     static final int MAX_LENGTH_DESCRIPTION = 500;
@@ -21,11 +35,28 @@ final class Todo {
 
     private String title;
 
+    @Version
+    private Long version;
+
+    private Date lastModified;
+
     public Todo() {}
 
+    /**
+     * Creates a todo entry that is read from a storage that doesn't use Spring Data.
+     */
+    Todo(String id, String description, String title, Long version, Date lastModified) {
+        this.id = id;
+        this.description = description;
+        this.title = title;
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
     private Todo(Builder builder) {
         this.description = builder.description;
         this.title = builder.title;
+        this.lastModified = new Date();
     }
 
     static Builder getBuilder() {
@@ -44,21 +75,56 @@ final class Todo {
         return title;
     }
 
+    /**
+     * @return  The version of this todo entry. The version is increased every time the todo entry is updated.
+     *          Returns null if the todo entry hasn't been saved yet.
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return  The time when this todo entry was created or updated for the last time. Returns null if the todo
+     *          entry was saved before the modification times were tracked and it hasn't been updated since.
+     */
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Sets the id and the version of a todo entry that is saved for the first time. Spring Data sets them
+     * by using reflection, and this method is used by the repositories that don't use Spring Data.
+     */
+    void setIdAndVersion(String id, long version) {
+        this.id = id;
+        this.version = version;
+    }
+
     public void update(String title, String description) {
         checkTitleAndDescription(title, description);
 
         this.title = title;
         this.description = description;
+        this.lastModified = new Date();
     }
 
+    /**
+     * Appends the fields to a buffer that is sized for the whole string. This is a lot cheaper than
+     * String.format() which parses the format string every time it is invoked. The constant part of
+     * the capacity covers the field names, the id and the version.
+     */
     @Override
     public String toString() {
-        return String.format(
-                "Todo[id=%s, description=%s, title=%s]",
-                this.id,
-                this.description,
-                this.title
-        );
+        int descriptionLength = description == null ? 4 : description.length();
+        int titleLength = title == null ? 4 : title.length();
+
+        return new StringBuilder(96 + descriptionLength + titleLength)
+                .append("Todo[id=").append(this.id)
+                .append(", description=").append(this.description)
+                .append(", title=").append(this.title)
+                .append(", version=").append(this.version)
+                .append(']')
+                .toString();
     }
 
     /**
@@ -86,13 +152,17 @@ final class Todo {
         Todo build() {
             Todo build = new Todo(this);
 
-            build.checkTitleAndDescription(build.getTitle(), build.getDescription());
+            checkTitleAndDescription(build.getTitle(), build.getDescription());
 
             return build;
         }
     }
 
-    private void checkTitleAndDescription(String title, String description) {
+    /**
+     * Ensures that the given title and description are valid. This method is used by services that update
+     * todo entries without loading them from the database first.
+     */
+    static void checkTitleAndDescription(String title, String description) {
         notNull(title, "Title cannot be null");
         notEmpty(title, "Title cannot be empty");
         isTrue(title.length() <= MAX_LENGTH_TITLE,
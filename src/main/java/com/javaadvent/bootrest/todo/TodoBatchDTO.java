@@ -0,0 +1,35 @@
+package com.javaadvent.bootrest.todo;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * This data transfer object contains the information of the todo entries that are
+ * created or updated by using a single request. The validation rules of
+ * {@link com.javaadvent.bootrest.todo.TodoDTO} are applied to every todo entry.
+ * @author Petri Kainulainen
+ */
+public final class TodoBatchDTO {
+
+    static final int MAX_SIZE = 1000;
+
+    @NotEmpty
+    @Size(max = MAX_SIZE)
+    @Valid
+    private List<TodoDTO> entries;
+
+    public TodoBatchDTO() {
+
+    }
+
+    public List<TodoDTO> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<TodoDTO> entries) {
+        this.entries = entries;
+    }
+}
@@ -0,0 +1,47 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This data transfer object contains the result of processing one todo entry
+ * of a batch request.
+ * @author Petri Kainulainen
+ */
+public final class TodoBatchResultDTO {
+
+    /**
+     * Describes what happened to the processed todo entry.
+     */
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        CONFLICT,
+        FAILED
+    }
+
+    private final String id;
+
+    private final Status status;
+
+    TodoBatchResultDTO(String id, Status status) {
+        this.id = id;
+        this.status = status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "TodoBatchResultDTO[id=%s, status=%s]",
+                this.id,
+                this.status
+        );
+    }
+}
@@ -0,0 +1,69 @@
+package com.javaadvent.bootrest.todo;
+
+import java.util.Date;
+
+/**
+ * Identifies the position of a client in the history of changes. The changes are ordered by their
+ * modification times and ids, which means that a client can continue from the last change it has seen
+ * even if several todo entries were changed at the same millisecond.
+ *
+ * Clients treat the string representation of a token as an opaque value.
+ * @author Petri Kainulainen
+ */
+final class TodoChangeToken implements Comparable<TodoChangeToken> {
+
+    private static final char SEPARATOR = '_';
+
+    private final long time;
+
+    private final String id;
+
+    /**
+     * @param time  The modification time of the last seen change in milliseconds.
+     * @param id    The id of the last seen todo entry. If this is empty, the token points to the beginning of
+     *              the given millisecond.
+     */
+    TodoChangeToken(long time, String id) {
+        this.time = time;
+        this.id = id;
+    }
+
+    /**
+     * @return  The token or null if the given string is not a valid token.
+     */
+    static TodoChangeToken parse(String token) {
+        int separator = token.indexOf(SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+
+        try {
+            return new TodoChangeToken(Long.parseLong(token.substring(0, separator)), token.substring(separator + 1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    Date getDate() {
+        return new Date(time);
+    }
+
+    String getId() {
+        return id;
+    }
+
+    @Override
+    public int compareTo(TodoChangeToken other) {
+        int result = Long.compare(time, other.time);
+        return result != 0 ? result : id.compareTo(other.id);
+    }
+
+    @Override
+    public String toString() {
+        return time + String.valueOf(SEPARATOR) + id;
+    }
+}
@@ -0,0 +1,56 @@
+package com.javaadvent.bootrest.todo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This data transfer object contains the todo entries that have been created, updated or deleted
+ * after the given change token, and the token that is used to request the next changes.
+ * @author Petri Kainulainen
+ */
+public final class TodoChangesDTO {
+
+    private final List<TodoDTO> changed;
+
+    private final List<String> deleted;
+
+    private final String next;
+
+    private final boolean hasMore;
+
+    TodoChangesDTO(List<TodoDTO> changed, List<String> deleted, String next, boolean hasMore) {
+        this.changed = changed;
+        this.deleted = deleted;
+        this.next = next;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * @return  The information of the created and updated todo entries.
+     */
+    public List<TodoDTO> getChanged() {
+        return Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * @return  The ids of the deleted todo entries.
+     */
+    public List<String> getDeleted() {
+        return Collections.unmodifiableList(deleted);
+    }
+
+    /**
+     * @return  The token that must be sent with the next request. Unlike the cursor of a page,
+     *          this is never null because the client polls for changes by using it.
+     */
+    public String getNext() {
+        return next;
+    }
+
+    /**
+     * @return  true if the changes didn't fit in the response and the next changes should be requested immediately.
+     */
+    public boolean getHasMore() {
+        return hasMore;
+    }
+}
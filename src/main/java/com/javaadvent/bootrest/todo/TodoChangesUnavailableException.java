@@ -0,0 +1,14 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This exception is thrown when the changes after a change token cannot be returned because the token
+ * is invalid or so old that the tombstones of the deleted todo entries might be gone. The client must
+ * load all todo entries and start again with a new token.
+ * @author Petri Kainulainen
+ */
+public class TodoChangesUnavailableException extends RuntimeException {
+
+    public TodoChangesUnavailableException(String token) {
+        super(String.format("No changes are available after the token: <%s>", token));
+    }
+}
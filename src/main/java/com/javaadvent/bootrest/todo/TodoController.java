@@ -1,19 +1,37 @@
 package com.javaadvent.bootrest.todo;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This controller provides the public API that is used to manage the information
@@ -26,67 +44,420 @@ final class TodoController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TodoController.class);
 
+    private static final String DEFAULT_CHANGES_PAGE_SIZE = "100";
+
+    private static final String DEFAULT_SEARCH_PAGE_SIZE = "20";
+
+    private static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream;charset=UTF-8";
+
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private static final String STREAM_CONTENT_TYPE = MediaType.APPLICATION_JSON_VALUE + ";charset=UTF-8";
+
     private final TodoService service;
 
+    private final TodoEventBroadcaster events;
+
+    private final TodoIdempotencyStore idempotencyStore;
+
+    private final TodoNotFoundCounter notFoundCounter;
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectWriter streamWriter;
+
     @Autowired
-    TodoController(TodoService service) {
+    TodoController(TodoService service,
+                   TodoEventBroadcaster events,
+                   TodoIdempotencyStore idempotencyStore,
+                   TodoNotFoundCounter notFoundCounter,
+                   ObjectMapper objectMapper) {
         this.service = service;
+        this.events = events;
+        this.idempotencyStore = idempotencyStore;
+        this.notFoundCounter = notFoundCounter;
+        this.objectMapper = objectMapper;
+        //Flushing after every todo entry would send each entry in its own chunk.
+        this.streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
+    /**
+     * Creates a new todo entry. A client that retries a create after a timeout sends the same value in
+     * the Idempotency-Key header, and gets the todo entry that was created by the first request instead
+     * of a duplicate.
+     */
     @RequestMapping(method = RequestMethod.POST)
-    @ResponseStatus(HttpStatus.CREATED)
-    TodoDTO create(@RequestBody @Valid TodoDTO todoEntry) {
-        LOGGER.info("Creating a new todo entry with information: {}", todoEntry);
+    ResponseEntity<TodoDTO> create(@RequestBody @Valid TodoDTO todoEntry,
+                                   @RequestHeader(value = TodoIdempotencyStore.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        LOGGER.debug("Creating a new todo entry with information: {}", todoEntry);
 
-        TodoDTO created = service.create(todoEntry);
-        LOGGER.info("Created a new todo entry with information: {}", created);
+        TodoDTO created = idempotencyKey == null
+                ? service.create(todoEntry)
+                : idempotencyStore.create(idempotencyKey, todoEntry, () -> service.create(todoEntry));
+        LOGGER.debug("Created a new todo entry with information: {}", created);
 
-        return created;
+        return new ResponseEntity<>(created, TodoETags.headers(created), HttpStatus.CREATED);
+    }
+
+    @RequestMapping(value = "batch", method = RequestMethod.POST)
+    List<TodoBatchResultDTO> createAll(@RequestBody @Valid TodoBatchDTO batch) {
+        LOGGER.debug("Creating {} new todo entries", batch.getEntries().size());
+
+        List<TodoBatchResultDTO> results = service.createAll(batch.getEntries());
+        LOGGER.debug("Created todo entries with results: {}", results);
+
+        return results;
     }
 
     @RequestMapping(value = "{id}", method = RequestMethod.DELETE)
     TodoDTO delete(@PathVariable("id") String id) {
-        LOGGER.info("Deleting todo entry with id: {}", id);
+        LOGGER.debug("Deleting todo entry with id: {}", id);
 
         TodoDTO deleted = service.delete(id);
-        LOGGER.info("Deleted todo entry with information: {}", deleted);
+        LOGGER.debug("Deleted todo entry with information: {}", deleted);
 
         return deleted;
     }
 
+    @RequestMapping(value = "batch", method = RequestMethod.DELETE)
+    List<TodoBatchResultDTO> deleteAll(@RequestBody @Valid TodoIdBatchDTO batch) {
+        LOGGER.debug("Deleting {} todo entries", batch.getIds().size());
+
+        List<TodoBatchResultDTO> results = service.deleteAll(batch.getIds());
+        LOGGER.debug("Deleted todo entries with results: {}", results);
+
+        return results;
+    }
+
     @RequestMapping(method = RequestMethod.GET)
     List<TodoDTO> findAll() {
-        LOGGER.info("Finding all todo entries");
+        LOGGER.debug("Finding all todo entries");
 
         List<TodoDTO> todoEntries = service.findAll();
-        LOGGER.info("Found {} todo entries", todoEntries.size());
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
 
         return todoEntries;
     }
 
+    /**
+     * Finds the fields, given as the value of the fields parameter, of all todo entries. For example,
+     * <code>fields=title</code> returns the ids and the titles of the todo entries.
+     */
+    @RequestMapping(method = RequestMethod.GET, params = "fields")
+    List<Map<String, Object>> findAll(@RequestParam("fields") String fields) {
+        TodoFields requested = TodoFields.parse(fields);
+        LOGGER.debug("Finding fields: {} of all todo entries", requested);
+
+        List<TodoDTO> todoEntries = service.findAll(requested);
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
+
+        return requested.project(todoEntries);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, params = "size")
+    TodoPageDTO findPage(@RequestParam(value = "after", required = false) String after,
+                         @RequestParam("size") int size) {
+        LOGGER.debug("Finding page of todo entries after: {}", after);
+
+        TodoPageDTO page = service.findPage(after, size);
+        LOGGER.debug("Found {} todo entries", page.getEntries().size());
+
+        return page;
+    }
+
+    /**
+     * Finds the todo entries that have been created, updated or deleted after the token given as the value
+     * of the since parameter. A client that polls for changes transfers only the changed todo entries
+     * instead of all todo entries.
+     */
+    @RequestMapping(value = "changes", method = RequestMethod.GET)
+    TodoChangesDTO findChanges(@RequestParam(value = "since", required = false) String since,
+                               @RequestParam(value = "size", defaultValue = DEFAULT_CHANGES_PAGE_SIZE) int size) {
+        LOGGER.debug("Finding changes after token: {}", since);
+
+        TodoChangesDTO changes = service.findChanges(since, size);
+        LOGGER.debug("Found {} changed and {} deleted todo entries",
+                changes.getChanged().size(),
+                changes.getDeleted().size()
+        );
+
+        return changes;
+    }
+
+    /**
+     * Finds the todo entries whose title or description contains the words given as the value of
+     * the q parameter. The todo entries are ordered by relevance.
+     */
+    @RequestMapping(value = "search", method = RequestMethod.GET, params = "q")
+    List<TodoDTO> search(@RequestParam("q") String text,
+                         @RequestParam(value = "page", defaultValue = "0") int page,
+                         @RequestParam(value = "size", defaultValue = DEFAULT_SEARCH_PAGE_SIZE) int size) {
+        LOGGER.debug("Searching todo entries with text: {}", text);
+
+        List<TodoDTO> todoEntries = service.search(text, page, size);
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
+
+        return todoEntries;
+    }
+
+    /**
+     * Finds the todo entries whose title starts with the value of the prefix parameter. This is meant
+     * for autocompletion, which is why the todo entries are sorted by title.
+     */
+    @RequestMapping(value = "search", method = RequestMethod.GET, params = "prefix")
+    List<TodoDTO> findByTitlePrefix(@RequestParam("prefix") String prefix,
+                                    @RequestParam(value = "page", defaultValue = "0") int page,
+                                    @RequestParam(value = "size", defaultValue = DEFAULT_SEARCH_PAGE_SIZE) int size) {
+        LOGGER.debug("Finding todo entries whose title starts with: {}", prefix);
+
+        List<TodoDTO> todoEntries = service.findByTitlePrefix(prefix, page, size);
+        LOGGER.debug("Found {} todo entries", todoEntries.size());
+
+        return todoEntries;
+    }
+
+    /**
+     * Writes the information of all todo entries to the response as a JSON array. The array is written
+     * incrementally while the todo entries are read from the database, which means that the memory
+     * consumption doesn't depend on the number of todo entries. If reading the todo entries fails after
+     * the response has been committed, the array is left open so that the client cannot mistake
+     * the truncated response for a complete one.
+     */
+    @RequestMapping(value = "stream", method = RequestMethod.GET)
+    void streamAll(HttpServletResponse response) throws IOException {
+        LOGGER.debug("Streaming all todo entries");
+
+        response.setContentType(STREAM_CONTENT_TYPE);
+
+        try (JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(response.getOutputStream(), JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)) {
+            generator.writeStartArray();
+            service.forEach(todoEntry -> writeStreamedEntry(generator, todoEntry));
+            generator.writeEndArray();
+        }
+    }
+
+    private void writeStreamedEntry(JsonGenerator generator, TodoDTO todoEntry) {
+        try {
+            streamWriter.writeValue(generator, todoEntry);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Subscribes to the live feed of todo events. The events are written as server-sent events until
+     * the client disconnects, which means that the request is handled asynchronously and the request thread
+     * is released immediately. A reconnecting client sends the id of the last event it received in
+     * the Last-Event-ID header.
+     */
+    @RequestMapping(value = "events", method = RequestMethod.GET)
+    void subscribe(@RequestHeader(value = LAST_EVENT_ID, required = false) String lastEventId,
+                   HttpServletRequest request,
+                   HttpServletResponse response) throws IOException {
+        LOGGER.debug("Subscribing to todo events after event: {}", lastEventId);
+
+        response.setContentType(EVENT_STREAM_CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+
+        AsyncContext asyncContext = request.startAsync(request, response);
+        //The subscription ends when the client disconnects. Heartbeats reveal the clients that are gone.
+        asyncContext.setTimeout(0);
+
+        TodoEventBroadcaster.Subscriber subscriber = events.subscribe(
+                new ResponseEventSink(asyncContext, response.getOutputStream()),
+                lastEventId
+        );
+
+        if (subscriber == null) {
+            LOGGER.warn("Rejected subscriber because the maximum number of subscribers has been reached");
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            asyncContext.complete();
+            return;
+        }
+
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                subscriber.close();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                subscriber.close();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                subscriber.close();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
     @RequestMapping(value = "{id}", method = RequestMethod.GET)
-    TodoDTO findById(@PathVariable("id") String id) {
-        LOGGER.info("Finding todo entry with id: {}", id);
+    ResponseEntity<TodoDTO> findById(@PathVariable("id") String id,
+                                     @RequestHeader(value = TodoETags.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        LOGGER.debug("Finding todo entry with id: {}", id);
+
+        //Checking the version first means that an unmodified todo entry isn't transferred from the database.
+        if (ifNoneMatch != null) {
+            long version = service.findVersionById(id);
+
+            if (TodoETags.matchesAny(ifNoneMatch, version)) {
+                LOGGER.debug("Todo entry with id: {} has not been modified", id);
+                return new ResponseEntity<>(TodoETags.headers(version), HttpStatus.NOT_MODIFIED);
+            }
+        }
 
         TodoDTO todoEntry = service.findById(id);
-        LOGGER.info("Found todo entry with information: {}", todoEntry);
+        LOGGER.debug("Found todo entry with information: {}", todoEntry);
 
-        return todoEntry;
+        return new ResponseEntity<>(todoEntry, TodoETags.headers(todoEntry), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "{id}", method = RequestMethod.GET, params = "fields")
+    ResponseEntity<Map<String, Object>> findById(@PathVariable("id") String id,
+                                                 @RequestParam("fields") String fields,
+                                                 @RequestHeader(value = TodoETags.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        TodoFields requested = TodoFields.parse(fields);
+        LOGGER.debug("Finding fields: {} of todo entry with id: {}", requested, id);
+
+        if (ifNoneMatch != null) {
+            long version = service.findVersionById(id);
+
+            if (TodoETags.matchesAny(ifNoneMatch, version)) {
+                LOGGER.debug("Todo entry with id: {} has not been modified", id);
+                return new ResponseEntity<>(TodoETags.headers(version), HttpStatus.NOT_MODIFIED);
+            }
+        }
+
+        TodoDTO todoEntry = service.findById(id, requested);
+        LOGGER.debug("Found todo entry with information: {}", todoEntry);
+
+        return new ResponseEntity<>(requested.project(todoEntry), TodoETags.headers(todoEntry), HttpStatus.OK);
     }
 
     @RequestMapping(value = "{id}", method = RequestMethod.PUT)
-    TodoDTO update(@RequestBody @Valid TodoDTO todoEntry) {
-        LOGGER.info("Updating todo entry with information: {}", todoEntry);
+    ResponseEntity<TodoDTO> update(@RequestBody @Valid TodoDTO todoEntry,
+                                   @RequestHeader(value = TodoETags.IF_MATCH, required = false) String ifMatch) {
+        LOGGER.debug("Updating todo entry with information: {}", todoEntry);
+
+        if (ifMatch != null && !TodoETags.isAnyVersion(ifMatch)) {
+            Long expectedVersion = TodoETags.parseVersion(ifMatch);
+
+            if (expectedVersion == null) {
+                LOGGER.info("Cannot update todo entry because the If-Match header: {} is invalid", ifMatch);
+                return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+            }
+
+            todoEntry.setVersion(expectedVersion);
+        }
 
         TodoDTO updated = service.update(todoEntry);
-        LOGGER.info("Updated todo entry with information: {}", updated);
+        LOGGER.debug("Updated todo entry with information: {}", updated);
+
+        return new ResponseEntity<>(updated, TodoETags.headers(updated), HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "batch", method = RequestMethod.PUT)
+    List<TodoBatchResultDTO> updateAll(@RequestBody @Valid TodoBatchDTO batch) {
+        LOGGER.debug("Updating {} todo entries", batch.getEntries().size());
+
+        List<TodoBatchResultDTO> results = service.updateAll(batch.getEntries());
+        LOGGER.debug("Updated todo entries with results: {}", results);
 
-        return updated;
+        return results;
     }
 
     @ExceptionHandler
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public void handleTodoNotFound(TodoNotFoundException ex) {
-        LOGGER.error("Handling error with message: {}", ex.getMessage());
+        notFoundCounter.record(ex);
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void handleTodoWriteQueueFull(TodoWriteQueueFullException ex) {
+        LOGGER.warn("Handling error with message: {}", ex.getMessage());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public void handleTodoVersionConflict(TodoVersionConflictException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    public void handleTodoIdempotencyKeyReused(TodoIdempotencyKeyReusedException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public void handleTodoIdempotencyKeyInUse(TodoIdempotencyKeyInUseException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public void handleUnknownTodoField(UnknownTodoFieldException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    /**
+     * The client cannot catch up by asking for changes, and it must load all todo entries instead.
+     */
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.GONE)
+    public void handleTodoChangesUnavailable(TodoChangesUnavailableException ex) {
+        LOGGER.info("Handling error with message: {}", ex.getMessage());
+    }
+
+    private static final class ResponseEventSink implements TodoEventBroadcaster.EventSink {
+
+        private final AsyncContext asyncContext;
+
+        private final OutputStream outputStream;
+
+        private ResponseEventSink(AsyncContext asyncContext, OutputStream outputStream) {
+            this.asyncContext = asyncContext;
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void write(byte[] event) throws IOException {
+            outputStream.write(event);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() {
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException ex) {
+                //The response has been completed already.
+            }
+        }
+
+        @Override
+        public void abort() {
+            //Closing the stream closes the connection, which makes the blocked write fail.
+            try {
+                outputStream.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Cannot close the connection of a subscriber", ex);
+            }
+            close();
+        }
     }
 }
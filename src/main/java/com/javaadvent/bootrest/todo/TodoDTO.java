@@ -21,6 +21,8 @@ public final class TodoDTO {
     @Size(max = Todo.MAX_LENGTH_TITLE)
     private String title;
 
+    private Long version;
+
     public TodoDTO() {
 
     }
@@ -37,6 +39,10 @@ public final class TodoDTO {
         return title;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
     public void setId(String id) {
         this.id = id;
     }
@@ -49,13 +55,39 @@ public final class TodoDTO {
         this.title = title;
     }
 
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return  A new todo entry that has the same information as the given todo entry. The services
+     *          that share todo entries between requests return copies because the todo entries are mutable.
+     */
+    static TodoDTO copyOf(TodoDTO source) {
+        TodoDTO copy = new TodoDTO();
+
+        copy.setId(source.getId());
+        copy.setTitle(source.getTitle());
+        copy.setDescription(source.getDescription());
+        copy.setVersion(source.getVersion());
+
+        return copy;
+    }
+
+    /**
+     * Builds the string in the same way as {@link com.javaadvent.bootrest.todo.Todo#toString()}.
+     */
     @Override
     public String toString() {
-        return String.format(
-                "TodoDTO[id=%s, description=%s, title=%s]",
-                this.id,
-                this.description,
-                this.title
-        );
+        int descriptionLength = description == null ? 4 : description.length();
+        int titleLength = title == null ? 4 : title.length();
+
+        return new StringBuilder(96 + descriptionLength + titleLength)
+                .append("TodoDTO[id=").append(this.id)
+                .append(", description=").append(this.description)
+                .append(", title=").append(this.title)
+                .append(", version=").append(this.version)
+                .append(']')
+                .toString();
     }
 }
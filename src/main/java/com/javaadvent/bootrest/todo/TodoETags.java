@@ -0,0 +1,86 @@
+package com.javaadvent.bootrest.todo;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * This class provides the entity tag support of the todo API. The version of a todo entry is used as a strong
+ * entity tag because the version is increased every time the todo entry is updated.
+ * @author Petri Kainulainen
+ */
+final class TodoETags {
+
+    static final String IF_MATCH = "If-Match";
+    static final String IF_NONE_MATCH = "If-None-Match";
+
+    private static final String ANY_VERSION = "*";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
+    private TodoETags() {}
+
+    /**
+     * @return  Response headers that contain the entity tag of the todo entry. If the todo entry has no
+     *          version, the returned headers are empty.
+     */
+    static HttpHeaders headers(TodoDTO todoEntry) {
+        if (todoEntry == null || todoEntry.getVersion() == null) {
+            return new HttpHeaders();
+        }
+
+        return headers(todoEntry.getVersion());
+    }
+
+    static HttpHeaders headers(long version) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"" + version + "\"");
+        return headers;
+    }
+
+    /**
+     * @return  true if the value of the If-Match header matches every version of a todo entry.
+     */
+    static boolean isAnyVersion(String ifMatch) {
+        return ANY_VERSION.equals(ifMatch.trim());
+    }
+
+    /**
+     * Checks if the value of the If-None-Match header matches the given version. If-None-Match uses the weak
+     * comparison function, which is why weak entity tags are compared as if they were strong.
+     */
+    static boolean matchesAny(String ifNoneMatch, long version) {
+        for (String eTag : ifNoneMatch.split(",")) {
+            String trimmed = eTag.trim();
+
+            if (ANY_VERSION.equals(trimmed)) {
+                return true;
+            }
+
+            if (trimmed.startsWith(WEAK_ETAG_PREFIX)) {
+                trimmed = trimmed.substring(WEAK_ETAG_PREFIX.length());
+            }
+
+            Long parsed = parseVersion(trimmed);
+            if (parsed != null && parsed == version) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return  The version of a strong entity tag or null if the entity tag isn't created by the todo API.
+     */
+    static Long parseVersion(String eTag) {
+        String trimmed = eTag.trim();
+
+        if (trimmed.length() < 3 || trimmed.charAt(0) != '"' || trimmed.charAt(trimmed.length() - 1) != '"') {
+            return null;
+        }
+
+        try {
+            return Long.valueOf(trimmed.substring(1, trimmed.length() - 1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
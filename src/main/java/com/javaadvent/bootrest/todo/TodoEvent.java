@@ -0,0 +1,59 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * Describes a change of a single todo entry. The events are published by
+ * {@link com.javaadvent.bootrest.todo.MongoDBTodoService} after the change has been written to the database.
+ * @author Petri Kainulainen
+ */
+final class TodoEvent {
+
+    enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Type type;
+
+    private final String id;
+
+    private final TodoDTO todo;
+
+    private TodoEvent(Type type, String id, TodoDTO todo) {
+        this.type = type;
+        this.id = id;
+        this.todo = todo;
+    }
+
+    static TodoEvent created(TodoDTO todo) {
+        return new TodoEvent(Type.CREATED, todo.getId(), todo);
+    }
+
+    static TodoEvent updated(TodoDTO todo) {
+        return new TodoEvent(Type.UPDATED, todo.getId(), todo);
+    }
+
+    static TodoEvent deleted(String id) {
+        return new TodoEvent(Type.DELETED, id, null);
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    /**
+     * @return  The information of the created or updated todo entry. Returns null if the todo entry was deleted.
+     */
+    TodoDTO getTodo() {
+        return todo;
+    }
+
+    @Override
+    public String toString() {
+        return "TodoEvent[type=" + type + ", id=" + id + "]";
+    }
+}
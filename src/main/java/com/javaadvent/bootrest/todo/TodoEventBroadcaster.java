@@ -0,0 +1,468 @@
+package com.javaadvent.bootrest.todo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class pushes todo events to the subscribers of the live feed by using the server-sent events format.
+ *
+ * An event is serialized once and the same bytes are queued for every subscriber. Each subscriber has a bounded
+ * queue that is drained by a small pool of writer threads, which means that a node can serve thousands of
+ * subscribers without a thread per subscriber. If the queue of a subscriber is full, the subscriber is too slow
+ * and it is disconnected.
+ *
+ * A subscriber whose write is blocked for longer than the write timeout is disconnected as well, so that a few
+ * stalled clients cannot occupy every writer thread.
+ *
+ * The client can reconnect and send the id of the last event it received. The latest events are kept in memory,
+ * and the missed events are sent again if they are still available. Otherwise, the client receives a reset event
+ * which means that it must load the todo entries again.
+ * @author Petri Kainulainen
+ */
+final class TodoEventBroadcaster implements TodoEventListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TodoEventBroadcaster.class);
+
+    static final String EVENT_RESET = "reset";
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Writes events to one client. The methods of a sink are invoked by one writer thread at a time.
+     */
+    interface EventSink {
+
+        void write(byte[] event) throws IOException;
+
+        void flush() throws IOException;
+
+        /**
+         * Ends the response. This method must not throw an exception if the response has been ended already.
+         */
+        void close();
+
+        /**
+         * Closes the connection while a write is blocked. This method is invoked by another thread than
+         * the writer, and it must make the blocked write fail. It must not throw an exception if the connection
+         * has been closed already.
+         */
+        void abort();
+    }
+
+    private final ObjectMapper objectMapper;
+
+    private final Executor writer;
+
+    private final int bufferSize;
+
+    private final int historySize;
+
+    private final int maxSubscribers;
+
+    private final byte[] retry;
+
+    private final long writeTimeoutNanos;
+
+    /**
+     * The event ids start from 1 every time the application is started. The ids contain the start time
+     * so that an id of a previous run is not mistaken for an id of this run.
+     */
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The subscribers whose events are being written. A dropped subscriber stays here until its blocked write
+     * has returned, which is why these are not looked up from the subscribers.
+     */
+    private final Set<Subscriber> writing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The published events that have not been offered to the subscribers yet. The events are added while
+     * the lock is held, which means that they are in the order of their sequence numbers.
+     */
+    private final Queue<Publication> publications = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Ensures that the events are offered by one thread at a time, and in the order in which they were published.
+     */
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+
+    private final AtomicLong publishedEvents = new AtomicLong();
+
+    private final AtomicLong droppedSubscribers = new AtomicLong();
+
+    private final AtomicLong abortedWrites = new AtomicLong();
+
+    /**
+     * Guards the history and the last sequence number. Publishing and subscribing hold the lock so that
+     * a new subscriber receives every event exactly once: either from the history or from its queue.
+     */
+    private final Object lock = new Object();
+
+    private final ArrayDeque<HistoryEntry> history;
+
+    private long lastSequence;
+
+    /**
+     * @param objectMapper          The object mapper that serializes the todo entries.
+     * @param writer                The executor that writes the events to the subscribers.
+     * @param bufferSize            The number of events that can wait for a subscriber before it is disconnected.
+     * @param historySize           The number of latest events that can be sent again to reconnecting subscribers.
+     * @param maxSubscribers        The maximum number of concurrent subscribers.
+     * @param retryMillis           The time that a client waits before it reconnects.
+     * @param writeTimeoutMillis    The time after which a blocked write is aborted and the subscriber
+     *                              is disconnected.
+     */
+    TodoEventBroadcaster(ObjectMapper objectMapper,
+                         Executor writer,
+                         int bufferSize,
+                         int historySize,
+                         int maxSubscribers,
+                         long retryMillis,
+                         long writeTimeoutMillis) {
+        this.objectMapper = objectMapper;
+        this.writer = writer;
+        this.bufferSize = bufferSize;
+        this.historySize = historySize;
+        this.maxSubscribers = maxSubscribers;
+        this.retry = ("retry: " + retryMillis + "\n\n").getBytes(StandardCharsets.UTF_8);
+        this.history = new ArrayDeque<>(historySize);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+    }
+
+    @Override
+    public void onEvent(TodoEvent event) {
+        String data;
+        try {
+            data = objectMapper.writeValueAsString(event.getTodo() == null
+                    ? Collections.singletonMap("id", event.getId())
+                    : event.getTodo()
+            );
+        } catch (JsonProcessingException ex) {
+            LOGGER.error("Cannot serialize event: {}", event, ex);
+            return;
+        }
+
+        String name = event.getType().name().toLowerCase(Locale.ENGLISH);
+
+        synchronized (lock) {
+            long sequence = ++lastSequence;
+            byte[] encoded = encode(eventId(sequence), name, data);
+
+            if (history.size() == historySize) {
+                history.removeFirst();
+            }
+            history.addLast(new HistoryEntry(sequence, encoded));
+
+            //A subscriber that subscribes after this receives the event from the history.
+            publications.add(new Publication(encoded, subscribers.toArray(new Subscriber[0])));
+        }
+
+        publishedEvents.incrementAndGet();
+        dispatch();
+    }
+
+    /**
+     * Offers the published events to their subscribers. If another thread is offering events already, it offers
+     * the events of this thread as well, and this thread returns immediately.
+     */
+    private void dispatch() {
+        while (!publications.isEmpty() && dispatching.compareAndSet(false, true)) {
+            try {
+                Publication publication;
+                while ((publication = publications.poll()) != null) {
+                    for (Subscriber subscriber : publication.subscribers) {
+                        if (subscriber.offer(publication.event)) {
+                            subscriber.signal();
+                        } else {
+                            drop(subscriber);
+                        }
+                    }
+                }
+            } finally {
+                dispatching.set(false);
+            }
+        }
+    }
+
+    /**
+     * Sends a comment to every subscriber. The comment keeps idle connections open, and it reveals the clients
+     * that have gone away because writing to them fails.
+     */
+    void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.offer(HEARTBEAT)) {
+                subscriber.signal();
+            } else {
+                drop(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Disconnects the subscribers whose write has been blocked for longer than the write timeout. Servlet 3.0
+     * has no non-blocking writes, which is why a blocked write can only be ended by closing the connection.
+     */
+    void abortBlockedWrites() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : writing) {
+            long startedAt = subscriber.writeStartedAt;
+            if (startedAt != 0 && now - startedAt >= writeTimeoutNanos) {
+                LOGGER.debug("Disconnecting a subscriber because writing to it has been blocked for too long");
+                abortedWrites.incrementAndGet();
+                subscriber.abort();
+            }
+        }
+    }
+
+    /**
+     * Starts sending events to a new subscriber.
+     * @param sink          The sink that writes the events to the client.
+     * @param lastEventId   The id of the last event that was received by the client or null if the client
+     *                      is not reconnecting.
+     * @return              The subscriber or null if the maximum number of subscribers has been reached.
+     */
+    Subscriber subscribe(EventSink sink, String lastEventId) {
+        synchronized (lock) {
+            if (subscribers.size() >= maxSubscribers) {
+                return null;
+            }
+
+            Subscriber subscriber = new Subscriber(sink);
+            subscriber.offer(retry);
+
+            if (lastEventId != null) {
+                replay(subscriber, lastEventId);
+            }
+
+            subscribers.add(subscriber);
+            subscriber.signal();
+
+            return subscriber;
+        }
+    }
+
+    /**
+     * Queues the events that the reconnecting subscriber has missed. If the missed events are not available or
+     * they don't fit in the queue of the subscriber, the subscriber receives a reset event instead.
+     */
+    private void replay(Subscriber subscriber, String lastEventId) {
+        long lastSeen = parseSequence(lastEventId);
+        long oldestAvailable = history.isEmpty() ? lastSequence + 1 : history.getFirst().sequence;
+
+        if (lastSeen < 0
+                || lastSeen > lastSequence
+                || lastSeen < oldestAvailable - 1
+                || lastSequence - lastSeen >= bufferSize - 1) {
+            LOGGER.debug("Cannot replay the events after event: {}", lastEventId);
+            subscriber.offer(encode(eventId(lastSequence), EVENT_RESET, "{}"));
+            return;
+        }
+
+        for (HistoryEntry entry : history) {
+            if (entry.sequence > lastSeen) {
+                subscriber.offer(entry.event);
+            }
+        }
+    }
+
+    /**
+     * @return  The sequence number of the given event id or -1 if the id wasn't created by this broadcaster.
+     */
+    private long parseSequence(String eventId) {
+        int separator = eventId.indexOf('-');
+        if (separator < 0 || !epoch.equals(eventId.substring(0, separator))) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private static byte[] encode(String id, String name, String data) {
+        return new StringBuilder(32 + id.length() + name.length() + data.length())
+                .append("id: ").append(id)
+                .append("\nevent: ").append(name)
+                .append("\ndata: ").append(data)
+                .append("\n\n")
+                .toString()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void drop(Subscriber subscriber) {
+        if (subscribers.contains(subscriber)) {
+            LOGGER.debug("Disconnecting a subscriber because it cannot keep up with the events");
+            droppedSubscribers.incrementAndGet();
+            subscriber.close();
+        }
+    }
+
+    /**
+     * Disconnects all subscribers.
+     */
+    void shutdown() {
+        subscribers.forEach(Subscriber::close);
+    }
+
+    int subscriberCount() {
+        return subscribers.size();
+    }
+
+    long publishedEventCount() {
+        return publishedEvents.get();
+    }
+
+    long droppedSubscriberCount() {
+        return droppedSubscribers.get();
+    }
+
+    long abortedWriteCount() {
+        return abortedWrites.get();
+    }
+
+    /**
+     * A subscriber of the live feed. The events of a subscriber are written by at most one writer thread
+     * at a time, and the writing is scheduled only when the subscriber has queued events.
+     */
+    final class Subscriber {
+
+        private final EventSink sink;
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(bufferSize);
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean closed;
+
+        /**
+         * The value of System.nanoTime() when the current write was started or 0 if no write is in progress.
+         */
+        private volatile long writeStartedAt;
+
+        private Subscriber(EventSink sink) {
+            this.sink = sink;
+        }
+
+        private boolean offer(byte[] event) {
+            return !closed && queue.offer(event);
+        }
+
+        private void signal() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writer.execute(this::drain);
+                } catch (RejectedExecutionException ex) {
+                    LOGGER.warn("Cannot write events because the writer has been shut down");
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Stops sending events to this subscriber and ends its response. This method can be invoked
+         * more than once.
+         */
+        void close() {
+            subscribers.remove(this);
+            closed = true;
+            signal();
+        }
+
+        private void abort() {
+            subscribers.remove(this);
+            closed = true;
+            sink.abort();
+        }
+
+        private void drain() {
+            writing.add(this);
+            try {
+                byte[] event;
+                while (!closed && (event = queue.poll()) != null) {
+                    startWrite();
+                    sink.write(event);
+                }
+                if (!closed) {
+                    startWrite();
+                    sink.flush();
+                }
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.debug("Cannot write events to a subscriber", ex);
+                subscribers.remove(this);
+                closed = true;
+            } finally {
+                writeStartedAt = 0;
+                writing.remove(this);
+            }
+
+            //The scheduled flag stays set, which means that a closed subscriber is never drained again.
+            if (closed) {
+                queue.clear();
+                sink.close();
+                return;
+            }
+
+            scheduled.set(false);
+            if (!queue.isEmpty() || closed) {
+                signal();
+            }
+        }
+
+        private void startWrite() {
+            //Zero means that no write is in progress.
+            long now = System.nanoTime();
+            writeStartedAt = now == 0 ? 1 : now;
+        }
+    }
+
+    private static final class Publication {
+
+        private final byte[] event;
+
+        private final Subscriber[] subscribers;
+
+        private Publication(byte[] event, Subscriber[] subscribers) {
+            this.event = event;
+            this.subscribers = subscribers;
+        }
+    }
+
+    private static final class HistoryEntry {
+
+        private final long sequence;
+
+        private final byte[] event;
+
+        private HistoryEntry(long sequence, byte[] event) {
+            this.sequence = sequence;
+            this.event = event;
+        }
+    }
+}
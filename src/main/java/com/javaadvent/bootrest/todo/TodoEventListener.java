@@ -0,0 +1,18 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This interface declares the method that is invoked when a todo entry is created, updated or deleted.
+ * The method is invoked by the thread that changed the todo entry, which is why an implementation
+ * must not block.
+ * @author Petri Kainulainen
+ */
+@FunctionalInterface
+interface TodoEventListener {
+
+    /**
+     * A listener that ignores all events.
+     */
+    TodoEventListener NONE = event -> { };
+
+    void onEvent(TodoEvent event);
+}
@@ -0,0 +1,128 @@
+package com.javaadvent.bootrest.todo;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * This class contains the fields of a todo entry that are requested by the client. A client that
+ * doesn't need all fields can leave out the large ones, and the fields that were not requested are
+ * neither read from the database nor written to the response.
+ *
+ * The id is always included because a todo entry cannot be identified without it.
+ * @author Petri Kainulainen
+ */
+final class TodoFields {
+
+    enum Field {
+        ID("id"),
+        DESCRIPTION("description"),
+        TITLE("title"),
+        VERSION("version");
+
+        private final String fieldName;
+
+        Field(String fieldName) {
+            this.fieldName = fieldName;
+        }
+
+        /**
+         * @return  The name of the field. The name is used in the fields parameter, in the JSON document, and
+         *          as the property name of {@link com.javaadvent.bootrest.todo.Todo}.
+         */
+        String getName() {
+            return fieldName;
+        }
+    }
+
+    static final TodoFields ALL = new TodoFields(EnumSet.allOf(Field.class));
+
+    private final Set<Field> fields;
+
+    private TodoFields(Set<Field> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Parses the value of the fields parameter.
+     * @param value The comma separated names of the requested fields.
+     * @return      The requested fields and the id.
+     * @throws com.javaadvent.bootrest.todo.UnknownTodoFieldException if a field is unknown.
+     */
+    static TodoFields parse(String value) {
+        Set<Field> requested = EnumSet.of(Field.ID);
+
+        for (String name : value.split(",")) {
+            String trimmed = name.trim();
+            if (!trimmed.isEmpty()) {
+                requested.add(findField(trimmed));
+            }
+        }
+
+        return requested.size() == Field.values().length ? ALL : new TodoFields(requested);
+    }
+
+    private static Field findField(String name) {
+        for (Field field : Field.values()) {
+            if (field.fieldName.equals(name)) {
+                return field;
+            }
+        }
+        throw new UnknownTodoFieldException(name);
+    }
+
+    Set<Field> getFields() {
+        return Collections.unmodifiableSet(fields);
+    }
+
+    boolean includes(Field field) {
+        return fields.contains(field);
+    }
+
+    boolean isAll() {
+        return fields.size() == Field.values().length;
+    }
+
+    /**
+     * Copies the requested fields of the given todo entry to a map. The fields are written to the JSON
+     * document in the same order as the fields of {@link com.javaadvent.bootrest.todo.TodoDTO}.
+     */
+    Map<String, Object> project(TodoDTO todoEntry) {
+        Map<String, Object> projected = new LinkedHashMap<>(8);
+
+        for (Field field : fields) {
+            projected.put(field.fieldName, valueOf(field, todoEntry));
+        }
+
+        return projected;
+    }
+
+    List<Map<String, Object>> project(List<TodoDTO> todoEntries) {
+        return todoEntries.stream()
+                .map(this::project)
+                .collect(toList());
+    }
+
+    private static Object valueOf(Field field, TodoDTO todoEntry) {
+        switch (field) {
+            case ID:
+                return todoEntry.getId();
+            case DESCRIPTION:
+                return todoEntry.getDescription();
+            case TITLE:
+                return todoEntry.getTitle();
+            default:
+                return todoEntry.getVersion();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return fields.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package com.javaadvent.bootrest.todo;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * This data transfer object contains the ids of the todo entries that are
+ * deleted by using a single request.
+ * @author Petri Kainulainen
+ */
+public final class TodoIdBatchDTO {
+
+    @NotEmpty
+    @Size(max = TodoBatchDTO.MAX_SIZE)
+    private List<String> ids;
+
+    public TodoIdBatchDTO() {
+
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<String> ids) {
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,13 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This exception is thrown when a request waits for the request that uses the same idempotency key
+ * longer than it is allowed to. The client should try again later with the same key.
+ * @author Petri Kainulainen
+ */
+public class TodoIdempotencyKeyInUseException extends RuntimeException {
+
+    public TodoIdempotencyKeyInUseException(String key) {
+        super(String.format("The request that uses the idempotency key: <%s> has not finished", key));
+    }
+}
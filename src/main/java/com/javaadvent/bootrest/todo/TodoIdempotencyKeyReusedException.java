@@ -0,0 +1,13 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This exception is thrown when a client sends an idempotency key that has already been used
+ * by a request which created a todo entry with different information.
+ * @author Petri Kainulainen
+ */
+public class TodoIdempotencyKeyReusedException extends RuntimeException {
+
+    public TodoIdempotencyKeyReusedException(String key) {
+        super(String.format("The idempotency key: <%s> has been used with different information", key));
+    }
+}
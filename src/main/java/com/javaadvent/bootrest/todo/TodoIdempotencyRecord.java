@@ -0,0 +1,101 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.mongo.MongoIndex;
+import org.springframework.data.annotation.Id;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * An idempotency record remembers the todo entry that was created by the first request which used
+ * an idempotency key, and the information of that request. A request that uses the same key gets the
+ * same todo entry as long as the record exists. MongoDB deletes a record when it is older than
+ * {@link #RETENTION_SECONDS}.
+ *
+ * A record that has no todo entry is a reservation. It is inserted before the todo entry is created so that
+ * the instances which receive the same key at the same time create only one todo entry.
+ * @author Petri Kainulainen
+ */
+@MongoIndex(name = "createdAt_ttl", keys = "{'createdAt': 1}", expireAfterSeconds = TodoIdempotencyRecord.RETENTION_SECONDS)
+final class TodoIdempotencyRecord {
+
+    /**
+     * A client that retries a create after this must use a new idempotency key.
+     */
+    static final long RETENTION_SECONDS = 24L * 60 * 60;
+
+    @Id
+    private String key;
+
+    private String requestTitle;
+
+    private String requestDescription;
+
+    private String todoId;
+
+    private String todoTitle;
+
+    private String todoDescription;
+
+    private Long todoVersion;
+
+    private Date createdAt;
+
+    TodoIdempotencyRecord() {}
+
+    TodoIdempotencyRecord(String key, TodoDTO request, Date createdAt) {
+        this.key = key;
+        this.requestTitle = request.getTitle();
+        this.requestDescription = request.getDescription();
+        this.createdAt = createdAt;
+    }
+
+    TodoIdempotencyRecord(String key, TodoDTO request, TodoDTO created, Date createdAt) {
+        this.key = key;
+        this.requestTitle = request.getTitle();
+        this.requestDescription = request.getDescription();
+        this.todoId = created.getId();
+        this.todoTitle = created.getTitle();
+        this.todoDescription = created.getDescription();
+        this.todoVersion = created.getVersion();
+        this.createdAt = createdAt;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return  true if the todo entry is still being created and false otherwise.
+     */
+    boolean isReservation() {
+        return todoId == null;
+    }
+
+    /**
+     * @param request   The information of a request that uses the key of this record.
+     * @return          true if the request has the same information as the request that created
+     *                  the todo entry.
+     */
+    boolean matches(TodoDTO request) {
+        return Objects.equals(requestTitle, request.getTitle())
+                && Objects.equals(requestDescription, request.getDescription());
+    }
+
+    /**
+     * @return  A new copy of the created todo entry because {@link com.javaadvent.bootrest.todo.TodoDTO}
+     *          objects are mutable.
+     */
+    TodoDTO toCreated() {
+        TodoDTO created = new TodoDTO();
+        created.setId(todoId);
+        created.setTitle(todoTitle);
+        created.setDescription(todoDescription);
+        created.setVersion(todoVersion);
+        return created;
+    }
+}
@@ -0,0 +1,329 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.javaadvent.bootrest.util.ExpiringLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * This class ensures that the requests which use the same idempotency key create only one todo entry.
+ * The first request creates the todo entry, and the other requests get a copy of it:
+ * <ul>
+ *     <li>
+ *         A request that arrives while the first request is running waits for its result. If the first
+ *         request fails, the waiting requests fail too, and the key can be used again.
+ *     </li>
+ *     <li>
+ *         A request that arrives later replays the created todo entry from a bounded in-memory store whose
+ *         entries expire after a fixed time to live.
+ *     </li>
+ *     <li>
+ *         If MongoDB operations are given, the key is reserved by inserting a record into MongoDB before the todo
+ *         entry is created, and the record is completed with the created todo entry. A request whose key is not
+ *         found from memory, because the record has been evicted, the application has been restarted, or the first
+ *         request was processed by another instance, replays the record that is read from MongoDB. If the key is
+ *         reserved by a request that is still running on another instance, the request is rejected with
+ *         {@link com.javaadvent.bootrest.todo.TodoIdempotencyKeyInUseException}, and the client can try again.
+ *     </li>
+ * </ul>
+ * A request that uses the key with different information is rejected with
+ * {@link com.javaadvent.bootrest.todo.TodoIdempotencyKeyReusedException}.
+ *
+ * The requests that run at the same time wait for each other only within one instance. MongoDB is used only
+ * when the key is not found from memory, and {@link #createAsync(String, TodoDTO, Executor, Supplier)} uses it
+ * in the given executor so that the calling thread is not blocked.
+ * @author Petri Kainulainen
+ */
+final class TodoIdempotencyStore {
+
+    /**
+     * The request header that contains the idempotency key chosen by the client.
+     */
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TodoIdempotencyStore.class);
+
+    private static final long RETENTION_MILLIS = TimeUnit.SECONDS.toMillis(TodoIdempotencyRecord.RETENTION_SECONDS);
+
+    /**
+     * A reservation that has not been completed in this time is abandoned because the instance that reserved
+     * the key has crashed, and the key can be reserved again.
+     */
+    private static final long RESERVATION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ExpiringLruCache<String, TodoIdempotencyRecord> records;
+
+    private final ConcurrentMap<String, CompletableFuture<TodoIdempotencyRecord>> running = new ConcurrentHashMap<>();
+
+    private final long waitTimeoutMillis;
+
+    private final MongoOperations mongoOperations;
+
+    private final LongSupplier clock;
+
+    private final Meter replayed;
+
+    private final Meter waited;
+
+    /**
+     * @param maxSize               The maximum number of records that are kept in memory.
+     * @param timeToLiveSeconds     The time after which a record is removed from memory.
+     * @param waitTimeoutMillis     The time that {@link #create(String, TodoDTO, Supplier)} waits for
+     *                              the request that uses the same key.
+     * @param mongoOperations       The operations that store the records in MongoDB, or null if the records
+     *                              are kept only in memory.
+     * @param clock                 Returns the current time in milliseconds.
+     * @param metricRegistry        The registry of the idempotency metrics.
+     */
+    TodoIdempotencyStore(int maxSize,
+                         long timeToLiveSeconds,
+                         long waitTimeoutMillis,
+                         MongoOperations mongoOperations,
+                         LongSupplier clock,
+                         MetricRegistry metricRegistry) {
+        this.records = new ExpiringLruCache<>(maxSize, timeToLiveSeconds, TimeUnit.SECONDS);
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.mongoOperations = mongoOperations;
+        this.clock = clock;
+
+        this.replayed = metricRegistry.meter("todo.idempotency.replayed");
+        this.waited = metricRegistry.meter("todo.idempotency.waited");
+        metricRegistry.register("todo.idempotency.size", (Gauge<Integer>) records::size);
+        metricRegistry.register("todo.idempotency.running", (Gauge<Integer>) running::size);
+    }
+
+    /**
+     * Creates a new todo entry unless it has already been created by using the given key. If a request
+     * that uses the same key is running, this method waits for its result.
+     * @param key       The idempotency key sent by the client.
+     * @param request   The information of the created todo entry.
+     * @param creator   Creates the todo entry when it has not been created.
+     * @return          The created todo entry.
+     * @throws com.javaadvent.bootrest.todo.TodoIdempotencyKeyReusedException   If the key has been used with
+     *                                                                          different information.
+     * @throws com.javaadvent.bootrest.todo.TodoIdempotencyKeyInUseException    If the running request doesn't
+     *                                                                          finish before the wait timeout.
+     */
+    TodoDTO create(String key, TodoDTO request, Supplier<TodoDTO> creator) {
+        CompletableFuture<TodoDTO> created = createAsync(key,
+                request,
+                Runnable::run,
+                () -> CompletableFuture.completedFuture(creator.get())
+        );
+
+        try {
+            return created.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            throw new TodoIdempotencyKeyInUseException(key);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TodoIdempotencyKeyInUseException(key);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Creates a new todo entry unless it has already been created by using the given key. The returned
+     * future is completed when the request that uses the same key has finished.
+     * @param key       The idempotency key sent by the client.
+     * @param request   The information of the created todo entry.
+     * @param executor  Reserves the key in MongoDB, which blocks the thread until MongoDB responds.
+     * @param creator   Starts creating the todo entry when it has not been created.
+     * @return          The future that is completed with the created todo entry.
+     * @throws com.javaadvent.bootrest.todo.TodoIdempotencyKeyReusedException   If the key has been used with
+     *                                                                          different information.
+     */
+    CompletableFuture<TodoDTO> createAsync(String key,
+                                           TodoDTO request,
+                                           Executor executor,
+                                           Supplier<CompletableFuture<TodoDTO>> creator) {
+        TodoIdempotencyRecord record = records.get(key);
+        if (record != null) {
+            TodoDTO created = replay(key, record, request);
+            replayed.mark();
+            return CompletableFuture.completedFuture(created);
+        }
+
+        CompletableFuture<TodoIdempotencyRecord> first = new CompletableFuture<>();
+        CompletableFuture<TodoIdempotencyRecord> other = running.putIfAbsent(key, first);
+        if (other != null) {
+            LOGGER.debug("Waiting for the request that uses the idempotency key: {}", key);
+            waited.mark();
+            return other.thenApply(completed -> replay(key, completed, request));
+        }
+
+        //Without MongoDB the key is reserved in memory, which is cheaper than handing it over to the executor.
+        Executor reserving = mongoOperations != null ? executor : Runnable::run;
+        CompletableFuture<TodoIdempotencyRecord> created;
+        try {
+            created = CompletableFuture.supplyAsync(() -> reserve(key, request), reserving)
+                    .thenCompose(reserved -> {
+                        if (reserved == null) {
+                            return createReserved(key, request, creator);
+                        }
+                        replayed.mark();
+                        return CompletableFuture.completedFuture(reserved);
+                    });
+        } catch (RuntimeException ex) {
+            created = new CompletableFuture<>();
+            created.completeExceptionally(ex);
+        }
+
+        //The record is in memory before the key is released, which means that the next request replays it.
+        return created.whenComplete((completed, ex) -> {
+            running.remove(key, first);
+            if (ex == null) {
+                first.complete(completed);
+            } else {
+                first.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        }).thenApply(completed -> replay(key, completed, request));
+    }
+
+    /**
+     * Finds the record again because it might have been stored after the first lookup. If it is not found
+     * from memory, the key is reserved in MongoDB.
+     * @return  The record of the key or null if the key was reserved for this request.
+     * @throws com.javaadvent.bootrest.todo.TodoIdempotencyKeyInUseException   If the key is reserved by
+     *                                                                          a request that is still running.
+     */
+    private TodoIdempotencyRecord reserve(String key, TodoDTO request) {
+        TodoIdempotencyRecord record = records.get(key);
+        if (record != null || mongoOperations == null) {
+            return record;
+        }
+
+        long now = clock.getAsLong();
+        try {
+            mongoOperations.insert(new TodoIdempotencyRecord(key, request, new Date(now)));
+            return null;
+        } catch (DuplicateKeyException ex) {
+            LOGGER.debug("The idempotency key: {} has been reserved already", key);
+        }
+
+        record = mongoOperations.findById(key, TodoIdempotencyRecord.class);
+        if (record == null) {
+            //The request that reserved the key failed after the insert.
+            throw new TodoIdempotencyKeyInUseException(key);
+        }
+
+        long createdAt = record.getCreatedAt().getTime();
+        //MongoDB deletes the expired records only once per minute.
+        boolean expired = createdAt < now - RETENTION_MILLIS;
+        if (!record.isReservation() && !expired) {
+            records.put(key, record);
+            return record;
+        }
+
+        boolean abandoned = record.isReservation() && createdAt < now - RESERVATION_TIMEOUT_MILLIS;
+        if (!expired && !abandoned) {
+            //The key is reserved by a request that is still running on another instance.
+            replay(key, record, request);
+            throw new TodoIdempotencyKeyInUseException(key);
+        }
+
+        //Only one of the instances that find the same expired record can take it over.
+        Query expiredRecord = query(where("_id").is(key).and("createdAt").is(record.getCreatedAt()));
+        Update reservation = new Update()
+                .set("requestTitle", request.getTitle())
+                .set("requestDescription", request.getDescription())
+                .set("createdAt", new Date(now))
+                .unset("todoId")
+                .unset("todoTitle")
+                .unset("todoDescription")
+                .unset("todoVersion");
+        if (mongoOperations.updateFirst(expiredRecord, reservation, TodoIdempotencyRecord.class).getN() == 0) {
+            throw new TodoIdempotencyKeyInUseException(key);
+        }
+        return null;
+    }
+
+    /**
+     * Creates the todo entry. If the creation fails, the reservation of the key is removed so that the key
+     * can be used again.
+     */
+    private CompletableFuture<TodoIdempotencyRecord> createReserved(String key,
+                                                                    TodoDTO request,
+                                                                    Supplier<CompletableFuture<TodoDTO>> creator) {
+        CompletableFuture<TodoDTO> created;
+        try {
+            created = creator.get();
+        } catch (RuntimeException ex) {
+            created = new CompletableFuture<>();
+            created.completeExceptionally(ex);
+        }
+
+        return created.handle((todoEntry, ex) -> {
+            if (ex != null) {
+                release(key);
+                throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+            }
+            return remember(key, request, todoEntry);
+        });
+    }
+
+    private void release(String key) {
+        if (mongoOperations == null) {
+            return;
+        }
+
+        try {
+            mongoOperations.remove(query(where("_id").is(key).and("todoId").is(null)), TodoIdempotencyRecord.class);
+        } catch (DataAccessException ex) {
+            LOGGER.warn("Could not release the idempotency key: {}", key, ex);
+        }
+    }
+
+    private TodoIdempotencyRecord remember(String key, TodoDTO request, TodoDTO created) {
+        TodoIdempotencyRecord record = new TodoIdempotencyRecord(key, request, created, new Date(clock.getAsLong()));
+        records.put(key, record);
+
+        if (mongoOperations != null) {
+            //The todo entry has been created, which is why the request must not fail.
+            try {
+                mongoOperations.save(record);
+            } catch (DataAccessException ex) {
+                LOGGER.warn("Could not complete the idempotency record with key: {}", key, ex);
+            }
+        }
+
+        return record;
+    }
+
+    private static TodoDTO replay(String key, TodoIdempotencyRecord record, TodoDTO request) {
+        if (!record.matches(request)) {
+            throw new TodoIdempotencyKeyReusedException(key);
+        }
+        return record.toCreated();
+    }
+}
@@ -0,0 +1,689 @@
+package com.javaadvent.bootrest.todo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * This class stores the writes of {@link com.javaadvent.bootrest.todo.InMemoryTodoRepository} in an append-only
+ * log file that is mapped to memory. A record contains the new state of a todo entry, the id of a removed todo
+ * entry, or a tombstone. The log keeps an index that maps the id of a todo entry to the offset of its latest
+ * record, and the records that are not found from the index are garbage.
+ *
+ * <ul>
+ *     <li>
+ *         A record starts with its length and a CRC32 checksum. When the log is opened, its records are read
+ *         until the first record that is not complete. The rest of the file is cleared because it contains
+ *         a write that was interrupted by a crash.
+ *     </li>
+ *     <li>
+ *         The compaction copies the live records to a new file that replaces the log by using an atomic rename.
+ *         If the application crashes during the compaction, the old log is used.
+ *     </li>
+ *     <li>
+ *         The records are written to the disk according to the {@link FsyncPolicy}. When the policy is ALWAYS,
+ *         one of the waiting writers syncs the log and the others wait for it. This means that the writes that
+ *         arrive during a sync are synced together by the next sync.
+ *     </li>
+ * </ul>
+ *
+ * The log file cannot be larger than 2 GB because it is mapped to one buffer.
+ * @author Petri Kainulainen
+ */
+final class TodoLog implements InMemoryTodoRepository.Journal, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TodoLog.class);
+
+    private static final int MAGIC = 0x544f444f;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte TOMBSTONE = 3;
+
+    private static final long TOMBSTONE_RETENTION_MILLIS = TimeUnit.SECONDS.toMillis(TodoTombstone.RETENTION_SECONDS);
+
+    /**
+     * Specifies when the written records are synced to the disk.
+     */
+    enum FsyncPolicy {
+
+        /**
+         * A write returns after its record has been synced. Concurrent writes share one sync.
+         */
+        ALWAYS,
+
+        /**
+         * The log is synced periodically. A crash of the operating system can lose the latest writes.
+         */
+        INTERVAL,
+
+        /**
+         * The operating system decides when the log is written to the disk. A crash of the application
+         * doesn't lose writes, but a crash of the operating system can.
+         */
+        NEVER
+    }
+
+    private final Path path;
+
+    private final FsyncPolicy fsyncPolicy;
+
+    private final int initialSize;
+
+    private final LongSupplier clock;
+
+    /**
+     * Guards the file, the position, and the indexes. The records are appended while holding this lock.
+     */
+    private final Object lock = new Object();
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    private int position = FILE_HEADER_SIZE;
+
+    /**
+     * The number of bytes that have been appended since the log was opened. Unlike the position, it doesn't
+     * go back when the log is compacted, which is why the syncs are tracked by using it.
+     */
+    private long appendedBytes;
+
+    private Map<String, Integer> offsets = new HashMap<>();
+
+    private Map<String, Integer> tombstoneOffsets = new HashMap<>();
+
+    private long liveBytes;
+
+    private boolean closed;
+
+    private final Object syncMonitor = new Object();
+
+    private boolean syncing;
+
+    private long syncedBytes;
+
+    private final AtomicLong syncs = new AtomicLong();
+
+    private final AtomicLong compactions = new AtomicLong();
+
+    private TodoLog(Path path, FsyncPolicy fsyncPolicy, int initialSize, LongSupplier clock) {
+        this.path = path;
+        this.fsyncPolicy = fsyncPolicy;
+        this.initialSize = Math.max(initialSize, FILE_HEADER_SIZE);
+        this.clock = clock;
+    }
+
+    /**
+     * Opens the log file or creates it if it doesn't exist. The records of the log must be read by invoking
+     * {@link #recover(InMemoryTodoRepository.Journal)} before new records are written.
+     * @param path          The path of the log file.
+     * @param fsyncPolicy   The policy that specifies when the records are synced to the disk.
+     * @param initialSize   The initial size of the log file in bytes. The file grows when it is full.
+     * @param clock         The clock that is used to find the expired tombstones.
+     * @return              The opened log.
+     * @throws IOException  If the file cannot be opened or if it is not a log file.
+     */
+    static TodoLog open(Path path, FsyncPolicy fsyncPolicy, int initialSize, LongSupplier clock) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Files.deleteIfExists(compactionPathOf(path));
+
+        TodoLog log = new TodoLog(path, fsyncPolicy, initialSize, clock);
+        log.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+
+        try {
+            long size = log.channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The todo log is larger than 2 GB: " + path);
+            }
+
+            log.buffer = log.channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, log.initialSize));
+            if (size == 0) {
+                writeFileHeader(log.buffer);
+                log.buffer.force();
+            } else if (size < FILE_HEADER_SIZE
+                    || log.buffer.getInt(0) != MAGIC
+                    || log.buffer.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("The file is not a todo log: " + path);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.channel.close();
+            throw ex;
+        }
+
+        return log;
+    }
+
+    /**
+     * Reads the records of the log and passes them to the given journal. The records that follow the last
+     * complete record are cleared.
+     * @param target    The journal that receives the records.
+     */
+    void recover(InMemoryTodoRepository.Journal target) {
+        synchronized (lock) {
+            int offset = FILE_HEADER_SIZE;
+            int capacity = buffer.capacity();
+
+            while (capacity - offset >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || length > capacity - offset - RECORD_HEADER_SIZE) {
+                    break;
+                }
+
+                ByteBuffer body = body(offset, length);
+                if (checksum(body.duplicate()) != buffer.getInt(offset + 4)) {
+                    break;
+                }
+
+                replay(body, offset, target);
+                offset += RECORD_HEADER_SIZE + length;
+            }
+
+            position = offset;
+            clearTail();
+        }
+    }
+
+    private void replay(ByteBuffer body, int offset, InMemoryTodoRepository.Journal target) {
+        byte type = body.get();
+        String id = getString(body);
+
+        switch (type) {
+            case PUT:
+                long version = body.getLong();
+                long lastModified = body.getLong();
+                String title = getString(body);
+                String description = getString(body);
+                updateIndex(offsets, id, offset);
+                target.put(id, title, description, version, lastModified);
+                break;
+            case REMOVE:
+                updateIndex(offsets, id, -1);
+                target.remove(id);
+                break;
+            case TOMBSTONE:
+                long deletedAt = body.getLong();
+                updateIndex(tombstoneOffsets, id, offset);
+                target.tombstones(Collections.singletonList(id), deletedAt);
+                break;
+            default:
+                throw new DataAccessResourceFailureException(String.format(
+                        "Unknown record type: %d at offset: %d of the todo log: %s", type, offset, path
+                ));
+        }
+    }
+
+    /**
+     * Clears the bytes that follow the last complete record. If they were left in place, a record that is
+     * appended later could end right before an old record, and the old record would be read again when
+     * the log is opened.
+     */
+    private void clearTail() {
+        int end = buffer.capacity();
+        while (end > position && buffer.get(end - 1) == 0) {
+            end--;
+        }
+
+        if (end > position) {
+            LOGGER.warn("Discarding {} bytes that follow the last complete record of the todo log: {}",
+                    end - position,
+                    path
+            );
+            for (int index = position; index < end; index++) {
+                buffer.put(index, (byte) 0);
+            }
+            buffer.force();
+        }
+    }
+
+    @Override
+    public void put(String id, String title, String description, long version, long lastModified) {
+        byte[] idBytes = bytesOf(id);
+        byte[] titleBytes = bytesOf(title);
+        byte[] descriptionBytes = bytesOf(description);
+
+        ByteBuffer body = ByteBuffer.allocate(1
+                + sizeOf(idBytes)
+                + 16
+                + sizeOf(titleBytes)
+                + sizeOf(descriptionBytes)
+        );
+        body.put(PUT);
+        putString(body, idBytes);
+        body.putLong(version);
+        body.putLong(lastModified);
+        putString(body, titleBytes);
+        putString(body, descriptionBytes);
+
+        synchronized (lock) {
+            updateIndex(offsets, id, append(body.array()));
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        byte[] idBytes = bytesOf(id);
+
+        ByteBuffer body = ByteBuffer.allocate(1 + sizeOf(idBytes));
+        body.put(REMOVE);
+        putString(body, idBytes);
+
+        synchronized (lock) {
+            append(body.array());
+            updateIndex(offsets, id, -1);
+        }
+    }
+
+    @Override
+    public void tombstones(List<String> ids, long deletedAt) {
+        synchronized (lock) {
+            for (String id : ids) {
+                byte[] idBytes = bytesOf(id);
+
+                ByteBuffer body = ByteBuffer.allocate(1 + sizeOf(idBytes) + 8);
+                body.put(TOMBSTONE);
+                putString(body, idBytes);
+                body.putLong(deletedAt);
+
+                updateIndex(tombstoneOffsets, id, append(body.array()));
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the log. This method must be invoked while holding the lock.
+     * @return  The offset of the record.
+     */
+    private int append(byte[] body) {
+        if (closed) {
+            throw new DataAccessResourceFailureException("The todo log is closed: " + path);
+        }
+
+        int size = RECORD_HEADER_SIZE + body.length;
+        ensureCapacity(size);
+
+        int offset = position;
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.put(body);
+        buffer.putInt(offset + 4, checksum(ByteBuffer.wrap(body)));
+        buffer.putInt(offset, body.length);
+
+        position += size;
+        appendedBytes += size;
+
+        return offset;
+    }
+
+    /**
+     * Maps a larger part of the file if the record doesn't fit in the mapped buffer. The size of the buffer
+     * is doubled so that the file is not mapped again for every record.
+     */
+    private void ensureCapacity(int recordSize) {
+        if (buffer.capacity() - position >= recordSize) {
+            return;
+        }
+
+        long required = (long) position + recordSize;
+        if (required > Integer.MAX_VALUE) {
+            throw new DataAccessResourceFailureException("The todo log cannot grow beyond 2 GB: " + path);
+        }
+
+        long capacity = Math.min(Math.max(2L * buffer.capacity(), required), Integer.MAX_VALUE);
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                buffer.force();
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("Cannot grow the todo log: " + path, ex);
+        }
+    }
+
+    /**
+     * Points the id to the given offset and updates the number of live bytes. This method must be invoked while
+     * holding the lock.
+     * @param offset    The offset of the latest record or -1 if the id has no live record.
+     */
+    private void updateIndex(Map<String, Integer> index, String id, int offset) {
+        Integer previous = offset < 0 ? index.remove(id) : index.put(id, offset);
+        if (previous != null) {
+            liveBytes -= recordSizeAt(previous);
+        }
+        if (offset >= 0) {
+            liveBytes += recordSizeAt(offset);
+        }
+    }
+
+    private int recordSizeAt(int offset) {
+        return RECORD_HEADER_SIZE + buffer.getInt(offset);
+    }
+
+    /**
+     * Returns after the records that were appended before this method was invoked have been synced to the disk.
+     * If the fsync policy is not ALWAYS, this method returns immediately.
+     */
+    void commit() {
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            sync();
+        }
+    }
+
+    /**
+     * Syncs the appended records to the disk. If another thread is syncing the log, this method waits for it
+     * and syncs the log only if the records that were appended before this method was invoked are not synced
+     * yet. This means that the writers that arrive during a sync are synced together.
+     */
+    void sync() {
+        long target;
+        synchronized (lock) {
+            target = appendedBytes;
+        }
+
+        while (true) {
+            synchronized (syncMonitor) {
+                while (syncing && syncedBytes < target) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new DataAccessResourceFailureException("Interrupted while syncing the todo log", ex);
+                    }
+                }
+
+                if (syncedBytes >= target) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            long synced = 0;
+            try {
+                synced = force();
+            } finally {
+                synchronized (syncMonitor) {
+                    syncing = false;
+                    syncedBytes = Math.max(syncedBytes, synced);
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return  The number of appended bytes that were synced.
+     */
+    private long force() {
+        MappedByteBuffer forced;
+        long forcedBytes;
+        synchronized (lock) {
+            if (closed) {
+                throw new DataAccessResourceFailureException("The todo log is closed: " + path);
+            }
+            forced = buffer;
+            forcedBytes = appendedBytes;
+        }
+
+        forced.force();
+        syncs.incrementAndGet();
+
+        return forcedBytes;
+    }
+
+    /**
+     * Compacts the log if the garbage records take at least the given share of the log.
+     * @param minGarbageRatio   The minimum share of the garbage records between 0 and 1.
+     * @return                  true if the log was compacted and false otherwise.
+     */
+    boolean compactIfNeeded(double minGarbageRatio) {
+        synchronized (lock) {
+            long recordBytes = position - FILE_HEADER_SIZE;
+            if (recordBytes == 0 || (recordBytes - liveBytes) < minGarbageRatio * recordBytes) {
+                return false;
+            }
+
+            compact();
+            return true;
+        }
+    }
+
+    /**
+     * Copies the live records to a new file and replaces the log with it. The expired tombstones are not copied.
+     * The writes wait until the compaction has finished, which means that the writes pause for the time that
+     * it takes to copy every live record.
+     */
+    void compact() {
+        synchronized (lock) {
+            if (closed) {
+                throw new DataAccessResourceFailureException("The todo log is closed: " + path);
+            }
+
+            Path compactionPath = compactionPathOf(path);
+            FileChannel compactedChannel = null;
+
+            try {
+                compactedChannel = FileChannel.open(compactionPath,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE
+                );
+
+                long capacity = Math.min(Math.max((long) initialSize, FILE_HEADER_SIZE + 2 * liveBytes),
+                        Integer.MAX_VALUE
+                );
+                MappedByteBuffer compacted = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                writeFileHeader(compacted);
+                compacted.position(FILE_HEADER_SIZE);
+
+                Map<String, Integer> compactedOffsets = new HashMap<>(offsets.size() * 2);
+                for (Map.Entry<String, Integer> live : offsets.entrySet()) {
+                    compactedOffsets.put(live.getKey(), copyRecord(live.getValue(), compacted));
+                }
+
+                long expiredBefore = clock.getAsLong() - TOMBSTONE_RETENTION_MILLIS;
+                Map<String, Integer> compactedTombstoneOffsets = new HashMap<>(tombstoneOffsets.size() * 2);
+                for (Map.Entry<String, Integer> tombstone : tombstoneOffsets.entrySet()) {
+                    if (deletedAtOf(tombstone.getValue()) >= expiredBefore) {
+                        compactedTombstoneOffsets.put(tombstone.getKey(), copyRecord(tombstone.getValue(), compacted));
+                    }
+                }
+
+                compacted.force();
+                Files.move(compactionPath, path, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+
+                int previousSize = position;
+                channel.close();
+                channel = compactedChannel;
+                buffer = compacted;
+                position = compacted.position();
+                offsets = compactedOffsets;
+                tombstoneOffsets = compactedTombstoneOffsets;
+                liveBytes = position - FILE_HEADER_SIZE;
+
+                LOGGER.info("Compacted the todo log: {} from {} bytes to {} bytes", path, previousSize, position);
+            } catch (IOException ex) {
+                closeQuietly(compactedChannel);
+                try {
+                    Files.deleteIfExists(compactionPath);
+                } catch (IOException deleteFailure) {
+                    ex.addSuppressed(deleteFailure);
+                }
+                throw new DataAccessResourceFailureException("Cannot compact the todo log: " + path, ex);
+            }
+
+            //The compacted log contains every appended record, and it has been synced.
+            synchronized (syncMonitor) {
+                syncedBytes = Math.max(syncedBytes, appendedBytes);
+            }
+            compactions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Copies a record to the current position of the target buffer.
+     * @return  The offset of the copied record.
+     */
+    private int copyRecord(int offset, ByteBuffer target) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        record.limit(offset + recordSizeAt(offset));
+
+        int copiedOffset = target.position();
+        target.put(record);
+        return copiedOffset;
+    }
+
+    private long deletedAtOf(int offset) {
+        int idLength = buffer.getInt(offset + RECORD_HEADER_SIZE + 1);
+        return buffer.getLong(offset + RECORD_HEADER_SIZE + 1 + 4 + idLength);
+    }
+
+    /**
+     * Syncs the directory of the log so that the rename of the compacted log survives a crash of the operating
+     * system. This is not supported by every file system, which is why a failure is ignored.
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ex) {
+            LOGGER.debug("Cannot sync the directory of the todo log: {}", path, ex);
+        }
+    }
+
+    /**
+     * Syncs the log unless the fsync policy is NEVER and closes the file. The log cannot be used after it has
+     * been closed.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                buffer.force();
+            }
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * @return  The number of bytes that are used by the header and the records of the log.
+     */
+    long size() {
+        synchronized (lock) {
+            return position;
+        }
+    }
+
+    long liveBytes() {
+        synchronized (lock) {
+            return liveBytes;
+        }
+    }
+
+    long syncCount() {
+        return syncs.get();
+    }
+
+    long compactionCount() {
+        return compactions.get();
+    }
+
+    private ByteBuffer body(int offset, int length) {
+        ByteBuffer body = buffer.duplicate();
+        body.position(offset + RECORD_HEADER_SIZE);
+        body.limit(offset + RECORD_HEADER_SIZE + length);
+        return body.slice();
+    }
+
+    private static void writeFileHeader(ByteBuffer target) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, FORMAT_VERSION);
+    }
+
+    private static Path compactionPathOf(Path path) {
+        return path.resolveSibling(path.getFileName() + ".compaction");
+    }
+
+    private static int checksum(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    /**
+     * Writes the length of the string and its UTF-8 bytes. The length of a null string is -1.
+     */
+    private static void putString(ByteBuffer target, byte[] value) {
+        if (value == null) {
+            target.putInt(-1);
+        } else {
+            target.putInt(value.length);
+            target.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer source) {
+        int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] value = new byte[length];
+        source.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOGGER.debug("Cannot close the todo log", ex);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.javaadvent.bootrest.util.PreCondition.isTrue;
+
+/**
+ * Counts the requests that are answered with 404 because the requested todo entry was not found. These requests
+ * are routine, so every one of them marks the meter todo.api.not-found, but only every n:th one is logged at
+ * INFO level. The others are logged at DEBUG level.
+ * @author Petri Kainulainen
+ */
+final class TodoNotFoundCounter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TodoNotFoundCounter.class);
+
+    private final Meter notFound;
+
+    private final long logInterval;
+
+    /**
+     * @param metricRegistry    The registry of the meter.
+     * @param logInterval       Every logInterval:th todo entry that is not found is logged at INFO level.
+     */
+    TodoNotFoundCounter(MetricRegistry metricRegistry, long logInterval) {
+        isTrue(logInterval > 0, "The log interval must be positive");
+
+        this.notFound = metricRegistry.meter("todo.api.not-found");
+        this.logInterval = logInterval;
+    }
+
+    void record(TodoNotFoundException ex) {
+        notFound.mark();
+
+        long count = notFound.getCount();
+        if ((count - 1) % logInterval == 0) {
+            LOGGER.info("Todo entry with id: {} was not found. {} todo entries have not been found.",
+                    ex.getId(),
+                    count
+            );
+        } else {
+            LOGGER.debug("Todo entry with id: {} was not found", ex.getId());
+        }
+    }
+}
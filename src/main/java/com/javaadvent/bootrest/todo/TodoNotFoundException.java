@@ -1,12 +1,29 @@
 package com.javaadvent.bootrest.todo;
 
 /**
- * This exception is thrown when the requested todo entry is not found.
+ * This exception is thrown when the requested todo entry is not found. A missing todo entry is a routine outcome
+ * that is answered with 404, which is why this exception doesn't capture a stack trace and builds its message
+ * only when it is asked for.
  * @author Petri Kainulainen
  */
 public class TodoNotFoundException extends RuntimeException {
 
+    private final String id;
+
     public TodoNotFoundException(String id) {
-        super(String.format("No todo entry found with id: <%s>", id));
+        super(null, null, false, false);
+        this.id = id;
+    }
+
+    /**
+     * @return  The id of the todo entry that was not found.
+     */
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getMessage() {
+        return "No todo entry found with id: <" + id + ">";
     }
 }
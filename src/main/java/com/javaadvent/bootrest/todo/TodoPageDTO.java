@@ -0,0 +1,32 @@
+package com.javaadvent.bootrest.todo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This data transfer object contains one page of todo entries and the cursor
+ * that is used to request the next page.
+ * @author Petri Kainulainen
+ */
+public final class TodoPageDTO {
+
+    private final List<TodoDTO> entries;
+
+    private final String next;
+
+    TodoPageDTO(List<TodoDTO> entries, String next) {
+        this.entries = entries;
+        this.next = next;
+    }
+
+    public List<TodoDTO> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return  The cursor of the next page or null if this is the last page.
+     */
+    public String getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,197 @@
+package com.javaadvent.bootrest.todo;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * This interface declares the operations of {@link com.javaadvent.bootrest.todo.TodoRepository}. They are
+ * implemented by hand instead of deriving them from method names because Spring Data MongoDB cannot configure
+ * the read preference or the write concern of a single operation.
+ * @author Petri Kainulainen
+ */
+interface TodoRepositoryCustom {
+
+    /**
+     * Deletes a todo entry from the database.
+     * @param deleted   The deleted todo entry.
+     */
+    void delete(Todo deleted);
+
+    /**
+     * Finds all todo entries from the database.
+     * @return  The information of all todo entries that are found from the database.
+     */
+    List<Todo> findAll();
+
+    /**
+     * Finds the information of the todo entries whose ids are given as a method parameter.
+     * @param ids   The ids of the requested todo entries.
+     * @return      The information of the found todo entries.
+     */
+    List<Todo> findByIdIn(Collection<String> ids);
+
+    /**
+     * Finds the information of a single todo entry.
+     * @param id    The id of the requested todo entry.
+     * @return      The information of the found todo entry. If no todo entry
+     *              is found, this method returns an empty {@link java.util.Optional} object.
+     */
+    Optional<Todo> findOne(String id);
+
+    /**
+     * Saves a new todo entry to the database.
+     * @param saved The information of the saved todo entry.
+     * @return      The information of the saved todo entry.
+     */
+    Todo save(Todo saved);
+
+    /**
+     * Finds the todo entries whose title or description contains the given words by using the text index
+     * of the todo collection.
+     * @param text      The searched words. A phrase can be searched by wrapping it in double quotes, and a word
+     *                  can be excluded by prefixing it with a hyphen.
+     * @param offset    The number of matching todo entries that are skipped.
+     * @param limit     The maximum number of returned todo entries.
+     * @return          The matching todo entries ordered by relevance.
+     */
+    List<Todo> search(String text, int offset, int limit);
+
+    /**
+     * Finds the todo entries whose title starts with the given prefix. The comparison is case sensitive
+     * because only a case sensitive prefix can be served by the title index.
+     * @param prefix    The prefix of the title.
+     * @param offset    The number of matching todo entries that are skipped.
+     * @param limit     The maximum number of returned todo entries.
+     * @return          The matching todo entries sorted in ascending order by using their titles.
+     */
+    List<Todo> findByTitlePrefix(String prefix, int offset, int limit);
+
+    /**
+     * Finds all todo entries from the database, but reads only the requested fields of the todo entries.
+     * The version is read even if it isn't requested because it is used as the ETag of a todo entry.
+     * @param fields    The requested fields.
+     * @return          The todo entries whose fields that were not requested are null.
+     */
+    List<Todo> findAll(TodoFields fields);
+
+    /**
+     * Finds the requested fields of a single todo entry. The version is read even if it isn't requested.
+     * @param id        The id of the requested todo entry.
+     * @param fields    The requested fields.
+     * @return          The todo entry whose fields that were not requested are null. If no todo entry is found,
+     *                  this method returns an empty {@link java.util.Optional} object.
+     */
+    Optional<Todo> findOne(String id, TodoFields fields);
+
+    /**
+     * Finds one page of todo entries by using keyset pagination. The todo entries are
+     * sorted in ascending order by using their ids.
+     * @param after The id of the last todo entry of the previous page. If this is null,
+     *              this method returns the first page.
+     * @param limit The maximum number of returned todo entries.
+     * @return      The todo entries whose id is greater than the given id.
+     */
+    List<Todo> findPage(String after, int limit);
+
+    /**
+     * Finds the todo entries that have been created or updated after the given position. The todo entries
+     * are sorted in ascending order by using their modification times and ids.
+     * @param afterTime The modification time of the last todo entry that was seen by the client.
+     * @param afterId   The id of the last todo entry that was seen by the client. If this is empty, the todo
+     *                  entries that were modified at <code>afterTime</code> are returned as well.
+     * @param until     The todo entries that were modified after this time are not returned.
+     * @param limit     The maximum number of returned todo entries.
+     * @return          The modified todo entries.
+     */
+    List<Todo> findModified(Date afterTime, String afterId, Date until, int limit);
+
+    /**
+     * Finds the tombstones of the todo entries that have been deleted after the given position. The tombstones
+     * are sorted in ascending order by using their deletion times and ids.
+     * @param afterTime The deletion time of the last tombstone that was seen by the client.
+     * @param afterId   The id of the last tombstone that was seen by the client. If this is empty, the tombstones
+     *                  that were created at <code>afterTime</code> are returned as well.
+     * @param until     The tombstones that were created after this time are not returned.
+     * @param limit     The maximum number of returned tombstones.
+     * @return          The found tombstones.
+     */
+    List<TodoTombstone> findTombstones(Date afterTime, String afterId, Date until, int limit);
+
+    /**
+     * Saves the tombstones of deleted todo entries.
+     * @param ids       The ids of the deleted todo entries.
+     * @param deletedAt The time when the todo entries were deleted.
+     */
+    void saveTombstones(List<String> ids, Date deletedAt);
+
+    /**
+     * Updates the title, the description and the modification time of a todo entry, increases its version, and returns the updated
+     * todo entry. Because the todo entry is found and updated by using one atomic operation, other writers
+     * cannot modify the todo entry between the read and the write.
+     * @param id                The id of the updated todo entry.
+     * @param expectedVersion   If this is not null, the todo entry is updated only if this is its current version.
+     * @param title             The new title of the todo entry.
+     * @param description       The new description of the todo entry.
+     * @return                  The information of the updated todo entry. If no todo entry is found,
+     *                          this method returns an empty {@link java.util.Optional} object.
+     */
+    Optional<Todo> findAndUpdate(String id, Long expectedVersion, String title, String description);
+
+    /**
+     * Finds the version of a todo entry without transferring the other fields of the todo entry.
+     * @param id    The id of the todo entry.
+     * @return      The version of the todo entry. Todo entries that were saved before versioning was
+     *              introduced have the version 0. If no todo entry is found, this method returns
+     *              an empty {@link java.util.Optional} object.
+     */
+    Optional<Long> findVersion(String id);
+
+    /**
+     * Deletes a todo entry and returns the deleted todo entry by using one atomic operation.
+     * @param id    The id of the deleted todo entry.
+     * @return      The information of the deleted todo entry. If no todo entry is found,
+     *              this method returns an empty {@link java.util.Optional} object.
+     */
+    Optional<Todo> findAndRemove(String id);
+
+    /**
+     * Iterates all todo entries found from the database by using a database cursor
+     * and passes them to the given action one by one. The todo entries are passed
+     * in ascending order by using their ids.
+     * @param action    The action that is invoked for every todo entry.
+     */
+    void forEach(Consumer<Todo> action);
+
+    /**
+     * Saves new todo entries to the database by using one unordered bulk write. The ids and
+     * the initial versions of the saved todo entries are set before the bulk write is executed.
+     * If a todo entry has an id already, its id is not changed.
+     * @param inserted  The saved todo entries.
+     * @return          The indexes of the todo entries that could not be saved.
+     */
+    Set<Integer> insertAll(List<Todo> inserted);
+
+    /**
+     * Updates the titles, the descriptions and the modification times of existing todo entries and increases their versions
+     * by using one unordered bulk write. A todo entry is updated only if its version is still the version of
+     * the given todo entry.
+     * @param updated   The updated todo entries.
+     * @return          The statuses of the todo entries that were not updated by their indexes. The status is
+     *                  NOT_FOUND if the todo entry doesn't exist, CONFLICT if it has another version, and
+     *                  FAILED if the write failed.
+     */
+    Map<Integer, TodoBatchResultDTO.Status> updateAll(List<Todo> updated);
+
+    /**
+     * Deletes todo entries from the database by using one unordered bulk write.
+     * @param ids   The ids of the deleted todo entries.
+     * @return      The statuses of the ids whose todo entries were not deleted by their indexes. The status is
+     *              NOT_FOUND if the todo entry doesn't exist, and FAILED if the write failed.
+     */
+    Map<Integer, TodoBatchResultDTO.Status> deleteAll(List<String> ids);
+}
@@ -0,0 +1,726 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.mongo.MongoOperationSettings;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.model.BeanWrapper;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * This class implements the operations of {@link com.javaadvent.bootrest.todo.TodoRepository}
+ * by using {@link org.springframework.data.mongodb.core.MongoOperations}.
+ *
+ * Every read and write uses the read preference or the write concern that is configured for its operation
+ * in {@link com.javaadvent.bootrest.mongo.MongoOperationSettings}. The reads are executed by using cursors
+ * and the writes are executed by using the collection because neither MongoTemplate nor the repositories
+ * generated by Spring Data MongoDB can apply a setting to a single operation. The findAndUpdate() and
+ * findAndRemove() operations are not configurable because they are always executed by the primary, and
+ * MongoDB doesn't apply a write concern to them.
+ * @author Petri Kainulainen
+ */
+class TodoRepositoryImpl implements TodoRepositoryCustom {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TodoRepositoryImpl.class);
+
+    private static final String FIELD_DESCRIPTION = "description";
+    private static final String FIELD_ID = "_id";
+    private static final String FIELD_LAST_MODIFIED = "lastModified";
+    private static final String FIELD_SCORE = "score";
+    private static final String FIELD_TITLE = "title";
+    private static final String FIELD_VERSION = "version";
+    private static final String PROPERTY_DESCRIPTION = "description";
+    private static final String PROPERTY_DELETED_AT = "deletedAt";
+    private static final String PROPERTY_ID = "id";
+    private static final String PROPERTY_LAST_MODIFIED = "lastModified";
+    private static final String PROPERTY_TITLE = "title";
+    private static final String PROPERTY_VERSION = "version";
+
+    private static final String OPERATION_DELETE = "delete";
+    private static final String OPERATION_DELETE_ALL = "deleteAll";
+    private static final String OPERATION_FIND_ALL = "findAll";
+    private static final String OPERATION_FIND_BY_ID_IN = "findByIdIn";
+    private static final String OPERATION_FIND_BY_TITLE_PREFIX = "findByTitlePrefix";
+    private static final String OPERATION_FIND_MODIFIED = "findModified";
+    private static final String OPERATION_FIND_ONE = "findOne";
+    private static final String OPERATION_FIND_PAGE = "findPage";
+    private static final String OPERATION_FIND_TOMBSTONES = "findTombstones";
+    private static final String OPERATION_FIND_VERSION = "findVersion";
+    private static final String OPERATION_FOR_EACH = "forEach";
+    private static final String OPERATION_INSERT_ALL = "insertAll";
+    private static final String OPERATION_SAVE = "save";
+    private static final String OPERATION_SAVE_TOMBSTONES = "saveTombstones";
+    private static final String OPERATION_SEARCH = "search";
+    private static final String OPERATION_UPDATE_ALL = "updateAll";
+
+    static final Set<String> READ_OPERATIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            OPERATION_FIND_ALL,
+            OPERATION_FIND_BY_ID_IN,
+            OPERATION_FIND_BY_TITLE_PREFIX,
+            OPERATION_FIND_MODIFIED,
+            OPERATION_FIND_ONE,
+            OPERATION_FIND_PAGE,
+            OPERATION_FIND_TOMBSTONES,
+            OPERATION_FIND_VERSION,
+            OPERATION_FOR_EACH,
+            OPERATION_SEARCH
+    )));
+
+    static final Set<String> WRITE_OPERATIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            OPERATION_DELETE,
+            OPERATION_DELETE_ALL,
+            OPERATION_INSERT_ALL,
+            OPERATION_SAVE,
+            OPERATION_SAVE_TOMBSTONES,
+            OPERATION_UPDATE_ALL
+    )));
+
+    private final MongoOperations mongoOperations;
+
+    private final MongoConverter converter;
+
+    private final QueryMapper queryMapper;
+
+    private final MongoOperationSettings settings;
+
+    /**
+     * @throws java.lang.IllegalArgumentException   If a read preference or a write concern is configured for
+     *                                              an operation that doesn't exist or cannot use it.
+     */
+    @Autowired
+    TodoRepositoryImpl(MongoOperations mongoOperations, MongoOperationSettings settings) {
+        checkOperations(settings.getReadOperations(), READ_OPERATIONS, "read preference");
+        checkOperations(settings.getWriteOperations(), WRITE_OPERATIONS, "write concern");
+
+        this.mongoOperations = mongoOperations;
+        this.converter = mongoOperations.getConverter();
+        this.queryMapper = new QueryMapper(converter);
+        this.settings = settings;
+    }
+
+    private static void checkOperations(Set<String> configured, Set<String> supported, String setting) {
+        for (String operation : configured) {
+            if (!supported.contains(operation)) {
+                throw new IllegalArgumentException(String.format(
+                        "Cannot configure the %s of the operation: <%s>. Supported operations: %s",
+                        setting,
+                        operation,
+                        supported
+                ));
+            }
+        }
+    }
+
+    @Override
+    public List<Todo> findAll() {
+        return find(OPERATION_FIND_ALL, Todo.class, new Query());
+    }
+
+    @Override
+    public List<Todo> findAll(TodoFields fields) {
+        return find(OPERATION_FIND_ALL, Todo.class, withFields(new Query(), fields));
+    }
+
+    @Override
+    public List<Todo> findByIdIn(Collection<String> ids) {
+        return find(OPERATION_FIND_BY_ID_IN, Todo.class, new Query(where(PROPERTY_ID).in(ids)));
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id) {
+        return findFirst(OPERATION_FIND_ONE, queryById(id));
+    }
+
+    @Override
+    public Optional<Todo> findOne(String id, TodoFields fields) {
+        return findFirst(OPERATION_FIND_ONE, withFields(queryById(id), fields));
+    }
+
+    /**
+     * Adds a projection to the query. The id is returned by MongoDB unless it is excluded explicitly.
+     */
+    private static Query withFields(Query query, TodoFields fields) {
+        query.fields().include(PROPERTY_VERSION);
+        for (TodoFields.Field field : fields.getFields()) {
+            query.fields().include(field.getName());
+        }
+        return query;
+    }
+
+    @Override
+    public List<Todo> findPage(String after, int limit) {
+        Query query = after == null ? new Query() : new Query(where(PROPERTY_ID).gt(after));
+        query.with(new Sort(Sort.Direction.ASC, PROPERTY_ID))
+                .limit(limit);
+
+        return find(OPERATION_FIND_PAGE, Todo.class, query);
+    }
+
+    @Override
+    public List<Todo> findModified(Date afterTime, String afterId, Date until, int limit) {
+        return find(OPERATION_FIND_MODIFIED,
+                Todo.class,
+                changedAfter(PROPERTY_LAST_MODIFIED, afterTime, afterId, until, limit)
+        );
+    }
+
+    @Override
+    public List<TodoTombstone> findTombstones(Date afterTime, String afterId, Date until, int limit) {
+        return find(OPERATION_FIND_TOMBSTONES,
+                TodoTombstone.class,
+                changedAfter(PROPERTY_DELETED_AT, afterTime, afterId, until, limit)
+        );
+    }
+
+    /**
+     * Creates a keyset query that continues after the given time and id. The query is served by
+     * an index whose first field is the given time property.
+     */
+    private static Query changedAfter(String timeProperty, Date afterTime, String afterId, Date until, int limit) {
+        Criteria criteria;
+        if (afterId.isEmpty()) {
+            criteria = where(timeProperty).gte(afterTime).lte(until);
+        } else {
+            criteria = new Criteria().andOperator(
+                    where(timeProperty).lte(until),
+                    new Criteria().orOperator(
+                            where(timeProperty).gt(afterTime),
+                            where(timeProperty).is(afterTime).and(PROPERTY_ID).gt(afterId)
+                    )
+            );
+        }
+
+        return new Query(criteria)
+                .with(new Sort(Sort.Direction.ASC, timeProperty, PROPERTY_ID))
+                .limit(limit);
+    }
+
+    /**
+     * Saves a new todo entry or replaces an existing todo entry. A new todo entry gets the version 0. An existing
+     * todo entry is replaced only if its version hasn't changed since it was read, and its version is increased.
+     * @throws org.springframework.dao.OptimisticLockingFailureException    If an existing todo entry was modified
+     *                                                                      or deleted by another writer.
+     */
+    @Override
+    public Todo save(Todo saved) {
+        MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(Todo.class);
+        BeanWrapper<Todo> wrapper = BeanWrapper.create(saved, converter.getConversionService());
+        Long version = saved.getVersion();
+
+        if (version == null) {
+            if (saved.getId() == null) {
+                wrapper.setProperty(entity.getIdProperty(), new ObjectId().toString());
+            }
+            wrapper.setProperty(entity.getVersionProperty(), 0L);
+
+            mongoOperations.execute(Todo.class,
+                    collection -> collection.insert(toDocument(saved), writeConcern(OPERATION_SAVE, collection))
+            );
+            return saved;
+        }
+
+        wrapper.setProperty(entity.getVersionProperty(), version + 1);
+        DBObject query = new BasicDBObject(FIELD_ID, toDocumentId(saved.getId())).append(FIELD_VERSION, version);
+
+        boolean replaced = mongoOperations.execute(Todo.class, collection -> {
+            WriteConcern writeConcern = writeConcern(OPERATION_SAVE, collection);
+            WriteResult result = collection.update(query, toDocument(saved), false, false, writeConcern);
+            //The result of an unacknowledged write is unknown.
+            return !writeConcern.callGetLastError() || result.getN() > 0;
+        });
+
+        if (!replaced) {
+            wrapper.setProperty(entity.getVersionProperty(), version);
+            throw new OptimisticLockingFailureException(String.format(
+                    "The todo entry with id: <%s> and version: <%d> was not found",
+                    saved.getId(),
+                    version
+            ));
+        }
+
+        return saved;
+    }
+
+    @Override
+    public void delete(Todo deleted) {
+        DBObject query = new BasicDBObject(FIELD_ID, toDocumentId(deleted.getId()));
+
+        mongoOperations.execute(Todo.class,
+                collection -> collection.remove(query, writeConcern(OPERATION_DELETE, collection))
+        );
+    }
+
+    @Override
+    public void saveTombstones(List<String> ids, Date deletedAt) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<DBObject> tombstones = ids.stream()
+                .map(id -> toDocument(new TodoTombstone(id, deletedAt)))
+                .collect(toList());
+
+        mongoOperations.execute(TodoTombstone.class,
+                collection -> collection.insert(tombstones, writeConcern(OPERATION_SAVE_TOMBSTONES, collection))
+        );
+    }
+
+    @Override
+    public List<Todo> search(String text, int offset, int limit) {
+        DBObject query = new BasicDBObject("$text", new BasicDBObject("$search", text));
+        DBObject score = new BasicDBObject("$meta", "textScore");
+
+        //The text index is declared in the Todo class. Equally relevant todo entries are sorted by id so that the pages are stable.
+        List<Todo> found = new ArrayList<>(limit);
+        query(OPERATION_SEARCH,
+                Todo.class,
+                query,
+                new BasicDBObject(FIELD_SCORE, score),
+                new BasicDBObject(FIELD_SCORE, score).append(FIELD_ID, 1),
+                offset,
+                limit,
+                found::add
+        );
+        return found;
+    }
+
+    @Override
+    public List<Todo> findByTitlePrefix(String prefix, int offset, int limit) {
+        //An anchored regex that contains no special characters can use the title index declared in the Todo class.
+        DBObject query = new BasicDBObject(FIELD_TITLE, new BasicDBObject("$regex", "^" + escapeRegex(prefix)));
+
+        List<Todo> found = new ArrayList<>(limit);
+        query(OPERATION_FIND_BY_TITLE_PREFIX,
+                Todo.class,
+                query,
+                null,
+                new BasicDBObject(FIELD_TITLE, 1).append(FIELD_ID, 1),
+                offset,
+                limit,
+                found::add
+        );
+        return found;
+    }
+
+    private Optional<Todo> findFirst(String operation, Query query) {
+        List<Todo> found = find(operation, Todo.class, query.limit(1));
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    private <T> List<T> find(String operation, Class<T> type, Query query) {
+        List<T> found = new ArrayList<>();
+        query(operation, type, query, found::add);
+        return found;
+    }
+
+    /**
+     * Maps the property names and the ids of the query to the fields of the stored documents
+     * and passes the found documents to the given action.
+     */
+    private <T> void query(String operation, Class<T> type, Query query, Consumer<T> action) {
+        MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(type);
+
+        query(operation,
+                type,
+                queryMapper.getMappedObject(query.getQueryObject(), entity),
+                query.getFieldsObject() == null ? null : queryMapper.getMappedObject(query.getFieldsObject(), entity),
+                query.getSortObject() == null ? null : queryMapper.getMappedObject(query.getSortObject(), entity),
+                query.getSkip(),
+                query.getLimit(),
+                action
+        );
+    }
+
+    /**
+     * Iterates the found documents by using a cursor that uses the read preference of the operation.
+     * A limit of 0 returns all found documents.
+     */
+    private <T> void query(String operation,
+                           Class<T> type,
+                           DBObject query,
+                           DBObject fields,
+                           DBObject sort,
+                           int skip,
+                           int limit,
+                           Consumer<T> action) {
+        ReadPreference readPreference = settings.getReadPreference(operation);
+
+        mongoOperations.execute(type, collection -> {
+            try (DBCursor cursor = collection.find(query, fields)) {
+                if (sort != null) {
+                    cursor.sort(sort);
+                }
+                cursor.skip(skip);
+                cursor.limit(limit);
+                if (readPreference != null) {
+                    cursor.setReadPreference(readPreference);
+                }
+
+                for (DBObject document : cursor) {
+                    action.accept(converter.read(type, document));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Escapes the characters that have a special meaning in a regular expression. MongoDB treats
+     * an escaped punctuation character as a literal character.
+     */
+    private static String escapeRegex(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+
+        for (int index = 0; index < value.length(); index++) {
+            char character = value.charAt(index);
+            if (!Character.isLetterOrDigit(character) && !Character.isWhitespace(character)) {
+                escaped.append('\\');
+            }
+            escaped.append(character);
+        }
+
+        return escaped.toString();
+    }
+
+    @Override
+    public Optional<Todo> findAndUpdate(String id, Long expectedVersion, String title, String description) {
+        Query query = queryById(id);
+        if (expectedVersion != null) {
+            query.addCriteria(whereVersionIs(expectedVersion));
+        }
+
+        Update update = new Update()
+                .set(PROPERTY_TITLE, title)
+                .set(PROPERTY_LAST_MODIFIED, new Date())
+                .inc(PROPERTY_VERSION, 1);
+
+        //Todo entries that are saved by using the save() method don't store null descriptions.
+        if (description == null) {
+            update.unset(PROPERTY_DESCRIPTION);
+        } else {
+            update.set(PROPERTY_DESCRIPTION, description);
+        }
+
+        Todo updated = mongoOperations.findAndModify(query,
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Todo.class
+        );
+
+        return Optional.ofNullable(updated);
+    }
+
+    /**
+     * A todo entry that was saved before the todo entries were versioned has no version, and its version
+     * is reported as 0. The first update increments the missing version to 1.
+     */
+    private static Criteria whereVersionIs(long expectedVersion) {
+        if (expectedVersion == 0) {
+            return where(PROPERTY_VERSION).in(0L, null);
+        }
+        return where(PROPERTY_VERSION).is(expectedVersion);
+    }
+
+    @Override
+    public Optional<Todo> findAndRemove(String id) {
+        Todo removed = mongoOperations.findAndRemove(queryById(id), Todo.class);
+        return Optional.ofNullable(removed);
+    }
+
+    @Override
+    public Optional<Long> findVersion(String id) {
+        Query query = queryById(id);
+        query.fields().include(PROPERTY_VERSION);
+
+        return findFirst(OPERATION_FIND_VERSION, query)
+                .map(found -> found.getVersion() == null ? 0L : found.getVersion());
+    }
+
+    private Query queryById(String id) {
+        return new Query(where(PROPERTY_ID).is(id));
+    }
+
+    @Override
+    public void forEach(Consumer<Todo> action) {
+        //The query is not mapped against the Todo class, which is why we must use the field name here.
+        query(OPERATION_FOR_EACH,
+                Todo.class,
+                new BasicDBObject(),
+                null,
+                new BasicDBObject(FIELD_ID, 1),
+                0,
+                0,
+                action
+        );
+    }
+
+    @Override
+    public Set<Integer> insertAll(List<Todo> inserted) {
+        MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(Todo.class);
+
+        return mongoOperations.execute(Todo.class, collection -> {
+            BulkWriteOperation bulkWrite = collection.initializeUnorderedBulkOperation();
+
+            for (Todo todo : inserted) {
+                BeanWrapper<Todo> wrapper = BeanWrapper.create(todo, converter.getConversionService());
+                if (todo.getId() == null) {
+                    wrapper.setProperty(entity.getIdProperty(), new ObjectId().toString());
+                }
+                wrapper.setProperty(entity.getVersionProperty(), 0L);
+                bulkWrite.insert(toDocument(todo));
+            }
+
+            return execute(bulkWrite, writeConcern(OPERATION_INSERT_ALL, collection)).failed();
+        });
+    }
+
+    /**
+     * Every update matches the version that was read before the update, which means that a todo entry that
+     * was modified by another writer in the meantime is not overwritten.
+     */
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> updateAll(List<Todo> updated) {
+        return mongoOperations.execute(Todo.class, collection -> {
+            BulkWriteOperation bulkWrite = collection.initializeUnorderedBulkOperation();
+
+            for (Todo todo : updated) {
+                BasicDBObject set = new BasicDBObject(FIELD_TITLE, todo.getTitle())
+                        .append(FIELD_LAST_MODIFIED, todo.getLastModified());
+                BasicDBObject update = new BasicDBObject("$set", set)
+                        .append("$inc", new BasicDBObject(FIELD_VERSION, 1));
+
+                if (todo.getDescription() == null) {
+                    update.append("$unset", new BasicDBObject(FIELD_DESCRIPTION, ""));
+                } else {
+                    set.append(FIELD_DESCRIPTION, todo.getDescription());
+                }
+
+                //A missing version matches the todo entries that were saved before they were versioned.
+                bulkWrite.find(new BasicDBObject(FIELD_ID, toDocumentId(todo.getId()))
+                        .append(FIELD_VERSION, todo.getVersion())
+                ).updateOne(update);
+            }
+
+            BulkWriteOutcome outcome = execute(bulkWrite, writeConcern(OPERATION_UPDATE_ALL, collection));
+            Map<Integer, TodoBatchResultDTO.Status> notUpdated = outcome.failures();
+            if (outcome.hasUnmatchedWrites(updated.size(), BulkWriteResult::getMatchedCount)) {
+                addUnmatchedUpdates(collection, updated, notUpdated);
+            }
+            return notUpdated;
+        });
+    }
+
+    /**
+     * The result of a bulk write tells only how many updates matched a todo entry. This method reads
+     * the updated todo entries from the primary and finds the ones that were not updated. A todo entry that
+     * doesn't exist was not found, and a todo entry whose version or modification time differs from the ones
+     * written by the bulk write was modified by another writer. A todo entry that was modified again after
+     * the bulk write is also reported as a conflict.
+     */
+    private void addUnmatchedUpdates(DBCollection collection,
+                                     List<Todo> updated,
+                                     Map<Integer, TodoBatchResultDTO.Status> notUpdated) {
+        Map<String, DBObject> current = findByDocumentIds(collection,
+                updated.stream().map(Todo::getId).collect(toList()),
+                new BasicDBObject(FIELD_VERSION, 1).append(FIELD_LAST_MODIFIED, 1)
+        );
+
+        for (int index = 0; index < updated.size(); index++) {
+            if (notUpdated.containsKey(index)) {
+                continue;
+            }
+
+            Todo todo = updated.get(index);
+            DBObject document = current.get(todo.getId());
+            if (document == null) {
+                notUpdated.put(index, TodoBatchResultDTO.Status.NOT_FOUND);
+            } else if (!isWrittenBy(document, todo)) {
+                notUpdated.put(index, TodoBatchResultDTO.Status.CONFLICT);
+            }
+        }
+    }
+
+    private static boolean isWrittenBy(DBObject document, Todo todo) {
+        long writtenVersion = todo.getVersion() == null ? 1L : todo.getVersion() + 1;
+        Object version = document.get(FIELD_VERSION);
+
+        return version instanceof Number
+                && ((Number) version).longValue() == writtenVersion
+                && todo.getLastModified().equals(document.get(FIELD_LAST_MODIFIED));
+    }
+
+    @Override
+    public Map<Integer, TodoBatchResultDTO.Status> deleteAll(List<String> ids) {
+        return mongoOperations.execute(Todo.class, collection -> {
+            BulkWriteOperation bulkWrite = collection.initializeUnorderedBulkOperation();
+
+            for (String id : ids) {
+                bulkWrite.find(new BasicDBObject(FIELD_ID, toDocumentId(id)))
+                        .removeOne();
+            }
+
+            BulkWriteOutcome outcome = execute(bulkWrite, writeConcern(OPERATION_DELETE_ALL, collection));
+            Map<Integer, TodoBatchResultDTO.Status> notDeleted = outcome.failures();
+            if (outcome.hasUnmatchedWrites(ids.size(), BulkWriteResult::getRemovedCount)) {
+                addDeletedByOthers(ids, notDeleted);
+            }
+            return notDeleted;
+        });
+    }
+
+    /**
+     * The result of a bulk write tells only how many todo entries were removed. This method finds the ids
+     * whose todo entries were removed by another writer by reading their tombstones from the primary.
+     * If the other writer hasn't saved the tombstone yet, the todo entry is reported as deleted.
+     */
+    private void addDeletedByOthers(List<String> ids, Map<Integer, TodoBatchResultDTO.Status> notDeleted) {
+        Map<String, DBObject> tombstones = mongoOperations.execute(TodoTombstone.class,
+                collection -> findByDocumentIds(collection, ids, new BasicDBObject(FIELD_ID, 1))
+        );
+
+        for (int index = 0; index < ids.size(); index++) {
+            if (!notDeleted.containsKey(index) && tombstones.containsKey(ids.get(index))) {
+                notDeleted.put(index, TodoBatchResultDTO.Status.NOT_FOUND);
+            }
+        }
+    }
+
+    /**
+     * Reads the requested fields of the documents from the primary.
+     * @return  The found documents by their ids.
+     */
+    private static Map<String, DBObject> findByDocumentIds(DBCollection collection, List<String> ids, DBObject fields) {
+        List<Object> documentIds = ids.stream()
+                .map(TodoRepositoryImpl::toDocumentId)
+                .collect(toList());
+        DBObject query = new BasicDBObject(FIELD_ID, new BasicDBObject("$in", documentIds));
+
+        Map<String, DBObject> found = new HashMap<>();
+        try (DBCursor cursor = collection.find(query, fields)) {
+            cursor.setReadPreference(ReadPreference.primary());
+            for (DBObject document : cursor) {
+                found.put(document.get(FIELD_ID).toString(), document);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the write concern of the operation. If no write concern is configured for the operation,
+     * this method returns the default write concern of the collection.
+     */
+    private WriteConcern writeConcern(String operation, DBCollection collection) {
+        WriteConcern writeConcern = settings.getWriteConcern(operation);
+        return writeConcern == null ? collection.getWriteConcern() : writeConcern;
+    }
+
+    /**
+     * The ids that are generated by MongoDB are stored as object ids. This method converts
+     * an id to the type that is used by the stored document.
+     */
+    private static Object toDocumentId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    private DBObject toDocument(Object source) {
+        DBObject document = new BasicDBObject();
+        converter.write(source, document);
+        return document;
+    }
+
+    /**
+     * Executes the bulk write. Because the bulk write is unordered, MongoDB attempts to execute every
+     * write even if some of them fail.
+     * @return  The result of the bulk write and the indexes of the failed writes.
+     * @throws com.mongodb.BulkWriteException if the requested write concern couldn't be fulfilled.
+     */
+    private BulkWriteOutcome execute(BulkWriteOperation bulkWrite, WriteConcern writeConcern) {
+        try {
+            return new BulkWriteOutcome(bulkWrite.execute(writeConcern), Collections.emptySet());
+        } catch (BulkWriteException ex) {
+            if (ex.getWriteConcernError() != null) {
+                throw ex;
+            }
+
+            LOGGER.warn("{} writes of a bulk write failed", ex.getWriteErrors().size());
+            Set<Integer> failed = ex.getWriteErrors().stream()
+                    .map(BulkWriteError::getIndex)
+                    .collect(toSet());
+            return new BulkWriteOutcome(ex.getWriteResult(), failed);
+        }
+    }
+
+    private static final class BulkWriteOutcome {
+
+        private final BulkWriteResult result;
+
+        private final Set<Integer> failed;
+
+        private BulkWriteOutcome(BulkWriteResult result, Set<Integer> failed) {
+            this.result = result;
+            this.failed = failed;
+        }
+
+        private Set<Integer> failed() {
+            return failed;
+        }
+
+        /**
+         * @return  The failed writes by their indexes.
+         */
+        private Map<Integer, TodoBatchResultDTO.Status> failures() {
+            Map<Integer, TodoBatchResultDTO.Status> failures = new HashMap<>();
+            failed.forEach(index -> failures.put(index, TodoBatchResultDTO.Status.FAILED));
+            return failures;
+        }
+
+        /**
+         * @return  true if some of the writes that didn't fail matched no document. The result of
+         *          an unacknowledged bulk write is unknown, which is why false is returned for it.
+         */
+        private boolean hasUnmatchedWrites(int writeCount, ToIntFunction<BulkWriteResult> matchedCount) {
+            return result != null
+                    && result.isAcknowledged()
+                    && matchedCount.applyAsInt(result) + failed.size() < writeCount;
+        }
+    }
+}
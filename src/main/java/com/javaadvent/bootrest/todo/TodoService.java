@@ -1,6 +1,7 @@
 package com.javaadvent.bootrest.todo;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This interface declares the methods that provides CRUD operations for
@@ -9,6 +10,11 @@ import java.util.List;
  */
 interface TodoService {
 
+    /**
+     * The maximum number of todo entries that is returned by {@link #findPage(String, int)}.
+     */
+    int MAX_PAGE_SIZE = 100;
+
     /**
      * Creates a new todo entry.
      * @param todo  The information of the created todo entry.
@@ -16,6 +22,14 @@ interface TodoService {
      */
     TodoDTO create(TodoDTO todo);
 
+    /**
+     * Creates new todo entries by using one database round trip.
+     * @param todoEntries   The information of the created todo entries.
+     * @return              The results of the created todo entries. The results are returned
+     *                      in the same order as the todo entries.
+     */
+    List<TodoBatchResultDTO> createAll(List<TodoDTO> todoEntries);
+
     /**
      * Deletes a todo entry.
      * @param id    The id of the deleted todo entry.
@@ -24,12 +38,78 @@ interface TodoService {
      */
     TodoDTO delete(String id);
 
+    /**
+     * Deletes todo entries. Unlike {@link #delete(String)}, this method doesn't throw an exception if a todo
+     * entry isn't found. Instead, it returns the status {@link TodoBatchResultDTO.Status#NOT_FOUND}.
+     * @param ids   The ids of the deleted todo entries.
+     * @return      The results of the deleted todo entries. The results are returned in the same order as the ids.
+     */
+    List<TodoBatchResultDTO> deleteAll(List<String> ids);
+
     /**
      * Finds all todo entries.
      * @return      The information of all todo entries.
      */
     List<TodoDTO> findAll();
 
+    /**
+     * Finds all todo entries, but reads only the requested fields from the database.
+     * @param fields    The requested fields.
+     * @return          The information of all todo entries. The fields that were not requested are null.
+     */
+    List<TodoDTO> findAll(TodoFields fields);
+
+    /**
+     * Finds one page of todo entries. The todo entries are sorted in ascending order by using their ids.
+     * @param after The cursor that was returned with the previous page. If this is null,
+     *              this method returns the first page.
+     * @param size  The requested page size. If the page size is larger than {@link #MAX_PAGE_SIZE},
+     *              the page size {@link #MAX_PAGE_SIZE} is used.
+     * @return      The information of the found todo entries.
+     */
+    TodoPageDTO findPage(String after, int size);
+
+    /**
+     * Finds the todo entries whose title or description contains the given words.
+     * @param text  The searched words.
+     * @param page  The zero-based index of the requested page.
+     * @param size  The requested page size. If the page size is larger than {@link #MAX_PAGE_SIZE},
+     *              the page size {@link #MAX_PAGE_SIZE} is used.
+     * @return      The information of the found todo entries ordered by relevance.
+     */
+    List<TodoDTO> search(String text, int page, int size);
+
+    /**
+     * Finds the todo entries whose title starts with the given prefix.
+     * @param prefix    The case sensitive prefix of the title.
+     * @param page      The zero-based index of the requested page.
+     * @param size      The requested page size. If the page size is larger than {@link #MAX_PAGE_SIZE},
+     *                  the page size {@link #MAX_PAGE_SIZE} is used.
+     * @return          The information of the found todo entries sorted in ascending order by using their titles.
+     */
+    List<TodoDTO> findByTitlePrefix(String prefix, int page, int size);
+
+    /**
+     * Finds the todo entries that have been created, updated or deleted after the given change token. A client
+     * obtains its first token by invoking this method without a token, loads all todo entries, and after that
+     * asks only for the changes. Because a change can be returned more than once, the client must apply
+     * the changes by using the ids and the versions of the todo entries.
+     * @param since The token that was returned with the previous changes. If this is null, this method returns
+     *              no changes and the token that points to the current time.
+     * @param size  The maximum number of returned changes. If this is larger than {@link #MAX_PAGE_SIZE},
+     *              {@link #MAX_PAGE_SIZE} changes are returned.
+     * @return      The changes and the token of the next request.
+     * @throws com.javaadvent.bootrest.todo.TodoChangesUnavailableException if the token is invalid or too old.
+     */
+    TodoChangesDTO findChanges(String since, int size);
+
+    /**
+     * Passes the information of all todo entries to the given action one by one. Unlike {@link #findAll()},
+     * this method doesn't load all todo entries into memory.
+     * @param action    The action that is invoked for every todo entry.
+     */
+    void forEach(Consumer<TodoDTO> action);
+
     /**
      * Finds a single todo entry.
      * @param id    The id of the requested todo entry.
@@ -39,10 +119,40 @@ interface TodoService {
     TodoDTO findById(String id);
 
     /**
-     * Updates the information of a todo entry.
+     * Finds the requested fields of a single todo entry.
+     * @param id        The id of the requested todo entry.
+     * @param fields    The requested fields.
+     * @return          The information of the requested todo entry. The fields that were not requested are null,
+     *                  except the version which is always returned.
+     * @throws com.javaadvent.bootrest.todo.TodoNotFoundException if no todo entry is found.
+     */
+    TodoDTO findById(String id, TodoFields fields);
+
+    /**
+     * Finds the current version of a single todo entry.
+     * @param id    The id of the requested todo entry.
+     * @return      The version of the requested todo entry.
+     * @throws com.javaadvent.bootrest.todo.TodoNotFoundException if no todo entry is found.
+     */
+    long findVersionById(String id);
+
+    /**
+     * Updates the information of a todo entry. If the version of the given todo entry is not null,
+     * the todo entry is updated only if its current version is the given version.
      * @param todo  The information of the updated todo entry.
      * @return      The information of the updated todo entry.
      * @throws com.javaadvent.bootrest.todo.TodoNotFoundException if no todo entry is found.
+     * @throws com.javaadvent.bootrest.todo.TodoVersionConflictException if the todo entry has a different version.
      */
     TodoDTO update(TodoDTO todo);
+
+    /**
+     * Updates the information of todo entries. Unlike {@link #update(TodoDTO)}, this method doesn't throw an exception
+     * if a todo entry isn't found or if its version is not the given version. Instead, it returns the status
+     * {@link TodoBatchResultDTO.Status#NOT_FOUND} or {@link TodoBatchResultDTO.Status#CONFLICT}.
+     * @param todoEntries   The information of the updated todo entries.
+     * @return              The results of the updated todo entries. The results are returned
+     *                      in the same order as the todo entries.
+     */
+    List<TodoBatchResultDTO> updateAll(List<TodoDTO> todoEntries);
 }
@@ -0,0 +1,469 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.javaadvent.bootrest.admission.AdaptiveConcurrencyLimit;
+import com.javaadvent.bootrest.metrics.TimingProxy;
+import com.javaadvent.bootrest.util.BloomFilter;
+import com.javaadvent.bootrest.util.ExpiringLruCache;
+import com.javaadvent.bootrest.util.SingleFlight;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This configuration class creates the {@link com.javaadvent.bootrest.todo.TodoService} bean and the beans
+ * that it uses:
+ * <ul>
+ *     <li>
+ *         The todo service decorates {@link com.javaadvent.bootrest.todo.MongoDBTodoService} with the services
+ *         that are enabled in the application properties. The repository and the outermost service are measured
+ *         by {@link com.javaadvent.bootrest.metrics.TimingProxy}, and the latencies of the point operations of
+ *         the repository adjust {@link com.javaadvent.bootrest.admission.AdaptiveConcurrencyLimit}.
+ *     </li>
+ *     <li>The in-memory and log repositories that replace MongoDB when they are selected.</li>
+ *     <li>The executor that is used by {@link com.javaadvent.bootrest.todo.AsyncTodoService}.</li>
+ *     <li>The broadcaster that pushes the todo events to the subscribers of the live feed.</li>
+ *     <li>The queue that inserts the created todo entries in batches when the write-behind mode is enabled.</li>
+ *     <li>The store that coalesces and replays the creates which use the same idempotency key.</li>
+ * </ul>
+ * @author Petri Kainulainen
+ */
+@Configuration
+class TodoServiceConfig {
+
+    /**
+     * The repository operations that read or write one todo entry. The scans and the bulk writes take longer
+     * than the target latency of the concurrency limit even when the database is healthy, which is why their
+     * latencies would make the limit shed point reads.
+     */
+    private static final Set<String> LIMITED_REPOSITORY_METHODS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("findOne", "findVersion", "findAndUpdate", "findAndRemove", "save")
+    ));
+
+    @Value("${todo.cache.enabled}")
+    private boolean cacheEnabled;
+
+    @Value("${todo.cache.max-size}")
+    private int cacheMaxSize;
+
+    @Value("${todo.cache.time-to-live-seconds}")
+    private long cacheTimeToLiveSeconds;
+
+    @Value("${todo.coalescing.enabled}")
+    private boolean coalescingEnabled;
+
+    @Value("${todo.negative-lookup.enabled}")
+    private boolean negativeLookupEnabled;
+
+    @Value("${todo.negative-lookup.missing-ids.max-size}")
+    private int missingIdsMaxSize;
+
+    @Value("${todo.negative-lookup.missing-ids.time-to-live-seconds}")
+    private long missingIdsTimeToLiveSeconds;
+
+    @Value("${todo.negative-lookup.bloom-filter.enabled}")
+    private boolean bloomFilterEnabled;
+
+    @Value("${todo.negative-lookup.bloom-filter.expected-ids}")
+    private long bloomFilterExpectedIds;
+
+    @Value("${todo.negative-lookup.bloom-filter.false-positive-rate}")
+    private double bloomFilterFalsePositiveRate;
+
+    @Value("${todo.negative-lookup.bloom-filter.rebuild-interval-seconds}")
+    private long bloomFilterRebuildIntervalSeconds;
+
+    @Value("${todo.async.pool-size}")
+    private int asyncPoolSize;
+
+    @Value("${todo.async.queue-capacity}")
+    private int asyncQueueCapacity;
+
+    @Value("${todo.write-behind.enabled}")
+    private boolean writeBehindEnabled;
+
+    @Value("${todo.write-behind.durability}")
+    private String writeBehindDurability;
+
+    @Value("${todo.write-behind.queue-capacity}")
+    private int writeBehindQueueCapacity;
+
+    @Value("${todo.write-behind.batch-size}")
+    private int writeBehindBatchSize;
+
+    @Value("${todo.write-behind.max-delay-millis}")
+    private long writeBehindMaxDelayMillis;
+
+    @Value("${todo.write-behind.offer-timeout-millis}")
+    private long writeBehindOfferTimeoutMillis;
+
+    @Value("${todo.idempotency.max-size}")
+    private int idempotencyMaxSize;
+
+    @Value("${todo.idempotency.time-to-live-seconds}")
+    private long idempotencyTimeToLiveSeconds;
+
+    @Value("${todo.idempotency.wait-timeout-millis}")
+    private long idempotencyWaitTimeoutMillis;
+
+    @Value("${todo.idempotency.mongo.enabled}")
+    private boolean idempotencyMongoEnabled;
+
+    @Value("${todo.not-found.log-interval}")
+    private long notFoundLogInterval;
+
+    /**
+     * The MongoDB operations exist only when MongoDB is used, and they are needed only by the MongoDB tier
+     * of the idempotency store.
+     */
+    @Autowired(required = false)
+    private MongoOperations mongoOperations;
+
+    @Value("${todo.events.buffer-size}")
+    private int eventsBufferSize;
+
+    @Value("${todo.events.history-size}")
+    private int eventsHistorySize;
+
+    @Value("${todo.events.max-subscribers}")
+    private int eventsMaxSubscribers;
+
+    @Value("${todo.events.writer-threads}")
+    private int eventsWriterThreads;
+
+    @Value("${todo.events.heartbeat-seconds}")
+    private long eventsHeartbeatSeconds;
+
+    @Value("${todo.events.retry-millis}")
+    private long eventsRetryMillis;
+
+    @Value("${todo.events.write-timeout-millis}")
+    private long eventsWriteTimeoutMillis;
+
+    /**
+     * The repository that is used instead of the repository that is generated by Spring Data MongoDB
+     * when the todo entries are stored in memory.
+     */
+    @Bean
+    @ConditionalOnExpression("'${todo.repository.engine}' == 'MEMORY'")
+    TodoRepository inMemoryTodoRepository(@Value("${todo.repository.memory.lock-stripes}") int lockStripes) {
+        return new InMemoryTodoRepository(lockStripes);
+    }
+
+    /**
+     * The repository that is used instead of the repository that is generated by Spring Data MongoDB
+     * when the todo entries are stored in a log file. The fsync policy is injected as a string because
+     * Spring cannot convert a string to an enum that is not public.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("'${todo.repository.engine}' == 'LOG'")
+    LogTodoRepository logTodoRepository(@Value("${todo.repository.log.path}") String path,
+                                        @Value("${todo.repository.log.fsync}") String fsyncPolicy,
+                                        @Value("${todo.repository.log.initial-size-mb}") int initialSizeMb,
+                                        @Value("${todo.repository.memory.lock-stripes}") int lockStripes,
+                                        MetricRegistry metricRegistry) throws IOException {
+        LogTodoRepository repository = LogTodoRepository.open(Paths.get(path),
+                TodoLog.FsyncPolicy.valueOf(fsyncPolicy),
+                initialSizeMb * 1024 * 1024,
+                lockStripes
+        );
+
+        metricRegistry.register("todo.repository.log.size", (Gauge<Long>) repository::logSize);
+        metricRegistry.register("todo.repository.log.live-bytes", (Gauge<Long>) repository::liveBytes);
+        metricRegistry.register("todo.repository.log.syncs", (Gauge<Long>) repository::syncCount);
+        metricRegistry.register("todo.repository.log.compactions", (Gauge<Long>) repository::compactionCount);
+
+        return repository;
+    }
+
+    /**
+     * Compacts the log file periodically and syncs it when the fsync policy is INTERVAL. The scheduler is shut
+     * down before the repository is closed, and the task that is running is allowed to finish.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnExpression("'${todo.repository.engine}' == 'LOG'")
+    ScheduledExecutorService todoLogMaintenance(LogTodoRepository logTodoRepository,
+                                                @Value("${todo.repository.log.fsync}") String fsyncPolicy,
+                                                @Value("${todo.repository.log.fsync-interval-millis}") long fsyncIntervalMillis,
+                                                @Value("${todo.repository.log.compaction-interval-seconds}") long compactionIntervalSeconds,
+                                                @Value("${todo.repository.log.compaction-min-garbage-ratio}") double compactionMinGarbageRatio) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                todoThreadFactory("todo-log-")
+        );
+
+        scheduler.scheduleWithFixedDelay(() -> logTodoRepository.compactIfNeeded(compactionMinGarbageRatio),
+                compactionIntervalSeconds,
+                compactionIntervalSeconds,
+                TimeUnit.SECONDS
+        );
+        if (TodoLog.FsyncPolicy.valueOf(fsyncPolicy) == TodoLog.FsyncPolicy.INTERVAL) {
+            scheduler.scheduleWithFixedDelay(logTodoRepository::sync,
+                    fsyncIntervalMillis,
+                    fsyncIntervalMillis,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+
+        return scheduler;
+    }
+
+    @Bean
+    TodoService todoService(TodoRepository repository,
+                            TodoEventBroadcaster todoEventBroadcaster,
+                            AdaptiveConcurrencyLimit concurrencyLimit,
+                            MetricRegistry metricRegistry) {
+        TodoService service = new MongoDBTodoService(
+                TimingProxy.create(TodoRepository.class,
+                        repository,
+                        metricRegistry,
+                        "todo.repository",
+                        LIMITED_REPOSITORY_METHODS,
+                        concurrencyLimit::onLatency
+                ),
+                todoEventBroadcaster,
+                System::currentTimeMillis,
+                writeBehindEnabled ? todoWriteBehindQueue(repository, metricRegistry) : null
+        );
+
+        //The concurrent cache misses of the same todo entry are collapsed into one query.
+        if (coalescingEnabled) {
+            service = new CoalescingTodoService(service, findByIdCalls(metricRegistry));
+        }
+
+        //The unknown ids are rejected before they reach the database, but after the cache has been checked.
+        if (negativeLookupEnabled) {
+            service = negativeLookupService(service, metricRegistry);
+        }
+
+        if (cacheEnabled) {
+            service = new CachingTodoService(service, todoCache(metricRegistry));
+        }
+
+        return TimingProxy.create(TodoService.class, service, metricRegistry, "todo.service");
+    }
+
+    /**
+     * Rebuilds the Bloom filter of the existing todo entry ids when the application is started and then
+     * periodically. The filter rejects nothing before it has been built for the first time.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    @ConditionalOnExpression("${todo.negative-lookup.enabled} && ${todo.negative-lookup.bloom-filter.enabled}")
+    ScheduledExecutorService todoBloomFilterRebuilder() {
+        return Executors.newSingleThreadScheduledExecutor(todoThreadFactory("todo-bloom-filter-"));
+    }
+
+    /**
+     * The queue that inserts the created todo entries in batches. The durability is injected as a string because
+     * Spring cannot convert a string to an enum that is not public. The queue is flushed before it is destroyed.
+     */
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @ConditionalOnExpression("${todo.write-behind.enabled}")
+    TodoWriteBehindQueue todoWriteBehindQueue(TodoRepository repository, MetricRegistry metricRegistry) {
+        return new TodoWriteBehindQueue(repository,
+                TodoWriteBehindQueue.Durability.valueOf(writeBehindDurability),
+                writeBehindQueueCapacity,
+                writeBehindBatchSize,
+                writeBehindMaxDelayMillis,
+                writeBehindOfferTimeoutMillis,
+                todoThreadFactory("todo-write-behind-"),
+                metricRegistry
+        );
+    }
+
+    /**
+     * The records of the idempotency keys are kept in memory. If the MongoDB tier is enabled, they are also
+     * inserted into MongoDB, which means that a retried create is replayed after a restart and by the other
+     * instances of our application.
+     */
+    @Bean
+    TodoIdempotencyStore todoIdempotencyStore(MetricRegistry metricRegistry) {
+        if (idempotencyMongoEnabled && mongoOperations == null) {
+            throw new IllegalStateException("The MongoDB tier of the idempotency store requires MongoDB");
+        }
+
+        return new TodoIdempotencyStore(idempotencyMaxSize,
+                idempotencyTimeToLiveSeconds,
+                idempotencyWaitTimeoutMillis,
+                idempotencyMongoEnabled ? mongoOperations : null,
+                System::currentTimeMillis,
+                metricRegistry
+        );
+    }
+
+    @Bean
+    TodoNotFoundCounter todoNotFoundCounter(MetricRegistry metricRegistry) {
+        return new TodoNotFoundCounter(metricRegistry, notFoundLogInterval);
+    }
+
+    @Bean
+    @ConditionalOnExpression("${todo.async.enabled}")
+    AsyncTodoService asyncTodoService(TodoService todoService,
+                                      @Qualifier("todoExecutor") ExecutorService todoExecutor) {
+        return new ExecutorAsyncTodoService(todoService, todoExecutor);
+    }
+
+    /**
+     * The executor runs a bounded number of blocking database operations. If all threads are busy and the
+     * queue is full, new operations are rejected instead of piling up.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnExpression("${todo.async.enabled}")
+    ExecutorService todoExecutor(MetricRegistry metricRegistry) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(asyncPoolSize,
+                asyncPoolSize,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(asyncQueueCapacity),
+                todoThreadFactory("todo-async-"),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        executor.allowCoreThreadTimeOut(true);
+
+        metricRegistry.register("todo.async.active-threads", (Gauge<Integer>) executor::getActiveCount);
+        metricRegistry.register("todo.async.queue-size", (Gauge<Integer>) () -> executor.getQueue().size());
+
+        return executor;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    TodoEventBroadcaster todoEventBroadcaster(ObjectMapper objectMapper,
+                                              @Qualifier("todoEventWriter") ExecutorService todoEventWriter,
+                                              MetricRegistry metricRegistry) {
+        TodoEventBroadcaster broadcaster = new TodoEventBroadcaster(objectMapper,
+                todoEventWriter,
+                eventsBufferSize,
+                eventsHistorySize,
+                eventsMaxSubscribers,
+                eventsRetryMillis,
+                eventsWriteTimeoutMillis
+        );
+
+        metricRegistry.register("todo.events.subscribers", (Gauge<Integer>) broadcaster::subscriberCount);
+        metricRegistry.register("todo.events.published", (Gauge<Long>) broadcaster::publishedEventCount);
+        metricRegistry.register("todo.events.dropped-subscribers", (Gauge<Long>) broadcaster::droppedSubscriberCount);
+        metricRegistry.register("todo.events.aborted-writes", (Gauge<Long>) broadcaster::abortedWriteCount);
+
+        return broadcaster;
+    }
+
+    /**
+     * The writer threads only copy queued events to the responses. A task is queued only for a subscriber
+     * that has events to write, which is why the queue cannot grow beyond the number of subscribers.
+     */
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService todoEventWriter() {
+        return Executors.newFixedThreadPool(eventsWriterThreads, todoThreadFactory("todo-events-"));
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    ScheduledExecutorService todoEventHeartbeat(TodoEventBroadcaster todoEventBroadcaster) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                todoThreadFactory("todo-events-heartbeat-")
+        );
+        scheduler.scheduleAtFixedRate(todoEventBroadcaster::heartbeat,
+                eventsHeartbeatSeconds,
+                eventsHeartbeatSeconds,
+                TimeUnit.SECONDS
+        );
+        //A blocked write is aborted at the latest when one and a half write timeouts have passed.
+        long abortCheckMillis = Math.max(1, eventsWriteTimeoutMillis / 2);
+        scheduler.scheduleAtFixedRate(todoEventBroadcaster::abortBlockedWrites,
+                abortCheckMillis,
+                abortCheckMillis,
+                TimeUnit.MILLISECONDS
+        );
+        return scheduler;
+    }
+
+    private static ThreadFactory todoThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A todo entry that is only queued by the write-behind queue cannot be read when the Bloom filter is rebuilt,
+     * and it would not be found until the next rebuild.
+     */
+    private TodoService negativeLookupService(TodoService delegate, MetricRegistry metricRegistry) {
+        if (bloomFilterEnabled && writeBehindEnabled
+                && TodoWriteBehindQueue.Durability.valueOf(writeBehindDurability) == TodoWriteBehindQueue.Durability.QUEUED) {
+            throw new IllegalStateException("The Bloom filter of todo entry ids cannot be used with QUEUED write-behind durability");
+        }
+
+        ExpiringLruCache<String, Boolean> missingIds = new ExpiringLruCache<>(missingIdsMaxSize,
+                missingIdsTimeToLiveSeconds,
+                TimeUnit.SECONDS
+        );
+        NegativeLookupTodoService service = new NegativeLookupTodoService(delegate,
+                missingIds,
+                bloomFilterEnabled ? expectedIds -> new BloomFilter(expectedIds, bloomFilterFalsePositiveRate) : null,
+                bloomFilterExpectedIds
+        );
+
+        metricRegistry.register("todo.negative-lookup.missing-ids.hits", (Gauge<Long>) missingIds::hitCount);
+        metricRegistry.register("todo.negative-lookup.missing-ids.size", (Gauge<Integer>) missingIds::size);
+        metricRegistry.register("todo.negative-lookup.bloom-filter.rejections",
+                (Gauge<Long>) service::bloomFilterRejectionCount
+        );
+        metricRegistry.register("todo.negative-lookup.bloom-filter.bits", (Gauge<Long>) service::bloomFilterBitCount);
+
+        if (bloomFilterEnabled) {
+            todoBloomFilterRebuilder().scheduleWithFixedDelay(service::rebuildBloomFilter,
+                    0,
+                    bloomFilterRebuildIntervalSeconds,
+                    TimeUnit.SECONDS
+            );
+        }
+
+        return service;
+    }
+
+    private static SingleFlight<String, TodoDTO> findByIdCalls(MetricRegistry metricRegistry) {
+        SingleFlight<String, TodoDTO> findByIdCalls = new SingleFlight<>();
+
+        metricRegistry.register("todo.coalescing.coalesced", (Gauge<Long>) findByIdCalls::coalescedCount);
+        metricRegistry.register("todo.coalescing.running", (Gauge<Integer>) findByIdCalls::runningCount);
+
+        return findByIdCalls;
+    }
+
+    private ExpiringLruCache<String, TodoDTO> todoCache(MetricRegistry metricRegistry) {
+        ExpiringLruCache<String, TodoDTO> cache = new ExpiringLruCache<>(cacheMaxSize,
+                cacheTimeToLiveSeconds,
+                TimeUnit.SECONDS
+        );
+
+        metricRegistry.register("todo.cache.hits", (Gauge<Long>) cache::hitCount);
+        metricRegistry.register("todo.cache.misses", (Gauge<Long>) cache::missCount);
+        metricRegistry.register("todo.cache.evictions", (Gauge<Long>) cache::evictionCount);
+        metricRegistry.register("todo.cache.size", (Gauge<Integer>) cache::size);
+
+        return cache;
+    }
+}
@@ -0,0 +1,45 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.mongo.MongoIndex;
+import org.springframework.data.annotation.Id;
+
+import java.util.Date;
+
+/**
+ * A tombstone records the id of a deleted todo entry so that clients which synchronize their
+ * todo entries by asking for changes can delete their copy of the todo entry. MongoDB deletes
+ * a tombstone when it is older than {@link #RETENTION_SECONDS}.
+ * @author Petri Kainulainen
+ */
+@MongoIndex(name = "deletedAt_ttl", keys = "{'deletedAt': 1}", expireAfterSeconds = TodoTombstone.RETENTION_SECONDS)
+final class TodoTombstone {
+
+    /**
+     * Clients whose previous synchronization is older than this must load all todo entries
+     * because the tombstones that they need might be gone.
+     */
+    static final long RETENTION_SECONDS = 30L * 24 * 60 * 60;
+
+    @Id
+    private String id;
+
+    private Date deletedAt;
+
+    TodoTombstone() {}
+
+    TodoTombstone(String id, Date deletedAt) {
+        this.id = id;
+        this.deletedAt = deletedAt;
+    }
+
+    /**
+     * @return  The id of the deleted todo entry.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public Date getDeletedAt() {
+        return deletedAt;
+    }
+}
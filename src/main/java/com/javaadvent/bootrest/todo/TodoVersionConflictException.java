@@ -0,0 +1,13 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This exception is thrown when a todo entry is updated by using a version
+ * that is not the current version of the updated todo entry.
+ * @author Petri Kainulainen
+ */
+public class TodoVersionConflictException extends RuntimeException {
+
+    public TodoVersionConflictException(String id, long expectedVersion) {
+        super(String.format("The version of the todo entry with id: <%s> is not <%d>", id, expectedVersion));
+    }
+}
@@ -0,0 +1,283 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * This class inserts new todo entries in batches. A created todo entry is added to a bounded queue, and one
+ * flusher thread inserts the queued todo entries by using {@link TodoRepository#insertAll(java.util.List)}.
+ * A batch is inserted when it contains batch size todo entries or when the maximum delay has passed
+ * since its first todo entry was taken from the queue.
+ *
+ * If the queue is full, the creating thread waits until the offer timeout has passed and then gives up by
+ * throwing {@link com.javaadvent.bootrest.todo.TodoWriteQueueFullException}. This stops a burst of creates
+ * from filling the memory when the database cannot keep up.
+ * @author Petri Kainulainen
+ */
+final class TodoWriteBehindQueue {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TodoWriteBehindQueue.class);
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Specifies when a queued todo entry is acknowledged to the client.
+     */
+    enum Durability {
+
+        /**
+         * The write returns when the todo entry has been queued. The queued todo entries are lost if
+         * the application crashes, and a client that reads a todo entry right after it was created
+         * might not find it.
+         */
+        QUEUED,
+
+        /**
+         * The write returns when the batch that contains the todo entry has been inserted. The concurrent
+         * writes are still inserted together.
+         */
+        WRITTEN
+    }
+
+    private final TodoRepository repository;
+
+    private final Durability durability;
+
+    private final int capacity;
+
+    private final BlockingQueue<QueuedWrite> queue;
+
+    private final int batchSize;
+
+    private final long maxDelayNanos;
+
+    private final long offerTimeoutMillis;
+
+    private final Thread flusher;
+
+    private final Timer flushes;
+
+    private final Histogram batchSizes;
+
+    private final Meter failures;
+
+    private final Meter rejections;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param repository            The repository that inserts the todo entries.
+     * @param durability            Specifies when a write returns.
+     * @param capacity              The maximum number of queued todo entries.
+     * @param batchSize             The maximum number of todo entries that are inserted by one bulk write.
+     * @param maxDelayMillis        The time that the flusher waits for a batch to fill up.
+     * @param offerTimeoutMillis    The time that a write waits for space in a full queue.
+     * @param threadFactory         The factory that creates the flusher thread.
+     * @param metricRegistry        The registry of the queue metrics.
+     */
+    TodoWriteBehindQueue(TodoRepository repository,
+                         Durability durability,
+                         int capacity,
+                         int batchSize,
+                         long maxDelayMillis,
+                         long offerTimeoutMillis,
+                         ThreadFactory threadFactory,
+                         MetricRegistry metricRegistry) {
+        this.repository = repository;
+        this.durability = durability;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.flusher = threadFactory.newThread(this::run);
+
+        this.flushes = metricRegistry.timer("todo.write-behind.flushes");
+        this.batchSizes = metricRegistry.histogram("todo.write-behind.batch-size");
+        this.failures = metricRegistry.meter("todo.write-behind.failures");
+        this.rejections = metricRegistry.meter("todo.write-behind.rejections");
+        metricRegistry.register("todo.write-behind.queue-size", (Gauge<Integer>) queue::size);
+    }
+
+    /**
+     * Starts the flusher thread.
+     */
+    void start() {
+        flusher.start();
+    }
+
+    /**
+     * Queues a new todo entry. The id of the todo entry must be set before this method is invoked.
+     * @param inserted  The todo entry that is inserted.
+     * @throws com.javaadvent.bootrest.todo.TodoWriteQueueFullException    If the queue stays full.
+     * @throws org.springframework.dao.DataAccessException                  If the durability is WRITTEN and
+     *                                                                      the todo entry could not be inserted.
+     */
+    void write(Todo inserted) {
+        QueuedWrite write = new QueuedWrite(inserted);
+
+        boolean queued;
+        try {
+            queued = running && queue.offer(write, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+
+        if (!queued) {
+            rejections.mark();
+            throw new TodoWriteQueueFullException(capacity);
+        }
+
+        //If the queue was shut down during the offer, the flusher might have drained the queue for the last time
+        //already. A write that is still in the queue is never inserted, and it must not wait for the insert.
+        if (!running && queue.remove(write)) {
+            rejections.mark();
+            throw new DataAccessResourceFailureException("The write-behind queue was shut down");
+        }
+
+        if (durability == Durability.WRITTEN) {
+            try {
+                write.written.join();
+            } catch (CompletionException ex) {
+                throw (RuntimeException) ex.getCause();
+            }
+        }
+    }
+
+    private void run() {
+        List<QueuedWrite> batch = new ArrayList<>(batchSize);
+
+        try {
+            while (running || !queue.isEmpty()) {
+                QueuedWrite first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    fill(batch);
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.warn("The write-behind flusher was interrupted");
+        }
+
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            LOGGER.error("Cannot insert {} queued todo entries because the write-behind queue was shut down",
+                    batch.size()
+            );
+            failures.mark(batch.size());
+            DataAccessResourceFailureException ex = new DataAccessResourceFailureException(
+                    "The write-behind queue was shut down"
+            );
+            batch.forEach(write -> write.written.completeExceptionally(ex));
+        }
+    }
+
+    /**
+     * Takes todo entries from the queue until the batch is full or the maximum delay has passed.
+     */
+    private void fill(List<QueuedWrite> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !running) {
+                return;
+            }
+
+            QueuedWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<QueuedWrite> batch) {
+        List<Todo> inserted = batch.stream()
+                .map(write -> write.todo)
+                .collect(toList());
+        batchSizes.update(batch.size());
+
+        Set<Integer> failed;
+        Timer.Context context = flushes.time();
+        try {
+            failed = repository.insertAll(inserted);
+        } catch (RuntimeException ex) {
+            LOGGER.error("Cannot insert {} queued todo entries", batch.size(), ex);
+            failures.mark(batch.size());
+            batch.forEach(write -> write.written.completeExceptionally(ex));
+            return;
+        } finally {
+            context.stop();
+        }
+
+        for (int index = 0; index < batch.size(); index++) {
+            QueuedWrite write = batch.get(index);
+
+            if (failed.contains(index)) {
+                LOGGER.error("Cannot insert the queued todo entry: {}", write.todo);
+                failures.mark();
+                write.written.completeExceptionally(new DataAccessResourceFailureException(
+                        "Cannot insert the todo entry with id: " + write.todo.getId()
+                ));
+            } else {
+                write.written.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new todo entries and waits until the queued todo entries have been inserted.
+     */
+    void shutdown() {
+        running = false;
+
+        try {
+            flusher.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (flusher.isAlive()) {
+            LOGGER.warn("The write-behind queue was not flushed in {} milliseconds", SHUTDOWN_TIMEOUT_MILLIS);
+        }
+    }
+
+    private static final class QueuedWrite {
+
+        private final Todo todo;
+
+        private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        private QueuedWrite(Todo todo) {
+            this.todo = todo;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This exception is thrown when a new todo entry cannot be queued for writing because the write-behind
+ * queue stays full. The client should try again later.
+ * @author Petri Kainulainen
+ */
+public class TodoWriteQueueFullException extends RuntimeException {
+
+    public TodoWriteQueueFullException(int capacity) {
+        super(String.format("The write-behind queue is full. Its capacity is: <%d>", capacity));
+    }
+}
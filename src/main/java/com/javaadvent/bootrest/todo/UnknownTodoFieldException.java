@@ -0,0 +1,12 @@
+package com.javaadvent.bootrest.todo;
+
+/**
+ * This exception is thrown when the client requests a field that a todo entry doesn't have.
+ * @author Petri Kainulainen
+ */
+public class UnknownTodoFieldException extends RuntimeException {
+
+    public UnknownTodoFieldException(String field) {
+        super(String.format("Todo entries have no field: <%s>", field));
+    }
+}
@@ -0,0 +1,128 @@
+package com.javaadvent.bootrest.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.javaadvent.bootrest.util.PreCondition.isTrue;
+
+/**
+ * This class provides a thread-safe Bloom filter of strings. If {@link #mightContain(String)} returns false,
+ * the string has certainly not been added to the filter. If it returns true, the string has probably been added,
+ * and the probability of a false positive stays near the configured rate until the number of added strings
+ * exceeds the expected number of strings. Strings cannot be removed from the filter.
+ *
+ * The bit positions of a string are derived from two 64-bit hashes by using double hashing.
+ *
+ * @author Petri Kainulainen
+ */
+public final class BloomFilter {
+
+    private static final long MAX_BIT_COUNT = 64L * Integer.MAX_VALUE;
+
+    private final AtomicLongArray words;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    private final LongAdder insertions = new LongAdder();
+
+    /**
+     * Creates a new filter that is large enough for the expected number of strings.
+     * @param expectedInsertions    The expected number of added strings.
+     * @param falsePositiveRate     The probability of a false positive when the expected number of strings
+     *                              have been added.
+     * @throws java.lang.IllegalArgumentException if the expected number of strings isn't positive or the
+     *                                            false positive rate isn't between 0 and 1.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        isTrue(expectedInsertions > 0, "The expected number of insertions must be positive");
+        isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "The false positive rate must be between 0 and 1");
+
+        double ln2 = Math.log(2);
+        long optimalBitCount = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+        long wordCount = (Math.min(Math.max(optimalBitCount, 64), MAX_BIT_COUNT) + 63) / 64;
+
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bitCount = wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * ln2));
+    }
+
+    public void put(String value) {
+        long firstHash = hash(value);
+        long secondHash = mix(firstHash ^ 0x9e3779b97f4a7c15L);
+
+        for (int index = 1; index <= hashCount; index++) {
+            setBit(bitIndex(firstHash + index * secondHash));
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(String value) {
+        long firstHash = hash(value);
+        long secondHash = mix(firstHash ^ 0x9e3779b97f4a7c15L);
+
+        for (int index = 1; index <= hashCount; index++) {
+            if (!isSet(bitIndex(firstHash + index * secondHash))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return  The number of strings that have been added to the filter, including the duplicates.
+     */
+    public long insertionCount() {
+        return insertions.sum();
+    }
+
+    /**
+     * @return  The number of bits of the filter.
+     */
+    public long bitCount() {
+        return bitCount;
+    }
+
+    private long bitIndex(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    private void setBit(long bitIndex) {
+        int wordIndex = (int) (bitIndex >>> 6);
+        long mask = 1L << bitIndex;
+
+        long word = words.get(wordIndex);
+        while ((word & mask) == 0 && !words.compareAndSet(wordIndex, word, word | mask)) {
+            word = words.get(wordIndex);
+        }
+    }
+
+    private boolean isSet(long bitIndex) {
+        return (words.get((int) (bitIndex >>> 6)) & (1L << bitIndex)) != 0;
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of the characters and mixes its bits.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int index = 0; index < value.length(); index++) {
+            hash ^= value.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads every input bit over the whole hash.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,219 @@
+package com.javaadvent.bootrest.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static com.javaadvent.bootrest.util.PreCondition.isTrue;
+
+/**
+ * This class provides a thread-safe in-memory cache whose size is bounded and whose entries expire after
+ * a fixed time to live. If the cache is full when a new entry is added, the least recently used entry is evicted.
+ *
+ * The entries are split into segments that are guarded by their own locks. This keeps lock contention low
+ * when the cache is read by many threads at the same time.
+ *
+ * @param <K>   The type of the keys.
+ * @param <V>   The type of the cached values.
+ * @author Petri Kainulainen
+ */
+public final class ExpiringLruCache<K, V> {
+
+    private static final int MAX_SEGMENT_COUNT = 16;
+
+    private final Segment<K, V>[] segments;
+
+    private final long timeToLiveNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     * @param maxSize       The maximum number of entries that are kept in the cache.
+     * @param timeToLive    The time after which a cached entry expires.
+     * @param unit          The time unit of the time to live.
+     * @throws java.lang.IllegalArgumentException if the maximum size or the time to live isn't positive.
+     */
+    public ExpiringLruCache(int maxSize, long timeToLive, TimeUnit unit) {
+        this(maxSize, timeToLive, unit, System::nanoTime);
+    }
+
+    ExpiringLruCache(int maxSize, long timeToLive, TimeUnit unit, LongSupplier nanoClock) {
+        isTrue(maxSize > 0, "The maximum size must be positive");
+        isTrue(timeToLive > 0, "The time to live must be positive");
+
+        int segmentCount = Math.min(MAX_SEGMENT_COUNT, maxSize);
+        int maxSegmentSize = (maxSize + segmentCount - 1) / segmentCount;
+
+        this.segments = newSegments(segmentCount);
+        for (int index = 0; index < segmentCount; index++) {
+            segments[index] = new Segment<>(maxSegmentSize, evictions);
+        }
+
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns the cached value of the given key.
+     * @param key   The key of the requested value.
+     * @return      The cached value or null if the value isn't cached or it has expired.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+
+        synchronized (segment) {
+            CacheEntry<V> entry = segment.get(key);
+
+            if (entry == null) {
+                value = null;
+            } else if (entry.expiresAt - nanoClock.getAsLong() <= 0) {
+                segment.remove(key);
+                evictions.increment();
+                value = null;
+            } else {
+                value = entry.value;
+            }
+        }
+
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+
+        return value;
+    }
+
+    /**
+     * Adds a value to the cache. If the cache already contains a value for the given key,
+     * the old value is replaced.
+     * @param key   The key of the cached value.
+     * @param value The cached value.
+     */
+    public void put(K key, V value) {
+        CacheEntry<V> entry = new CacheEntry<>(value, nanoClock.getAsLong() + timeToLiveNanos);
+        Segment<K, V> segment = segmentFor(key);
+
+        synchronized (segment) {
+            segment.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes the value of the given key from the cache.
+     * @param key   The key of the removed value.
+     */
+    public void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes all values from the cache.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return  The number of cached entries. The returned number can include expired entries that
+     *          haven't been requested after they expired.
+     */
+    public int size() {
+        int size = 0;
+
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @return  The number of lookups that returned a cached value.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return  The number of lookups that didn't return a cached value.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return  The number of entries that were removed because the cache was full or because they had expired.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        //Spread the high bits because the hash codes of similar strings differ mostly in their low bits.
+        hash ^= (hash >>> 16);
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Segment<K, V>[] newSegments(int count) {
+        return (Segment<K, V>[]) new Segment<?, ?>[count];
+    }
+
+    private static final class CacheEntry<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A segment is a map whose iteration order is the access order of its entries. This means that
+     * the eldest entry is the least recently used entry of the segment.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, CacheEntry<V>> {
+
+        private final int maxSize;
+
+        private final LongAdder evictions;
+
+        private Segment(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
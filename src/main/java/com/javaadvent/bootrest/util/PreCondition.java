@@ -1,11 +1,17 @@
 package com.javaadvent.bootrest.util;
 
+import java.util.function.Supplier;
+
 /**
  * This class provides static utility methods that are used to ensure that a constructor or a method was invoked properly.
  * These methods throw an exception if the specified precondition is violated.
  *
  * This class selects the thrown exception by using the guideline given in Effective Java by Joshua Bloch (Item 60).
  *
+ * The error message of the thrown exception is constructed only when a precondition is violated. Checks that are
+ * invoked on hot paths should use the fixed-arity or the {@link java.util.function.Supplier} based methods because
+ * they don't allocate anything when the precondition is satisfied.
+ *
  * @author Petri Kainulainen
  */
 public final class PreCondition {
@@ -19,7 +25,51 @@ public final class PreCondition {
      * @throws java.lang.IllegalArgumentException if the inspected exception is false.
      */
     public static void isTrue(boolean expression, String errorMessageTemplate, Object... errorMessageArguments) {
-        isTrue(expression, String.format(errorMessageTemplate, errorMessageArguments));
+        if (!expression) {
+            throw new IllegalArgumentException(String.format(errorMessageTemplate, errorMessageArguments));
+        }
+    }
+    /**
+     * Ensures that the expression given as a method parameter is true. Unlike the varargs variant,
+     * this method doesn't box the argument or allocate an argument array.
+     * @param expression The inspected expression.
+     * @param errorMessageTemplate The template that is used to construct the message of the exception thrown if the
+     * inspected exception is false. The template must use the syntax that is supported
+     * by the {@link java.lang.String#format(String, Object...)} method.
+     * @param errorMessageArgument The argument that is used when the message of the thrown exception is constructed.
+     * @throws java.lang.IllegalArgumentException if the inspected exception is false.
+     */
+    public static void isTrue(boolean expression, String errorMessageTemplate, int errorMessageArgument) {
+        if (!expression) {
+            throw new IllegalArgumentException(String.format(errorMessageTemplate, errorMessageArgument));
+        }
+    }
+    /**
+     * Ensures that the expression given as a method parameter is true. Unlike the varargs variant,
+     * this method doesn't box the argument or allocate an argument array.
+     * @param expression The inspected expression.
+     * @param errorMessageTemplate The template that is used to construct the message of the exception thrown if the
+     * inspected exception is false. The template must use the syntax that is supported
+     * by the {@link java.lang.String#format(String, Object...)} method.
+     * @param errorMessageArgument The argument that is used when the message of the thrown exception is constructed.
+     * @throws java.lang.IllegalArgumentException if the inspected exception is false.
+     */
+    public static void isTrue(boolean expression, String errorMessageTemplate, long errorMessageArgument) {
+        if (!expression) {
+            throw new IllegalArgumentException(String.format(errorMessageTemplate, errorMessageArgument));
+        }
+    }
+    /**
+     * Ensures that the expression given as a method parameter is true.
+     * @param expression The inspected expression.
+     * @param errorMessageSupplier The supplier that constructs the message of the exception thrown if the
+     * inspected expression is false. The supplier is invoked only if the expression is false.
+     * @throws java.lang.IllegalArgumentException if the inspected expression is false.
+     */
+    public static void isTrue(boolean expression, Supplier<String> errorMessageSupplier) {
+        if (!expression) {
+            throw new IllegalArgumentException(errorMessageSupplier.get());
+        }
     }
     /**
      * Ensures that the expression given as a method parameter is true.
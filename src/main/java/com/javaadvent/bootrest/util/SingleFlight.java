@@ -0,0 +1,83 @@
+package com.javaadvent.bootrest.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * This class collapses the concurrent calls that load the value of the same key into one call. The first
+ * thread runs the loader, and the threads that ask for the same key while the loader is running wait for
+ * its result. If the loader throws an exception, the same exception is thrown to every waiting thread.
+ *
+ * Nothing is remembered after the loader has returned, which means that the next call runs the loader again.
+ *
+ * @param <K>   The type of the keys.
+ * @param <V>   The type of the loaded values.
+ * @author Petri Kainulainen
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Returns the value of the key. If another thread is loading the value of the same key, this method
+     * waits for its result instead of running the loader.
+     * @param key       The key of the loaded value.
+     * @param loader    Loads the value when no other thread is loading it.
+     * @return          The loaded value. The value can be returned to many threads.
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> running = calls.putIfAbsent(key, call);
+
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            call.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            calls.remove(key, call);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return  The number of keys whose values are being loaded.
+     */
+    public int runningCount() {
+        return calls.size();
+    }
+
+    /**
+     * @return  The number of calls that waited for the result of another call instead of running the loader.
+     */
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+}
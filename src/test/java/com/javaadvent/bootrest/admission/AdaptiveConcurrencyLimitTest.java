@@ -0,0 +1,111 @@
+package com.javaadvent.bootrest.admission;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final int INITIAL_LIMIT = 20;
+    private static final int MAX_LIMIT = 21;
+    private static final int MIN_LIMIT = 15;
+    private static final int MIN_SAMPLES = 2;
+    private static final long TARGET_LATENCY_MILLIS = 10;
+    private static final long WINDOW_MILLIS = 100;
+
+    private long now;
+
+    private AdaptiveConcurrencyLimit limit;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        limit = new AdaptiveConcurrencyLimit(INITIAL_LIMIT,
+                MIN_LIMIT,
+                MAX_LIMIT,
+                TARGET_LATENCY_MILLIS,
+                WINDOW_MILLIS,
+                MIN_SAMPLES,
+                () -> now
+        );
+    }
+
+    @Test
+    public void tryAcquire_LimitReached_ShouldReturnFalse() {
+        acquire(INITIAL_LIMIT);
+
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(limit.getInFlight()).isEqualTo(INITIAL_LIMIT);
+    }
+
+    @Test
+    public void release_LimitReached_ShouldFreeSlot() {
+        acquire(INITIAL_LIMIT);
+
+        limit.release();
+
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void onLatency_AverageLatencyAboveTarget_ShouldDecreaseLimit() {
+        closeWindow(TARGET_LATENCY_MILLIS + 5);
+
+        assertThat(limit.getLimit()).isEqualTo(18);
+    }
+
+    @Test
+    public void onLatency_LatencyStaysAboveTarget_ShouldNotDecreaseLimitBelowMinimum() {
+        for (int window = 0; window < 5; window++) {
+            closeWindow(TARGET_LATENCY_MILLIS * 10);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(MIN_LIMIT);
+    }
+
+    @Test
+    public void onLatency_LimitReachedAndLatencyBelowTarget_ShouldIncreaseLimitUpToMaximum() {
+        acquire(INITIAL_LIMIT);
+        closeWindow(TARGET_LATENCY_MILLIS);
+        acquire(1);
+        closeWindow(TARGET_LATENCY_MILLIS);
+
+        assertThat(limit.getLimit()).isEqualTo(MAX_LIMIT);
+    }
+
+    @Test
+    public void onLatency_LimitNotReachedAndLatencyBelowTarget_ShouldKeepLimit() {
+        acquire(INITIAL_LIMIT / 2);
+
+        closeWindow(1);
+
+        assertThat(limit.getLimit()).isEqualTo(INITIAL_LIMIT);
+    }
+
+    @Test
+    public void onLatency_NotEnoughSamples_ShouldKeepLimit() {
+        now += TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS);
+
+        limit.onLatency(TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(limit.getLimit()).isEqualTo(INITIAL_LIMIT);
+    }
+
+    private void acquire(int slots) {
+        for (int slot = 0; slot < slots; slot++) {
+            assertThat(limit.tryAcquire()).isTrue();
+        }
+    }
+
+    private void closeWindow(long latencyMillis) {
+        limit.onLatency(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        now += TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS);
+        limit.onLatency(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+    }
+}
@@ -0,0 +1,124 @@
+package com.javaadvent.bootrest.admission;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterChain;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class AdmissionFilterTest {
+
+    private static final String CLIENT_HEADER = "X-Client-Id";
+    private static final String EVENTS_PATH = "/api/todo/events";
+    private static final int LIMIT = 1;
+    private static final long SHED_RETRY_AFTER_SECONDS = 2;
+
+    private AdaptiveConcurrencyLimit concurrencyLimit;
+
+    private MetricRegistry metricRegistry;
+
+    private AdmissionFilter filter;
+
+    private AtomicInteger processedRequests;
+
+    @Before
+    public void setUp() {
+        concurrencyLimit = new AdaptiveConcurrencyLimit(LIMIT, LIMIT, LIMIT, 100, 100, 1);
+        metricRegistry = new MetricRegistry();
+        filter = new AdmissionFilter(new ClientRateLimiter(1, 1, 100),
+                concurrencyLimit,
+                CLIENT_HEADER,
+                Collections.singleton(EVENTS_PATH),
+                SHED_RETRY_AFTER_SECONDS,
+                metricRegistry
+        );
+        processedRequests = new AtomicInteger();
+    }
+
+    @Test
+    public void doFilter_SlotAvailable_ShouldProcessRequestAndReleaseSlot() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request("first"), response, countingChain());
+
+        assertThat(processedRequests.get()).isEqualTo(1);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(concurrencyLimit.getInFlight()).isEqualTo(0);
+    }
+
+    @Test
+    public void doFilter_BucketOfClientEmpty_ShouldRejectRequestWithTooManyRequests() throws Exception {
+        filter.doFilter(request("first"), new MockHttpServletResponse(), countingChain());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request("first"), response, countingChain());
+
+        assertThat(processedRequests.get()).isEqualTo(1);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertThat(response.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(metricRegistry.meter("todo.admission.rate-limited").getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void doFilter_ConcurrencyLimitReached_ShouldShedRequestWithServiceUnavailable() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request("first"), new MockHttpServletResponse(), (req, res) ->
+                filter.doFilter(request("second"), response, countingChain())
+        );
+
+        assertThat(processedRequests.get()).isEqualTo(0);
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+        assertThat(response.getHeader("Retry-After")).isEqualTo(Long.toString(SHED_RETRY_AFTER_SECONDS));
+        assertThat(metricRegistry.meter("todo.admission.shed").getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void doFilter_UnlimitedPath_ShouldNotUseSlot() throws Exception {
+        MockHttpServletRequest request = request("first");
+        request.setRequestURI(EVENTS_PATH);
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            assertThat(concurrencyLimit.getInFlight()).isEqualTo(0);
+            processedRequests.incrementAndGet();
+        });
+
+        assertThat(processedRequests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void doFilter_AsynchronousRequest_ShouldReleaseSlotWhenRequestIsCompleted() throws Exception {
+        MockHttpServletRequest request = request("first");
+        request.setAsyncSupported(true);
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        AsyncContext asyncContext = request.getAsyncContext();
+
+        assertThat(concurrencyLimit.getInFlight()).isEqualTo(1);
+
+        asyncContext.complete();
+
+        assertThat(concurrencyLimit.getInFlight()).isEqualTo(0);
+    }
+
+    private static MockHttpServletRequest request(String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/todo");
+        request.addHeader(CLIENT_HEADER, client);
+        return request;
+    }
+
+    private FilterChain countingChain() {
+        return (req, res) -> processedRequests.incrementAndGet();
+    }
+}
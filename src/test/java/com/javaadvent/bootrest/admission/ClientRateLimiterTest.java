@@ -0,0 +1,83 @@
+package com.javaadvent.bootrest.admission;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ClientRateLimiterTest {
+
+    private static final int BURST = 3;
+    private static final String CLIENT = "client";
+    private static final int MAX_CLIENTS = 2;
+    private static final String OTHER_CLIENT = "otherClient";
+    private static final double RATE_PER_SECOND = 10;
+    private static final long REFILL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private long now;
+
+    private ClientRateLimiter rateLimiter;
+
+    @Before
+    public void setUp() {
+        now = TimeUnit.DAYS.toNanos(1);
+        rateLimiter = new ClientRateLimiter(RATE_PER_SECOND, BURST, MAX_CLIENTS, () -> now);
+    }
+
+    @Test
+    public void tryAcquire_BurstNotUsed_ShouldTakeTokens() {
+        for (int request = 0; request < BURST; request++) {
+            assertThat(rateLimiter.tryAcquire(CLIENT)).isEqualTo(0L);
+        }
+    }
+
+    @Test
+    public void tryAcquire_BurstUsed_ShouldReturnTimeUntilNextToken() {
+        takeBurst(CLIENT);
+
+        assertThat(rateLimiter.tryAcquire(CLIENT)).isEqualTo(REFILL_INTERVAL_NANOS);
+
+        now += REFILL_INTERVAL_NANOS / 2;
+        assertThat(rateLimiter.tryAcquire(CLIENT)).isEqualTo(REFILL_INTERVAL_NANOS / 2);
+    }
+
+    @Test
+    public void tryAcquire_TokenRefilled_ShouldTakeOneToken() {
+        takeBurst(CLIENT);
+
+        now += REFILL_INTERVAL_NANOS;
+
+        assertThat(rateLimiter.tryAcquire(CLIENT)).isEqualTo(0L);
+        assertThat(rateLimiter.tryAcquire(CLIENT)).isGreaterThan(0L);
+    }
+
+    @Test
+    public void tryAcquire_BurstUsedByOtherClient_ShouldTakeToken() {
+        takeBurst(OTHER_CLIENT);
+
+        assertThat(rateLimiter.tryAcquire(CLIENT)).isEqualTo(0L);
+    }
+
+    @Test
+    public void tryAcquire_TooManyClients_ShouldRemoveFullBuckets() {
+        takeBurst(OTHER_CLIENT);
+        now += TimeUnit.SECONDS.toNanos(1);
+        takeBurst(CLIENT);
+
+        rateLimiter.tryAcquire("thirdClient");
+
+        assertThat(rateLimiter.clientCount()).isEqualTo(2);
+        assertThat(rateLimiter.tryAcquire(CLIENT)).isGreaterThan(0L);
+    }
+
+    private void takeBurst(String client) {
+        for (int request = 0; request < BURST; request++) {
+            rateLimiter.tryAcquire(client);
+        }
+    }
+}
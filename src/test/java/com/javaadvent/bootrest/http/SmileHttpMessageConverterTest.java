@@ -0,0 +1,86 @@
+package com.javaadvent.bootrest.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class SmileHttpMessageConverterTest {
+
+    private static final String TITLE = "title";
+
+    private final SmileHttpMessageConverter converter = new SmileHttpMessageConverter(new ObjectMapper());
+
+    @Test
+    public void canWrite_SmileMediaType_ShouldReturnTrue() {
+        assertThat(converter.canWrite(Map.class, SmileHttpMessageConverter.APPLICATION_SMILE)).isTrue();
+    }
+
+    @Test
+    public void canWrite_JsonMediaType_ShouldReturnFalse() {
+        assertThat(converter.canWrite(Map.class, MediaType.APPLICATION_JSON)).isFalse();
+    }
+
+    @Test
+    public void write_ShouldWriteSmileDocument() throws IOException {
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+        converter.write(Collections.singletonMap("title", TITLE), SmileHttpMessageConverter.APPLICATION_SMILE, outputMessage);
+
+        assertThat(outputMessage.getHeaders().getContentType()).isEqualTo(SmileHttpMessageConverter.APPLICATION_SMILE);
+        Map<?, ?> written = new ObjectMapper(new SmileFactory()).readValue(outputMessage.getBodyAsBytes(), Map.class);
+        assertThat(written.get("title")).isEqualTo(TITLE);
+    }
+
+    @Test
+    public void write_JsonMapperHasModule_ShouldUseModuleOfJsonMapper() throws IOException {
+        ObjectMapper jsonMapper = new ObjectMapper();
+        jsonMapper.registerModule(new SimpleModule().addSerializer(Title.class, ToStringSerializer.instance));
+        SmileHttpMessageConverter customized = new SmileHttpMessageConverter(jsonMapper);
+        MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+
+        customized.write(Collections.singletonMap("title", new Title()),
+                SmileHttpMessageConverter.APPLICATION_SMILE,
+                outputMessage
+        );
+
+        Map<?, ?> written = new ObjectMapper(new SmileFactory()).readValue(outputMessage.getBodyAsBytes(), Map.class);
+        assertThat(written.get("title")).isEqualTo(TITLE);
+    }
+
+    @Test
+    public void read_ShouldReadSmileDocument() throws IOException {
+        byte[] document = new ObjectMapper(new SmileFactory()).writeValueAsBytes(Collections.singletonMap("title", TITLE));
+
+        Object read = converter.read(Map.class, new MockHttpInputMessage(document));
+
+        assertThat(((Map<?, ?>) read).get("title")).isEqualTo(TITLE);
+    }
+
+    @Test(expected = HttpMessageNotReadableException.class)
+    public void read_JsonDocument_ShouldThrowException() throws IOException {
+        converter.read(Map.class, new MockHttpInputMessage("{\"title\":\"title\"}".getBytes("UTF-8")));
+    }
+
+    private static final class Title {
+
+        @Override
+        public String toString() {
+            return TITLE;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.javaadvent.bootrest.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class PayloadSizeFilterTest {
+
+    private static final byte[] REQUEST_BODY = "{\"title\":\"Foo\"}".getBytes();
+
+    private MetricRegistry metricRegistry;
+
+    private PayloadSizeFilter filter;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        filter = new PayloadSizeFilter(metricRegistry);
+    }
+
+    @Test
+    public void doFilter_ResponseWrittenToOutputStream_ShouldRecordPayloadSizes() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/todo");
+        request.setContent(REQUEST_BODY);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> res.getOutputStream().write(new byte[42]));
+
+        assertThat(response.getContentAsByteArray()).hasSize(42);
+        assertThat(metricRegistry.histogram("http.request.size").getSnapshot().getValues())
+                .containsOnly((long) REQUEST_BODY.length);
+        assertThat(metricRegistry.histogram("http.response.size").getSnapshot().getValues()).containsOnly(42L);
+    }
+
+    @Test
+    public void doFilter_ResponseWrittenToWriter_ShouldRecordResponseSize() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/todo");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> res.getWriter().write("[]"));
+
+        assertThat(response.getContentAsString()).isEqualTo("[]");
+        assertThat(metricRegistry.histogram("http.request.size").getCount()).isEqualTo(0);
+        assertThat(metricRegistry.histogram("http.response.size").getSnapshot().getValues()).containsOnly(2L);
+    }
+
+    @Test
+    public void doFilter_NoResponseBody_ShouldRecordZeroResponseSize() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("DELETE", "/api/todo/1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> { });
+
+        assertThat(metricRegistry.histogram("http.response.size").getSnapshot().getValues()).containsOnly(0L);
+    }
+}
@@ -0,0 +1,143 @@
+package com.javaadvent.bootrest.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class TimingProxyTest {
+
+    private static final String PREFIX = "greeter";
+
+    private MetricRegistry metricRegistry;
+
+    private Greeter greeter;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        greeter = TimingProxy.create(Greeter.class, new FixedGreeter(), metricRegistry, PREFIX);
+    }
+
+    @Test
+    public void create_ShouldRegisterTimerForEveryMethod() {
+        assertThat(metricRegistry.getTimers().keySet()).containsOnly("greeter.greet",
+                "greeter.greet.String.String",
+                "greeter.fail"
+        );
+    }
+
+    @Test
+    public void invoke_MethodReturnsValue_ShouldReturnValueAndUpdateTimer() {
+        String greeting = greeter.greet("Bob");
+
+        assertThat(greeting).isEqualTo("Hello Bob");
+        assertThat(metricRegistry.timer("greeter.greet").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("greeter.fail").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void invoke_OverloadedMethod_ShouldUpdateTimerOfInvokedOverload() {
+        String greeting = greeter.greet("Hi", "Bob");
+
+        assertThat(greeting).isEqualTo("Hi Bob");
+        assertThat(metricRegistry.timer("greeter.greet.String.String").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("greeter.greet").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void invoke_MethodThrowsException_ShouldRethrowExceptionAndMarkErrorMeters() {
+        try {
+            greeter.fail();
+            fail("Should have thrown an exception");
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage()).isEqualTo("failed");
+        }
+
+        assertThat(metricRegistry.timer("greeter.fail").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("greeter.fail.errors").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter("greeter.errors.IllegalStateException").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void invoke_ListenedMethod_ShouldPassDurationOfEveryInvocationToListener() {
+        List<Long> durations = new ArrayList<>();
+        Greeter listenedGreeter = TimingProxy.create(Greeter.class,
+                new FixedGreeter(),
+                metricRegistry,
+                PREFIX,
+                Collections.singleton("fail"),
+                durations::add
+        );
+
+        try {
+            listenedGreeter.fail();
+            fail("Should have thrown an exception");
+        } catch (IllegalStateException ex) {
+            //The duration of a failed invocation is passed to the listener as well.
+        }
+
+        assertThat(durations).hasSize(1);
+        assertThat(durations.get(0)).isGreaterThanOrEqualTo(0L);
+    }
+
+    @Test
+    public void invoke_MethodNotListened_ShouldNotPassDurationToListener() {
+        List<Long> durations = new ArrayList<>();
+        Greeter listenedGreeter = TimingProxy.create(Greeter.class,
+                new FixedGreeter(),
+                metricRegistry,
+                PREFIX,
+                Collections.singleton("fail"),
+                durations::add
+        );
+
+        listenedGreeter.greet("Bob");
+
+        assertThat(durations).isEmpty();
+        assertThat(metricRegistry.timer("greeter.greet").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void invoke_ObjectMethod_ShouldNotUpdateTimers() {
+        greeter.toString();
+
+        metricRegistry.getTimers().values().forEach(timer -> assertThat(timer.getCount()).isEqualTo(0));
+    }
+
+    interface Greeter {
+
+        String greet(String name);
+
+        String greet(String greeting, String name);
+
+        void fail();
+    }
+
+    private static final class FixedGreeter implements Greeter {
+
+        @Override
+        public String greet(String name) {
+            return greet("Hello", name);
+        }
+
+        @Override
+        public String greet(String greeting, String name) {
+            return greeting + " " + name;
+        }
+
+        @Override
+        public void fail() {
+            throw new IllegalStateException("failed");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.javaadvent.bootrest.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.mongodb.core.MongoOperations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class MongoIndexInitializerTest {
+
+    private static final String COLLECTION_NAME = "indexedDocument";
+    private static final String TEXT_INDEX = "title_text";
+    private static final String TITLE_INDEX = "title";
+
+    @MongoIndex(name = TEXT_INDEX, keys = "{'title': 'text'}", weights = "{'title': 2}")
+    @MongoIndex(name = TITLE_INDEX, keys = "{'title': 1}", unique = true, expireAfterSeconds = 60)
+    static class IndexedDocument {
+    }
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    @Mock
+    private DBCollection collection;
+
+    @Before
+    public void setUp() {
+        when(mongoOperations.getCollectionName(IndexedDocument.class)).thenReturn(COLLECTION_NAME);
+        when(mongoOperations.getCollection(COLLECTION_NAME)).thenReturn(collection);
+        when(collection.getName()).thenReturn(COLLECTION_NAME);
+    }
+
+    @Test
+    public void findIndexedClasses_ShouldFindClassesThatDeclareIndexes() {
+        assertThat(MongoIndexInitializer.findIndexedClasses("com.javaadvent.bootrest.mongo"))
+                .containsOnly(IndexedDocument.class);
+    }
+
+    @Test
+    public void afterPropertiesSet_EnsureInBackground_ShouldCreateDeclaredIndexesInBackground() {
+        when(collection.getIndexInfo()).thenReturn(indexes(TEXT_INDEX, TITLE_INDEX));
+
+        initializer(MongoIndexInitializer.Mode.ENSURE, true).afterPropertiesSet();
+
+        ArgumentCaptor<DBObject> keys = ArgumentCaptor.forClass(DBObject.class);
+        ArgumentCaptor<DBObject> options = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection, times(2)).createIndex(keys.capture(), options.capture());
+
+        assertThat(keys.getAllValues().get(0).get("title")).isEqualTo("text");
+        assertThat(options.getAllValues().get(0).get("name")).isEqualTo(TEXT_INDEX);
+        assertThat(options.getAllValues().get(0).get("background")).isEqualTo(true);
+        assertThat(((DBObject) options.getAllValues().get(0).get("weights")).get("title")).isEqualTo(2);
+        assertThat(options.getAllValues().get(0).containsField("expireAfterSeconds")).isFalse();
+
+        assertThat(keys.getAllValues().get(1).get("title")).isEqualTo(1);
+        assertThat(options.getAllValues().get(1).get("name")).isEqualTo(TITLE_INDEX);
+        assertThat(options.getAllValues().get(1).get("unique")).isEqualTo(true);
+        assertThat(options.getAllValues().get(1).get("expireAfterSeconds")).isEqualTo(60L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterPropertiesSet_IndexCannotBeCreatedAndFailOnMissing_ShouldThrowException() {
+        doThrow(new MongoException("error")).when(collection).createIndex(any(DBObject.class), any(DBObject.class));
+        when(collection.getIndexInfo()).thenReturn(indexes(TITLE_INDEX));
+
+        initializer(MongoIndexInitializer.Mode.ENSURE, true).afterPropertiesSet();
+    }
+
+    @Test
+    public void afterPropertiesSet_VerifyWithExistingIndexes_ShouldNotCreateIndexes() {
+        when(collection.getIndexInfo()).thenReturn(indexes(TEXT_INDEX, TITLE_INDEX));
+
+        initializer(MongoIndexInitializer.Mode.VERIFY, true).afterPropertiesSet();
+
+        verify(collection, never()).createIndex(any(DBObject.class), any(DBObject.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterPropertiesSet_VerifyWithMissingIndexAndFailOnMissing_ShouldThrowException() {
+        when(collection.getIndexInfo()).thenReturn(indexes(TEXT_INDEX));
+
+        initializer(MongoIndexInitializer.Mode.VERIFY, true).afterPropertiesSet();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterPropertiesSet_VerifyWithIndexThatHasOtherKeysAndFailOnMissing_ShouldThrowException() {
+        DBObject titleIndex = index(TITLE_INDEX);
+        titleIndex.put("key", new BasicDBObject("title", -1));
+        when(collection.getIndexInfo()).thenReturn(Arrays.asList(index(TEXT_INDEX), titleIndex));
+
+        initializer(MongoIndexInitializer.Mode.VERIFY, true).afterPropertiesSet();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterPropertiesSet_VerifyWithIndexThatIsNotUniqueAndFailOnMissing_ShouldThrowException() {
+        DBObject titleIndex = index(TITLE_INDEX);
+        titleIndex.removeField("unique");
+        when(collection.getIndexInfo()).thenReturn(Arrays.asList(index(TEXT_INDEX), titleIndex));
+
+        initializer(MongoIndexInitializer.Mode.VERIFY, true).afterPropertiesSet();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void afterPropertiesSet_VerifyWithTextIndexThatHasOtherWeightsAndFailOnMissing_ShouldThrowException() {
+        DBObject textIndex = index(TEXT_INDEX);
+        textIndex.put("weights", new BasicDBObject("title", 1));
+        when(collection.getIndexInfo()).thenReturn(Arrays.asList(textIndex, index(TITLE_INDEX)));
+
+        initializer(MongoIndexInitializer.Mode.VERIFY, true).afterPropertiesSet();
+    }
+
+    @Test
+    public void afterPropertiesSet_VerifyWithMissingIndex_ShouldNotThrowException() {
+        when(collection.getIndexInfo()).thenReturn(indexes(TEXT_INDEX));
+
+        initializer(MongoIndexInitializer.Mode.VERIFY, false).afterPropertiesSet();
+    }
+
+    @Test
+    public void afterPropertiesSet_None_ShouldNotAccessDatabase() {
+        initializer(MongoIndexInitializer.Mode.NONE, true).afterPropertiesSet();
+
+        verify(mongoOperations, never()).getCollection(eq(COLLECTION_NAME));
+        verifyZeroInteractions(collection);
+    }
+
+    private MongoIndexInitializer initializer(MongoIndexInitializer.Mode mode, boolean failOnMissing) {
+        return new MongoIndexInitializer(mongoOperations,
+                Collections.singletonList(IndexedDocument.class),
+                mode,
+                true,
+                failOnMissing
+        );
+    }
+
+    private static List<DBObject> indexes(String... names) {
+        return Arrays.stream(names)
+                .map(MongoIndexInitializerTest::index)
+                .collect(toList());
+    }
+
+    /**
+     * @return  The index information that MongoDB returns for the declared index.
+     */
+    private static DBObject index(String name) {
+        if (TEXT_INDEX.equals(name)) {
+            return new BasicDBObject("name", name)
+                    .append("key", new BasicDBObject("_fts", "text").append("_ftsx", 1))
+                    .append("weights", new BasicDBObject("title", 2));
+        }
+        return new BasicDBObject("name", name)
+                .append("key", new BasicDBObject("title", 1.0))
+                .append("unique", true)
+                .append("expireAfterSeconds", 60);
+    }
+}
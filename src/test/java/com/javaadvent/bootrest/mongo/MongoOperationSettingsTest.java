@@ -0,0 +1,54 @@
+package com.javaadvent.bootrest.mongo;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class MongoOperationSettingsTest {
+
+    private static final String FIND_ALL = "findAll";
+    private static final String FIND_ONE = "findOne";
+    private static final String INSERT_ALL = "insertAll";
+
+    @Test
+    public void parse_SettingsGiven_ShouldReturnSettingsOfOperations() {
+        MongoOperationSettings settings = MongoOperationSettings.parse(
+                "findAll:secondaryPreferred, findOne : nearest",
+                "insertAll:MAJORITY"
+        );
+
+        assertThat(settings.getReadPreference(FIND_ALL)).isEqualTo(ReadPreference.secondaryPreferred());
+        assertThat(settings.getReadPreference(FIND_ONE)).isEqualTo(ReadPreference.nearest());
+        assertThat(settings.getWriteConcern(INSERT_ALL)).isEqualTo(WriteConcern.MAJORITY);
+        assertThat(settings.getReadOperations()).containsExactly(FIND_ALL, FIND_ONE);
+        assertThat(settings.getWriteOperations()).containsExactly(INSERT_ALL);
+    }
+
+    @Test
+    public void parse_EmptySettings_ShouldUseDefaultsOfClient() {
+        MongoOperationSettings settings = MongoOperationSettings.parse("", " ");
+
+        assertThat(settings.getReadPreference(FIND_ALL)).isNull();
+        assertThat(settings.getWriteConcern(INSERT_ALL)).isNull();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_OperationMissing_ShouldThrowException() {
+        MongoOperationSettings.parse("secondaryPreferred", "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_UnknownReadPreference_ShouldThrowException() {
+        MongoOperationSettings.parse("findAll:secondaries", "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_UnknownWriteConcern_ShouldThrowException() {
+        MongoOperationSettings.parse("", "insertAll:EVERYWHERE");
+    }
+}
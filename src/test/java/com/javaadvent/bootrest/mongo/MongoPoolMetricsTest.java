@@ -0,0 +1,99 @@
+package com.javaadvent.bootrest.mongo;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.mongodb.ConnectionPoolStatisticsMBean;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class MongoPoolMetricsTest {
+
+    private MBeanServer mBeanServer;
+
+    private Map<String, Metric> metrics;
+
+    @Before
+    public void setUp() {
+        mBeanServer = MBeanServerFactory.newMBeanServer();
+        metrics = new MongoPoolMetrics(mBeanServer).getMetrics();
+    }
+
+    @Test
+    public void getMetrics_NoConnectionPools_ShouldReturnZeros() {
+        assertThat(gauge("size")).isEqualTo(0);
+        assertThat(gauge("checked-out")).isEqualTo(0);
+        assertThat(gauge("utilization")).isEqualTo(Double.NaN);
+    }
+
+    @Test
+    public void getMetrics_ConnectionPoolsRegistered_ShouldSumStatisticsOfConnectionPools() throws JMException {
+        registerPool("first", 10, 4, 2, 1);
+        registerPool("second", 10, 6, 4, 0);
+
+        assertThat(gauge("max-size")).isEqualTo(20);
+        assertThat(gauge("size")).isEqualTo(10);
+        assertThat(gauge("checked-out")).isEqualTo(6);
+        assertThat(gauge("wait-queue-size")).isEqualTo(1);
+        assertThat(gauge("utilization")).isEqualTo(0.3);
+    }
+
+    private Object gauge(String name) {
+        return ((Gauge<?>) metrics.get(name)).getValue();
+    }
+
+    private void registerPool(String host, int maxSize, int size, int checkedOut, int waitQueueSize)
+            throws JMException {
+        ConnectionPoolStatisticsMBean pool = new ConnectionPoolStatisticsMBean() {
+            @Override
+            public String getHost() {
+                return host;
+            }
+
+            @Override
+            public int getPort() {
+                return 27017;
+            }
+
+            @Override
+            public int getMinSize() {
+                return 0;
+            }
+
+            @Override
+            public int getMaxSize() {
+                return maxSize;
+            }
+
+            @Override
+            public int getSize() {
+                return size;
+            }
+
+            @Override
+            public int getCheckedOutCount() {
+                return checkedOut;
+            }
+
+            @Override
+            public int getWaitQueueSize() {
+                return waitQueueSize;
+            }
+        };
+
+        mBeanServer.registerMBean(new StandardMBean(pool, ConnectionPoolStatisticsMBean.class),
+                new ObjectName("org.mongodb.driver:type=ConnectionPool,clusterId=1,host=" + host + ",port=27017")
+        );
+    }
+}
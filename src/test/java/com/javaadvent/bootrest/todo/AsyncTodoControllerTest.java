@@ -0,0 +1,220 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncTodoControllerTest {
+
+    private static final MediaType APPLICATION_JSON_UTF8 = new MediaType(MediaType.APPLICATION_JSON.getType(),
+            MediaType.APPLICATION_JSON.getSubtype(),
+            Charset.forName("utf8")
+    );
+
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+    private static final long TIMEOUT_MILLIS = 1000;
+    private static final long VERSION = 3L;
+
+    @Mock
+    private AsyncTodoService service;
+
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new AsyncTodoController(service,
+                new TodoIdempotencyStore(10, 60, TIMEOUT_MILLIS, null, System::currentTimeMillis, new MetricRegistry()),
+                Runnable::run,
+                new TodoNotFoundCounter(new MetricRegistry(), 1000),
+                TIMEOUT_MILLIS
+        )).build();
+    }
+
+    @Test
+    public void create_TodoEntryCreated_ShouldReturnResponseStatusCreatedAndTodoEntryAsJson() throws Exception {
+        TodoDTO newTodoEntry = new TodoDTOBuilder()
+                .title(TITLE)
+                .build();
+
+        when(service.create(isA(TodoDTO.class))).thenReturn(CompletableFuture.completedFuture(todoEntry()));
+
+        performAsync(post("/api/async/todo")
+                .contentType(APPLICATION_JSON_UTF8)
+                .content(WebTestUtil.convertObjectToJsonBytes(newTodoEntry))
+        )
+                .andExpect(status().isCreated())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(jsonPath("$.id", is(ID)))
+                .andExpect(jsonPath("$.title", is(TITLE)));
+    }
+
+    @Test
+    public void create_SameIdempotencyKeyWhileFirstRequestIsRunning_ShouldCreateOneTodoEntryAndReturnItTwice() throws Exception {
+        TodoDTO newTodoEntry = new TodoDTOBuilder()
+                .title(TITLE)
+                .build();
+        CompletableFuture<TodoDTO> created = new CompletableFuture<>();
+
+        when(service.create(isA(TodoDTO.class))).thenReturn(created);
+
+        RequestBuilder create = post("/api/async/todo")
+                .header("Idempotency-Key", "key")
+                .contentType(APPLICATION_JSON_UTF8)
+                .content(WebTestUtil.convertObjectToJsonBytes(newTodoEntry));
+        MvcResult first = mockMvc.perform(create).andExpect(request().asyncStarted()).andReturn();
+        MvcResult second = mockMvc.perform(create).andExpect(request().asyncStarted()).andReturn();
+
+        created.complete(todoEntry());
+
+        for (MvcResult result : new MvcResult[]{first, second}) {
+            mockMvc.perform(asyncDispatch(result))
+                    .andExpect(status().isCreated())
+                    .andExpect(jsonPath("$.id", is(ID)));
+        }
+        verify(service, times(1)).create(isA(TodoDTO.class));
+    }
+
+    @Test
+    public void create_IdempotencyKeyReservedOnOtherInstance_ShouldReturnResponseStatusConflict() throws Exception {
+        MongoOperations mongoOperations = mock(MongoOperations.class);
+        doThrow(new DuplicateKeyException("duplicate key")).when(mongoOperations).insert(isA(TodoIdempotencyRecord.class));
+        when(mongoOperations.findById("key", TodoIdempotencyRecord.class)).thenReturn(new TodoIdempotencyRecord("key",
+                new TodoDTOBuilder().title(TITLE).build(),
+                new Date()
+        ));
+        mockMvc = MockMvcBuilders.standaloneSetup(new AsyncTodoController(service,
+                new TodoIdempotencyStore(10, 60, TIMEOUT_MILLIS, mongoOperations, System::currentTimeMillis, new MetricRegistry()),
+                Runnable::run,
+                new TodoNotFoundCounter(new MetricRegistry(), 1000),
+                TIMEOUT_MILLIS
+        )).build();
+        TodoDTO newTodoEntry = new TodoDTOBuilder()
+                .title(TITLE)
+                .build();
+
+        performAsync(post("/api/async/todo")
+                .header("Idempotency-Key", "key")
+                .contentType(APPLICATION_JSON_UTF8)
+                .content(WebTestUtil.convertObjectToJsonBytes(newTodoEntry))
+        )
+                .andExpect(status().isConflict());
+
+        verify(service, never()).create(isA(TodoDTO.class));
+    }
+
+    @Test
+    public void findById_TodoEntryFound_ShouldReturnTodoEntryAsJson() throws Exception {
+        when(service.findById(ID)).thenReturn(CompletableFuture.completedFuture(todoEntry()));
+
+        performAsync(get("/api/async/todo/{id}", ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(jsonPath("$.id", is(ID)))
+                .andExpect(jsonPath("$.title", is(TITLE)));
+    }
+
+    @Test
+    public void findById_TodoEntryNotFound_ShouldReturnResponseStatusNotFound() throws Exception {
+        when(service.findById(ID)).thenReturn(failedFuture(new TodoNotFoundException(ID)));
+
+        performAsync(get("/api/async/todo/{id}", ID))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void findById_IfNoneMatchMatchesVersion_ShouldReturnResponseStatusNotModifiedWithoutFindingTodoEntry() throws Exception {
+        when(service.findVersionById(ID)).thenReturn(CompletableFuture.completedFuture(VERSION));
+
+        performAsync(get("/api/async/todo/{id}", ID)
+                .header("If-None-Match", "\"3\"")
+        )
+                .andExpect(status().isNotModified());
+
+        verify(service, never()).findById(ID);
+    }
+
+    @Test
+    public void findById_ExecutorIsSaturated_ShouldReturnResponseStatusServiceUnavailable() throws Exception {
+        when(service.findById(ID)).thenThrow(new RejectedExecutionException());
+
+        mockMvc.perform(get("/api/async/todo/{id}", ID))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    public void update_VersionConflict_ShouldReturnResponseStatusPreconditionFailed() throws Exception {
+        TodoDTO updatedTodoEntry = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(service.update(isA(TodoDTO.class))).thenReturn(failedFuture(new TodoVersionConflictException(ID, VERSION)));
+
+        performAsync(put("/api/async/todo/{id}", ID)
+                .contentType(APPLICATION_JSON_UTF8)
+                .content(WebTestUtil.convertObjectToJsonBytes(updatedTodoEntry))
+                .header("If-Match", "\"3\"")
+        )
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    private ResultActions performAsync(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable ex) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    private static TodoDTO todoEntry() {
+        return new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+    }
+}
@@ -0,0 +1,193 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.util.ExpiringLruCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.javaadvent.bootrest.todo.TodoDTOAssert.assertThatTodoDTO;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CachingTodoServiceTest {
+
+    private static final String DESCRIPTION = "description";
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+    private static final String UPDATED_TITLE = "updatedTitle";
+    private static final long VERSION = 3L;
+
+    @Mock
+    private TodoService delegate;
+
+    private CachingTodoService service;
+
+    @Before
+    public void setUp() {
+        this.service = new CachingTodoService(delegate, new ExpiringLruCache<>(10, 1, TimeUnit.HOURS));
+    }
+
+    @Test
+    public void findById_TodoEntryFoundTwice_ShouldInvokeDelegateOnce() {
+        when(delegate.findById(ID)).thenReturn(todoEntry(TITLE));
+
+        service.findById(ID);
+        TodoDTO returned = service.findById(ID);
+
+        verify(delegate, times(1)).findById(ID);
+        assertThatTodoDTO(returned)
+                .hasId(ID)
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+    }
+
+    @Test
+    public void findById_CachedTodoEntryModifiedByCaller_ShouldReturnOriginalTodoEntry() {
+        when(delegate.findById(ID)).thenReturn(todoEntry(TITLE));
+
+        service.findById(ID).setTitle(UPDATED_TITLE);
+        TodoDTO returned = service.findById(ID);
+
+        assertThatTodoDTO(returned).hasTitle(TITLE);
+    }
+
+    @Test
+    public void findById_FieldsGivenAndTodoEntryCached_ShouldReturnCachedTodoEntry() {
+        TodoFields fields = TodoFields.parse("title");
+        when(delegate.findById(ID)).thenReturn(todoEntry(TITLE));
+
+        service.findById(ID);
+        TodoDTO returned = service.findById(ID, fields);
+
+        verify(delegate, times(1)).findById(ID);
+        verifyNoMoreInteractions(delegate);
+        assertThatTodoDTO(returned).hasTitle(TITLE);
+    }
+
+    @Test
+    public void findById_FieldsGiven_ShouldNotCacheTodoEntry() {
+        TodoFields fields = TodoFields.parse("title");
+        when(delegate.findById(ID, fields)).thenReturn(todoEntry(TITLE));
+        when(delegate.findById(ID)).thenReturn(todoEntry(TITLE));
+
+        service.findById(ID, fields);
+        service.findById(ID);
+
+        verify(delegate, times(1)).findById(ID, fields);
+        verify(delegate, times(1)).findById(ID);
+    }
+
+    @Test(expected = TodoNotFoundException.class)
+    public void findById_TodoEntryNotFound_ShouldThrowException() {
+        when(delegate.findById(ID)).thenThrow(new TodoNotFoundException(ID));
+
+        service.findById(ID);
+    }
+
+    @Test
+    public void findById_TodoEntryCreated_ShouldNotInvokeDelegate() {
+        when(delegate.create(isA(TodoDTO.class))).thenReturn(todoEntry(TITLE));
+
+        service.create(new TodoDTOBuilder().title(TITLE).build());
+        TodoDTO returned = service.findById(ID);
+
+        verify(delegate, times(1)).create(isA(TodoDTO.class));
+        verifyNoMoreInteractions(delegate);
+        assertThatTodoDTO(returned).hasTitle(TITLE);
+    }
+
+    @Test
+    public void findById_TodoEntryUpdated_ShouldReturnUpdatedTodoEntry() {
+        when(delegate.findById(ID)).thenReturn(todoEntry(TITLE));
+        when(delegate.update(isA(TodoDTO.class))).thenReturn(todoEntry(UPDATED_TITLE));
+
+        service.findById(ID);
+        service.update(todoEntry(UPDATED_TITLE));
+        TodoDTO returned = service.findById(ID);
+
+        verify(delegate, times(1)).findById(ID);
+        assertThatTodoDTO(returned).hasTitle(UPDATED_TITLE);
+    }
+
+    @Test
+    public void findById_TodoEntryDeleted_ShouldInvokeDelegate() {
+        when(delegate.findById(ID)).thenReturn(todoEntry(TITLE));
+
+        service.findById(ID);
+        service.delete(ID);
+        service.findById(ID);
+
+        verify(delegate, times(2)).findById(ID);
+    }
+
+    @Test
+    public void findById_TodoEntryUpdatedWhileItIsRead_ShouldNotCacheStaleTodoEntry() {
+        when(delegate.update(isA(TodoDTO.class))).thenReturn(todoEntry(UPDATED_TITLE));
+        when(delegate.findById(ID)).then(invocation -> {
+            service.update(todoEntry(UPDATED_TITLE));
+            return todoEntry(TITLE);
+        });
+
+        service.findById(ID);
+        TodoDTO returned = service.findById(ID);
+
+        verify(delegate, times(1)).findById(ID);
+        assertThatTodoDTO(returned).hasTitle(UPDATED_TITLE);
+    }
+
+    @Test
+    public void findById_TodoEntryDeletedWhileItIsRead_ShouldNotCacheStaleTodoEntry() {
+        when(delegate.findById(ID)).then(invocation -> {
+            service.delete(ID);
+            return todoEntry(TITLE);
+        });
+
+        service.findById(ID);
+        service.findById(ID);
+
+        verify(delegate, times(2)).findById(ID);
+    }
+
+    @Test
+    public void findVersionById_TodoEntryCached_ShouldReturnCachedVersionWithoutInvokingDelegate() {
+        TodoDTO found = todoEntry(TITLE);
+        found.setVersion(VERSION);
+        when(delegate.findById(ID)).thenReturn(found);
+
+        service.findById(ID);
+        long version = service.findVersionById(ID);
+
+        assertThat(version).isEqualTo(VERSION);
+        verify(delegate, times(1)).findById(ID);
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    public void findVersionById_TodoEntryNotCached_ShouldInvokeDelegate() {
+        when(delegate.findVersionById(ID)).thenReturn(VERSION);
+
+        long version = service.findVersionById(ID);
+
+        assertThat(version).isEqualTo(VERSION);
+    }
+
+    private TodoDTO todoEntry(String title) {
+        return new TodoDTOBuilder()
+                .id(ID)
+                .title(title)
+                .description(DESCRIPTION)
+                .build();
+    }
+}
@@ -0,0 +1,105 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.util.SingleFlight;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.javaadvent.bootrest.todo.TodoDTOAssert.assertThatTodoDTO;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CoalescingTodoServiceTest {
+
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+
+    @Mock
+    private TodoService delegate;
+
+    private SingleFlight<String, TodoDTO> findByIdCalls;
+
+    private ExecutorService executor;
+
+    private CoalescingTodoService service;
+
+    @Before
+    public void setUp() {
+        findByIdCalls = new SingleFlight<>();
+        executor = Executors.newCachedThreadPool();
+        service = new CoalescingTodoService(delegate, findByIdCalls);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void findById_TodoEntryFound_ShouldReturnCopyOfTodoEntry() {
+        TodoDTO found = todoEntry();
+        when(delegate.findById(ID)).thenReturn(found);
+
+        TodoDTO returned = service.findById(ID);
+
+        assertThat(returned).isNotSameAs(found);
+        assertThatTodoDTO(returned)
+                .hasId(ID)
+                .hasTitle(TITLE);
+    }
+
+    @Test(expected = TodoNotFoundException.class)
+    public void findById_TodoEntryNotFound_ShouldThrowException() {
+        when(delegate.findById(ID)).thenThrow(new TodoNotFoundException(ID));
+
+        service.findById(ID);
+    }
+
+    @Test
+    public void findById_SameTodoEntryRequestedConcurrently_ShouldInvokeDelegateOnce() throws Exception {
+        CountDownLatch delegateReleased = new CountDownLatch(1);
+        CountDownLatch delegateInvoked = new CountDownLatch(1);
+        when(delegate.findById(ID)).then(invocation -> {
+            delegateInvoked.countDown();
+            delegateReleased.await();
+            return todoEntry();
+        });
+
+        Future<TodoDTO> first = executor.submit(() -> service.findById(ID));
+        delegateInvoked.await(1, TimeUnit.SECONDS);
+        Future<TodoDTO> second = executor.submit(() -> service.findById(ID));
+        while (findByIdCalls.coalescedCount() == 0) {
+            Thread.sleep(1);
+        }
+        delegateReleased.countDown();
+
+        TodoDTO firstFound = first.get(1, TimeUnit.SECONDS);
+        TodoDTO secondFound = second.get(1, TimeUnit.SECONDS);
+
+        verify(delegate, times(1)).findById(ID);
+        assertThat(firstFound).isNotSameAs(secondFound);
+        assertThatTodoDTO(secondFound).hasId(ID);
+    }
+
+    private static TodoDTO todoEntry() {
+        return new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+    }
+}
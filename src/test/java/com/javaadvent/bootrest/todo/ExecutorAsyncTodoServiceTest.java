@@ -0,0 +1,81 @@
+package com.javaadvent.bootrest.todo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.javaadvent.bootrest.todo.TodoDTOAssert.assertThatTodoDTO;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ExecutorAsyncTodoServiceTest {
+
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+
+    @Mock
+    private TodoService delegate;
+
+    private List<Runnable> submitted;
+
+    private ExecutorAsyncTodoService service;
+
+    @Before
+    public void setUp() {
+        submitted = new ArrayList<>();
+        service = new ExecutorAsyncTodoService(delegate, submitted::add);
+    }
+
+    @Test
+    public void findById_ShouldNotInvokeDelegateOnCallingThread() {
+        CompletableFuture<TodoDTO> future = service.findById(ID);
+
+        assertThat(future.isDone()).isFalse();
+        assertThat(submitted).hasSize(1);
+        verifyZeroInteractions(delegate);
+    }
+
+    @Test
+    public void findById_TodoEntryFound_ShouldCompleteWithFoundTodoEntry() throws Exception {
+        when(delegate.findById(ID)).thenReturn(new TodoDTOBuilder().id(ID).title(TITLE).build());
+
+        CompletableFuture<TodoDTO> future = service.findById(ID);
+        runSubmittedTasks();
+
+        assertThatTodoDTO(future.get())
+                .hasId(ID)
+                .hasTitle(TITLE);
+    }
+
+    @Test
+    public void findById_TodoEntryNotFound_ShouldCompleteExceptionally() throws Exception {
+        when(delegate.findById(ID)).thenThrow(new TodoNotFoundException(ID));
+
+        CompletableFuture<TodoDTO> future = service.findById(ID);
+        runSubmittedTasks();
+
+        try {
+            future.get();
+            fail("Should have thrown an exception");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isInstanceOf(TodoNotFoundException.class);
+        }
+    }
+
+    private void runSubmittedTasks() {
+        submitted.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,363 @@
+package com.javaadvent.bootrest.todo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.javaadvent.bootrest.todo.TodoAssert.assertThatTodo;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class InMemoryTodoRepositoryTest {
+
+    private static final String DESCRIPTION = "description";
+    private static final long NOW = 1_000_000_000_000L;
+    private static final String TITLE = "title";
+    private static final String UPDATED_DESCRIPTION = "updatedDescription";
+    private static final String UPDATED_TITLE = "updatedTitle";
+
+    private InMemoryTodoRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new InMemoryTodoRepository(4, () -> NOW);
+    }
+
+    @Test
+    public void save_NewTodoEntry_ShouldSetIdAndInitialVersion() {
+        Todo saved = repository.save(todo(TITLE, DESCRIPTION));
+
+        assertThat(saved.getId()).isNotNull();
+        assertThat(saved.getVersion()).isEqualTo(0L);
+    }
+
+    @Test
+    public void findOne_TodoEntryFound_ShouldReturnSavedTodoEntry() {
+        Todo saved = repository.save(todo(TITLE, DESCRIPTION));
+
+        Todo found = repository.findOne(saved.getId()).get();
+
+        assertThatTodo(found)
+                .hasId(saved.getId())
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+        assertThat(found.getVersion()).isEqualTo(0L);
+    }
+
+    @Test
+    public void findOne_ReturnedTodoEntryModified_ShouldNotChangeStoredTodoEntry() {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+
+        repository.findOne(id).get().update(UPDATED_TITLE, UPDATED_DESCRIPTION);
+
+        assertThatTodo(repository.findOne(id).get()).hasTitle(TITLE);
+    }
+
+    @Test
+    public void findOne_TodoEntryNotFound_ShouldReturnEmptyOptional() {
+        assertThat(repository.findOne("unknown").isPresent()).isFalse();
+    }
+
+    @Test
+    public void findOne_FieldsGiven_ShouldReturnOnlyRequestedFieldsAndVersion() {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+
+        Todo found = repository.findOne(id, TodoFields.parse("title")).get();
+
+        assertThatTodo(found)
+                .hasId(id)
+                .hasTitle(TITLE)
+                .hasNoDescription();
+        assertThat(found.getVersion()).isEqualTo(0L);
+    }
+
+    @Test(expected = OptimisticLockingFailureException.class)
+    public void save_VersionOfExistingTodoEntryChanged_ShouldThrowException() {
+        Todo saved = repository.save(todo(TITLE, DESCRIPTION));
+        repository.findAndUpdate(saved.getId(), null, UPDATED_TITLE, null);
+
+        repository.save(saved);
+    }
+
+    @Test
+    public void findAndUpdate_ExpectedVersionMatches_ShouldUpdateTodoEntryAndIncreaseVersion() {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+
+        Todo updated = repository.findAndUpdate(id, 0L, UPDATED_TITLE, UPDATED_DESCRIPTION).get();
+
+        assertThatTodo(updated)
+                .hasTitle(UPDATED_TITLE)
+                .hasDescription(UPDATED_DESCRIPTION);
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        assertThat(updated.getLastModified()).isEqualTo(new Date(NOW));
+        assertThat(repository.findVersion(id)).isEqualTo(Optional.of(1L));
+    }
+
+    @Test
+    public void findAndUpdate_ExpectedVersionDoesNotMatch_ShouldNotUpdateTodoEntry() {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+
+        Optional<Todo> updated = repository.findAndUpdate(id, 5L, UPDATED_TITLE, UPDATED_DESCRIPTION);
+
+        assertThat(updated.isPresent()).isFalse();
+        assertThatTodo(repository.findOne(id).get()).hasTitle(TITLE);
+    }
+
+    @Test
+    public void findAndUpdate_ConcurrentUpdates_ShouldApplyEveryUpdate() throws Exception {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<?>> updates = new ArrayList<>();
+            for (int index = 0; index < 400; index++) {
+                updates.add(executor.submit(() -> repository.findAndUpdate(id, null, UPDATED_TITLE, null)));
+            }
+            for (Future<?> update : updates) {
+                update.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(repository.findVersion(id)).isEqualTo(Optional.of(400L));
+    }
+
+    @Test
+    public void findAndRemove_TodoEntryFound_ShouldRemoveTodoEntry() {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+
+        Todo removed = repository.findAndRemove(id).get();
+
+        assertThatTodo(removed).hasId(id);
+        assertThat(repository.findOne(id).isPresent()).isFalse();
+        assertThat(repository.findAll()).isEmpty();
+        assertThat(repository.findByTitlePrefix(TITLE, 0, 10)).isEmpty();
+    }
+
+    @Test
+    public void findPage_ShouldReturnTodoEntriesInOrderOfIds() {
+        List<String> ids = saveAll("first", "second", "third");
+
+        List<Todo> firstPage = repository.findPage(null, 2);
+        List<Todo> secondPage = repository.findPage(firstPage.get(1).getId(), 2);
+
+        assertThat(idsOf(firstPage)).containsExactly(ids.get(0), ids.get(1));
+        assertThat(idsOf(secondPage)).containsExactly(ids.get(2));
+    }
+
+    @Test
+    public void findByTitlePrefix_ShouldReturnMatchingTodoEntriesInOrderOfTitles() {
+        List<String> ids = saveAll("write tests", "write code", "read code");
+
+        List<Todo> found = repository.findByTitlePrefix("write", 0, 10);
+
+        assertThat(idsOf(found)).containsExactly(ids.get(1), ids.get(0));
+    }
+
+    @Test
+    public void findByTitlePrefix_TitleUpdated_ShouldFindTodoEntryByNewTitle() {
+        String id = repository.save(todo("write code", null)).getId();
+
+        repository.findAndUpdate(id, null, "read code", null);
+
+        assertThat(repository.findByTitlePrefix("write", 0, 10)).isEmpty();
+        assertThat(idsOf(repository.findByTitlePrefix("read", 0, 10))).containsExactly(id);
+    }
+
+    @Test
+    public void findByTitlePrefix_OffsetGiven_ShouldSkipTodoEntries() {
+        List<String> ids = saveAll("a1", "a2", "a3");
+
+        List<Todo> found = repository.findByTitlePrefix("a", 1, 1);
+
+        assertThat(idsOf(found)).containsExactly(ids.get(1));
+    }
+
+    @Test
+    public void search_ShouldOrderTodoEntriesByRelevance() {
+        String inDescription = repository.save(todo("first", "buy milk")).getId();
+        String inTitle = repository.save(todo("buy milk", null)).getId();
+        repository.save(todo("second", "buy bread"));
+
+        List<Todo> found = repository.search("Milk", 0, 10);
+
+        assertThat(idsOf(found)).containsExactly(inTitle, inDescription);
+    }
+
+    @Test
+    public void search_ExcludedWordFound_ShouldNotReturnTodoEntry() {
+        String id = repository.save(todo("buy milk", null)).getId();
+        repository.save(todo("buy bread", null));
+
+        List<Todo> found = repository.search("buy -bread", 0, 10);
+
+        assertThat(idsOf(found)).containsExactly(id);
+    }
+
+    @Test
+    public void search_PhraseNotFound_ShouldNotReturnTodoEntry() {
+        String id = repository.save(todo("buy milk today", null)).getId();
+        repository.save(todo("milk and buy", null));
+
+        List<Todo> found = repository.search("\"buy milk\"", 0, 10);
+
+        assertThat(idsOf(found)).containsExactly(id);
+    }
+
+    @Test
+    public void findModified_ShouldContinueAfterGivenTimeAndId() {
+        List<String> ids = saveAll(NOW, "first", "second", "third");
+
+        List<Todo> found = repository.findModified(new Date(NOW), ids.get(0), new Date(NOW), 10);
+
+        assertThat(idsOf(found)).containsExactly(ids.get(1), ids.get(2));
+    }
+
+    @Test
+    public void findModified_EmptyIdGiven_ShouldReturnTodoEntriesModifiedAtGivenTime() {
+        List<String> ids = saveAll(NOW, "first", "second");
+
+        List<Todo> found = repository.findModified(new Date(NOW), "", new Date(NOW), 10);
+
+        assertThat(idsOf(found)).containsExactly(ids.get(0), ids.get(1));
+    }
+
+    @Test
+    public void findModified_TodoEntryModifiedAfterUntil_ShouldNotReturnTodoEntry() {
+        saveAll(NOW + 1, "first");
+
+        assertThat(repository.findModified(new Date(0), "", new Date(NOW), 10)).isEmpty();
+    }
+
+    @Test
+    public void findTombstones_ShouldReturnTombstonesInOrderOfDeletionTimes() {
+        repository.saveTombstones(Arrays.asList("b", "a"), new Date(NOW));
+        repository.saveTombstones(Arrays.asList("c"), new Date(NOW - 1));
+
+        List<TodoTombstone> found = repository.findTombstones(new Date(0), "", new Date(NOW), 10);
+
+        assertThat(found.stream().map(TodoTombstone::getId).collect(toList())).containsExactly("c", "a", "b");
+    }
+
+    @Test
+    public void saveTombstones_ShouldDeleteExpiredTombstones() {
+        repository.saveTombstones(Arrays.asList("old"), new Date(0));
+
+        repository.saveTombstones(Arrays.asList("new"), new Date(TimeUnit.SECONDS.toMillis(TodoTombstone.RETENTION_SECONDS) + 1));
+
+        List<TodoTombstone> found = repository.findTombstones(new Date(0), "", new Date(Long.MAX_VALUE), 10);
+        assertThat(found.stream().map(TodoTombstone::getId).collect(toList())).containsExactly("new");
+    }
+
+    @Test
+    public void insertAll_ShouldSetIdsAndVersions() {
+        List<Todo> inserted = Arrays.asList(todo("first", null), todo("second", null));
+
+        assertThat(repository.insertAll(inserted)).isEmpty();
+
+        assertThat(inserted.get(0).getId()).isNotNull();
+        assertThat(inserted.get(1).getVersion()).isEqualTo(0L);
+        assertThat(repository.findAll()).hasSize(2);
+    }
+
+    @Test
+    public void insertAll_IdsSet_ShouldKeepIdsAndReturnIndexesOfExistingIds() {
+        String existingId = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        List<Todo> inserted = Arrays.asList(new TodoBuilder().id("new").build(), new TodoBuilder().id(existingId).build());
+
+        assertThat(repository.insertAll(inserted)).containsExactly(1);
+
+        assertThat(repository.findOne("new").isPresent()).isTrue();
+        assertThatTodo(repository.findOne(existingId).get()).hasTitle(TITLE);
+    }
+
+    @Test
+    public void updateAll_ShouldUpdateExistingTodoEntriesAndReturnDeletedOnesAsNotFound() {
+        Todo existing = repository.save(todo(TITLE, DESCRIPTION));
+        Todo deleted = repository.save(todo(TITLE, DESCRIPTION));
+        repository.findAndRemove(deleted.getId());
+
+        existing.update(UPDATED_TITLE, null);
+        deleted.update(UPDATED_TITLE, null);
+
+        assertThat(repository.updateAll(Arrays.asList(existing, deleted)))
+                .isEqualTo(Collections.singletonMap(1, TodoBatchResultDTO.Status.NOT_FOUND));
+
+        Todo found = repository.findOne(existing.getId()).get();
+        assertThatTodo(found)
+                .hasTitle(UPDATED_TITLE)
+                .hasNoDescription();
+        assertThat(found.getVersion()).isEqualTo(1L);
+        assertThat(repository.findOne(deleted.getId()).isPresent()).isFalse();
+    }
+
+    @Test
+    public void updateAll_TodoEntryModifiedByAnotherWriter_ShouldReturnConflictWithoutUpdatingTodoEntry() {
+        Todo read = repository.save(todo(TITLE, DESCRIPTION));
+        repository.findAndUpdate(read.getId(), null, TITLE, null);
+
+        read.update(UPDATED_TITLE, null);
+
+        assertThat(repository.updateAll(Arrays.asList(read)))
+                .isEqualTo(Collections.singletonMap(0, TodoBatchResultDTO.Status.CONFLICT));
+        assertThatTodo(repository.findOne(read.getId()).get()).hasTitle(TITLE);
+    }
+
+    @Test
+    public void deleteAll_ShouldDeleteTodoEntriesAndReturnUnknownIdsAsNotFound() {
+        List<String> ids = saveAll("first", "second", "third");
+
+        assertThat(repository.deleteAll(Arrays.asList(ids.get(0), ids.get(2), "unknown")))
+                .isEqualTo(Collections.singletonMap(2, TodoBatchResultDTO.Status.NOT_FOUND));
+
+        assertThat(idsOf(repository.findAll())).containsExactly(ids.get(1));
+    }
+
+    private List<String> saveAll(String... titles) {
+        List<String> ids = new ArrayList<>();
+        for (String title : titles) {
+            ids.add(repository.save(todo(title, null)).getId());
+        }
+        return ids;
+    }
+
+    private List<String> saveAll(long lastModified, String... titles) {
+        List<String> ids = new ArrayList<>();
+        for (String title : titles) {
+            ids.add(repository.save(new TodoBuilder()
+                    .title(title)
+                    .lastModified(new Date(lastModified))
+                    .build()
+            ).getId());
+        }
+        return ids;
+    }
+
+    private static Todo todo(String title, String description) {
+        return Todo.getBuilder()
+                .title(title)
+                .description(description)
+                .build();
+    }
+
+    private static List<String> idsOf(List<Todo> todoEntries) {
+        return todoEntries.stream()
+                .map(Todo::getId)
+                .collect(toList());
+    }
+}
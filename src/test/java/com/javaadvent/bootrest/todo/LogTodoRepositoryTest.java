@@ -0,0 +1,232 @@
+package com.javaadvent.bootrest.todo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.javaadvent.bootrest.todo.TodoAssert.assertThatTodo;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class LogTodoRepositoryTest {
+
+    private static final String DESCRIPTION = "description";
+    private static final int INITIAL_SIZE = 1024;
+    private static final long NOW = 1_000_000_000_000L;
+    private static final String TITLE = "title";
+    private static final String UPDATED_TITLE = "updatedTitle";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    private long now = NOW;
+
+    private LogTodoRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        path = folder.getRoot().toPath().resolve("data").resolve("todo.log");
+        repository = open();
+    }
+
+    @After
+    public void closeRepository() {
+        repository.close();
+    }
+
+    @Test
+    public void open_TodoEntrySaved_ShouldLoadTodoEntry() throws IOException {
+        Todo saved = repository.save(todo(TITLE, DESCRIPTION));
+
+        reopen();
+
+        Todo found = repository.findOne(saved.getId()).get();
+        assertThatTodo(found)
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+        assertThat(found.getVersion()).isEqualTo(0L);
+    }
+
+    @Test
+    public void open_TodoEntryUpdated_ShouldLoadLatestVersion() throws IOException {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        repository.findAndUpdate(id, 0L, UPDATED_TITLE, null);
+
+        reopen();
+
+        Todo found = repository.findOne(id).get();
+        assertThatTodo(found)
+                .hasTitle(UPDATED_TITLE)
+                .hasNoDescription();
+        assertThat(found.getVersion()).isEqualTo(1L);
+        assertThat(found.getLastModified()).isEqualTo(new Date(NOW));
+        assertThat(repository.findByTitlePrefix(TITLE, 0, 10)).isEmpty();
+    }
+
+    @Test
+    public void open_TodoEntryRemoved_ShouldNotLoadTodoEntry() throws IOException {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        repository.findAndRemove(id);
+
+        reopen();
+
+        assertThat(repository.findOne(id).isPresent()).isFalse();
+    }
+
+    @Test
+    public void open_TombstonesSaved_ShouldLoadTombstones() throws IOException {
+        repository.saveTombstones(Arrays.asList("first", "second"), new Date(NOW));
+
+        reopen();
+
+        assertThat(tombstoneIds()).containsExactly("first", "second");
+    }
+
+    @Test
+    public void open_LogGrown_ShouldLoadAllTodoEntries() throws IOException {
+        for (int index = 0; index < 100; index++) {
+            repository.save(todo(TITLE + index, DESCRIPTION));
+        }
+
+        reopen();
+
+        assertThat(repository.findAll()).hasSize(100);
+    }
+
+    @Test
+    public void open_LastRecordIncomplete_ShouldLoadCompleteRecordsAndAcceptNewWrites() throws IOException {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        long end = repository.logSize();
+        repository.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(100);
+            file.writeInt(12345);
+            file.write(new byte[] {1, 2, 3});
+        }
+
+        repository = open();
+        assertThat(repository.logSize()).isEqualTo(end);
+
+        String newId = repository.save(todo(UPDATED_TITLE, null)).getId();
+        reopen();
+
+        assertThat(repository.findOne(id).isPresent()).isTrue();
+        assertThat(repository.findOne(newId).isPresent()).isTrue();
+    }
+
+    @Test
+    public void compactIfNeeded_EnoughGarbage_ShouldShrinkLogAndKeepLatestVersions() throws IOException {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        for (int index = 0; index < 10; index++) {
+            repository.findAndUpdate(id, null, UPDATED_TITLE + index, DESCRIPTION);
+        }
+        String removedId = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        repository.findAndRemove(removedId);
+        long sizeBeforeCompaction = repository.logSize();
+
+        repository.compactIfNeeded(0.5);
+
+        assertThat(repository.compactionCount()).isEqualTo(1L);
+        assertThat(repository.logSize()).isLessThan(sizeBeforeCompaction);
+        assertThat(Files.exists(path)).isTrue();
+
+        reopen();
+
+        Todo found = repository.findOne(id).get();
+        assertThatTodo(found).hasTitle(UPDATED_TITLE + 9);
+        assertThat(found.getVersion()).isEqualTo(10L);
+        assertThat(repository.findOne(removedId).isPresent()).isFalse();
+    }
+
+    @Test
+    public void compactIfNeeded_NotEnoughGarbage_ShouldNotCompactLog() {
+        repository.save(todo(TITLE, DESCRIPTION));
+        repository.save(todo(UPDATED_TITLE, DESCRIPTION));
+
+        repository.compactIfNeeded(0.5);
+
+        assertThat(repository.compactionCount()).isEqualTo(0L);
+    }
+
+    @Test
+    public void compactIfNeeded_ShouldDropExpiredTombstones() throws IOException {
+        repository.saveTombstones(Arrays.asList("expired"), new Date(NOW));
+        repository.saveTombstones(Arrays.asList("live"), new Date(NOW + 2));
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        repository.findAndRemove(id);
+        now = NOW + TimeUnit.SECONDS.toMillis(TodoTombstone.RETENTION_SECONDS) + 1;
+
+        repository.compactIfNeeded(0.1);
+        reopen();
+
+        assertThat(tombstoneIds()).containsExactly("live");
+    }
+
+    @Test
+    public void compactIfNeeded_WritesAfterCompaction_ShouldBeLoaded() throws IOException {
+        String id = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        repository.findAndUpdate(id, null, UPDATED_TITLE, null);
+        repository.compactIfNeeded(0.1);
+
+        String newId = repository.save(todo(TITLE, DESCRIPTION)).getId();
+        reopen();
+
+        assertThat(repository.findAll()).hasSize(2);
+        assertThat(repository.findOne(newId).isPresent()).isTrue();
+    }
+
+    @Test
+    public void save_FsyncPolicyAlways_ShouldSyncLog() {
+        repository.save(todo(TITLE, DESCRIPTION));
+
+        assertThat(repository.syncCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void insertAll_FsyncPolicyAlways_ShouldSyncLogOnce() {
+        repository.insertAll(Arrays.asList(todo(TITLE, DESCRIPTION), todo(UPDATED_TITLE, DESCRIPTION)));
+
+        assertThat(repository.syncCount()).isEqualTo(1L);
+    }
+
+    private LogTodoRepository open() throws IOException {
+        return LogTodoRepository.open(path, TodoLog.FsyncPolicy.ALWAYS, INITIAL_SIZE, 4, () -> now);
+    }
+
+    private void reopen() throws IOException {
+        repository.close();
+        repository = open();
+    }
+
+    private List<String> tombstoneIds() {
+        return repository.findTombstones(new Date(0), "", new Date(Long.MAX_VALUE), 10)
+                .stream()
+                .map(TodoTombstone::getId)
+                .collect(toList());
+    }
+
+    private static Todo todo(String title, String description) {
+        return Todo.getBuilder()
+                .title(title)
+                .description(description)
+                .build();
+    }
+}
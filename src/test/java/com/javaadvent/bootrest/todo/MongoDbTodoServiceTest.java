@@ -1,21 +1,32 @@
 package com.javaadvent.bootrest.todo;
 
+import com.codahale.metrics.MetricRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static com.javaadvent.bootrest.todo.TodoAssert.assertThatTodo;
 import static com.javaadvent.bootrest.todo.TodoDTOAssert.assertThatTodoDTO;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -27,9 +38,19 @@ import static org.mockito.Mockito.when;
 @RunWith(MockitoJUnitRunner.class)
 public class MongoDbTodoServiceTest {
 
+    private static final String CURSOR = "cursor";
     private static final String DESCRIPTION = "description";
     private static final String ID = "id";
+    private static final long NOW = 1_000_000_000_000L;
+    private static final String SECOND_ID = "secondId";
     private static final String TITLE = "title";
+    private static final long VERSION = 3L;
+
+    @Mock
+    private TodoEventListener listener;
+
+    @Captor
+    private ArgumentCaptor<List<Todo>> todosArgument;
 
     @Mock
     private TodoRepository repository;
@@ -38,7 +59,7 @@ public class MongoDbTodoServiceTest {
 
     @Before
     public void setUp() {
-        this.service = new MongoDBTodoService(repository);
+        this.service = new MongoDBTodoService(repository, listener, () -> NOW);
     }
 
     @Test
@@ -63,6 +84,27 @@ public class MongoDbTodoServiceTest {
                 .hasDescription(DESCRIPTION);
     }
 
+    @Test
+    public void create_ShouldPublishCreatedEvent() {
+        TodoDTO newTodo = new TodoDTOBuilder()
+                .title(TITLE)
+                .build();
+
+        when(repository.save(isA(Todo.class))).thenAnswer(invocation -> {
+            Todo persisted = (Todo) invocation.getArguments()[0];
+            ReflectionTestUtils.setField(persisted, "id", ID);
+            return persisted;
+        });
+
+        service.create(newTodo);
+
+        TodoEvent event = capturePublishedEvent();
+        assertThat(event.getType()).isEqualTo(TodoEvent.Type.CREATED);
+        assertThatTodoDTO(event.getTodo())
+                .hasId(ID)
+                .hasTitle(TITLE);
+    }
+
     @Test
     public void create_ShouldReturnTheInformationOfCreatedTodoEntry() {
         TodoDTO newTodo = new TodoDTOBuilder()
@@ -84,6 +126,90 @@ public class MongoDbTodoServiceTest {
                 .hasDescription(DESCRIPTION);
     }
 
+    @Test
+    public void create_WriteBehindEnabled_ShouldInsertTodoEntryWithAssignedIdByUsingQueue() {
+        TodoDTO newTodo = new TodoDTOBuilder()
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+
+        when(repository.insertAll(anyListOf(Todo.class))).thenReturn(Collections.emptySet());
+
+        TodoWriteBehindQueue queue = new TodoWriteBehindQueue(repository,
+                TodoWriteBehindQueue.Durability.WRITTEN,
+                10,
+                10,
+                0,
+                0,
+                Thread::new,
+                new MetricRegistry()
+        );
+        queue.start();
+        service = new MongoDBTodoService(repository, listener, () -> NOW, queue);
+
+        TodoDTO returned;
+        try {
+            returned = service.create(newTodo);
+        } finally {
+            queue.shutdown();
+        }
+
+        assertThat(returned.getId()).isNotNull();
+        assertThat(returned.getVersion()).isEqualTo(0L);
+
+        verify(repository, times(1)).insertAll(todosArgument.capture());
+        verify(repository, never()).save(isA(Todo.class));
+
+        List<Todo> insertedTodos = todosArgument.getValue();
+        assertThatTodo(insertedTodos.get(0))
+                .hasId(returned.getId())
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+    }
+
+    @Test
+    public void createAll_ShouldSaveNewTodoEntriesWithOneBulkWrite() {
+        TodoDTO newTodo = new TodoDTOBuilder()
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+
+        when(repository.insertAll(anyListOf(Todo.class))).thenReturn(Collections.emptySet());
+
+        service.createAll(Arrays.asList(newTodo, newTodo));
+
+        verify(repository, times(1)).insertAll(todosArgument.capture());
+        verifyNoMoreInteractions(repository);
+
+        List<Todo> savedTodos = todosArgument.getValue();
+        assertThat(savedTodos).hasSize(2);
+        assertThatTodo(savedTodos.get(0))
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+    }
+
+    @Test
+    public void createAll_OneWriteFailed_ShouldReturnResultOfEveryTodoEntry() {
+        TodoDTO newTodo = new TodoDTOBuilder()
+                .title(TITLE)
+                .build();
+
+        when(repository.insertAll(anyListOf(Todo.class))).thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<Todo> persisted = (List<Todo>) invocation.getArguments()[0];
+            ReflectionTestUtils.setField(persisted.get(0), "id", ID);
+            return Collections.singleton(1);
+        });
+
+        List<TodoBatchResultDTO> results = service.createAll(Arrays.asList(newTodo, newTodo));
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getId()).isEqualTo(ID);
+        assertThat(results.get(0).getStatus()).isEqualTo(TodoBatchResultDTO.Status.CREATED);
+        assertThat(results.get(1).getId()).isNull();
+        assertThat(results.get(1).getStatus()).isEqualTo(TodoBatchResultDTO.Status.FAILED);
+    }
+
     @Test(expected = TodoNotFoundException.class)
     public void delete_TodoEntryNotFound_ShouldThrowException() {
         when(repository.findOne(ID)).thenReturn(Optional.empty());
@@ -92,16 +218,18 @@ public class MongoDbTodoServiceTest {
     }
 
     @Test
-    public void delete_TodoEntryFound_ShouldDeleteTheFoundTodoEntry() {
+    public void delete_TodoEntryFound_ShouldDeleteTheFoundTodoEntryAndSaveTombstone() {
         Todo deleted = new TodoBuilder()
                 .id(ID)
                 .build();
 
-        when(repository.findOne(ID)).thenReturn(Optional.of(deleted));
+        when(repository.findAndRemove(ID)).thenReturn(Optional.of(deleted));
 
         service.delete(ID);
 
-        verify(repository, times(1)).delete(deleted);
+        verify(repository, times(1)).findAndRemove(ID);
+        verify(repository, times(1)).saveTombstones(Collections.singletonList(ID), new Date(NOW));
+        verifyNoMoreInteractions(repository);
     }
 
     @Test
@@ -112,7 +240,7 @@ public class MongoDbTodoServiceTest {
                 .description(DESCRIPTION)
                 .build();
 
-        when(repository.findOne(ID)).thenReturn(Optional.of(deleted));
+        when(repository.findAndRemove(ID)).thenReturn(Optional.of(deleted));
 
         TodoDTO returned = service.delete(ID);
 
@@ -122,6 +250,189 @@ public class MongoDbTodoServiceTest {
                 .hasDescription(DESCRIPTION);
     }
 
+    @Test
+    public void deleteAll_OneTodoEntryFound_ShouldDeleteOnlyTheFoundTodoEntry() {
+        Todo deleted = new TodoBuilder()
+                .id(ID)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(ID, SECOND_ID))).thenReturn(Arrays.asList(deleted));
+        when(repository.deleteAll(Arrays.asList(ID))).thenReturn(Collections.emptyMap());
+
+        List<TodoBatchResultDTO> results = service.deleteAll(Arrays.asList(ID, SECOND_ID));
+
+        verify(repository, times(1)).deleteAll(Arrays.asList(ID));
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getId()).isEqualTo(ID);
+        assertThat(results.get(0).getStatus()).isEqualTo(TodoBatchResultDTO.Status.DELETED);
+        assertThat(results.get(1).getId()).isEqualTo(SECOND_ID);
+        assertThat(results.get(1).getStatus()).isEqualTo(TodoBatchResultDTO.Status.NOT_FOUND);
+    }
+
+    @Test
+    public void delete_TodoEntryFound_ShouldPublishDeletedEvent() {
+        Todo deleted = new TodoBuilder()
+                .id(ID)
+                .build();
+
+        when(repository.findAndRemove(ID)).thenReturn(Optional.of(deleted));
+
+        service.delete(ID);
+
+        TodoEvent event = capturePublishedEvent();
+        assertThat(event.getType()).isEqualTo(TodoEvent.Type.DELETED);
+        assertThat(event.getId()).isEqualTo(ID);
+        assertThat(event.getTodo()).isNull();
+    }
+
+    @Test
+    public void deleteAll_OneDeleteFailed_ShouldSaveTombstonesOfDeletedTodoEntries() {
+        Todo first = new TodoBuilder()
+                .id(ID)
+                .build();
+        Todo second = new TodoBuilder()
+                .id(SECOND_ID)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(ID, SECOND_ID))).thenReturn(Arrays.asList(first, second));
+        when(repository.deleteAll(Arrays.asList(ID, SECOND_ID)))
+                .thenReturn(Collections.singletonMap(0, TodoBatchResultDTO.Status.FAILED));
+
+        service.deleteAll(Arrays.asList(ID, SECOND_ID));
+
+        verify(repository, times(1)).saveTombstones(Arrays.asList(SECOND_ID), new Date(NOW));
+    }
+
+    @Test
+    public void deleteAll_TodoEntryDeletedByAnotherRequest_ShouldReturnNotFoundWithoutSavingTombstone() {
+        Todo deleted = new TodoBuilder()
+                .id(ID)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(ID))).thenReturn(Arrays.asList(deleted));
+        when(repository.deleteAll(Arrays.asList(ID)))
+                .thenReturn(Collections.singletonMap(0, TodoBatchResultDTO.Status.NOT_FOUND));
+
+        List<TodoBatchResultDTO> results = service.deleteAll(Arrays.asList(ID));
+
+        assertThat(results.get(0).getStatus()).isEqualTo(TodoBatchResultDTO.Status.NOT_FOUND);
+        verify(repository, never()).saveTombstones(anyListOf(String.class), any(Date.class));
+    }
+
+    @Test
+    public void findChanges_NoToken_ShouldReturnNoChangesAndTokenOfSettledTime() {
+        TodoChangesDTO changes = service.findChanges(null, 10);
+
+        assertThat(changes.getChanged()).isEmpty();
+        assertThat(changes.getDeleted()).isEmpty();
+        assertThat(changes.getHasMore()).isFalse();
+        assertThat(changes.getNext()).isEqualTo(token(NOW - MongoDBTodoService.CHANGES_SETTLE_MILLIS, ""));
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test(expected = TodoChangesUnavailableException.class)
+    public void findChanges_InvalidToken_ShouldThrowException() {
+        service.findChanges("invalid", 10);
+    }
+
+    @Test(expected = TodoChangesUnavailableException.class)
+    public void findChanges_TokenOlderThanTombstones_ShouldThrowException() {
+        service.findChanges(token(NOW - TodoTombstone.RETENTION_SECONDS * 1000 - 1, ID), 10);
+    }
+
+    @Test
+    public void findChanges_NoChangesFound_ShouldReturnGivenToken() {
+        String since = token(NOW - 5000, ID);
+
+        when(repository.findModified(new Date(NOW - 5000), ID, new Date(NOW - MongoDBTodoService.CHANGES_SETTLE_MILLIS), 10))
+                .thenReturn(Collections.emptyList());
+        when(repository.findTombstones(new Date(NOW - 5000), ID, new Date(NOW - MongoDBTodoService.CHANGES_SETTLE_MILLIS), 10))
+                .thenReturn(Collections.emptyList());
+
+        TodoChangesDTO changes = service.findChanges(since, 10);
+
+        assertThat(changes.getChanged()).isEmpty();
+        assertThat(changes.getDeleted()).isEmpty();
+        assertThat(changes.getNext()).isEqualTo(since);
+        assertThat(changes.getHasMore()).isFalse();
+    }
+
+    @Test
+    public void findChanges_ChangesFound_ShouldReturnChangesInOrderOfTimeAndTokenOfLastChange() {
+        Todo modified = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .lastModified(new Date(NOW - 3000))
+                .build();
+
+        when(repository.findModified(any(Date.class), eq(""), any(Date.class), eq(10))).thenReturn(Arrays.asList(modified));
+        when(repository.findTombstones(any(Date.class), eq(""), any(Date.class), eq(10))).thenReturn(Arrays.asList(
+                new TodoTombstone(SECOND_ID, new Date(NOW - 4000))
+        ));
+
+        TodoChangesDTO changes = service.findChanges(token(NOW - 5000, ""), 10);
+
+        assertThat(changes.getChanged()).hasSize(1);
+        assertThatTodoDTO(changes.getChanged().get(0))
+                .hasId(ID)
+                .hasTitle(TITLE);
+        assertThat(changes.getDeleted()).containsExactly(SECOND_ID);
+        assertThat(changes.getNext()).isEqualTo(token(NOW - 3000, ID));
+        assertThat(changes.getHasMore()).isFalse();
+    }
+
+    @Test
+    public void findChanges_MoreChangesThanPageSize_ShouldReturnOnePageOfChanges() {
+        Todo first = new TodoBuilder()
+                .id(ID)
+                .lastModified(new Date(NOW - 4000))
+                .build();
+        Todo second = new TodoBuilder()
+                .id(SECOND_ID)
+                .lastModified(new Date(NOW - 2000))
+                .build();
+
+        when(repository.findModified(any(Date.class), eq(""), any(Date.class), eq(2))).thenReturn(Arrays.asList(first, second));
+        when(repository.findTombstones(any(Date.class), eq(""), any(Date.class), eq(2))).thenReturn(Arrays.asList(
+                new TodoTombstone("deleted", new Date(NOW - 3000))
+        ));
+
+        TodoChangesDTO changes = service.findChanges(token(NOW - 5000, ""), 2);
+
+        assertThat(changes.getChanged()).hasSize(1);
+        assertThat(changes.getDeleted()).containsExactly("deleted");
+        assertThat(changes.getNext()).isEqualTo(token(NOW - 3000, "deleted"));
+        assertThat(changes.getHasMore()).isTrue();
+    }
+
+    @Test
+    public void findChanges_BothListsPartlyMerged_ShouldReturnThatThereAreMoreChanges() {
+        List<Todo> modified = Arrays.asList(
+                new TodoBuilder().id("modified1").lastModified(new Date(NOW - 9000)).build(),
+                new TodoBuilder().id("modified2").lastModified(new Date(NOW - 7000)).build(),
+                new TodoBuilder().id("modified3").lastModified(new Date(NOW - 5000)).build()
+        );
+        List<TodoTombstone> tombstones = Arrays.asList(
+                new TodoTombstone("deleted1", new Date(NOW - 8000)),
+                new TodoTombstone("deleted2", new Date(NOW - 6000)),
+                new TodoTombstone("deleted3", new Date(NOW - 4000))
+        );
+
+        when(repository.findModified(any(Date.class), eq(""), any(Date.class), eq(4))).thenReturn(modified);
+        when(repository.findTombstones(any(Date.class), eq(""), any(Date.class), eq(4))).thenReturn(tombstones);
+
+        TodoChangesDTO changes = service.findChanges(token(NOW - 10000, ""), 4);
+
+        assertThat(changes.getChanged()).hasSize(2);
+        assertThat(changes.getDeleted()).containsExactly("deleted1", "deleted2");
+        assertThat(changes.getNext()).isEqualTo(token(NOW - 6000, "deleted2"));
+        assertThat(changes.getHasMore()).isTrue();
+    }
+
+    private static String token(long time, String id) {
+        return new TodoChangeToken(time, id).toString();
+    }
+
     @Test
     public void findAll_OneTodoEntryFound_ShouldReturnTheInformationOfFoundTodoEntry() {
         Todo expected = new TodoBuilder()
@@ -142,6 +453,149 @@ public class MongoDbTodoServiceTest {
                 .hasDescription(DESCRIPTION);
     }
 
+    @Test
+    public void findAll_FieldsGiven_ShouldReadOnlyRequestedFields() {
+        TodoFields fields = TodoFields.parse("title");
+        Todo expected = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(repository.findAll(fields)).thenReturn(Arrays.asList(expected));
+
+        List<TodoDTO> todoEntries = service.findAll(fields);
+
+        verify(repository, never()).findAll();
+        assertThat(todoEntries).hasSize(1);
+        assertThatTodoDTO(todoEntries.get(0))
+                .hasId(ID)
+                .hasTitle(TITLE);
+    }
+
+    @Test
+    public void findAll_AllFieldsGiven_ShouldReadWholeTodoEntries() {
+        service.findAll(TodoFields.parse("description,title,version"));
+
+        verify(repository, times(1)).findAll();
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void findPage_FullPageFound_ShouldReturnIdOfLastTodoEntryAsNextCursor() {
+        Todo first = new TodoBuilder()
+                .id(ID)
+                .build();
+        Todo second = new TodoBuilder()
+                .id(SECOND_ID)
+                .build();
+
+        when(repository.findPage(CURSOR, 2)).thenReturn(Arrays.asList(first, second));
+
+        TodoPageDTO page = service.findPage(CURSOR, 2);
+
+        assertThat(page.getEntries()).hasSize(2);
+        assertThat(page.getNext()).isEqualTo(SECOND_ID);
+    }
+
+    @Test
+    public void findPage_LastPageFound_ShouldReturnPageWithoutNextCursor() {
+        Todo expected = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+
+        when(repository.findPage(null, 2)).thenReturn(Arrays.asList(expected));
+
+        TodoPageDTO page = service.findPage(null, 2);
+        assertThat(page.getEntries()).hasSize(1);
+        assertThat(page.getNext()).isNull();
+
+        TodoDTO actual = page.getEntries().iterator().next();
+        assertThatTodoDTO(actual)
+                .hasId(ID)
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+    }
+
+    @Test
+    public void findPage_TooLargePageSize_ShouldUseMaxPageSize() {
+        when(repository.findPage(null, TodoService.MAX_PAGE_SIZE)).thenReturn(new ArrayList<>());
+
+        service.findPage(null, TodoService.MAX_PAGE_SIZE + 1);
+
+        verify(repository, times(1)).findPage(null, TodoService.MAX_PAGE_SIZE);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void search_SecondPageRequested_ShouldSkipFirstPage() {
+        Todo found = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(repository.search(TITLE, 10, 10)).thenReturn(Arrays.asList(found));
+
+        List<TodoDTO> returned = service.search(TITLE, 1, 10);
+
+        assertThat(returned).hasSize(1);
+        assertThatTodoDTO(returned.get(0))
+                .hasId(ID)
+                .hasTitle(TITLE);
+    }
+
+    @Test
+    public void search_NegativePageAndTooLargePageSize_ShouldFindFirstPageWithMaxPageSize() {
+        when(repository.search(TITLE, 0, TodoService.MAX_PAGE_SIZE)).thenReturn(new ArrayList<>());
+
+        service.search(TITLE, -1, TodoService.MAX_PAGE_SIZE + 1);
+
+        verify(repository, times(1)).search(TITLE, 0, TodoService.MAX_PAGE_SIZE);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void findByTitlePrefix_SecondPageRequested_ShouldSkipFirstPage() {
+        Todo found = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(repository.findByTitlePrefix("ti", 5, 5)).thenReturn(Arrays.asList(found));
+
+        List<TodoDTO> returned = service.findByTitlePrefix("ti", 1, 5);
+
+        assertThat(returned).hasSize(1);
+        assertThatTodoDTO(returned.get(0)).hasTitle(TITLE);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void forEach_OneTodoEntryFound_ShouldPassTheInformationOfFoundTodoEntryToAction() {
+        Todo expected = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+
+        doAnswer(invocation -> {
+            Consumer<Todo> action = (Consumer<Todo>) invocation.getArguments()[0];
+            action.accept(expected);
+            return null;
+        }).when(repository).forEach(any(Consumer.class));
+
+        List<TodoDTO> todoEntries = new ArrayList<>();
+        service.forEach(todoEntries::add);
+        assertThat(todoEntries).hasSize(1);
+
+        TodoDTO actual = todoEntries.iterator().next();
+        assertThatTodoDTO(actual)
+                .hasId(ID)
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+    }
+
     @Test(expected = TodoNotFoundException.class)
     public void findById_TodoEntryNotFound_ShouldThrowException() {
         when(repository.findOne(ID)).thenReturn(Optional.empty());
@@ -149,6 +603,33 @@ public class MongoDbTodoServiceTest {
         service.findById(ID);
     }
 
+    @Test(expected = TodoNotFoundException.class)
+    public void findById_FieldsGivenAndTodoEntryNotFound_ShouldThrowException() {
+        TodoFields fields = TodoFields.parse("title");
+
+        when(repository.findOne(ID, fields)).thenReturn(Optional.empty());
+
+        service.findById(ID, fields);
+    }
+
+    @Test
+    public void findById_FieldsGiven_ShouldReadOnlyRequestedFields() {
+        TodoFields fields = TodoFields.parse("title");
+        Todo found = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(repository.findOne(ID, fields)).thenReturn(Optional.of(found));
+
+        TodoDTO returned = service.findById(ID, fields);
+
+        verify(repository, never()).findOne(ID);
+        assertThatTodoDTO(returned)
+                .hasId(ID)
+                .hasTitle(TITLE);
+    }
+
     @Test
     public void findById_TodoEntryFound_ShouldReturnTheInformationOfFoundTodoEntry() {
         Todo found = new TodoBuilder()
@@ -169,23 +650,40 @@ public class MongoDbTodoServiceTest {
 
     @Test(expected = TodoNotFoundException.class)
     public void update_UpdatedTodoEntryNotFound_ShouldThrowException() {
-        when(repository.findOne(ID)).thenReturn(Optional.empty());
+        when(repository.findAndUpdate(ID, null, TITLE, DESCRIPTION)).thenReturn(Optional.empty());
 
         TodoDTO updated = new TodoDTOBuilder()
                 .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
                 .build();
 
         service.update(updated);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void update_TitleIsEmpty_ShouldThrowExceptionWithoutUpdatingTodoEntry() {
+        TodoDTO updated = new TodoDTOBuilder()
+                .id(ID)
+                .title("")
+                .build();
+
+        try {
+            service.update(updated);
+        } finally {
+            verifyNoMoreInteractions(repository);
+        }
+    }
+
     @Test
-    public void update_UpdatedTodoEntryFound_ShouldSaveUpdatedTodoEntry() {
+    public void update_UpdatedTodoEntryFound_ShouldUpdateTodoEntryByUsingOneDatabaseOperation() {
         Todo existing = new TodoBuilder()
                 .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
                 .build();
 
-        when(repository.findOne(ID)).thenReturn(Optional.of(existing));
-        when(repository.save(existing)).thenReturn(existing);
+        when(repository.findAndUpdate(ID, null, TITLE, DESCRIPTION)).thenReturn(Optional.of(existing));
 
         TodoDTO updated = new TodoDTOBuilder()
                 .id(ID)
@@ -195,21 +693,41 @@ public class MongoDbTodoServiceTest {
 
         service.update(updated);
 
-        verify(repository, times(1)).save(existing);
-        assertThatTodo(existing)
+        verify(repository, times(1)).findAndUpdate(ID, null, TITLE, DESCRIPTION);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    public void update_UpdatedTodoEntryFound_ShouldPublishUpdatedEvent() {
+        Todo existing = new TodoBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(repository.findAndUpdate(ID, null, TITLE, null)).thenReturn(Optional.of(existing));
+
+        service.update(new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build()
+        );
+
+        TodoEvent event = capturePublishedEvent();
+        assertThat(event.getType()).isEqualTo(TodoEvent.Type.UPDATED);
+        assertThatTodoDTO(event.getTodo())
                 .hasId(ID)
-                .hasTitle(TITLE)
-                .hasDescription(DESCRIPTION);
+                .hasTitle(TITLE);
     }
 
     @Test
     public void update_UpdatedTodoEntryFound_ShouldReturnTheInformationOfUpdatedTodoEntry() {
         Todo existing = new TodoBuilder()
                 .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
                 .build();
 
-        when(repository.findOne(ID)).thenReturn(Optional.of(existing));
-        when(repository.save(existing)).thenReturn(existing);
+        when(repository.findAndUpdate(ID, null, TITLE, DESCRIPTION)).thenReturn(Optional.of(existing));
 
         TodoDTO updated = new TodoDTOBuilder()
                 .id(ID)
@@ -223,4 +741,160 @@ public class MongoDbTodoServiceTest {
                 .hasTitle(TITLE)
                 .hasDescription(DESCRIPTION);
     }
+
+    @Test(expected = TodoVersionConflictException.class)
+    public void update_TodoEntryFoundWithDifferentVersion_ShouldThrowException() {
+        when(repository.findAndUpdate(ID, VERSION, TITLE, DESCRIPTION)).thenReturn(Optional.empty());
+        when(repository.findVersion(ID)).thenReturn(Optional.of(VERSION + 1));
+
+        TodoDTO updated = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .version(VERSION)
+                .build();
+
+        service.update(updated);
+    }
+
+    @Test
+    public void findVersionById_TodoEntryFound_ShouldReturnVersion() {
+        when(repository.findVersion(ID)).thenReturn(Optional.of(VERSION));
+
+        long version = service.findVersionById(ID);
+
+        assertThat(version).isEqualTo(VERSION);
+    }
+
+    @Test(expected = TodoNotFoundException.class)
+    public void findVersionById_TodoEntryNotFound_ShouldThrowException() {
+        when(repository.findVersion(ID)).thenReturn(Optional.empty());
+
+        service.findVersionById(ID);
+    }
+
+    @Test
+    public void updateAll_TodoEntryFoundWithDifferentVersion_ShouldReturnConflictWithoutUpdatingTodoEntry() {
+        Todo existing = new TodoBuilder()
+                .id(ID)
+                .version(VERSION + 1)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(ID))).thenReturn(Arrays.asList(existing));
+        when(repository.updateAll(Collections.emptyList())).thenReturn(Collections.emptyMap());
+
+        TodoDTO stale = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+
+        List<TodoBatchResultDTO> results = service.updateAll(Arrays.asList(stale));
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).getStatus()).isEqualTo(TodoBatchResultDTO.Status.CONFLICT);
+        assertThatTodo(existing).hasTitle("NOT_IMPORTANT");
+    }
+
+    @Test
+    public void updateAll_VersionZeroGivenAndTodoEntryHasNoVersion_ShouldUpdateTodoEntry() {
+        Todo existing = new TodoBuilder()
+                .id(ID)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(ID))).thenReturn(Arrays.asList(existing));
+        when(repository.updateAll(Arrays.asList(existing))).thenReturn(Collections.emptyMap());
+
+        List<TodoBatchResultDTO> results = service.updateAll(Arrays.asList(new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(0L)
+                .build()
+        ));
+
+        assertThat(results.get(0).getStatus()).isEqualTo(TodoBatchResultDTO.Status.UPDATED);
+    }
+
+    @Test
+    public void updateAll_OneTodoEntryFound_ShouldUpdateOnlyTheFoundTodoEntry() {
+        Todo existing = new TodoBuilder()
+                .id(ID)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(SECOND_ID, ID))).thenReturn(Arrays.asList(existing));
+        when(repository.updateAll(Arrays.asList(existing))).thenReturn(Collections.emptyMap());
+
+        TodoDTO notFound = new TodoDTOBuilder()
+                .id(SECOND_ID)
+                .title(TITLE)
+                .build();
+        TodoDTO updated = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+
+        List<TodoBatchResultDTO> results = service.updateAll(Arrays.asList(notFound, updated));
+
+        verify(repository, times(1)).updateAll(eq(Arrays.asList(existing)));
+        assertThatTodo(existing)
+                .hasId(ID)
+                .hasTitle(TITLE)
+                .hasDescription(DESCRIPTION);
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getStatus()).isEqualTo(TodoBatchResultDTO.Status.NOT_FOUND);
+        assertThat(results.get(1).getStatus()).isEqualTo(TodoBatchResultDTO.Status.UPDATED);
+    }
+
+    @Test
+    public void updateAll_TodoEntryModifiedDuringBulkWrite_ShouldReturnConflictWithoutPublishingEvent() {
+        Todo existing = new TodoBuilder()
+                .id(ID)
+                .version(VERSION)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(ID))).thenReturn(Arrays.asList(existing));
+        when(repository.updateAll(Arrays.asList(existing)))
+                .thenReturn(Collections.singletonMap(0, TodoBatchResultDTO.Status.CONFLICT));
+
+        List<TodoBatchResultDTO> results = service.updateAll(Arrays.asList(new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build()
+        ));
+
+        assertThat(results.get(0).getStatus()).isEqualTo(TodoBatchResultDTO.Status.CONFLICT);
+        verify(listener, never()).onEvent(any(TodoEvent.class));
+    }
+
+    @Test
+    public void updateAll_TodoEntryUpdated_ShouldPublishUpdatedEventWithIncreasedVersion() {
+        Todo existing = new TodoBuilder()
+                .id(ID)
+                .version(VERSION)
+                .build();
+
+        when(repository.findByIdIn(Arrays.asList(ID))).thenReturn(Arrays.asList(existing));
+        when(repository.updateAll(Arrays.asList(existing))).thenReturn(Collections.emptyMap());
+
+        service.updateAll(Arrays.asList(new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build()
+        ));
+
+        TodoEvent event = capturePublishedEvent();
+        assertThat(event.getType()).isEqualTo(TodoEvent.Type.UPDATED);
+        assertThatTodoDTO(event.getTodo())
+                .hasId(ID)
+                .hasTitle(TITLE);
+        assertThat(event.getTodo().getVersion()).isEqualTo(VERSION + 1);
+    }
+
+    private TodoEvent capturePublishedEvent() {
+        ArgumentCaptor<TodoEvent> eventArgument = ArgumentCaptor.forClass(TodoEvent.class);
+        verify(listener, times(1)).onEvent(eventArgument.capture());
+        return eventArgument.getValue();
+    }
 }
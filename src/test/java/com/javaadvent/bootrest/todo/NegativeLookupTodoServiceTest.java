@@ -0,0 +1,166 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.util.BloomFilter;
+import com.javaadvent.bootrest.util.ExpiringLruCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.javaadvent.bootrest.todo.TodoDTOAssert.assertThatTodoDTO;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class NegativeLookupTodoServiceTest {
+
+    private static final String CREATED_ID = "createdId";
+    private static final String EXISTING_ID = "existingId";
+    private static final String MISSING_ID = "missingId";
+    private static final String TITLE = "title";
+
+    @Mock
+    private TodoService delegate;
+
+    private NegativeLookupTodoService service;
+
+    @Before
+    public void setUp() {
+        service = new NegativeLookupTodoService(delegate,
+                new ExpiringLruCache<>(10, 1, TimeUnit.HOURS),
+                expectedIds -> new BloomFilter(expectedIds, 0.01),
+                100
+        );
+    }
+
+    @Test
+    public void findById_TodoEntryNotFoundTwice_ShouldInvokeDelegateOnce() {
+        when(delegate.findById(MISSING_ID)).thenThrow(new TodoNotFoundException(MISSING_ID));
+
+        assertNotFound(() -> service.findById(MISSING_ID));
+        assertNotFound(() -> service.findById(MISSING_ID));
+
+        verify(delegate, times(1)).findById(MISSING_ID);
+    }
+
+    @Test
+    public void findById_TodoEntryNotFoundAndThenCreated_ShouldInvokeDelegate() {
+        when(delegate.findById(CREATED_ID)).thenThrow(new TodoNotFoundException(CREATED_ID));
+        assertNotFound(() -> service.findById(CREATED_ID));
+        when(delegate.create(isA(TodoDTO.class))).thenReturn(todoEntry(CREATED_ID));
+        service.create(todoEntry(null));
+
+        doReturn(todoEntry(CREATED_ID)).when(delegate).findById(CREATED_ID);
+
+        assertThatTodoDTO(service.findById(CREATED_ID)).hasId(CREATED_ID);
+    }
+
+    @Test
+    public void findVersionById_TodoEntryDeleted_ShouldNotInvokeDelegate() {
+        when(delegate.delete(EXISTING_ID)).thenReturn(todoEntry(EXISTING_ID));
+        service.delete(EXISTING_ID);
+
+        assertNotFound(() -> service.findVersionById(EXISTING_ID));
+
+        verify(delegate, never()).findVersionById(EXISTING_ID);
+    }
+
+    @Test
+    public void findById_IdNotInBloomFilter_ShouldNotInvokeDelegate() {
+        rebuildBloomFilterFrom(EXISTING_ID);
+
+        assertNotFound(() -> service.findById(MISSING_ID));
+
+        verify(delegate, never()).findById(MISSING_ID);
+        assertThat(service.bloomFilterRejectionCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void findById_IdInBloomFilter_ShouldInvokeDelegate() {
+        rebuildBloomFilterFrom(EXISTING_ID);
+        when(delegate.findById(EXISTING_ID)).thenReturn(todoEntry(EXISTING_ID));
+
+        assertThatTodoDTO(service.findById(EXISTING_ID)).hasId(EXISTING_ID);
+    }
+
+    @Test
+    public void findById_TodoEntryCreatedAfterBloomFilterWasBuilt_ShouldInvokeDelegate() {
+        rebuildBloomFilterFrom(EXISTING_ID);
+        when(delegate.create(isA(TodoDTO.class))).thenReturn(todoEntry(CREATED_ID));
+        service.create(todoEntry(null));
+
+        when(delegate.findById(CREATED_ID)).thenReturn(todoEntry(CREATED_ID));
+
+        assertThatTodoDTO(service.findById(CREATED_ID)).hasId(CREATED_ID);
+    }
+
+    @Test
+    public void findById_TodoEntryCreatedWhileBloomFilterIsRebuilt_ShouldInvokeDelegate() {
+        when(delegate.create(isA(TodoDTO.class))).thenReturn(todoEntry(CREATED_ID));
+        doAnswer(invocation -> {
+            service.create(todoEntry(null));
+            return null;
+        }).when(delegate).forEach(any());
+        service.rebuildBloomFilter();
+
+        when(delegate.findById(CREATED_ID)).thenReturn(todoEntry(CREATED_ID));
+
+        assertThatTodoDTO(service.findById(CREATED_ID)).hasId(CREATED_ID);
+    }
+
+    @Test
+    public void findById_BloomFilterRebuildFailed_ShouldKeepOldFilter() {
+        rebuildBloomFilterFrom(EXISTING_ID);
+        doThrow(new DataAccessResourceFailureException("down")).when(delegate).forEach(any());
+
+        service.rebuildBloomFilter();
+
+        assertNotFound(() -> service.findById(MISSING_ID));
+        verify(delegate, never()).findById(MISSING_ID);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void rebuildBloomFilterFrom(String... ids) {
+        doAnswer(invocation -> {
+            Consumer<TodoDTO> action = (Consumer<TodoDTO>) invocation.getArguments()[0];
+            Arrays.stream(ids).forEach(id -> action.accept(todoEntry(id)));
+            return null;
+        }).when(delegate).forEach(any());
+
+        service.rebuildBloomFilter();
+    }
+
+    private static void assertNotFound(Runnable find) {
+        try {
+            find.run();
+            fail("Should have thrown TodoNotFoundException");
+        } catch (TodoNotFoundException ex) {
+            //The todo entry was not found.
+        }
+    }
+
+    private static TodoDTO todoEntry(String id) {
+        return new TodoDTOBuilder()
+                .id(id)
+                .title(TITLE)
+                .build();
+    }
+}
@@ -2,6 +2,8 @@ package com.javaadvent.bootrest.todo;
 
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
+
 /**
  * @author Petri Kainulainen
  */
@@ -9,7 +11,9 @@ class TodoBuilder {
 
     private String description;
     private String id;
+    private Date lastModified;
     private String title = "NOT_IMPORTANT";
+    private Long version;
 
     TodoBuilder() {
 
@@ -25,11 +29,21 @@ class TodoBuilder {
         return this;
     }
 
+    TodoBuilder lastModified(Date lastModified) {
+        this.lastModified = lastModified;
+        return this;
+    }
+
     TodoBuilder title(String title) {
         this.title = title;
         return this;
     }
 
+    TodoBuilder version(Long version) {
+        this.version = version;
+        return this;
+    }
+
     Todo build() {
         Todo todo = Todo.getBuilder()
                 .title(title)
@@ -37,6 +51,10 @@ class TodoBuilder {
                 .build();
 
         ReflectionTestUtils.setField(todo, "id", id);
+        ReflectionTestUtils.setField(todo, "version", version);
+        if (lastModified != null) {
+            ReflectionTestUtils.setField(todo, "lastModified", lastModified);
+        }
 
         return todo;
     }
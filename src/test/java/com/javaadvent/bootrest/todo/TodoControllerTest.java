@@ -1,5 +1,7 @@
 package com.javaadvent.bootrest.todo;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.javaadvent.bootrest.error.RestErrorHandler;
 import org.junit.Before;
 import org.junit.Test;
@@ -8,8 +10,11 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.method.annotation.ExceptionHandlerMethodResolver;
@@ -19,12 +24,21 @@ import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHan
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.function.Consumer;
 
 import static com.javaadvent.bootrest.todo.TodoDTOAssert.assertThatTodoDTO;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -34,7 +48,9 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -48,9 +64,12 @@ public class TodoControllerTest {
             Charset.forName("utf8")
     );
 
+    private static final String CURSOR = "cursor";
     private static final String DESCRIPTION = "description";
     private static final String ID = "id";
+    private static final String SECOND_ID = "secondId";
     private static final String TITLE = "title";
+    private static final long VERSION = 3L;
 
     private static final int MAX_LENGTH_DESCRIPTION = 500;
     private static final int MAX_LENGTH_TITLE = 100;
@@ -58,11 +77,28 @@ public class TodoControllerTest {
     @Mock
     private TodoService service;
 
+    private TodoEventBroadcaster events;
+
+    private MetricRegistry metricRegistry;
+
+    private TodoController controller;
+
     private MockMvc mockMvc;
 
     @Before
     public void setUp() {
-        mockMvc = MockMvcBuilders.standaloneSetup(new TodoController(service))
+        events = new TodoEventBroadcaster(new ObjectMapper(), Runnable::run, 16, 16, 1, 1000, 1000);
+        TodoIdempotencyStore idempotencyStore = new TodoIdempotencyStore(10,
+                60,
+                1000,
+                null,
+                System::currentTimeMillis,
+                new MetricRegistry()
+        );
+        metricRegistry = new MetricRegistry();
+        TodoNotFoundCounter notFoundCounter = new TodoNotFoundCounter(metricRegistry, 1000);
+        controller = new TodoController(service, events, idempotencyStore, notFoundCounter, new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
                 .setHandlerExceptionResolvers(withExceptionControllerAdvice())
                 .build();
     }
@@ -86,7 +122,7 @@ public class TodoControllerTest {
                 if (method != null) {
                     ReloadableResourceBundleMessageSource messageSource = new ReloadableResourceBundleMessageSource();
                     messageSource.setBasename("messages");
-                    return new ServletInvocableHandlerMethod(new RestErrorHandler(messageSource), method);
+                    return new ServletInvocableHandlerMethod(new RestErrorHandler(messageSource, new MetricRegistry()), method);
                 }
                 return super.getExceptionHandlerMethod(handlerMethod, exception);
             }
@@ -158,6 +194,70 @@ public class TodoControllerTest {
                 .andExpect(jsonPath("$.description", isEmptyOrNullString()));
     }
 
+    @Test
+    public void create_SameIdempotencyKeyTwice_ShouldCreateOneTodoEntryAndReturnItTwice() throws Exception {
+        TodoDTO newTodoEntry = new TodoDTOBuilder()
+                .title(TITLE)
+                .build();
+
+        when(service.create(isA(TodoDTO.class))).then(invocationOnMock -> {
+            TodoDTO saved = (TodoDTO) invocationOnMock.getArguments()[0];
+            saved.setId(ID);
+            return saved;
+        });
+
+        for (int request = 0; request < 2; request++) {
+            mockMvc.perform(post("/api/todo")
+                            .header("Idempotency-Key", "key")
+                            .contentType(APPLICATION_JSON_UTF8)
+                            .content(WebTestUtil.convertObjectToJsonBytes(newTodoEntry))
+            )
+                    .andExpect(status().isCreated())
+                    .andExpect(jsonPath("$.id", is(ID)));
+        }
+
+        verify(service, times(1)).create(isA(TodoDTO.class));
+    }
+
+    @Test
+    public void create_IdempotencyKeyReusedWithDifferentTitle_ShouldReturnResponseStatusUnprocessableEntity() throws Exception {
+        when(service.create(isA(TodoDTO.class))).then(invocationOnMock -> {
+            TodoDTO saved = (TodoDTO) invocationOnMock.getArguments()[0];
+            saved.setId(ID);
+            return saved;
+        });
+
+        mockMvc.perform(post("/api/todo")
+                        .header("Idempotency-Key", "key")
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(new TodoDTOBuilder().title(TITLE).build()))
+        );
+
+        mockMvc.perform(post("/api/todo")
+                        .header("Idempotency-Key", "key")
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(new TodoDTOBuilder().title("other").build()))
+        )
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(service, times(1)).create(isA(TodoDTO.class));
+    }
+
+    @Test
+    public void create_WriteQueueFull_ShouldReturnResponseStatusServiceUnavailable() throws Exception {
+        TodoDTO newTodoEntry = new TodoDTOBuilder()
+                .title(TITLE)
+                .build();
+
+        when(service.create(isA(TodoDTO.class))).thenThrow(new TodoWriteQueueFullException(10));
+
+        mockMvc.perform(post("/api/todo")
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(newTodoEntry))
+        )
+                .andExpect(status().isServiceUnavailable());
+    }
+
     @Test
     public void create_TodoEntryWithMaxLengthTitleAndDescription_ShouldCreateNewTodoEntryWithCorrectInformation() throws Exception {
         String maxLengthTitle = StringTestUtil.createStringWithLength(MAX_LENGTH_TITLE);
@@ -233,6 +333,31 @@ public class TodoControllerTest {
                 .andExpect(jsonPath("$.description", is(maxLengthDescription)));
     }
 
+    @Test
+    public void createAll_TwoTodoEntries_ShouldReturnResultsAsJson() throws Exception {
+        TodoBatchDTO batch = new TodoBatchDTO();
+        batch.setEntries(Arrays.asList(
+                new TodoDTOBuilder().title(TITLE).build(),
+                new TodoDTOBuilder().title(TITLE).build()
+        ));
+
+        when(service.createAll(anyListOf(TodoDTO.class))).thenReturn(Arrays.asList(
+                new TodoBatchResultDTO(ID, TodoBatchResultDTO.Status.CREATED),
+                new TodoBatchResultDTO(null, TodoBatchResultDTO.Status.FAILED)
+        ));
+
+        mockMvc.perform(post("/api/todo/batch")
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(batch))
+        )
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(ID)))
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[1].status", is("FAILED")));
+    }
+
     @Test
     public void delete_TodoEntryNotFound_ShouldReturnResponseStatusNotFound() throws Exception {
         when(service.delete(ID)).thenThrow(new TodoNotFoundException(ID));
@@ -270,6 +395,28 @@ public class TodoControllerTest {
                 .andExpect(jsonPath("$.description", is(DESCRIPTION)));
     }
 
+    @Test
+    public void deleteAll_TwoIds_ShouldReturnResultsAsJson() throws Exception {
+        TodoIdBatchDTO batch = new TodoIdBatchDTO();
+        batch.setIds(Arrays.asList(ID, SECOND_ID));
+
+        when(service.deleteAll(Arrays.asList(ID, SECOND_ID))).thenReturn(Arrays.asList(
+                new TodoBatchResultDTO(ID, TodoBatchResultDTO.Status.DELETED),
+                new TodoBatchResultDTO(SECOND_ID, TodoBatchResultDTO.Status.NOT_FOUND)
+        ));
+
+        mockMvc.perform(delete("/api/todo/batch")
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(batch))
+        )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(ID)))
+                .andExpect(jsonPath("$[0].status", is("DELETED")))
+                .andExpect(jsonPath("$[1].id", is(SECOND_ID)))
+                .andExpect(jsonPath("$[1].status", is("NOT_FOUND")));
+    }
+
     @Test
     public void findAll_ShouldReturnResponseStatusOk() throws Exception {
         mockMvc.perform(get("/api/todo"))
@@ -294,6 +441,230 @@ public class TodoControllerTest {
                 .andExpect(jsonPath("$[0].description", is(DESCRIPTION)));
     }
 
+    @Test
+    public void findAll_FieldsGiven_ShouldReturnOnlyRequestedFieldsAsJson() throws Exception {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+
+        when(service.findAll(isA(TodoFields.class))).thenReturn(Arrays.asList(found));
+
+        mockMvc.perform(get("/api/todo").param("fields", "title"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(content().string("[{\"id\":\"id\",\"title\":\"title\"}]"));
+
+        ArgumentCaptor<TodoFields> fieldsArgument = ArgumentCaptor.forClass(TodoFields.class);
+        verify(service, times(1)).findAll(fieldsArgument.capture());
+        verify(service, never()).findAll();
+
+        TodoFields requested = fieldsArgument.getValue();
+        assertThat(requested.includes(TodoFields.Field.TITLE)).isTrue();
+        assertThat(requested.includes(TodoFields.Field.DESCRIPTION)).isFalse();
+    }
+
+    @Test
+    public void findAll_UnknownField_ShouldReturnResponseStatusBadRequest() throws Exception {
+        mockMvc.perform(get("/api/todo").param("fields", "title,owner"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoMoreInteractions(service);
+    }
+
+    @Test
+    public void search_OneTodoEntryFound_ShouldReturnFoundTodoEntryAsJson() throws Exception {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(service.search(TITLE, 2, 5)).thenReturn(Arrays.asList(found));
+
+        mockMvc.perform(get("/api/todo/search").param("q", TITLE).param("page", "2").param("size", "5"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(ID)))
+                .andExpect(jsonPath("$[0].title", is(TITLE)));
+    }
+
+    @Test
+    public void search_PageNotGiven_ShouldFindFirstPageWithDefaultPageSize() throws Exception {
+        when(service.search(TITLE, 0, 20)).thenReturn(Arrays.asList());
+
+        mockMvc.perform(get("/api/todo/search").param("q", TITLE))
+                .andExpect(status().isOk());
+
+        verify(service, times(1)).search(TITLE, 0, 20);
+    }
+
+    @Test
+    public void findByTitlePrefix_OneTodoEntryFound_ShouldReturnFoundTodoEntryAsJson() throws Exception {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(service.findByTitlePrefix("ti", 0, 20)).thenReturn(Arrays.asList(found));
+
+        mockMvc.perform(get("/api/todo/search").param("prefix", "ti"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].title", is(TITLE)));
+    }
+
+    @Test
+    public void findChanges_ChangesFound_ShouldReturnChangesAndNextTokenAsJson() throws Exception {
+        TodoDTO changed = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(service.findChanges("1000_a", 100)).thenReturn(
+                new TodoChangesDTO(Arrays.asList(changed), Arrays.asList("deleted"), "2000_b", false)
+        );
+
+        mockMvc.perform(get("/api/todo/changes").param("since", "1000_a"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changed", hasSize(1)))
+                .andExpect(jsonPath("$.changed[0].id", is(ID)))
+                .andExpect(jsonPath("$.deleted[0]", is("deleted")))
+                .andExpect(jsonPath("$.next", is("2000_b")))
+                .andExpect(jsonPath("$.hasMore", is(false)));
+    }
+
+    @Test
+    public void findChanges_ChangesUnavailable_ShouldReturnResponseStatusGone() throws Exception {
+        when(service.findChanges("invalid", 100)).thenThrow(new TodoChangesUnavailableException("invalid"));
+
+        mockMvc.perform(get("/api/todo/changes").param("since", "invalid"))
+                .andExpect(status().isGone());
+    }
+
+    @Test
+    public void subscribe_ShouldWriteEventsToResponse() throws Exception {
+        TodoDTO created = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        MvcResult result = mockMvc.perform(get("/api/todo/events"))
+                .andExpect(status().isOk())
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("Content-Type", "text/event-stream;charset=UTF-8"))
+                .andReturn();
+
+        events.onEvent(TodoEvent.created(created));
+
+        String body = result.getResponse().getContentAsString();
+        assertThat(body).startsWith("retry: 1000\n\n");
+        assertThat(body).contains("event: created\ndata: {\"id\":\"" + ID + "\"");
+    }
+
+    @Test
+    public void subscribe_MaximumNumberOfSubscribersReached_ShouldReturnResponseStatusServiceUnavailable() throws Exception {
+        mockMvc.perform(get("/api/todo/events"));
+
+        mockMvc.perform(get("/api/todo/events"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    public void findPage_ShouldReturnResponseStatusOk() throws Exception {
+        when(service.findPage(null, 10)).thenReturn(new TodoPageDTO(Arrays.asList(), null));
+
+        mockMvc.perform(get("/api/todo").param("size", "10"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void findPage_OneTodoEntryFound_ShouldReturnPageThatContainsOneTodoEntryAndNextCursorAsJson() throws Exception {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+
+        when(service.findPage(CURSOR, 1)).thenReturn(new TodoPageDTO(Arrays.asList(found), ID));
+
+        mockMvc.perform(get("/api/todo").param("after", CURSOR).param("size", "1"))
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.entries", hasSize(1)))
+                .andExpect(jsonPath("$.entries[0].id", is(ID)))
+                .andExpect(jsonPath("$.entries[0].title", is(TITLE)))
+                .andExpect(jsonPath("$.entries[0].description", is(DESCRIPTION)))
+                .andExpect(jsonPath("$.next", is(ID)));
+    }
+
+    @Test
+    public void findPage_LastPageFound_ShouldReturnPageWithoutNextCursorAsJson() throws Exception {
+        when(service.findPage(CURSOR, 10)).thenReturn(new TodoPageDTO(Arrays.asList(), null));
+
+        mockMvc.perform(get("/api/todo").param("after", CURSOR).param("size", "10"))
+                .andExpect(jsonPath("$.entries", hasSize(0)))
+                .andExpect(jsonPath("$.next", nullValue()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void streamAll_ReadingTodoEntriesFails_ShouldLeaveArrayOpen() throws Exception {
+        TodoDTO first = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        doAnswer(invocation -> {
+            Consumer<TodoDTO> action = (Consumer<TodoDTO>) invocation.getArguments()[0];
+            action.accept(first);
+            throw new DataAccessResourceFailureException("down");
+        }).when(service).forEach(any(Consumer.class));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            controller.streamAll(response);
+            fail("Should have thrown DataAccessResourceFailureException");
+        } catch (DataAccessResourceFailureException ex) {
+            //Reading the todo entries failed.
+        }
+
+        String json = response.getContentAsString();
+        assertThat(json).startsWith("[{");
+        assertThat(json).doesNotContain("]");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void streamAll_TwoTodoEntriesFound_ShouldReturnListThatContainsTwoTodoEntriesAsJson() throws Exception {
+        TodoDTO first = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .description(DESCRIPTION)
+                .build();
+        TodoDTO second = new TodoDTOBuilder()
+                .id(SECOND_ID)
+                .title(TITLE)
+                .build();
+
+        doAnswer(invocation -> {
+            Consumer<TodoDTO> action = (Consumer<TodoDTO>) invocation.getArguments()[0];
+            action.accept(first);
+            action.accept(second);
+            return null;
+        }).when(service).forEach(any(Consumer.class));
+
+        mockMvc.perform(get("/api/todo/stream"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id", is(ID)))
+                .andExpect(jsonPath("$[0].title", is(TITLE)))
+                .andExpect(jsonPath("$[0].description", is(DESCRIPTION)))
+                .andExpect(jsonPath("$[1].id", is(SECOND_ID)))
+                .andExpect(jsonPath("$[1].title", is(TITLE)));
+    }
+
     @Test
     public void findById_TodoEntryFound_ShouldReturnResponseStatusOk() throws Exception {
         TodoDTO found = new TodoDTOBuilder().build();
@@ -321,6 +692,25 @@ public class TodoControllerTest {
                 .andExpect(jsonPath("$.description", is(DESCRIPTION)));
     }
 
+    @Test
+    public void findById_FieldsGiven_ShouldReturnOnlyRequestedFieldsAndVersionAsETag() throws Exception {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+
+        when(service.findById(eq(ID), isA(TodoFields.class))).thenReturn(found);
+
+        mockMvc.perform(get("/api/todo/{id}", ID).param("fields", "title, version"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + VERSION + "\""))
+                .andExpect(jsonPath("$.id", is(ID)))
+                .andExpect(jsonPath("$.title", is(TITLE)))
+                .andExpect(jsonPath("$.version", is((int) VERSION)))
+                .andExpect(jsonPath("$.description").doesNotExist());
+    }
+
     @Test
     public void findById_TodoEntryNotFound_ShouldReturnResponseStatusNotFound() throws Exception {
         when(service.findById(ID)).thenThrow(new TodoNotFoundException(ID));
@@ -329,6 +719,139 @@ public class TodoControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    public void findById_TodoEntryNotFound_ShouldCountNotFoundTodoEntry() throws Exception {
+        when(service.findById(ID)).thenThrow(new TodoNotFoundException(ID));
+
+        mockMvc.perform(get("/api/todo/{id}", ID));
+        mockMvc.perform(get("/api/todo/{id}", ID));
+
+        assertThat(metricRegistry.meter("todo.api.not-found").getCount()).isEqualTo(2L);
+    }
+
+    @Test
+    public void findById_TodoEntryFound_ShouldReturnVersionAsETag() throws Exception {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .version(VERSION)
+                .build();
+
+        when(service.findById(ID)).thenReturn(found);
+
+        mockMvc.perform(get("/api/todo/{id}", ID))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""));
+    }
+
+    @Test
+    public void findById_IfNoneMatchMatchesVersion_ShouldReturnResponseStatusNotModifiedWithoutFindingTodoEntry() throws Exception {
+        when(service.findVersionById(ID)).thenReturn(VERSION);
+
+        mockMvc.perform(get("/api/todo/{id}", ID)
+                        .header("If-None-Match", "\"1\", W/\"3\"")
+        )
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"3\""))
+                .andExpect(content().string(""));
+
+        verify(service, never()).findById(ID);
+    }
+
+    @Test
+    public void findById_IfNoneMatchDoesNotMatchVersion_ShouldReturnTheInformationOfFoundTodoEntryAsJson() throws Exception {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+
+        when(service.findVersionById(ID)).thenReturn(VERSION);
+        when(service.findById(ID)).thenReturn(found);
+
+        mockMvc.perform(get("/api/todo/{id}", ID)
+                        .header("If-None-Match", "\"2\"")
+        )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(ID)))
+                .andExpect(jsonPath("$.version", is((int) VERSION)));
+    }
+
+    @Test
+    public void update_IfMatchHeaderFound_ShouldUpdateTodoEntryWithExpectedVersion() throws Exception {
+        TodoDTO updatedTodoEntry = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        mockMvc.perform(put("/api/todo/{id}", ID)
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(updatedTodoEntry))
+                        .header("If-Match", "\"3\"")
+        );
+
+        ArgumentCaptor<TodoDTO> updatedArgument = ArgumentCaptor.forClass(TodoDTO.class);
+        verify(service, times(1)).update(updatedArgument.capture());
+
+        TodoDTO updated = updatedArgument.getValue();
+        assertThat(updated.getVersion()).isEqualTo(VERSION);
+    }
+
+    @Test
+    public void update_IfMatchHeaderIsInvalid_ShouldReturnResponseStatusPreconditionFailedWithoutUpdatingTodoEntry() throws Exception {
+        TodoDTO updatedTodoEntry = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        mockMvc.perform(put("/api/todo/{id}", ID)
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(updatedTodoEntry))
+                        .header("If-Match", "W/\"3\"")
+        )
+                .andExpect(status().isPreconditionFailed());
+
+        verifyNoMoreInteractions(service);
+    }
+
+    @Test
+    public void update_VersionConflict_ShouldReturnResponseStatusPreconditionFailed() throws Exception {
+        TodoDTO updatedTodoEntry = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+
+        when(service.update(isA(TodoDTO.class))).thenThrow(new TodoVersionConflictException(ID, VERSION));
+
+        mockMvc.perform(put("/api/todo/{id}", ID)
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(updatedTodoEntry))
+        )
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    public void update_TodoEntryUpdated_ShouldReturnNewVersionAsETag() throws Exception {
+        TodoDTO updatedTodoEntry = new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+
+        when(service.update(isA(TodoDTO.class))).thenReturn(new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build()
+        );
+
+        mockMvc.perform(put("/api/todo/{id}", ID)
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(updatedTodoEntry))
+        )
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"3\""));
+    }
+
     @Test
     public void update_TodoEntryWithOnlyTitle_ShouldUpdateTheInformationOfTodoEntry() throws Exception {
         TodoDTO updatedTodoEntry = new TodoDTOBuilder()
@@ -456,4 +979,23 @@ public class TodoControllerTest {
                 .andExpect(jsonPath("$.title", is(maxLengthTitle)))
                 .andExpect(jsonPath("$.description", is(maxLengthDescription)));
     }
+
+    @Test
+    public void updateAll_OneTodoEntry_ShouldReturnResultAsJson() throws Exception {
+        TodoBatchDTO batch = new TodoBatchDTO();
+        batch.setEntries(Arrays.asList(new TodoDTOBuilder().id(ID).title(TITLE).build()));
+
+        when(service.updateAll(anyListOf(TodoDTO.class))).thenReturn(Arrays.asList(
+                new TodoBatchResultDTO(ID, TodoBatchResultDTO.Status.UPDATED)
+        ));
+
+        mockMvc.perform(put("/api/todo/batch")
+                        .contentType(APPLICATION_JSON_UTF8)
+                        .content(WebTestUtil.convertObjectToJsonBytes(batch))
+        )
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(ID)))
+                .andExpect(jsonPath("$[0].status", is("UPDATED")));
+    }
 }
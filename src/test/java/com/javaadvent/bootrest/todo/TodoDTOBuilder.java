@@ -8,6 +8,7 @@ class TodoDTOBuilder {
     private String description;
     private String id;
     private String title;
+    private Long version;
 
     TodoDTOBuilder() {
 
@@ -28,12 +29,18 @@ class TodoDTOBuilder {
         return this;
     }
 
+    TodoDTOBuilder version(Long version) {
+        this.version = version;
+        return this;
+    }
+
     TodoDTO build() {
         TodoDTO dto = new TodoDTO();
 
         dto.setDescription(description);
         dto.setId(id);
         dto.setTitle(title);
+        dto.setVersion(version);
 
         return dto;
     }
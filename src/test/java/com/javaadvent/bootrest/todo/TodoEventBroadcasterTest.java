@@ -0,0 +1,284 @@
+package com.javaadvent.bootrest.todo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class TodoEventBroadcasterTest {
+
+    private static final int BUFFER_SIZE = 4;
+    private static final int HISTORY_SIZE = 3;
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+
+    private List<Runnable> pendingWrites;
+
+    private Executor writer;
+
+    private TodoEventBroadcaster broadcaster;
+
+    @Before
+    public void setUp() {
+        pendingWrites = new ArrayList<>();
+        writer = pendingWrites::add;
+        broadcaster = new TodoEventBroadcaster(new ObjectMapper(), writer, BUFFER_SIZE, HISTORY_SIZE, 2, 1000, 1000);
+    }
+
+    @Test
+    public void subscribe_ShouldWriteRetryTime() {
+        RecordingSink sink = new RecordingSink();
+
+        broadcaster.subscribe(sink, null);
+        runPendingWrites();
+
+        assertThat(sink.content()).isEqualTo("retry: 1000\n\n");
+        assertThat(sink.flushed).isTrue();
+    }
+
+    @Test
+    public void subscribe_MaximumNumberOfSubscribersReached_ShouldReturnNull() {
+        broadcaster.subscribe(new RecordingSink(), null);
+        broadcaster.subscribe(new RecordingSink(), null);
+
+        assertThat(broadcaster.subscribe(new RecordingSink(), null)).isNull();
+    }
+
+    @Test
+    public void onEvent_ShouldWriteEventToEverySubscriber() {
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        broadcaster.subscribe(first, null);
+        broadcaster.subscribe(second, null);
+
+        broadcaster.onEvent(TodoEvent.created(todo()));
+        runPendingWrites();
+
+        assertThat(first.content()).contains("\nevent: created\ndata: {\"id\":\"id\",\"description\":null,\"title\":\"title\",\"version\":null}\n\n");
+        assertThat(second.content()).isEqualTo(first.content());
+        assertThat(broadcaster.publishedEventCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void onEvent_DeletedTodoEntry_ShouldWriteIdOfDeletedTodoEntry() {
+        RecordingSink sink = new RecordingSink();
+        broadcaster.subscribe(sink, null);
+
+        broadcaster.onEvent(TodoEvent.deleted(ID));
+        runPendingWrites();
+
+        assertThat(sink.content()).contains("\nevent: deleted\ndata: {\"id\":\"id\"}\n\n");
+    }
+
+    @Test
+    public void onEvent_BufferOfSubscriberIsFull_ShouldDisconnectSubscriber() {
+        RecordingSink slow = new RecordingSink();
+        broadcaster.subscribe(slow, null);
+
+        for (int index = 0; index < BUFFER_SIZE; index++) {
+            broadcaster.onEvent(TodoEvent.deleted(ID));
+        }
+        runPendingWrites();
+
+        assertThat(slow.closed).isTrue();
+        assertThat(broadcaster.subscriberCount()).isEqualTo(0);
+        assertThat(broadcaster.droppedSubscriberCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void subscribe_LastEventIdFound_ShouldReplayMissedEvents() {
+        RecordingSink first = new RecordingSink();
+        broadcaster.subscribe(first, null);
+        broadcaster.onEvent(TodoEvent.deleted("first"));
+        broadcaster.onEvent(TodoEvent.deleted("second"));
+        runPendingWrites();
+
+        String firstEventId = eventIds(first.content()).get(0);
+        RecordingSink reconnected = new RecordingSink();
+        broadcaster.subscribe(reconnected, firstEventId);
+        runPendingWrites();
+
+        assertThat(reconnected.content()).doesNotContain("first");
+        assertThat(reconnected.content()).contains("data: {\"id\":\"second\"}");
+    }
+
+    @Test
+    public void subscribe_LastEventIdNotInHistory_ShouldWriteResetEvent() {
+        RecordingSink first = new RecordingSink();
+        broadcaster.subscribe(first, null);
+        broadcaster.onEvent(TodoEvent.deleted("first"));
+        runPendingWrites();
+        String firstEventId = eventIds(first.content()).get(0);
+
+        for (int index = 0; index < HISTORY_SIZE; index++) {
+            broadcaster.onEvent(TodoEvent.deleted(ID));
+            runPendingWrites();
+        }
+
+        RecordingSink reconnected = new RecordingSink();
+        broadcaster.subscribe(reconnected, firstEventId);
+        runPendingWrites();
+
+        assertThat(reconnected.content()).contains("event: reset\n");
+        assertThat(reconnected.content()).doesNotContain("event: deleted");
+    }
+
+    @Test
+    public void subscribe_UnknownLastEventId_ShouldWriteResetEvent() {
+        RecordingSink sink = new RecordingSink();
+
+        broadcaster.subscribe(sink, "unknown-1");
+        runPendingWrites();
+
+        assertThat(sink.content()).contains("event: reset\n");
+    }
+
+    @Test
+    public void heartbeat_WriteFails_ShouldDisconnectSubscriber() {
+        RecordingSink gone = new RecordingSink();
+        broadcaster.subscribe(gone, null);
+        runPendingWrites();
+
+        gone.failWrites = true;
+        broadcaster.heartbeat();
+        runPendingWrites();
+
+        assertThat(gone.closed).isTrue();
+        assertThat(broadcaster.subscriberCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void abortBlockedWrites_WriteIsBlockedLongerThanWriteTimeout_ShouldAbortWriteAndDisconnectSubscriber() {
+        TodoEventBroadcaster broadcaster = new TodoEventBroadcaster(new ObjectMapper(),
+                writer,
+                BUFFER_SIZE,
+                HISTORY_SIZE,
+                2,
+                1000,
+                0
+        );
+        RecordingSink blocked = new RecordingSink();
+        //The write timeout expires while the write is in progress.
+        blocked.onWrite = broadcaster::abortBlockedWrites;
+
+        broadcaster.subscribe(blocked, null);
+        runPendingWrites();
+
+        assertThat(blocked.aborted).isTrue();
+        assertThat(broadcaster.subscriberCount()).isEqualTo(0);
+        assertThat(broadcaster.abortedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void abortBlockedWrites_NoWriteInProgress_ShouldNotDisconnectSubscriber() {
+        TodoEventBroadcaster broadcaster = new TodoEventBroadcaster(new ObjectMapper(),
+                writer,
+                BUFFER_SIZE,
+                HISTORY_SIZE,
+                2,
+                1000,
+                0
+        );
+        RecordingSink idle = new RecordingSink();
+        broadcaster.subscribe(idle, null);
+        runPendingWrites();
+
+        broadcaster.abortBlockedWrites();
+
+        assertThat(idle.aborted).isFalse();
+        assertThat(broadcaster.subscriberCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void close_ShouldEndResponseOfSubscriber() {
+        RecordingSink sink = new RecordingSink();
+        TodoEventBroadcaster.Subscriber subscriber = broadcaster.subscribe(sink, null);
+        runPendingWrites();
+
+        subscriber.close();
+        runPendingWrites();
+
+        assertThat(sink.closed).isTrue();
+        assertThat(broadcaster.subscriberCount()).isEqualTo(0);
+    }
+
+    private void runPendingWrites() {
+        while (!pendingWrites.isEmpty()) {
+            pendingWrites.remove(0).run();
+        }
+    }
+
+    private static TodoDTO todo() {
+        return new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .build();
+    }
+
+    private static List<String> eventIds(String content) {
+        List<String> ids = new ArrayList<>();
+        for (String line : content.split("\n")) {
+            if (line.startsWith("id: ")) {
+                ids.add(line.substring(4));
+            }
+        }
+        return ids;
+    }
+
+    private static final class RecordingSink implements TodoEventBroadcaster.EventSink {
+
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        private boolean aborted;
+
+        private boolean closed;
+
+        private boolean failWrites;
+
+        private boolean flushed;
+
+        private Runnable onWrite = () -> { };
+
+        @Override
+        public void write(byte[] event) throws IOException {
+            if (failWrites) {
+                throw new IOException("Connection reset");
+            }
+            onWrite.run();
+            if (aborted) {
+                throw new IOException("Connection closed");
+            }
+            written.write(event);
+        }
+
+        @Override
+        public void flush() {
+            flushed = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+
+        private String content() {
+            return new String(written.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
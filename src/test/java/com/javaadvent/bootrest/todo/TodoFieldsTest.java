@@ -0,0 +1,64 @@
+package com.javaadvent.bootrest.todo;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class TodoFieldsTest {
+
+    private static final String DESCRIPTION = "description";
+    private static final String ID = "id";
+    private static final String TITLE = "title";
+    private static final long VERSION = 3L;
+
+    @Test
+    public void parse_ShouldAlwaysIncludeId() {
+        TodoFields fields = TodoFields.parse("title");
+
+        assertThat(fields.getFields()).containsExactly(TodoFields.Field.ID, TodoFields.Field.TITLE);
+        assertThat(fields.isAll()).isFalse();
+    }
+
+    @Test
+    public void parse_EmptyNamesAndWhitespace_ShouldIgnoreThem() {
+        TodoFields fields = TodoFields.parse(" title,, version ,");
+
+        assertThat(fields.getFields()).containsExactly(TodoFields.Field.ID,
+                TodoFields.Field.TITLE,
+                TodoFields.Field.VERSION
+        );
+    }
+
+    @Test
+    public void parse_AllFields_ShouldReturnAll() {
+        assertThat(TodoFields.parse("version,title,description,id")).isSameAs(TodoFields.ALL);
+    }
+
+    @Test(expected = UnknownTodoFieldException.class)
+    public void parse_UnknownField_ShouldThrowException() {
+        TodoFields.parse("title,owner");
+    }
+
+    @Test
+    public void project_ShouldCopyOnlyRequestedFields() {
+        TodoDTO todoEntry = new TodoDTOBuilder()
+                .id(ID)
+                .description(DESCRIPTION)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+
+        Map<String, Object> projected = TodoFields.parse("version,title").project(todoEntry);
+
+        assertThat(projected).hasSize(3)
+                .containsEntry("id", ID)
+                .containsEntry("title", TITLE)
+                .containsEntry("version", VERSION);
+        assertThat(projected.keySet()).containsExactly("id", "title", "version");
+    }
+}
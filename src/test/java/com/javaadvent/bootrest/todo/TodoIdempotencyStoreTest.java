@@ -0,0 +1,287 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.MetricRegistry;
+import com.mongodb.WriteResult;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.javaadvent.bootrest.todo.TodoDTOAssert.assertThatTodoDTO;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class TodoIdempotencyStoreTest {
+
+    private static final String ID = "id";
+    private static final String KEY = "key";
+    private static final long NOW = 1000000000L;
+    private static final String TITLE = "title";
+    private static final long VERSION = 0L;
+    private static final long WAIT_TIMEOUT_MILLIS = 50;
+
+    private AtomicInteger creates;
+
+    private MetricRegistry metricRegistry;
+
+    private TodoIdempotencyStore store;
+
+    @Before
+    public void setUp() {
+        creates = new AtomicInteger();
+        metricRegistry = new MetricRegistry();
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, null, () -> NOW, metricRegistry);
+    }
+
+    @Test
+    public void create_NewKey_ShouldCreateTodoEntry() {
+        TodoDTO created = store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        assertThat(creates.get()).isEqualTo(1);
+        assertThatTodoDTO(created)
+                .hasId(ID)
+                .hasTitle(TITLE);
+    }
+
+    @Test
+    public void create_KeyUsedBefore_ShouldReturnCopyOfCreatedTodoEntry() {
+        TodoDTO first = store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        TodoDTO second = store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        assertThat(creates.get()).isEqualTo(1);
+        assertThat(second).isNotSameAs(first);
+        assertThatTodoDTO(second)
+                .hasId(ID)
+                .hasTitle(TITLE);
+        assertThat(metricRegistry.meter("todo.idempotency.replayed").getCount()).isEqualTo(1L);
+    }
+
+    @Test(expected = TodoIdempotencyKeyReusedException.class)
+    public void create_KeyUsedWithDifferentTitle_ShouldThrowException() {
+        store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        store.create(KEY, request("other"), this::createTodoEntry);
+    }
+
+    @Test
+    public void create_CreateFailed_ShouldAllowKeyToBeUsedAgain() {
+        try {
+            store.create(KEY, request(TITLE), () -> {
+                throw new TodoWriteQueueFullException(1);
+            });
+            fail("Should have thrown exception");
+        } catch (TodoWriteQueueFullException ex) {
+            //The key was released.
+        }
+
+        store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        assertThat(creates.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void createAsync_RequestWithSameKeyRunning_ShouldWaitForItsTodoEntry() {
+        CompletableFuture<TodoDTO> running = new CompletableFuture<>();
+        CompletableFuture<TodoDTO> first = store.createAsync(KEY, request(TITLE), Runnable::run, () -> running);
+
+        CompletableFuture<TodoDTO> second = store.createAsync(KEY, request(TITLE), Runnable::run, () -> {
+            creates.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertThat(second.isDone()).isFalse();
+
+        running.complete(createTodoEntry());
+
+        assertThat(creates.get()).isEqualTo(1);
+        assertThatTodoDTO(first.join()).hasId(ID);
+        assertThatTodoDTO(second.join()).hasId(ID);
+        assertThat(metricRegistry.meter("todo.idempotency.waited").getCount()).isEqualTo(1L);
+        assertThat(metricRegistry.getGauges().get("todo.idempotency.running").getValue()).isEqualTo(0);
+    }
+
+    @Test(expected = TodoIdempotencyKeyInUseException.class)
+    public void create_RequestWithSameKeyDoesNotFinish_ShouldThrowException() {
+        store.createAsync(KEY, request(TITLE), Runnable::run, CompletableFuture::new);
+
+        store.create(KEY, request(TITLE), this::createTodoEntry);
+    }
+
+    @Test
+    public void createAsync_MongoDBEnabled_ShouldReserveKeyInExecutor() {
+        MongoOperations mongoOperations = mock(MongoOperations.class);
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+        List<Runnable> tasks = new ArrayList<>();
+
+        CompletableFuture<TodoDTO> created = store.createAsync(KEY, request(TITLE), tasks::add, () ->
+                CompletableFuture.completedFuture(createTodoEntry())
+        );
+
+        verify(mongoOperations, never()).insert(isA(TodoIdempotencyRecord.class));
+        assertThat(created.isDone()).isFalse();
+
+        tasks.forEach(Runnable::run);
+
+        verify(mongoOperations).insert(isA(TodoIdempotencyRecord.class));
+        assertThatTodoDTO(created.join()).hasId(ID);
+    }
+
+    @Test
+    public void create_MongoDBEnabled_ShouldReserveKeyBeforeCreatingTodoEntry() {
+        MongoOperations mongoOperations = mock(MongoOperations.class);
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+
+        TodoDTO created = store.create(KEY, request(TITLE), () -> {
+            //The reservation has been inserted before the todo entry is created.
+            verify(mongoOperations).insert(isA(TodoIdempotencyRecord.class));
+            return createTodoEntry();
+        });
+
+        assertThatTodoDTO(created).hasId(ID);
+
+        ArgumentCaptor<TodoIdempotencyRecord> recordArgument = ArgumentCaptor.forClass(TodoIdempotencyRecord.class);
+        verify(mongoOperations).save(recordArgument.capture());
+        TodoIdempotencyRecord completed = recordArgument.getValue();
+        assertThat(completed.isReservation()).isFalse();
+        assertThatTodoDTO(completed.toCreated()).hasId(ID);
+    }
+
+    @Test
+    public void create_RecordFoundFromMongoDB_ShouldReturnTodoEntryOfRecord() {
+        MongoOperations mongoOperations = reservedKey(new TodoIdempotencyRecord(KEY,
+                request(TITLE),
+                createdTodoEntry(),
+                new Date(NOW)
+        ));
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+
+        TodoDTO created = store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        assertThat(creates.get()).isEqualTo(0);
+        assertThatTodoDTO(created).hasId(ID);
+    }
+
+    @Test
+    public void create_KeyReservedByRequestOnOtherInstance_ShouldThrowExceptionWithoutCreatingTodoEntry() {
+        MongoOperations mongoOperations = reservedKey(new TodoIdempotencyRecord(KEY, request(TITLE), new Date(NOW)));
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+
+        try {
+            store.create(KEY, request(TITLE), this::createTodoEntry);
+            fail("Should have thrown exception");
+        } catch (TodoIdempotencyKeyInUseException ex) {
+            //The client can try again later.
+        }
+
+        assertThat(creates.get()).isEqualTo(0);
+    }
+
+    @Test(expected = TodoIdempotencyKeyReusedException.class)
+    public void create_KeyReservedByRequestWithDifferentTitle_ShouldThrowException() {
+        MongoOperations mongoOperations = reservedKey(new TodoIdempotencyRecord(KEY, request("other"), new Date(NOW)));
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+
+        store.create(KEY, request(TITLE), this::createTodoEntry);
+    }
+
+    @Test
+    public void create_ReservationAbandoned_ShouldTakeOverKeyAndCreateTodoEntry() {
+        MongoOperations mongoOperations = reservedKey(new TodoIdempotencyRecord(KEY,
+                request(TITLE),
+                new Date(NOW - TimeUnit.MINUTES.toMillis(2))
+        ));
+        WriteResult takenOver = mock(WriteResult.class);
+        when(takenOver.getN()).thenReturn(1);
+        when(mongoOperations.updateFirst(isA(Query.class), isA(Update.class), eq(TodoIdempotencyRecord.class)))
+                .thenReturn(takenOver);
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+
+        TodoDTO created = store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        assertThat(creates.get()).isEqualTo(1);
+        assertThatTodoDTO(created).hasId(ID);
+    }
+
+    @Test
+    public void create_CreateFailedWhenMongoDBEnabled_ShouldReleaseReservation() {
+        MongoOperations mongoOperations = mock(MongoOperations.class);
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+
+        try {
+            store.create(KEY, request(TITLE), () -> {
+                throw new TodoWriteQueueFullException(1);
+            });
+            fail("Should have thrown exception");
+        } catch (TodoWriteQueueFullException ex) {
+            //The reservation was removed.
+        }
+
+        verify(mongoOperations).remove(isA(Query.class), eq(TodoIdempotencyRecord.class));
+        verify(mongoOperations, never()).save(isA(TodoIdempotencyRecord.class));
+    }
+
+    @Test
+    public void create_CompletingRecordInMongoDBFails_ShouldReturnCreatedTodoEntry() {
+        MongoOperations mongoOperations = mock(MongoOperations.class);
+        doThrow(new DataAccessResourceFailureException("down")).when(mongoOperations)
+                .save(isA(TodoIdempotencyRecord.class));
+        store = new TodoIdempotencyStore(10, 60, WAIT_TIMEOUT_MILLIS, mongoOperations, () -> NOW, new MetricRegistry());
+
+        TodoDTO created = store.create(KEY, request(TITLE), this::createTodoEntry);
+
+        verify(mongoOperations).save(isA(TodoIdempotencyRecord.class));
+        assertThatTodoDTO(created).hasId(ID);
+    }
+
+    /**
+     * Returns MongoDB operations that find the given record because the key has been reserved already.
+     */
+    private static MongoOperations reservedKey(TodoIdempotencyRecord record) {
+        MongoOperations mongoOperations = mock(MongoOperations.class);
+        doThrow(new DuplicateKeyException("duplicate key")).when(mongoOperations)
+                .insert(isA(TodoIdempotencyRecord.class));
+        when(mongoOperations.findById(KEY, TodoIdempotencyRecord.class)).thenReturn(record);
+        return mongoOperations;
+    }
+
+    private TodoDTO createTodoEntry() {
+        creates.incrementAndGet();
+        return createdTodoEntry();
+    }
+
+    private static TodoDTO createdTodoEntry() {
+        return new TodoDTOBuilder()
+                .id(ID)
+                .title(TITLE)
+                .version(VERSION)
+                .build();
+    }
+
+    private static TodoDTO request(String title) {
+        return new TodoDTOBuilder()
+                .title(title)
+                .build();
+    }
+}
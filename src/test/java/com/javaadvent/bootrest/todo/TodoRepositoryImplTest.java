@@ -0,0 +1,299 @@
+package com.javaadvent.bootrest.todo;
+
+import com.javaadvent.bootrest.mongo.MongoOperationSettings;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.CollectionCallback;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.javaadvent.bootrest.todo.TodoAssert.assertThatTodo;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TodoRepositoryImplTest {
+
+    private static final String ID = "54a6a6e0e4b0e2d2f1a0c001";
+    private static final String TITLE = "title";
+
+    @Mock
+    private MongoOperations mongoOperations;
+
+    @Mock
+    private DBCollection collection;
+
+    @Mock
+    private DBCursor cursor;
+
+    @Mock
+    private BulkWriteOperation bulkWrite;
+
+    @Before
+    public void setUp() {
+        MappingMongoConverter converter = new MappingMongoConverter(mock(DbRefResolver.class),
+                new MongoMappingContext()
+        );
+        converter.afterPropertiesSet();
+        when(mongoOperations.getConverter()).thenReturn(converter);
+
+        when(mongoOperations.execute(any(Class.class), Matchers.<CollectionCallback<Object>>any()))
+                .thenAnswer(invocation -> {
+                    CollectionCallback<?> callback = (CollectionCallback<?>) invocation.getArguments()[1];
+                    return callback.doInCollection(collection);
+                });
+        when(collection.find(any(DBObject.class), any(DBObject.class))).thenReturn(cursor);
+        when(collection.getWriteConcern()).thenReturn(WriteConcern.ACKNOWLEDGED);
+        when(collection.initializeUnorderedBulkOperation()).thenReturn(bulkWrite);
+
+        List<DBObject> documents = Collections.singletonList(new BasicDBObject("_id", new ObjectId(ID))
+                .append("title", TITLE)
+                .append("version", 0L)
+        );
+        when(cursor.iterator()).thenAnswer(invocation -> documents.iterator());
+    }
+
+    @Test
+    public void findAll_ReadPreferenceConfigured_ShouldReadTodoEntriesWithReadPreference() {
+        TodoRepositoryImpl repository = repository("findAll:secondaryPreferred", "");
+
+        List<Todo> found = repository.findAll();
+
+        assertThat(found).hasSize(1);
+        assertThatTodo(found.get(0))
+                .hasId(ID)
+                .hasTitle(TITLE);
+        verify(cursor).setReadPreference(ReadPreference.secondaryPreferred());
+    }
+
+    @Test
+    public void findOne_NoReadPreferenceConfigured_ShouldUseReadPreferenceOfClient() {
+        TodoRepositoryImpl repository = repository("findAll:secondaryPreferred", "");
+
+        assertThat(repository.findOne(ID).isPresent()).isTrue();
+
+        ArgumentCaptor<DBObject> queryArgument = ArgumentCaptor.forClass(DBObject.class);
+        verify(collection).find(queryArgument.capture(), any(DBObject.class));
+        assertThat(queryArgument.getValue().get("_id")).isEqualTo(new ObjectId(ID));
+        verify(cursor).limit(1);
+        verify(cursor, never()).setReadPreference(any(ReadPreference.class));
+    }
+
+    @Test
+    public void insertAll_WriteConcernConfigured_ShouldExecuteBulkWriteWithWriteConcern() {
+        TodoRepositoryImpl repository = repository("", "insertAll:MAJORITY");
+
+        repository.insertAll(Arrays.asList(todo(), todo()));
+
+        verify(bulkWrite).execute(WriteConcern.MAJORITY);
+    }
+
+    @Test
+    public void delete_NoWriteConcernConfigured_ShouldUseWriteConcernOfCollection() {
+        TodoRepositoryImpl repository = repository("", "insertAll:MAJORITY");
+        Todo deleted = todo();
+        deleted.setIdAndVersion(ID, 0L);
+
+        repository.delete(deleted);
+
+        verify(collection).remove(new BasicDBObject("_id", new ObjectId(ID)), WriteConcern.ACKNOWLEDGED);
+    }
+
+    @Test
+    public void save_NewTodoEntry_ShouldInsertTodoEntryWithIdAndVersionZero() {
+        TodoRepositoryImpl repository = repository("", "save:JOURNALED");
+
+        Todo saved = repository.save(todo());
+
+        assertThat(ObjectId.isValid(saved.getId())).isTrue();
+        assertThat(saved.getVersion()).isEqualTo(0L);
+        verify(collection).insert(any(DBObject.class), eq(WriteConcern.JOURNALED));
+    }
+
+    @Test
+    public void save_TodoEntryModifiedByAnotherWriter_ShouldThrowExceptionAndKeepVersion() {
+        TodoRepositoryImpl repository = repository("", "");
+        WriteResult result = mock(WriteResult.class);
+        when(collection.update(any(DBObject.class),
+                any(DBObject.class),
+                anyBoolean(),
+                anyBoolean(),
+                any(WriteConcern.class)
+        )).thenReturn(result);
+        Todo saved = todo();
+        saved.setIdAndVersion(ID, 3L);
+
+        try {
+            repository.save(saved);
+            fail("Expected OptimisticLockingFailureException");
+        } catch (OptimisticLockingFailureException ex) {
+            assertThat(saved.getVersion()).isEqualTo(3L);
+        }
+    }
+
+    @Test
+    public void findAndUpdate_ExpectedVersionIsZero_ShouldAlsoMatchTodoEntryWithoutVersion() {
+        TodoRepositoryImpl repository = repository("", "");
+
+        repository.findAndUpdate(ID, 0L, TITLE, null);
+
+        DBObject query = captureFindAndModifyQuery().getQueryObject();
+        assertThat(query.get("version")).isEqualTo(new BasicDBObject("$in", Arrays.asList(0L, null)));
+    }
+
+    @Test
+    public void findAndUpdate_ExpectedVersionIsNotZero_ShouldMatchOnlyExpectedVersion() {
+        TodoRepositoryImpl repository = repository("", "");
+
+        repository.findAndUpdate(ID, 3L, TITLE, null);
+
+        DBObject query = captureFindAndModifyQuery().getQueryObject();
+        assertThat(query.get("version")).isEqualTo(3L);
+    }
+
+    @Test
+    public void updateAll_ShouldMatchIdAndVersionOfTodoEntry() {
+        TodoRepositoryImpl repository = repository("", "");
+        BulkWriteRequestBuilder request = mock(BulkWriteRequestBuilder.class);
+        when(bulkWrite.find(any(DBObject.class))).thenReturn(request);
+        BulkWriteResult result = bulkWriteResult(1, 0);
+        when(bulkWrite.execute(WriteConcern.ACKNOWLEDGED)).thenReturn(result);
+
+        assertThat(repository.updateAll(Arrays.asList(updatedTodo()))).isEmpty();
+
+        ArgumentCaptor<DBObject> filterArgument = ArgumentCaptor.forClass(DBObject.class);
+        verify(bulkWrite).find(filterArgument.capture());
+        assertThat(filterArgument.getValue().get("_id")).isEqualTo(new ObjectId(ID));
+        assertThat(filterArgument.getValue().get("version")).isEqualTo(0L);
+    }
+
+    @Test
+    public void updateAll_TodoEntryModifiedByAnotherWriter_ShouldReturnConflict() {
+        TodoRepositoryImpl repository = repository("", "");
+        BulkWriteRequestBuilder request = mock(BulkWriteRequestBuilder.class);
+        when(bulkWrite.find(any(DBObject.class))).thenReturn(request);
+        BulkWriteResult result = bulkWriteResult(0, 0);
+        when(bulkWrite.execute(WriteConcern.ACKNOWLEDGED)).thenReturn(result);
+
+        assertThat(repository.updateAll(Arrays.asList(updatedTodo())))
+                .isEqualTo(Collections.singletonMap(0, TodoBatchResultDTO.Status.CONFLICT));
+        verify(cursor).setReadPreference(ReadPreference.primary());
+    }
+
+    @Test
+    public void updateAll_TodoEntryDeletedByAnotherWriter_ShouldReturnNotFound() {
+        TodoRepositoryImpl repository = repository("", "");
+        BulkWriteRequestBuilder request = mock(BulkWriteRequestBuilder.class);
+        when(bulkWrite.find(any(DBObject.class))).thenReturn(request);
+        BulkWriteResult result = bulkWriteResult(0, 0);
+        when(bulkWrite.execute(WriteConcern.ACKNOWLEDGED)).thenReturn(result);
+        when(cursor.iterator()).thenAnswer(invocation -> Collections.<DBObject>emptyIterator());
+
+        assertThat(repository.updateAll(Arrays.asList(updatedTodo())))
+                .isEqualTo(Collections.singletonMap(0, TodoBatchResultDTO.Status.NOT_FOUND));
+    }
+
+    @Test
+    public void deleteAll_TodoEntryDeletedByAnotherWriter_ShouldReturnNotFound() {
+        TodoRepositoryImpl repository = repository("", "");
+        BulkWriteRequestBuilder request = mock(BulkWriteRequestBuilder.class);
+        when(bulkWrite.find(any(DBObject.class))).thenReturn(request);
+        BulkWriteResult result = bulkWriteResult(0, 0);
+        when(bulkWrite.execute(WriteConcern.ACKNOWLEDGED)).thenReturn(result);
+
+        //The cursor returns the tombstone that was saved by the other writer.
+        assertThat(repository.deleteAll(Arrays.asList(ID)))
+                .isEqualTo(Collections.singletonMap(0, TodoBatchResultDTO.Status.NOT_FOUND));
+    }
+
+    @Test
+    public void deleteAll_AllTodoEntriesRemoved_ShouldNotReadTombstones() {
+        TodoRepositoryImpl repository = repository("", "");
+        BulkWriteRequestBuilder request = mock(BulkWriteRequestBuilder.class);
+        when(bulkWrite.find(any(DBObject.class))).thenReturn(request);
+        BulkWriteResult result = bulkWriteResult(0, 1);
+        when(bulkWrite.execute(WriteConcern.ACKNOWLEDGED)).thenReturn(result);
+
+        assertThat(repository.deleteAll(Arrays.asList(ID))).isEmpty();
+        verify(collection, never()).find(any(DBObject.class), any(DBObject.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void new_WriteConcernOfUnsupportedOperation_ShouldThrowException() {
+        repository("", "findAndUpdate:MAJORITY");
+    }
+
+    private TodoRepositoryImpl repository(String readPreferences, String writeConcerns) {
+        return new TodoRepositoryImpl(mongoOperations, MongoOperationSettings.parse(readPreferences, writeConcerns));
+    }
+
+    private Query captureFindAndModifyQuery() {
+        ArgumentCaptor<Query> queryArgument = ArgumentCaptor.forClass(Query.class);
+        verify(mongoOperations).findAndModify(queryArgument.capture(),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(Todo.class)
+        );
+        return queryArgument.getValue();
+    }
+
+    private static BulkWriteResult bulkWriteResult(int matchedCount, int removedCount) {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.isAcknowledged()).thenReturn(true);
+        when(result.getMatchedCount()).thenReturn(matchedCount);
+        when(result.getRemovedCount()).thenReturn(removedCount);
+        return result;
+    }
+
+    /**
+     * @return  A todo entry that was read with the version 0 and then updated.
+     */
+    private static Todo updatedTodo() {
+        Todo updated = todo();
+        updated.setIdAndVersion(ID, 0L);
+        updated.update(TITLE, null);
+        return updated;
+    }
+
+    private static Todo todo() {
+        return Todo.getBuilder()
+                .title(TITLE)
+                .build();
+    }
+}
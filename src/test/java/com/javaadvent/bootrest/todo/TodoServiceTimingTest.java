@@ -0,0 +1,68 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.MetricRegistry;
+import com.javaadvent.bootrest.metrics.TimingProxy;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ensures that {@link com.javaadvent.bootrest.metrics.TimingProxy} can invoke the methods of
+ * {@link com.javaadvent.bootrest.todo.TodoService} even though the interface is not visible to it.
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TodoServiceTimingTest {
+
+    private static final String ID = "id";
+
+    @Mock
+    private TodoService delegate;
+
+    private MetricRegistry metricRegistry;
+
+    private TodoService service;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        service = TimingProxy.create(TodoService.class, delegate, metricRegistry, "todo.service");
+    }
+
+    @Test
+    public void findById_ShouldReturnTodoEntryAndUpdateTimer() {
+        TodoDTO found = new TodoDTOBuilder()
+                .id(ID)
+                .build();
+        when(delegate.findById(ID)).thenReturn(found);
+
+        assertThat(service.findById(ID)).isSameAs(found);
+        assertThat(metricRegistry.timer("todo.service.findById").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void findAll_FieldsGiven_ShouldUpdateTimerOfOverload() {
+        service.findAll(TodoFields.ALL);
+
+        assertThat(metricRegistry.timer("todo.service.findAll.TodoFields").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("todo.service.findAll").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void findById_TodoEntryNotFound_ShouldMarkErrorMeter() {
+        when(delegate.findById(ID)).thenThrow(new TodoNotFoundException(ID));
+
+        try {
+            service.findById(ID);
+        } catch (TodoNotFoundException ex) {
+            //This is expected.
+        }
+
+        assertThat(metricRegistry.meter("todo.service.errors.TodoNotFoundException").getCount()).isEqualTo(1);
+    }
+}
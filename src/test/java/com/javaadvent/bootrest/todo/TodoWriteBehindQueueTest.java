@@ -0,0 +1,179 @@
+package com.javaadvent.bootrest.todo;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Petri Kainulainen
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TodoWriteBehindQueueTest {
+
+    private static final int BATCH_SIZE = 2;
+    private static final int CAPACITY = 3;
+    private static final String FOURTH_ID = "fourthId";
+    private static final String ID = "id";
+    private static final String SECOND_ID = "secondId";
+    private static final String THIRD_ID = "thirdId";
+
+    @Mock
+    private TodoRepository repository;
+
+    private List<List<String>> insertedBatches;
+
+    private Set<Integer> failedIndexes;
+
+    private RuntimeException insertFailure;
+
+    private MetricRegistry metricRegistry;
+
+    private TodoWriteBehindQueue queue;
+
+    @Before
+    public void setUp() {
+        insertedBatches = new CopyOnWriteArrayList<>();
+        failedIndexes = Collections.emptySet();
+        metricRegistry = new MetricRegistry();
+
+        when(repository.insertAll(anyListOf(Todo.class))).thenAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            List<Todo> batch = (List<Todo>) invocation.getArguments()[0];
+            insertedBatches.add(batch.stream().map(Todo::getId).collect(toList()));
+
+            if (insertFailure != null) {
+                throw insertFailure;
+            }
+            return failedIndexes;
+        });
+    }
+
+    @After
+    public void shutdownQueue() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void write_DurabilityWritten_ShouldReturnAfterTodoEntryHasBeenInserted() {
+        queue = createQueue(TodoWriteBehindQueue.Durability.WRITTEN);
+        queue.start();
+
+        queue.write(todo(ID));
+
+        assertThat(insertedBatches).isEqualTo(Collections.singletonList(Collections.singletonList(ID)));
+    }
+
+    @Test
+    public void write_DurabilityQueued_ShouldReturnBeforeTodoEntryHasBeenInserted() {
+        queue = createQueue(TodoWriteBehindQueue.Durability.QUEUED);
+
+        queue.write(todo(ID));
+
+        assertThat(insertedBatches).isEmpty();
+        assertThat(metricRegistry.getGauges().get("todo.write-behind.queue-size").getValue()).isEqualTo(1);
+    }
+
+    @Test
+    public void shutdown_TodoEntriesQueued_ShouldInsertTodoEntriesInBatches() {
+        queue = createQueue(TodoWriteBehindQueue.Durability.QUEUED);
+        queue.write(todo(ID));
+        queue.write(todo(SECOND_ID));
+        queue.write(todo(THIRD_ID));
+
+        queue.start();
+        queue.shutdown();
+
+        assertThat(insertedBatches).isEqualTo(Arrays.asList(
+                Arrays.asList(ID, SECOND_ID),
+                Collections.singletonList(THIRD_ID)
+        ));
+        assertThat(metricRegistry.timer("todo.write-behind.flushes").getCount()).isEqualTo(2L);
+        assertThat(metricRegistry.histogram("todo.write-behind.batch-size").getSnapshot().getMax()).isEqualTo(2L);
+    }
+
+    @Test
+    public void write_QueueFull_ShouldThrowException() {
+        queue = createQueue(TodoWriteBehindQueue.Durability.QUEUED);
+        queue.write(todo(ID));
+        queue.write(todo(SECOND_ID));
+        queue.write(todo(THIRD_ID));
+
+        try {
+            queue.write(todo(FOURTH_ID));
+            fail("Expected TodoWriteQueueFullException");
+        } catch (TodoWriteQueueFullException ex) {
+            assertThat(metricRegistry.meter("todo.write-behind.rejections").getCount()).isEqualTo(1L);
+        }
+    }
+
+    @Test(expected = TodoWriteQueueFullException.class)
+    public void write_QueueShutDown_ShouldThrowException() {
+        queue = createQueue(TodoWriteBehindQueue.Durability.QUEUED);
+        queue.shutdown();
+
+        queue.write(todo(ID));
+    }
+
+    @Test(expected = DataAccessResourceFailureException.class)
+    public void write_DurabilityWrittenAndTodoEntryNotInserted_ShouldThrowException() {
+        failedIndexes = Collections.singleton(0);
+        queue = createQueue(TodoWriteBehindQueue.Durability.WRITTEN);
+        queue.start();
+
+        queue.write(todo(ID));
+    }
+
+    @Test
+    public void write_DurabilityWrittenAndBulkWriteFailed_ShouldThrowExceptionOfBulkWrite() {
+        insertFailure = new DataAccessResourceFailureException("The database is down");
+        queue = createQueue(TodoWriteBehindQueue.Durability.WRITTEN);
+        queue.start();
+
+        try {
+            queue.write(todo(ID));
+            fail("Expected DataAccessResourceFailureException");
+        } catch (DataAccessResourceFailureException ex) {
+            assertThat(ex).isSameAs(insertFailure);
+            assertThat(metricRegistry.meter("todo.write-behind.failures").getCount()).isEqualTo(1L);
+        }
+    }
+
+    private TodoWriteBehindQueue createQueue(TodoWriteBehindQueue.Durability durability) {
+        return new TodoWriteBehindQueue(repository,
+                durability,
+                CAPACITY,
+                BATCH_SIZE,
+                0,
+                0,
+                Thread::new,
+                metricRegistry
+        );
+    }
+
+    private static Todo todo(String id) {
+        Todo todo = Todo.getBuilder()
+                .title(id)
+                .build();
+        todo.setIdAndVersion(id, 0L);
+        return todo;
+    }
+}
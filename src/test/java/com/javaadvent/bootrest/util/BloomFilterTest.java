@@ -0,0 +1,57 @@
+package com.javaadvent.bootrest.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class BloomFilterTest {
+
+    private static final int EXPECTED_INSERTIONS = 10000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_FalsePositiveRateIsOne_ShouldThrowException() {
+        new BloomFilter(EXPECTED_INSERTIONS, 1);
+    }
+
+    @Test
+    public void mightContain_NothingAdded_ShouldReturnFalse() {
+        BloomFilter filter = new BloomFilter(EXPECTED_INSERTIONS, FALSE_POSITIVE_RATE);
+
+        assertThat(filter.mightContain("value")).isFalse();
+    }
+
+    @Test
+    public void mightContain_ValuesAdded_ShouldReturnTrueForEveryAddedValue() {
+        BloomFilter filter = new BloomFilter(EXPECTED_INSERTIONS, FALSE_POSITIVE_RATE);
+
+        for (int index = 0; index < EXPECTED_INSERTIONS; index++) {
+            filter.put("added" + index);
+        }
+
+        for (int index = 0; index < EXPECTED_INSERTIONS; index++) {
+            assertThat(filter.mightContain("added" + index)).isTrue();
+        }
+        assertThat(filter.insertionCount()).isEqualTo(EXPECTED_INSERTIONS);
+    }
+
+    @Test
+    public void mightContain_ExpectedValuesAdded_ShouldKeepFalsePositiveRateNearConfiguredRate() {
+        BloomFilter filter = new BloomFilter(EXPECTED_INSERTIONS, FALSE_POSITIVE_RATE);
+        for (int index = 0; index < EXPECTED_INSERTIONS; index++) {
+            filter.put("added" + index);
+        }
+
+        int falsePositives = 0;
+        for (int index = 0; index < EXPECTED_INSERTIONS; index++) {
+            if (filter.mightContain("missing" + index)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives).isLessThan((int) (EXPECTED_INSERTIONS * FALSE_POSITIVE_RATE * 2));
+    }
+}
@@ -0,0 +1,105 @@
+package com.javaadvent.bootrest.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class ExpiringLruCacheTest {
+
+    private static final String FIRST_KEY = "first";
+    private static final String SECOND_KEY = "second";
+    private static final String THIRD_KEY = "third";
+
+    private static final String FIRST_VALUE = "firstValue";
+    private static final String SECOND_VALUE = "secondValue";
+    private static final String THIRD_VALUE = "thirdValue";
+
+    private static final long TIME_TO_LIVE_NANOS = 100;
+
+    private long now;
+
+    private ExpiringLruCache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new ExpiringLruCache<>(2, TIME_TO_LIVE_NANOS, TimeUnit.NANOSECONDS, () -> now);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_MaxSizeIsZero_ShouldThrowException() {
+        new ExpiringLruCache<String, String>(0, TIME_TO_LIVE_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void get_ValueNotCached_ShouldReturnNullAndCountMiss() {
+        assertThat(cache.get(FIRST_KEY)).isNull();
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.hitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void get_ValueCached_ShouldReturnValueAndCountHit() {
+        cache.put(FIRST_KEY, FIRST_VALUE);
+
+        assertThat(cache.get(FIRST_KEY)).isEqualTo(FIRST_VALUE);
+        assertThat(cache.hitCount()).isEqualTo(1);
+        assertThat(cache.missCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void get_ValueExpired_ShouldReturnNullAndCountEviction() {
+        cache.put(FIRST_KEY, FIRST_VALUE);
+        now += TIME_TO_LIVE_NANOS;
+
+        assertThat(cache.get(FIRST_KEY)).isNull();
+        assertThat(cache.evictionCount()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void put_CacheIsFull_ShouldEvictLeastRecentlyUsedValue() {
+        cache = new ExpiringLruCache<>(1, TIME_TO_LIVE_NANOS, TimeUnit.NANOSECONDS, () -> now);
+
+        cache.put(FIRST_KEY, FIRST_VALUE);
+        cache.put(SECOND_KEY, SECOND_VALUE);
+
+        assertThat(cache.get(FIRST_KEY)).isNull();
+        assertThat(cache.get(SECOND_KEY)).isEqualTo(SECOND_VALUE);
+        assertThat(cache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void put_MoreValuesThanMaxSize_ShouldNotExceedMaxSize() {
+        cache.put(FIRST_KEY, FIRST_VALUE);
+        cache.put(SECOND_KEY, SECOND_VALUE);
+        cache.put(THIRD_KEY, THIRD_VALUE);
+
+        assertThat(cache.size()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void remove_ValueCached_ShouldRemoveValue() {
+        cache.put(FIRST_KEY, FIRST_VALUE);
+
+        cache.remove(FIRST_KEY);
+
+        assertThat(cache.get(FIRST_KEY)).isNull();
+    }
+
+    @Test
+    public void clear_ValuesCached_ShouldRemoveAllValues() {
+        cache.put(FIRST_KEY, FIRST_VALUE);
+        cache.put(SECOND_KEY, SECOND_VALUE);
+
+        cache.clear();
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+}
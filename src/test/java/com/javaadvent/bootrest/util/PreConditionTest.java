@@ -0,0 +1,61 @@
+package com.javaadvent.bootrest.util;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class PreConditionTest {
+
+    private static final String TEMPLATE = "Value cannot be larger than %d";
+
+    @Test
+    public void isTrue_ExpressionIsTrue_ShouldNotInvokeSupplier() {
+        PreCondition.isTrue(true, () -> {
+            throw new AssertionError("The supplier must not be invoked");
+        });
+    }
+
+    @Test
+    public void isTrue_ExpressionIsFalse_ShouldThrowExceptionWithSuppliedMessage() {
+        try {
+            PreCondition.isTrue(false, () -> "message");
+            fail("Should have thrown an exception");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("message");
+        }
+    }
+
+    @Test
+    public void isTrue_ExpressionWithIntArgumentIsFalse_ShouldThrowExceptionWithFormattedMessage() {
+        try {
+            PreCondition.isTrue(false, TEMPLATE, 100);
+            fail("Should have thrown an exception");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("Value cannot be larger than 100");
+        }
+    }
+
+    @Test
+    public void isTrue_ExpressionWithLongArgumentIsFalse_ShouldThrowExceptionWithFormattedMessage() {
+        try {
+            PreCondition.isTrue(false, TEMPLATE, 100L);
+            fail("Should have thrown an exception");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("Value cannot be larger than 100");
+        }
+    }
+
+    @Test
+    public void isTrue_ExpressionWithVarargsIsFalse_ShouldThrowExceptionWithFormattedMessage() {
+        try {
+            PreCondition.isTrue(false, "%s cannot be larger than %d", "Value", 100);
+            fail("Should have thrown an exception");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("Value cannot be larger than 100");
+        }
+    }
+}
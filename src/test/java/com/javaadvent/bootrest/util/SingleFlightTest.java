@@ -0,0 +1,128 @@
+package com.javaadvent.bootrest.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Petri Kainulainen
+ */
+public class SingleFlightTest {
+
+    private static final String KEY = "key";
+    private static final String OTHER_KEY = "otherKey";
+    private static final String VALUE = "value";
+
+    private AtomicInteger loads;
+
+    private CountDownLatch loaderReleased;
+
+    private ExecutorService executor;
+
+    private SingleFlight<String, String> singleFlight;
+
+    @Before
+    public void setUp() {
+        loads = new AtomicInteger();
+        loaderReleased = new CountDownLatch(1);
+        executor = Executors.newCachedThreadPool();
+        singleFlight = new SingleFlight<>();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void load_NoOtherCall_ShouldRunLoader() {
+        assertThat(singleFlight.load(KEY, () -> VALUE + loads.incrementAndGet())).isEqualTo(VALUE + 1);
+        assertThat(singleFlight.load(KEY, () -> VALUE + loads.incrementAndGet())).isEqualTo(VALUE + 2);
+        assertThat(singleFlight.runningCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void load_CallWithSameKeyRunning_ShouldWaitForItsValue() throws Exception {
+        Future<String> first = executor.submit(() -> singleFlight.load(KEY, this::blockingLoad));
+        awaitLoads(1);
+
+        Future<String> second = executor.submit(() -> singleFlight.load(KEY, this::blockingLoad));
+        awaitCoalesced(1);
+        loaderReleased.countDown();
+
+        assertThat(first.get(1, TimeUnit.SECONDS)).isEqualTo(VALUE);
+        assertThat(second.get(1, TimeUnit.SECONDS)).isEqualTo(VALUE);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void load_CallWithOtherKeyRunning_ShouldRunLoader() throws Exception {
+        Future<String> first = executor.submit(() -> singleFlight.load(KEY, this::blockingLoad));
+        awaitLoads(1);
+
+        assertThat(singleFlight.load(OTHER_KEY, () -> VALUE)).isEqualTo(VALUE);
+        assertThat(singleFlight.coalescedCount()).isEqualTo(0);
+
+        loaderReleased.countDown();
+        first.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void load_RunningCallThrowsException_ShouldThrowSameExceptionToWaitingCall() throws Exception {
+        IllegalStateException thrown = new IllegalStateException();
+        Future<String> first = executor.submit(() -> singleFlight.load(KEY, () -> {
+            blockingLoad();
+            throw thrown;
+        }));
+        awaitLoads(1);
+
+        Future<String> second = executor.submit(() -> singleFlight.load(KEY, this::blockingLoad));
+        awaitCoalesced(1);
+        loaderReleased.countDown();
+
+        assertThatThrows(first, thrown);
+        assertThatThrows(second, thrown);
+    }
+
+    private String blockingLoad() {
+        loads.incrementAndGet();
+        try {
+            loaderReleased.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return VALUE;
+    }
+
+    private void awaitLoads(int expected) throws InterruptedException {
+        while (loads.get() < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        while (singleFlight.coalescedCount() < expected) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertThatThrows(Future<String> call, Throwable expected) throws Exception {
+        try {
+            call.get(1, TimeUnit.SECONDS);
+            fail("Should have thrown exception");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause()).isSameAs(expected);
+        }
+    }
+}